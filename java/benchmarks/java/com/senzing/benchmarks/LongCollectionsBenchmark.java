@@ -0,0 +1,137 @@
+package com.senzing.benchmarks;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.senzing.runner.LongHashSet;
+import com.senzing.runner.LongIntHashMap;
+
+/**
+ * Compares tracking entity IDs in the primitive {@link LongHashSet} and
+ * {@link LongIntHashMap} versus a boxed {@link HashSet} and {@link HashMap}.
+ * Each operation fills a collection with the IDs (or counts each ID twice)
+ * and then looks up every ID once.  Run with <code>-prof gc</code> to also
+ * compare the bytes allocated per operation, which is dominated by the
+ * size of the filled collection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class LongCollectionsBenchmark {
+    /**
+     * The number of distinct entity IDs.
+     */
+    @Param({ "10000000" })
+    public int count;
+
+    private long[] entityIds;
+
+    /**
+     * Generates the entity IDs as a shuffled, mostly increasing sequence
+     * with gaps, similar to the entity IDs assigned by the engine.
+     */
+    @Setup
+    public void setup() {
+        Random random = new Random(this.count);
+        this.entityIds = new long[this.count];
+        long entityId = 0L;
+        for (int index = 0; index < this.count; index++) {
+            entityId += 1 + random.nextInt(4);
+            this.entityIds[index] = entityId;
+        }
+        for (int index = this.count - 1; index > 0; index--) {
+            int other = random.nextInt(index + 1);
+            long swap = this.entityIds[index];
+            this.entityIds[index] = this.entityIds[other];
+            this.entityIds[other] = swap;
+        }
+    }
+
+    /**
+     * Adds and then looks up the entity IDs in a boxed {@link HashSet}.
+     *
+     * @param blackhole The {@link Blackhole} to consume the results.
+     */
+    @Benchmark
+    public void boxedSet(Blackhole blackhole) {
+        Set<Long> set = new HashSet<>();
+        for (long entityId : this.entityIds) {
+            set.add(entityId);
+        }
+        int found = 0;
+        for (long entityId : this.entityIds) {
+            found += set.contains(entityId) ? 1 : 0;
+        }
+        blackhole.consume(found);
+        blackhole.consume(set);
+    }
+
+    /**
+     * Adds and then looks up the entity IDs in a {@link LongHashSet}.
+     *
+     * @param blackhole The {@link Blackhole} to consume the results.
+     */
+    @Benchmark
+    public void primitiveSet(Blackhole blackhole) {
+        LongHashSet set = new LongHashSet();
+        for (long entityId : this.entityIds) {
+            set.add(entityId);
+        }
+        int found = 0;
+        for (long entityId : this.entityIds) {
+            found += set.contains(entityId) ? 1 : 0;
+        }
+        blackhole.consume(found);
+        blackhole.consume(set);
+    }
+
+    /**
+     * Counts each entity ID twice and then looks up the counts in a boxed
+     * {@link HashMap}.
+     *
+     * @param blackhole The {@link Blackhole} to consume the results.
+     */
+    @Benchmark
+    public void boxedCounter(Blackhole blackhole) {
+        Map<Long, Integer> map = new HashMap<>();
+        for (int pass = 0; pass < 2; pass++) {
+            for (long entityId : this.entityIds) {
+                map.merge(entityId, 1, Integer::sum);
+            }
+        }
+        long total = 0L;
+        for (long entityId : this.entityIds) {
+            total += map.getOrDefault(entityId, 0);
+        }
+        blackhole.consume(total);
+        blackhole.consume(map);
+    }
+
+    /**
+     * Counts each entity ID twice and then looks up the counts in a {@link
+     * LongIntHashMap}.
+     *
+     * @param blackhole The {@link Blackhole} to consume the results.
+     */
+    @Benchmark
+    public void primitiveCounter(Blackhole blackhole) {
+        LongIntHashMap map = new LongIntHashMap();
+        for (int pass = 0; pass < 2; pass++) {
+            for (long entityId : this.entityIds) {
+                map.increment(entityId);
+            }
+        }
+        long total = 0L;
+        for (long entityId : this.entityIds) {
+            total += map.getOrDefault(entityId, 0);
+        }
+        blackhole.consume(total);
+        blackhole.consume(map);
+    }
+}
@@ -0,0 +1,99 @@
+package com.senzing.benchmarks;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import javax.json.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.senzing.runner.RecordKeyExtractor;
+
+import static com.senzing.runner.Utilities.UTF_8;
+
+/**
+ * Compares extracting the record key from each line of a JSON-lines data
+ * file via a full {@link JsonObject} parse versus via the
+ * {@link RecordKeyExtractor}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecordKeyBenchmark {
+    private static final String DATA_SOURCE = "DATA_SOURCE";
+    private static final String RECORD_ID = "RECORD_ID";
+
+    /**
+     * The class-path resource for the data file to read the lines from.
+     */
+    @Param({ "/data/load-500.jsonl",
+             "/data/load-500-with-errors.jsonl",
+             "/data/load-10K.jsonl",
+             "/data/truthset/customers.jsonl" })
+    public String resource;
+
+    private List<String> lines;
+
+    /**
+     * Reads the trimmed, non-blank, non-comment lines of the data file.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    @Setup
+    public void setup() throws IOException {
+        this.lines = new ArrayList<>();
+        try (InputStream is = RecordKeyBenchmark.class.getResourceAsStream(this.resource)) {
+            if (is == null) {
+                throw new IllegalArgumentException("Missing resource: " + this.resource);
+            }
+            BufferedReader br = new BufferedReader(new InputStreamReader(is, UTF_8));
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                this.lines.add(line);
+            }
+        }
+    }
+
+    /**
+     * Extracts the keys by fully parsing each line as a {@link JsonObject}.
+     *
+     * @param blackhole The {@link Blackhole} to consume the results.
+     */
+    @Benchmark
+    public void fullParse(Blackhole blackhole) {
+        for (String line : this.lines) {
+            try {
+                JsonObject recordJson = Json.createReader(new StringReader(line)).readObject();
+                blackhole.consume(recordJson.getString(DATA_SOURCE, null));
+                blackhole.consume(recordJson.getString(RECORD_ID, null));
+
+            } catch (JsonException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    /**
+     * Extracts the keys using the {@link RecordKeyExtractor}.
+     *
+     * @param blackhole The {@link Blackhole} to consume the results.
+     */
+    @Benchmark
+    public void extractor(Blackhole blackhole) {
+        for (String line : this.lines) {
+            try {
+                blackhole.consume(RecordKeyExtractor.extractRecordKey(line));
+
+            } catch (JsonException e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+}
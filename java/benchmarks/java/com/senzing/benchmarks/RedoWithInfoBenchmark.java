@@ -0,0 +1,246 @@
+package com.senzing.benchmarks;
+
+import java.io.StringReader;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.json.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.senzing.runner.EntityRefreshCoalescer;
+import com.senzing.runner.InfoProcessingStage;
+import com.senzing.runner.LongHashSet;
+import com.senzing.sdk.SzEngine;
+
+import static com.senzing.sdk.SzFlag.*;
+
+/**
+ * Compares processing redo records with their INFO one at a time on a
+ * single thread, as in <code>RedoWithInfoContinuous</code>, versus on a
+ * pool of redo threads feeding an {@link InfoProcessingStage}, as in
+ * <code>RedoWithInfoContinuousViaFutures</code>.  Both parse the INFO and
+ * retrieve the affected entities through an {@link EntityRefreshCoalescer}
+ * into a {@link LongHashSet}.
+ *
+ * <p>
+ * Since processing a redo record consumes it from the repository, the
+ * engine is simulated: <code>processRedoRecord()</code> and
+ * <code>getEntity()</code> burn a configurable amount of CPU and the former
+ * returns a canned INFO message affecting a few entities.  This measures how
+ * the two pipelines overlap the engine calls and the INFO handling rather
+ * than the engine itself; to compare them against a live repository run
+ * both snippets on the same redo backlog and compare their rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class RedoWithInfoBenchmark {
+    private static final String AFFECTED_ENTITIES = "AFFECTED_ENTITIES";
+    private static final String ENTITY_ID = "ENTITY_ID";
+
+    /**
+     * The number of redo records processed per benchmark invocation.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * The number of entities affected by each redo record.
+     */
+    private static final int AFFECTED_COUNT = 3;
+
+    /**
+     * The number of distinct entity IDs that the affected entities are
+     * drawn from, so that some are shared within a coalescing window.
+     */
+    private static final int ENTITY_COUNT = 2000;
+
+    private static final int COALESCE_SIZE = 1000;
+    private static final long COALESCE_WINDOW = 1000L;
+    private static final int BACKLOG_FACTOR = 10;
+
+    /**
+     * The number of redo threads for the concurrent pipeline, which gets half
+     * as many INFO threads.
+     */
+    @Param({ "2", "4", "8" })
+    public int threadCount;
+
+    /**
+     * The CPU work (in {@link Blackhole#consumeCPU(long)} tokens) simulating
+     * each <code>processRedoRecord()</code> call.
+     */
+    @Param({ "20000" })
+    public long processTokens;
+
+    /**
+     * The CPU work (in {@link Blackhole#consumeCPU(long)} tokens) simulating
+     * each <code>getEntity()</code> call.
+     */
+    @Param({ "5000" })
+    public long entityTokens;
+
+    private String[] redoRecords;
+    private String[] infos;
+    private SzEngine engine;
+    private ExecutorService executor;
+    private InfoProcessingStage infoStage;
+    private volatile EntityRefreshCoalescer infoCoalescer;
+
+    /**
+     * Creates the redo records, their INFO messages, the simulated engine,
+     * the redo thread pool and the {@link InfoProcessingStage}.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(BATCH_SIZE);
+        this.redoRecords = new String[BATCH_SIZE];
+        this.infos = new String[BATCH_SIZE];
+        for (int index = 0; index < BATCH_SIZE; index++) {
+            this.redoRecords[index] = String.valueOf(index);
+            JsonArrayBuilder affected = Json.createArrayBuilder();
+            for (int count = 0; count < AFFECTED_COUNT; count++) {
+                affected.add(Json.createObjectBuilder()
+                        .add(ENTITY_ID, 1L + random.nextInt(ENTITY_COUNT)));
+            }
+            this.infos[index] = Json.createObjectBuilder()
+                    .add("DATA_SOURCE", "TEST")
+                    .add("RECORD_ID", String.valueOf(index))
+                    .add(AFFECTED_ENTITIES, affected)
+                    .build().toString();
+        }
+
+        this.engine = (SzEngine) Proxy.newProxyInstance(
+                SzEngine.class.getClassLoader(),
+                new Class<?>[] { SzEngine.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "processRedoRecord":
+                            Blackhole.consumeCPU(this.processTokens);
+                            return this.infos[Integer.parseInt((String) args[0])];
+                        case "getEntity":
+                            Blackhole.consumeCPU(this.entityTokens);
+                            return "{}";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+        this.executor = Executors.newFixedThreadPool(this.threadCount);
+        this.infoStage = new InfoProcessingStage("info",
+                Math.max(1, this.threadCount / 2),
+                this.threadCount * BACKLOG_FACTOR,
+                info -> processInfo(info, this.infoCoalescer));
+    }
+
+    /**
+     * Shuts down the redo thread pool and the {@link InfoProcessingStage}.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        this.executor.shutdownNow();
+        this.infoStage.close();
+    }
+
+    /**
+     * Processes each redo record and then its INFO on the calling thread.
+     *
+     * @return The number of entities tracked.
+     *
+     * @throws Exception If a failure occurs.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int sequential() throws Exception {
+        LongHashSet entityIdSet = new LongHashSet();
+        EntityRefreshCoalescer coalescer = this.newCoalescer(entityIdSet);
+        for (String redo : this.redoRecords) {
+            String info = this.engine.processRedoRecord(redo, SZ_WITH_INFO_FLAGS);
+            processInfo(info, coalescer);
+        }
+        coalescer.flush();
+        return entityIdSet.size();
+    }
+
+    /**
+     * Processes the redo records on the redo thread pool and hands their
+     * INFO to an {@link InfoProcessingStage}, bounding the pending futures
+     * the same way the snippet does, and waits for the INFO to be processed.
+     *
+     * @return The number of entities tracked.
+     *
+     * @throws Exception If a failure occurs.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public int concurrent() throws Exception {
+        LongHashSet entityIdSet = new LongHashSet();
+        EntityRefreshCoalescer coalescer = this.newCoalescer(entityIdSet);
+        this.infoCoalescer = coalescer;
+        int maximumBacklog = this.threadCount * BACKLOG_FACTOR;
+        long processed = this.infoStage.getProcessedCount() + BATCH_SIZE;
+
+        Deque<Future<String>> pending = new ArrayDeque<>();
+        for (String redo : this.redoRecords) {
+            pending.addLast(this.executor.submit(
+                    () -> this.engine.processRedoRecord(redo, SZ_WITH_INFO_FLAGS)));
+            while (pending.size() >= maximumBacklog) {
+                this.infoStage.submit(pending.removeFirst().get());
+            }
+        }
+        while (!pending.isEmpty()) {
+            this.infoStage.submit(pending.removeFirst().get());
+        }
+        while (this.infoStage.getProcessedCount() < processed) {
+            Thread.yield();
+        }
+        coalescer.flush();
+        synchronized (entityIdSet) {
+            return entityIdSet.size();
+        }
+    }
+
+    /**
+     * Creates an {@link EntityRefreshCoalescer} that retrieves each entity
+     * from the simulated engine and adds it to the specified set.
+     *
+     * @param entityIdSet The {@link LongHashSet} of entity IDs to add to.
+     *
+     * @return The new {@link EntityRefreshCoalescer}.
+     */
+    private EntityRefreshCoalescer newCoalescer(LongHashSet entityIdSet) {
+        return new EntityRefreshCoalescer(COALESCE_SIZE, COALESCE_WINDOW, entityId -> {
+            try {
+                this.engine.getEntity(entityId, null);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            synchronized (entityIdSet) {
+                entityIdSet.add(entityId);
+            }
+        });
+    }
+
+    /**
+     * Parses the specified INFO message and adds its affected entities to the
+     * specified {@link EntityRefreshCoalescer}.
+     *
+     * @param info      The INFO message.
+     * @param coalescer The {@link EntityRefreshCoalescer} to add to.
+     */
+    private static void processInfo(String info, EntityRefreshCoalescer coalescer) {
+        JsonObject jsonObject = Json.createReader(new StringReader(info)).readObject();
+        if (!jsonObject.containsKey(AFFECTED_ENTITIES)) {
+            return;
+        }
+        JsonArray affectedArr = jsonObject.getJsonArray(AFFECTED_ENTITIES);
+        for (JsonObject affected : affectedArr.getValuesAs(JsonObject.class)) {
+            coalescer.add(affected.getJsonNumber(ENTITY_ID).longValue());
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.senzing.runner;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.senzing.sdk.SzRetryableException;
+
+/**
+ * Limits the number of concurrent calls to the Senzing engine, adapting
+ * the limit using an additive-increase/multiplicative-decrease (AIMD)
+ * strategy.  Call outcomes are evaluated in windows of completed calls:
+ * if the rate of {@link SzRetryableException} failures and the average
+ * call latency stay healthy while the limit is saturated then the limit
+ * is increased by one, otherwise if either degrades then the limit is
+ * multiplied by a backoff ratio.
+ *
+ * <p>
+ * The latency is judged against a baseline that tracks the lowest
+ * windowed average latency, drifting upward slowly so that a lasting
+ * change in the workload eventually becomes the new normal.
+ */
+public class AdaptiveConcurrencyLimit {
+    /**
+     * The default ratio by which the limit is multiplied when backing off.
+     */
+    public static final double DEFAULT_BACKOFF_RATIO = 0.75;
+
+    /**
+     * The default maximum healthy rate of retryable failures.
+     */
+    public static final double DEFAULT_RETRY_RATE_THRESHOLD = 0.01;
+
+    /**
+     * The default maximum healthy ratio of the average latency to the
+     * baseline latency.
+     */
+    public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+    /**
+     * The minimum number of completed calls in an evaluation window.
+     */
+    private static final int MINIMUM_WINDOW_SIZE = 10;
+
+    /**
+     * The ratio by which the baseline latency may drift upward per window.
+     */
+    private static final double BASELINE_DRIFT = 1.05;
+
+    private final int minimumLimit;
+    private final int maximumLimit;
+    private final double backoffRatio;
+    private final double retryRateThreshold;
+    private final double latencyTolerance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = this.lock.newCondition();
+
+    private int limit;
+    private int inFlight = 0;
+    private double baselineLatency = 0.0;
+    private int increaseCount = 0;
+    private int decreaseCount = 0;
+
+    private int windowCount = 0;
+    private int windowRetryCount = 0;
+    private long windowLatency = 0L;
+    private int windowPeakInFlight = 0;
+
+    /**
+     * Constructs with the initial, minimum and maximum limits using the
+     * default backoff ratio, retry rate threshold and latency tolerance.
+     *
+     * @param initialLimit The initial concurrency limit.
+     * @param minimumLimit The minimum concurrency limit.
+     * @param maximumLimit The maximum concurrency limit.
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minimumLimit, int maximumLimit) {
+        this(initialLimit, minimumLimit, maximumLimit,
+                DEFAULT_BACKOFF_RATIO, DEFAULT_RETRY_RATE_THRESHOLD, DEFAULT_LATENCY_TOLERANCE);
+    }
+
+    /**
+     * Constructs with the specified parameters.
+     *
+     * @param initialLimit       The initial concurrency limit.
+     * @param minimumLimit       The minimum concurrency limit.
+     * @param maximumLimit       The maximum concurrency limit.
+     * @param backoffRatio       The ratio (between zero and one) by which
+     *                           the limit is multiplied when backing off.
+     * @param retryRateThreshold The maximum healthy rate of retryable
+     *                           failures.
+     * @param latencyTolerance   The maximum healthy ratio of the average
+     *                           latency to the baseline latency.
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit,
+            int minimumLimit,
+            int maximumLimit,
+            double backoffRatio,
+            double retryRateThreshold,
+            double latencyTolerance) {
+        if (minimumLimit < 1 || maximumLimit < minimumLimit
+                || initialLimit < minimumLimit || initialLimit > maximumLimit) {
+            throw new IllegalArgumentException(
+                    "Invalid limits (initial / minimum / maximum): " + initialLimit
+                            + " / " + minimumLimit + " / " + maximumLimit);
+        }
+        if (backoffRatio <= 0.0 || backoffRatio >= 1.0) {
+            throw new IllegalArgumentException(
+                    "The backoff ratio must be between zero and one: " + backoffRatio);
+        }
+        this.limit = initialLimit;
+        this.minimumLimit = minimumLimit;
+        this.maximumLimit = maximumLimit;
+        this.backoffRatio = backoffRatio;
+        this.retryRateThreshold = retryRateThreshold;
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Executes the specified task once the number of in-flight calls is
+     * below the current limit, recording its latency and whether it failed
+     * with an {@link SzRetryableException}.
+     *
+     * @param task The {@link Callable} to execute.
+     *
+     * @return The result from the task.
+     *
+     * @param <T> The type of the result from the task.
+     *
+     * @throws Exception If the task fails or the calling thread is interrupted
+     *                   while waiting.
+     */
+    public <T> T call(Callable<T> task) throws Exception {
+        this.acquire();
+        long start = System.nanoTime();
+        boolean retryable = false;
+        try {
+            return task.call();
+
+        } catch (SzRetryableException e) {
+            retryable = true;
+            throw e;
+
+        } finally {
+            this.release(System.nanoTime() - start, retryable);
+        }
+    }
+
+    /**
+     * Waits until the number of in-flight calls is below the current limit
+     * and then counts the caller as in flight.  Each call to this method
+     * must be followed by a call to {@link #release(long, boolean)}.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void acquire() throws InterruptedException {
+        this.lock.lock();
+        try {
+            while (this.inFlight >= this.limit) {
+                this.available.await();
+            }
+            this.inFlight++;
+            if (this.inFlight > this.windowPeakInFlight) {
+                this.windowPeakInFlight = this.inFlight;
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Records the outcome of an in-flight call and adjusts the limit at the
+     * end of each evaluation window.
+     *
+     * @param latencyNanos The latency of the call in nanoseconds.
+     * @param retryable    <code>true</code> if the call failed with a
+     *                     retryable failure, otherwise <code>false</code>.
+     */
+    public void release(long latencyNanos, boolean retryable) {
+        this.lock.lock();
+        try {
+            this.inFlight--;
+            this.windowCount++;
+            this.windowLatency += latencyNanos;
+            if (retryable) {
+                this.windowRetryCount++;
+            }
+            if (this.windowCount >= Math.max(this.limit, MINIMUM_WINDOW_SIZE)) {
+                this.adjustLimit();
+            }
+            this.available.signalAll();
+
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Adjusts the limit based on the current window and starts a new one.
+     * This must be called while holding the lock.
+     */
+    private void adjustLimit() {
+        double averageLatency = ((double) this.windowLatency) / this.windowCount;
+        double retryRate = ((double) this.windowRetryCount) / this.windowCount;
+
+        if (this.baselineLatency == 0.0) {
+            this.baselineLatency = averageLatency;
+        }
+
+        boolean healthy = (retryRate <= this.retryRateThreshold)
+                && (averageLatency <= this.baselineLatency * this.latencyTolerance);
+
+        if (!healthy) {
+            int backoffLimit = (int) (this.limit * this.backoffRatio);
+            this.limit = Math.max(this.minimumLimit, backoffLimit);
+            this.decreaseCount++;
+
+        } else if (this.windowPeakInFlight >= this.limit && this.limit < this.maximumLimit) {
+            // only grow the limit if it was actually reached
+            this.limit++;
+            this.increaseCount++;
+        }
+
+        // track the lowest latency, but let it drift upward slowly
+        this.baselineLatency = Math.min(averageLatency, this.baselineLatency * BASELINE_DRIFT);
+
+        this.windowCount = 0;
+        this.windowRetryCount = 0;
+        this.windowLatency = 0L;
+        this.windowPeakInFlight = this.inFlight;
+    }
+
+    /**
+     * Gets the current concurrency limit.
+     *
+     * @return The current concurrency limit.
+     */
+    public int getLimit() {
+        this.lock.lock();
+        try {
+            return this.limit;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of calls currently in flight.
+     *
+     * @return The number of calls currently in flight.
+     */
+    public int getInFlight() {
+        this.lock.lock();
+        try {
+            return this.inFlight;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of times the limit has been increased.
+     *
+     * @return The number of times the limit has been increased.
+     */
+    public int getIncreaseCount() {
+        this.lock.lock();
+        try {
+            return this.increaseCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of times the limit has been decreased.
+     *
+     * @return The number of times the limit has been decreased.
+     */
+    public int getDecreaseCount() {
+        this.lock.lock();
+        try {
+            return this.decreaseCount;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a diagnostic {@link String} describing the current state.
+     *
+     * @return A diagnostic {@link String} describing the current state.
+     */
+    @Override
+    public String toString() {
+        this.lock.lock();
+        try {
+            return "limit=[ " + this.limit + " ], inFlight=[ " + this.inFlight
+                    + " ], increases=[ " + this.increaseCount
+                    + " ], decreases=[ " + this.decreaseCount + " ]";
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.senzing.runner;
+
+import java.util.*;
+
+/**
+ * Schedules items (e.g.: records to add) so that no two items sharing a
+ * feature (e.g.: the same <code>SSN_NUMBER</code> or
+ * <code>PHONE_NUMBER</code> value) are in flight at the same time.  Items
+ * that share a feature with an in-flight item are held back until it is
+ * {@linkplain #release(Object) released}, while the items behind them that
+ * do not conflict are handed out in their place, so records that would
+ * resolve to the same entity are serialized instead of contending for it.
+ *
+ * <p>
+ * Items are handed out in the order they were added except that a waiting
+ * item is never overtaken by a later item sharing one of its features, so
+ * items sharing a feature are still processed in order.  The number of
+ * waiting items is bounded by the caller checking {@link #isFull()} before
+ * adding more.
+ *
+ * <p>
+ * This class is <b>not</b> thread-safe and is meant to be used from the
+ * single thread that submits the items and handles their completion.
+ *
+ * @param <T> The type of the items.
+ */
+public class ContentionScheduler<T> {
+    /**
+     * An item waiting to be handed out and its features.
+     */
+    private static class Waiting<T> {
+        private final T item;
+        private final Collection<String> features;
+        private boolean deferred = false;
+
+        private Waiting(T item, Collection<String> features) {
+            this.item = item;
+            this.features = features;
+        }
+    }
+
+    private final int maximumWaiting;
+    private final Deque<Waiting<T>> waiting = new ArrayDeque<>();
+    private final Map<T, Collection<String>> inFlight = new IdentityHashMap<>();
+    private final Map<String, Integer> claimedFeatures = new HashMap<>();
+
+    private long scheduledCount = 0L;
+    private long deferredCount = 0L;
+    private int peakWaiting = 0;
+
+    /**
+     * Constructs with the maximum number of items that may be waiting to be
+     * handed out.
+     *
+     * @param maximumWaiting The maximum number of waiting items.
+     */
+    public ContentionScheduler(int maximumWaiting) {
+        if (maximumWaiting < 1) {
+            throw new IllegalArgumentException(
+                    "The maximum waiting must be positive: " + maximumWaiting);
+        }
+        this.maximumWaiting = maximumWaiting;
+    }
+
+    /**
+     * Adds an item with the specified features to be handed out once none of
+     * its features are in flight.
+     *
+     * @param item     The item to add.
+     * @param features The {@link Collection} of features for the item, which
+     *                 may be empty if the item never conflicts.
+     *
+     * @throws IllegalStateException If the scheduler is {@linkplain #isFull()
+     *                               full}.
+     */
+    public void add(T item, Collection<String> features) {
+        if (this.isFull()) {
+            throw new IllegalStateException("The scheduler is full");
+        }
+        this.waiting.addLast(new Waiting<>(item, features));
+        this.peakWaiting = Math.max(this.peakWaiting, this.waiting.size());
+    }
+
+    /**
+     * Gets the next item that can be handed out without sharing a feature
+     * with an in-flight item, or with an earlier waiting item, and marks its
+     * features as in flight until it is {@linkplain #release(Object)
+     * released}.
+     *
+     * @return The next item, or <code>null</code> if no waiting item can be
+     *         handed out yet.
+     */
+    public T poll() {
+        Set<String> blocked = null;
+        Iterator<Waiting<T>> iter = this.waiting.iterator();
+        while (iter.hasNext()) {
+            Waiting<T> next = iter.next();
+            if (!this.conflicts(next.features, blocked)) {
+                iter.remove();
+                for (String feature : next.features) {
+                    this.claimedFeatures.merge(feature, 1, Integer::sum);
+                }
+                this.inFlight.put(next.item, next.features);
+                this.scheduledCount++;
+                return next.item;
+            }
+
+            // hold back any later items sharing a feature with this one
+            if (!next.deferred) {
+                next.deferred = true;
+                this.deferredCount++;
+            }
+            if (blocked == null) {
+                blocked = new HashSet<>();
+            }
+            blocked.addAll(next.features);
+        }
+        return null;
+    }
+
+    /**
+     * Releases the features of the specified in-flight item once it has
+     * completed so the items waiting on them can be handed out.
+     *
+     * @param item The item that was returned from {@link #poll()}.
+     *
+     * @return <code>true</code> if the item was in flight, otherwise
+     *         <code>false</code>.
+     */
+    public boolean release(T item) {
+        Collection<String> features = this.inFlight.remove(item);
+        if (features == null) {
+            return false;
+        }
+        for (String feature : features) {
+            this.claimedFeatures.computeIfPresent(feature, (k, v) -> (v == 1) ? null : v - 1);
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the maximum number of items are waiting.
+     *
+     * @return <code>true</code> if no more items may be added, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isFull() {
+        return this.waiting.size() >= this.maximumWaiting;
+    }
+
+    /**
+     * Gets the number of items waiting to be handed out.
+     *
+     * @return The number of waiting items.
+     */
+    public int getWaitingCount() {
+        return this.waiting.size();
+    }
+
+    /**
+     * Gets the number of items handed out so far.
+     *
+     * @return The number of items handed out.
+     */
+    public long getScheduledCount() {
+        return this.scheduledCount;
+    }
+
+    /**
+     * Gets the number of items that were held back at least once because
+     * they shared a feature with an in-flight or earlier waiting item.
+     *
+     * @return The number of deferred items.
+     */
+    public long getDeferredCount() {
+        return this.deferredCount;
+    }
+
+    /**
+     * Gets the largest number of items that were waiting at once.
+     *
+     * @return The peak number of waiting items.
+     */
+    public int getPeakWaiting() {
+        return this.peakWaiting;
+    }
+
+    /**
+     * Checks if any of the specified features are in flight or blocked.
+     *
+     * @param features The features to check.
+     * @param blocked  The {@link Set} of blocked features, or
+     *                 <code>null</code> if none.
+     *
+     * @return <code>true</code> if there is a conflict, otherwise
+     *         <code>false</code>.
+     */
+    private boolean conflicts(Collection<String> features, Set<String> blocked) {
+        for (String feature : features) {
+            if (this.claimedFeatures.containsKey(feature)
+                    || (blocked != null && blocked.contains(feature))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,297 @@
+package com.senzing.runner;
+
+import java.io.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.LongSupplier;
+import javax.json.*;
+import com.senzing.sdk.SzEngine;
+import com.senzing.sdk.SzException;
+
+/**
+ * Samples the engine workload statistics from {@link SzEngine#getStats()}
+ * on a wall-clock schedule from a background daemon thread and writes them
+ * as a time series to a JSON Lines file, so the statistics can be kept and
+ * correlated with the throughput without calling the engine from the
+ * processing loop.
+ *
+ * <p>
+ * Each sample is parsed and flattened into numeric counters named by their
+ * path in the JSON (e.g.: <code>workload.addedRecords</code>, with array
+ * elements indexed as in <code>name[0]</code>), and each line of the file
+ * holds the change in each counter over the interval along with the number
+ * of records processed in the interval and the resulting rate.  Counters
+ * that did not change are left out to keep the lines compact.
+ *
+ * <p>
+ * Since the engine resets its workload statistics each time they are
+ * retrieved, the sampled values are normally already the changes over the
+ * interval.  If the statistics are instead cumulative then the difference
+ * from the previous sample is taken.
+ */
+public class EngineStatsSampler implements Closeable {
+    /**
+     * The default number of milliseconds between samples.
+     */
+    public static final long DEFAULT_INTERVAL = 5000L;
+
+    /**
+     * The number of nanoseconds per millisecond.
+     */
+    private static final long ONE_MILLION = 1000000L;
+
+    private final SzEngine engine;
+    private final File outputFile;
+    private final long interval;
+    private final boolean resetOnRead;
+    private final LongSupplier recordCount;
+
+    private ScheduledExecutorService scheduler = null;
+    private PrintWriter writer = null;
+    private long startTime;
+    private boolean closed = false;
+
+    // these are only accessed while holding the lock on this instance
+    private Map<String, Double> lastCounters = Collections.emptyMap();
+    private long lastTime;
+    private long lastRecords;
+    private int sampleCount = 0;
+    private int failureCount = 0;
+
+    /**
+     * Constructs with the {@link SzEngine} to sample, the file to write the
+     * time series to, the interval between samples, whether the engine
+     * resets its statistics when they are retrieved and the supplier of the
+     * number of records processed so far.
+     *
+     * @param engine      The {@link SzEngine} to sample.
+     * @param outputFile  The {@link File} to write the time series to.
+     * @param interval    The number of milliseconds between samples.
+     * @param resetOnRead <code>true</code> if the engine resets its
+     *                    statistics each time they are retrieved, or
+     *                    <code>false</code> if they are cumulative.
+     * @param recordCount The {@link LongSupplier} of the number of records
+     *                    processed so far.
+     */
+    public EngineStatsSampler(SzEngine engine,
+            File outputFile,
+            long interval,
+            boolean resetOnRead,
+            LongSupplier recordCount) {
+        if (interval <= 0L) {
+            throw new IllegalArgumentException("The interval must be positive: " + interval);
+        }
+        this.engine = engine;
+        this.outputFile = outputFile;
+        this.interval = interval;
+        this.resetOnRead = resetOnRead;
+        this.recordCount = recordCount;
+    }
+
+    /**
+     * Gets the file the time series is written to.
+     *
+     * @return The {@link File} the time series is written to.
+     */
+    public File getOutputFile() {
+        return this.outputFile;
+    }
+
+    /**
+     * Starts sampling, first retrieving the statistics once as the baseline
+     * for the first interval.
+     *
+     * @throws IOException If the output file cannot be opened.
+     */
+    public synchronized void start() throws IOException {
+        if (this.scheduler != null) {
+            throw new IllegalStateException("Already started");
+        }
+        this.writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(this.outputFile), "UTF-8")));
+        this.startTime = System.nanoTime();
+        this.lastTime = this.startTime;
+        this.lastRecords = this.recordCount.getAsLong();
+        try {
+            this.lastCounters = flatten(this.engine.getStats());
+        } catch (SzException | JsonException e) {
+            this.failureCount++;
+            System.err.println("**** FAILED TO OBTAIN STATS: " + e);
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stats-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(
+                this::sample, this.interval, this.interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the number of samples written so far.
+     *
+     * @return The number of samples written.
+     */
+    public synchronized int getSampleCount() {
+        return this.sampleCount;
+    }
+
+    /**
+     * Gets the number of times the statistics could not be retrieved or
+     * parsed.
+     *
+     * @return The number of failed samples.
+     */
+    public synchronized int getFailureCount() {
+        return this.failureCount;
+    }
+
+    /**
+     * Stops sampling, writes a final sample for the partial interval and
+     * closes the output file.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            if (this.scheduler == null) {
+                return;
+            }
+            executor = this.scheduler;
+            this.scheduler = null;
+        }
+
+        // wait without holding the lock so a sample in progress can finish
+        executor.shutdown();
+        try {
+            executor.awaitTermination(this.interval, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignore) {
+            // ignore the interruption
+        }
+        this.sample();
+        synchronized (this) {
+            this.closed = true;
+            this.writer.close();
+        }
+    }
+
+    /**
+     * Retrieves the statistics and writes the change in the counters and
+     * the number of records since the previous sample.
+     */
+    private synchronized void sample() {
+        if (this.closed) {
+            return;
+        }
+        long now = System.nanoTime();
+        long records = this.recordCount.getAsLong();
+
+        Map<String, Double> counters;
+        try {
+            counters = flatten(this.engine.getStats());
+        } catch (SzException | JsonException e) {
+            // skip this sample, so the next one covers both intervals
+            this.failureCount++;
+            System.err.println("**** FAILED TO OBTAIN STATS: " + e);
+            return;
+        }
+
+        JsonObjectBuilder deltas = Json.createObjectBuilder();
+        for (Map.Entry<String, Double> entry : counters.entrySet()) {
+            double delta = entry.getValue();
+            if (!this.resetOnRead) {
+                delta -= this.lastCounters.getOrDefault(entry.getKey(), 0.0);
+            }
+            if (delta != 0.0) {
+                addNumber(deltas, entry.getKey(), delta);
+            }
+        }
+
+        long intervalMillis = (now - this.lastTime) / ONE_MILLION;
+        long intervalRecords = records - this.lastRecords;
+        double rate = (intervalMillis <= 0L) ? 0.0 : (intervalRecords * 1000.0) / intervalMillis;
+
+        JsonObjectBuilder job = Json.createObjectBuilder();
+        job.add("timestamp", Instant.now().toString());
+        job.add("elapsedMillis", (now - this.startTime) / ONE_MILLION);
+        job.add("intervalMillis", intervalMillis);
+        job.add("records", intervalRecords);
+        job.add("recordsPerSecond", Math.round(rate * 10.0) / 10.0);
+        job.add("counters", deltas);
+
+        this.writer.println(job.build().toString());
+        this.writer.flush();
+        this.sampleCount++;
+
+        this.lastCounters = counters;
+        this.lastTime = now;
+        this.lastRecords = records;
+    }
+
+    /**
+     * Parses the specified statistics JSON and flattens its numeric values
+     * into a {@link Map} of counter names to values.
+     *
+     * @param stats The statistics JSON text.
+     *
+     * @return The {@link Map} of counter names to values.
+     *
+     * @throws JsonException If the JSON cannot be parsed.
+     */
+    private static Map<String, Double> flatten(String stats) throws JsonException {
+        Map<String, Double> counters = new LinkedHashMap<>();
+        try (JsonReader reader = Json.createReader(new StringReader(stats))) {
+            flatten("", reader.readValue(), counters);
+        }
+        return counters;
+    }
+
+    /**
+     * Adds the numeric values in the specified {@link JsonValue} to the
+     * specified {@link Map} with their names prefixed by the specified path.
+     *
+     * @param path     The path of the value.
+     * @param value    The {@link JsonValue} to flatten.
+     * @param counters The {@link Map} of counter names to values.
+     */
+    private static void flatten(String path, JsonValue value, Map<String, Double> counters) {
+        switch (value.getValueType()) {
+            case NUMBER:
+                counters.put(path, ((JsonNumber) value).doubleValue());
+                break;
+            case OBJECT:
+                for (Map.Entry<String, JsonValue> entry : ((JsonObject) value).entrySet()) {
+                    String name = path.isEmpty() ? entry.getKey() : path + "." + entry.getKey();
+                    flatten(name, entry.getValue(), counters);
+                }
+                break;
+            case ARRAY:
+                JsonArray array = (JsonArray) value;
+                for (int index = 0; index < array.size(); index++) {
+                    flatten(path + "[" + index + "]", array.get(index), counters);
+                }
+                break;
+            default:
+                // ignore strings, booleans and nulls
+                break;
+        }
+    }
+
+    /**
+     * Adds the specified number to the specified {@link JsonObjectBuilder},
+     * as an integer if it has no fractional part.
+     *
+     * @param builder The {@link JsonObjectBuilder} to add to.
+     * @param name    The name of the property.
+     * @param value   The value to add.
+     */
+    private static void addNumber(JsonObjectBuilder builder, String name, double value) {
+        if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+            builder.add(name, (long) value);
+        } else {
+            builder.add(name, value);
+        }
+    }
+}
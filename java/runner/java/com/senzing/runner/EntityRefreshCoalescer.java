@@ -0,0 +1,194 @@
+package com.senzing.runner;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Gathers the IDs of the entities that need to be refreshed (e.g.: the
+ * <code>"AFFECTED_ENTITIES"</code> from INFO messages) over a window of
+ * time or number of distinct entities, and then refreshes each distinct
+ * entity once for the whole window.  Under load the same entities are
+ * affected many times a second, so refreshing once per window rather than
+ * once per INFO message saves most of the <code>getEntity()</code> calls
+ * while the refreshed state is never more than a window out of date.
+ *
+ * <p>
+ * The window is only checked when entity IDs are {@linkplain #add(long)
+ * added} or {@linkplain #flushIfDue() when asked}, so a caller that may go
+ * idle should {@linkplain #flush() flush} before waiting.  This class is
+ * thread-safe, and the refreshes for a window are made by the thread that
+ * closes it without holding the lock, so other threads can keep adding to
+ * the next window.
+ */
+public class EntityRefreshCoalescer {
+    /**
+     * The number of nanoseconds per millisecond.
+     */
+    private static final long ONE_MILLION = 1000000L;
+
+    private final int maximumSize;
+    private final long windowNanos;
+    private final LongConsumer refresher;
+
+    private LongHashSet pending = new LongHashSet();
+    private long windowStart = 0L;
+    private long requestedCount = 0L;
+    private long refreshedCount = 0L;
+    private long windowCount = 0L;
+
+    /**
+     * Constructs with the maximum number of distinct entities in a window,
+     * the maximum length of a window and the {@link LongConsumer} that
+     * refreshes an entity by its entity ID.
+     *
+     * @param maximumSize  The maximum number of distinct entities gathered
+     *                     before they are refreshed.
+     * @param windowMillis The maximum number of milliseconds from the first
+     *                     entity of a window until they are refreshed.
+     * @param refresher    The {@link LongConsumer} that refreshes an entity
+     *                     given its entity ID.
+     */
+    public EntityRefreshCoalescer(int maximumSize, long windowMillis, LongConsumer refresher) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("The maximum size must be positive: " + maximumSize);
+        }
+        if (windowMillis < 0L) {
+            throw new IllegalArgumentException(
+                    "The window cannot be negative: " + windowMillis);
+        }
+        this.maximumSize = maximumSize;
+        this.windowNanos = windowMillis * ONE_MILLION;
+        this.refresher = refresher;
+    }
+
+    /**
+     * Adds the specified entity ID to be refreshed in the current window,
+     * refreshing the window first if it is full or has expired.
+     *
+     * @param entityId The entity ID of the entity to refresh.
+     */
+    public void add(long entityId) {
+        LongHashSet due;
+        synchronized (this) {
+            if (this.pending.isEmpty()) {
+                this.windowStart = System.nanoTime();
+            }
+            this.pending.add(entityId);
+            this.requestedCount++;
+            due = this.takeIfDue();
+        }
+        this.refresh(due);
+    }
+
+    /**
+     * Refreshes the entities in the current window if it is full or has
+     * expired.
+     */
+    public void flushIfDue() {
+        LongHashSet due;
+        synchronized (this) {
+            due = this.takeIfDue();
+        }
+        this.refresh(due);
+    }
+
+    /**
+     * Refreshes the entities in the current window now, whether or not it
+     * is full or has expired.
+     */
+    public void flush() {
+        LongHashSet due;
+        synchronized (this) {
+            due = this.take();
+        }
+        this.refresh(due);
+    }
+
+    /**
+     * Gets the number of entity refreshes requested so far, including those
+     * for entities already requested in the same window.
+     *
+     * @return The number of entity refreshes requested.
+     */
+    public synchronized long getRequestedCount() {
+        return this.requestedCount;
+    }
+
+    /**
+     * Gets the number of entities actually refreshed so far.
+     *
+     * @return The number of entities refreshed.
+     */
+    public synchronized long getRefreshedCount() {
+        return this.refreshedCount;
+    }
+
+    /**
+     * Gets the number of windows refreshed so far.
+     *
+     * @return The number of windows refreshed.
+     */
+    public synchronized long getWindowCount() {
+        return this.windowCount;
+    }
+
+    /**
+     * Gets the fraction of the requested refreshes that were saved by
+     * coalescing, counting only the windows already refreshed.
+     *
+     * @return The fraction of the refreshes saved, from zero to one.
+     */
+    public synchronized double getSavedRatio() {
+        long flushedRequests = this.requestedCount - this.pending.size();
+        return (flushedRequests <= 0L)
+                ? 0.0 : ((double) (flushedRequests - this.refreshedCount)) / flushedRequests;
+    }
+
+    /**
+     * Takes the entities in the current window if it is full or has expired.
+     * This must be called while holding the lock on this instance.
+     *
+     * @return The {@link LongHashSet} of entity IDs to refresh, or
+     *         <code>null</code> if the window is not yet due.
+     */
+    private LongHashSet takeIfDue() {
+        if (this.pending.isEmpty()) {
+            return null;
+        }
+        if (this.pending.size() < this.maximumSize
+                && (System.nanoTime() - this.windowStart) < this.windowNanos) {
+            return null;
+        }
+        return this.take();
+    }
+
+    /**
+     * Takes the entities in the current window and starts a new one.  This
+     * must be called while holding the lock on this instance.
+     *
+     * @return The {@link LongHashSet} of entity IDs to refresh, or
+     *         <code>null</code> if there are none.
+     */
+    private LongHashSet take() {
+        if (this.pending.isEmpty()) {
+            return null;
+        }
+        LongHashSet due = this.pending;
+        this.pending = new LongHashSet();
+        this.refreshedCount += due.size();
+        this.windowCount++;
+        return due;
+    }
+
+    /**
+     * Refreshes each of the specified entities.
+     *
+     * @param due The {@link LongHashSet} of entity IDs to refresh, or
+     *            <code>null</code> if none.
+     */
+    private void refresh(LongHashSet due) {
+        if (due == null) {
+            return;
+        }
+        due.forEach(this.refresher);
+    }
+}
@@ -0,0 +1,323 @@
+package com.senzing.runner;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import javax.json.*;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static com.senzing.runner.Utilities.UTF_8_CHARSET;
+
+/**
+ * Tracks the progress through a line-oriented data file whose lines are
+ * processed concurrently and complete out of order, periodically persisting
+ * the position just past the highest <b>contiguous</b> completed line to a
+ * checkpoint file.  Every line at or before the checkpoint position has been
+ * handled, so after a crash the data file can be reopened at that byte
+ * offset (see {@link OffsetLineReader}) rather than reprocessed from the
+ * start.
+ *
+ * <p>
+ * Lines must be reported to {@link #submitted(long, long)} or {@link
+ * #skipped(long, long)} in ascending line order, and each submitted line
+ * must later be reported to {@link #completed(long)} once its outcome has
+ * been handled (including writing it to a retry file).
+ *
+ * <p>
+ * If no checkpoint file is specified then progress is still tracked but
+ * nothing is persisted.  Closing the checkpoint saves the final position
+ * unless {@link #finish()} was called.
+ */
+public class FileCheckpoint implements Closeable {
+    /**
+     * The default minimum number of milliseconds between saves.
+     */
+    public static final long DEFAULT_SAVE_INTERVAL = 5000L;
+
+    /**
+     * The JSON property for the absolute path of the data file.
+     */
+    private static final String DATA_FILE = "DATA_FILE";
+
+    /**
+     * The JSON property for the size of the data file.
+     */
+    private static final String DATA_FILE_SIZE = "DATA_FILE_SIZE";
+
+    /**
+     * The JSON property for the line number of the last contiguous line.
+     */
+    private static final String LINE_NUMBER = "LINE_NUMBER";
+
+    /**
+     * The JSON property for the byte offset just past that line.
+     */
+    private static final String OFFSET = "OFFSET";
+
+    /**
+     * The suffix for the temporary file written before replacing the
+     * checkpoint file.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Tracks a line that has been submitted but whose completion has not yet
+     * been folded into the checkpoint position.
+     */
+    private static class PendingLine {
+        private final long endOffset;
+        private boolean completed = false;
+
+        private PendingLine(long endOffset) {
+            this.endOffset = endOffset;
+        }
+    }
+
+    private final File dataFile;
+    private final File checkpointFile;
+    private final long saveInterval;
+    private final boolean resumed;
+
+    /**
+     * The pending lines keyed by line number in ascending order.
+     */
+    private final TreeMap<Long, PendingLine> pendingLines = new TreeMap<>();
+
+    private long lineNumber;
+    private long offset;
+    private long savedOffset;
+    private long lastSaveTime;
+    private boolean finished = false;
+
+    /**
+     * Constructs with the data file and checkpoint file using the {@linkplain
+     * #DEFAULT_SAVE_INTERVAL default save interval}.  If the checkpoint file
+     * already exists then it is loaded and the position is resumed from it.
+     *
+     * @param dataFile       The data {@link File} being processed.
+     * @param checkpointFile The checkpoint {@link File}, or <code>null</code>
+     *                       if progress should not be persisted.
+     *
+     * @throws IOException If an I/O failure occurs.
+     *
+     * @throws IllegalStateException If the checkpoint file does not match
+     *                               the data file.
+     */
+    public FileCheckpoint(File dataFile, File checkpointFile) throws IOException {
+        this(dataFile, checkpointFile, DEFAULT_SAVE_INTERVAL);
+    }
+
+    /**
+     * Constructs with the data file, checkpoint file and save interval.  If
+     * the checkpoint file already exists then it is loaded and the position
+     * is resumed from it.
+     *
+     * @param dataFile       The data {@link File} being processed.
+     * @param checkpointFile The checkpoint {@link File}, or <code>null</code>
+     *                       if progress should not be persisted.
+     * @param saveInterval   The minimum number of milliseconds between saves.
+     *
+     * @throws IOException If an I/O failure occurs.
+     *
+     * @throws IllegalStateException If the checkpoint file does not match
+     *                               the data file.
+     */
+    public FileCheckpoint(File dataFile, File checkpointFile, long saveInterval)
+            throws IOException {
+        this.dataFile = dataFile.getAbsoluteFile();
+        this.checkpointFile = checkpointFile;
+        this.saveInterval = saveInterval;
+        this.lastSaveTime = System.currentTimeMillis();
+
+        if (checkpointFile == null || !checkpointFile.exists()) {
+            this.resumed = false;
+            return;
+        }
+
+        // load the checkpoint and make sure it is for the same data file
+        String jsonText = Utilities.readTextFileAsString(checkpointFile, Utilities.UTF_8);
+        JsonObject jsonObject = Utilities.parseJsonObject(jsonText);
+        String path = jsonObject.getString(DATA_FILE);
+        long size = jsonObject.getJsonNumber(DATA_FILE_SIZE).longValue();
+        long checkpointOffset = jsonObject.getJsonNumber(OFFSET).longValue();
+        if (!this.dataFile.getPath().equals(path) || this.dataFile.length() != size
+                || checkpointOffset < 0L || checkpointOffset > size) {
+            throw new IllegalStateException(
+                    "The checkpoint file (" + checkpointFile + ") does not match the data file: "
+                            + this.dataFile);
+        }
+        this.lineNumber = jsonObject.getJsonNumber(LINE_NUMBER).longValue();
+        this.offset = checkpointOffset;
+        this.savedOffset = checkpointOffset;
+        this.resumed = true;
+    }
+
+    /**
+     * Checks if the position was resumed from an existing checkpoint file.
+     *
+     * @return <code>true</code> if resumed from an existing checkpoint file,
+     *         otherwise <code>false</code>.
+     */
+    public boolean isResumed() {
+        return this.resumed;
+    }
+
+    /**
+     * Gets the line number of the last line in the contiguous run of handled
+     * lines.
+     *
+     * @return The line number of the last contiguous handled line.
+     */
+    public synchronized long getLineNumber() {
+        return this.lineNumber;
+    }
+
+    /**
+     * Gets the byte offset just past the last line in the contiguous run of
+     * handled lines, which is where processing should resume.
+     *
+     * @return The byte offset at which to resume.
+     */
+    public synchronized long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Opens an {@link OffsetLineReader} over the data file positioned at the
+     * current checkpoint position.
+     *
+     * @return The {@link OffsetLineReader} for reading the remaining lines.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    public synchronized OffsetLineReader openReader() throws IOException {
+        return new OffsetLineReader(this.dataFile, this.offset, this.lineNumber);
+    }
+
+    /**
+     * Records that the specified line has been submitted for processing.
+     *
+     * @param lineNumber The line number of the submitted line.
+     * @param endOffset  The byte offset just past the submitted line.
+     */
+    public synchronized void submitted(long lineNumber, long endOffset) {
+        this.pendingLines.put(lineNumber, new PendingLine(endOffset));
+    }
+
+    /**
+     * Records that the specified line was read but did not need to be
+     * submitted for processing (e.g.: a blank line or invalid record).
+     *
+     * @param lineNumber The line number of the skipped line.
+     * @param endOffset  The byte offset just past the skipped line.
+     */
+    public synchronized void skipped(long lineNumber, long endOffset) {
+        this.submitted(lineNumber, endOffset);
+        this.completed(lineNumber);
+    }
+
+    /**
+     * Records that the outcome of the specified submitted line has been
+     * handled and advances the checkpoint position past any contiguous run
+     * of handled lines.
+     *
+     * @param lineNumber The line number of the handled line.
+     */
+    public synchronized void completed(long lineNumber) {
+        PendingLine pendingLine = this.pendingLines.get(lineNumber);
+        if (pendingLine == null) {
+            throw new IllegalArgumentException("The line was not submitted: " + lineNumber);
+        }
+        pendingLine.completed = true;
+
+        // fold the contiguous completed lines into the position
+        while (!this.pendingLines.isEmpty()
+                && this.pendingLines.firstEntry().getValue().completed) {
+            Map.Entry<Long, PendingLine> entry = this.pendingLines.pollFirstEntry();
+            this.lineNumber = entry.getKey();
+            this.offset = entry.getValue().endOffset;
+        }
+    }
+
+    /**
+     * Checks if the save interval has elapsed and the position has advanced
+     * since the last save.  Any outcomes written elsewhere for the handled
+     * lines (e.g.: a retry file) should be flushed before saving.
+     *
+     * @return <code>true</code> if a save is due, otherwise <code>false</code>.
+     */
+    public synchronized boolean isSaveDue() {
+        return (this.checkpointFile != null) && !this.finished
+                && (this.offset != this.savedOffset)
+                && (System.currentTimeMillis() - this.lastSaveTime >= this.saveInterval);
+    }
+
+    /**
+     * Saves the current position to the checkpoint file by writing and
+     * syncing a temporary file and then atomically replacing the checkpoint
+     * file with it, so a crash never leaves a partially written checkpoint.
+     * This does nothing if there is no checkpoint file or if {@link
+     * #finish()} has been called.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    public synchronized void save() throws IOException {
+        if (this.checkpointFile == null || this.finished) {
+            return;
+        }
+        JsonObject jsonObject = Json.createObjectBuilder()
+                .add(DATA_FILE, this.dataFile.getPath())
+                .add(DATA_FILE_SIZE, this.dataFile.length())
+                .add(LINE_NUMBER, this.lineNumber)
+                .add(OFFSET, this.offset)
+                .build();
+        byte[] bytes = Utilities.toJsonText(jsonObject, false).getBytes(UTF_8_CHARSET);
+
+        Path target = this.checkpointFile.toPath();
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, REPLACE_EXISTING);
+        }
+
+        this.savedOffset = this.offset;
+        this.lastSaveTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Marks the data file as fully processed and deletes the checkpoint file
+     * so that the next run starts from the beginning.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    public synchronized void finish() throws IOException {
+        this.finished = true;
+        if (this.checkpointFile != null) {
+            Files.deleteIfExists(this.checkpointFile.toPath());
+        }
+    }
+
+    /**
+     * Saves the current position unless {@link #finish()} has been called.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        this.save();
+    }
+}
@@ -0,0 +1,311 @@
+package com.senzing.runner;
+
+import java.io.PrintStream;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Processes the INFO messages returned by the engine (e.g.: from calls made
+ * with {@link com.senzing.sdk.SzFlag#SZ_WITH_INFO_FLAGS}) on its own pool of
+ * threads behind a bounded queue, so the handling of the messages (e.g.:
+ * calling <code>getEntity()</code> for each affected entity) is sized
+ * separately from the threads calling the engine and does not hold up the
+ * thread handing out the work.
+ *
+ * <p>
+ * Submitting to a full queue blocks until it has room, so a slow consumer
+ * applies backpressure rather than growing an unbounded backlog.  The queue
+ * depth, the time messages wait in the queue and the time submitters are
+ * blocked are all tracked so that a slow consumer shows up as a deep queue
+ * and blocked time, both {@linkplain #startReporting(long, PrintStream)
+ * periodically while running} and in the {@linkplain
+ * #printSummary(PrintStream) summary}.
+ */
+public class InfoProcessingStage implements AutoCloseable {
+    /**
+     * The number of nanoseconds per millisecond.
+     */
+    private static final double ONE_MILLION = 1000000.0;
+
+    /**
+     * The number of milliseconds the worker threads wait for a message
+     * before checking if the stage has been closed.
+     */
+    private static final long POLL_TIMEOUT = 100L;
+
+    /**
+     * A queued message and the time it was queued.
+     */
+    private record Message(String info, long queuedTime) {
+    }
+
+    private final String name;
+    private final int threadCount;
+    private final int queueCapacity;
+    private final BlockingQueue<Message> queue;
+    private final Consumer<String> processor;
+    private final ExecutorService executor;
+
+    private final LongAdder submittedCount = new LongAdder();
+    private final LongAdder processedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder depthTotal = new LongAdder();
+    private final AtomicInteger maximumDepth = new AtomicInteger(0);
+    private final long startTime = System.nanoTime();
+
+    private volatile boolean closed = false;
+    private ScheduledExecutorService reporter = null;
+    private long lastBlockedNanos = 0L;
+
+    /**
+     * Constructs with a name for the stage, the number of threads processing
+     * the messages, the maximum number of messages queued and the {@link
+     * Consumer} that processes each message.  The threads are started
+     * immediately.
+     *
+     * @param name          The name of the stage, used to name its threads.
+     * @param threadCount   The number of threads processing the messages.
+     * @param queueCapacity The maximum number of messages queued.
+     * @param processor     The {@link Consumer} that processes each message.
+     */
+    public InfoProcessingStage(String name,
+            int threadCount,
+            int queueCapacity,
+            Consumer<String> processor) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The thread count must be positive: " + threadCount);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException(
+                    "The queue capacity must be positive: " + queueCapacity);
+        }
+        this.name = name;
+        this.threadCount = threadCount;
+        this.queueCapacity = queueCapacity;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.processor = processor;
+
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        this.executor = Executors.newFixedThreadPool(threadCount,
+                runnable -> new Thread(runnable, name + "-" + threadIndex.getAndIncrement()));
+        for (int index = 0; index < threadCount; index++) {
+            this.executor.execute(this::processMessages);
+        }
+    }
+
+    /**
+     * Queues the specified INFO message to be processed, blocking while the
+     * queue is full.  Messages that are <code>null</code> or empty are
+     * ignored.
+     *
+     * @param info The INFO message to process.
+     *
+     * @throws InterruptedException If interrupted while waiting for the queue
+     *                              to have room.
+     *
+     * @throws IllegalStateException If this instance has been closed.
+     */
+    public void submit(String info) throws InterruptedException {
+        if (this.closed) {
+            throw new IllegalStateException("The " + this.name + " stage has been closed");
+        }
+        if (info == null || info.isEmpty()) {
+            return;
+        }
+        Message message = new Message(info, System.nanoTime());
+
+        // wait for room in the queue, tracking how long we are held up
+        if (!this.queue.offer(message)) {
+            long start = System.nanoTime();
+            this.queue.put(message);
+            this.blockedNanos.add(System.nanoTime() - start);
+        }
+
+        int depth = this.queue.size();
+        this.maximumDepth.accumulateAndGet(depth, Math::max);
+        this.depthTotal.add(depth);
+        this.submittedCount.increment();
+    }
+
+    /**
+     * Gets the number of messages currently queued.
+     *
+     * @return The number of messages currently queued.
+     */
+    public int getQueueDepth() {
+        return this.queue.size();
+    }
+
+    /**
+     * Gets the number of messages processed so far, including those that
+     * failed.
+     *
+     * @return The number of messages processed.
+     */
+    public long getProcessedCount() {
+        return this.processedCount.sum();
+    }
+
+    /**
+     * Gets the number of messages whose processing threw an exception.
+     *
+     * @return The number of failed messages.
+     */
+    public long getFailedCount() {
+        return this.failedCount.sum();
+    }
+
+    /**
+     * Gets the total number of milliseconds that submitters were blocked
+     * waiting for the full queue to have room.
+     *
+     * @return The total number of milliseconds blocked on the full queue.
+     */
+    public long getBlockedMillis() {
+        return (long) (this.blockedNanos.sum() / ONE_MILLION);
+    }
+
+    /**
+     * Starts printing the current queue depth, the time submitters were
+     * blocked on the full queue and the messages processed to the specified
+     * {@link PrintStream} every specified number of milliseconds from a
+     * background daemon thread, until this instance is closed.
+     *
+     * @param interval The number of milliseconds between reports.
+     * @param out      The {@link PrintStream} to report to.
+     */
+    public synchronized void startReporting(long interval, PrintStream out) {
+        if (interval <= 0L) {
+            throw new IllegalArgumentException("The interval must be positive: " + interval);
+        }
+        if (this.reporter != null) {
+            throw new IllegalStateException("Already reporting");
+        }
+        this.reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, this.name + "-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.reporter.scheduleAtFixedRate(
+                () -> this.report(out), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops accepting messages and waits for the queued messages to be
+     * processed.  If interrupted while waiting, this returns without waiting
+     * any further and the interrupt status of the thread is restored.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        synchronized (this) {
+            if (this.reporter != null) {
+                this.reporter.shutdownNow();
+                this.reporter = null;
+            }
+        }
+        this.executor.shutdown();
+        try {
+            while (!this.executor.awaitTermination(POLL_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                // keep waiting for the queue to drain
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Prints a summary of the stage: the messages processed and failed, the
+     * mean and peak queue depth, the mean time messages waited in the queue,
+     * the time submitters were blocked on the full queue and the utilization
+     * of the processing threads.
+     *
+     * @param out The {@link PrintStream} to print to.
+     */
+    public void printSummary(PrintStream out) {
+        double elapsed = Math.max(1L, System.nanoTime() - this.startTime);
+        long submitted = this.submittedCount.sum();
+        long processed = this.processedCount.sum();
+
+        out.println();
+        out.println("Info processing (" + this.threadCount + " threads, queue of "
+                + this.queueCapacity + "):");
+        out.printf("  Messages processed (failed)   : %,d (%,d)%n",
+                processed, this.failedCount.sum());
+        out.printf("  Queue depth (mean/peak)       : %,.1f / %,d%n",
+                (submitted == 0L) ? 0.0 : ((double) this.depthTotal.sum()) / submitted,
+                this.maximumDepth.get());
+        out.printf("  Mean wait in queue            : %,.1fms%n",
+                (processed == 0L) ? 0.0 : (this.waitNanos.sum() / ONE_MILLION) / processed);
+        out.printf("  Time blocked on full queue    : %,dms%n", this.getBlockedMillis());
+        out.printf("  Thread utilization            : %.1f%%%n",
+                (100.0 * this.busyNanos.sum()) / (elapsed * this.threadCount));
+        out.flush();
+    }
+
+    /**
+     * Prints a single line with the current queue depth, the time submitters
+     * were blocked on the full queue since the previous report and in total,
+     * and the messages processed and failed.
+     *
+     * @param out The {@link PrintStream} to print to.
+     */
+    private void report(PrintStream out) {
+        long blocked = this.blockedNanos.sum();
+        long intervalBlocked = blocked - this.lastBlockedNanos;
+        this.lastBlockedNanos = blocked;
+
+        out.println(String.format("[%s] queue %,d of %,d (peak %,d) | blocked %,.0fms"
+                + " (total %,.0fms) | processed %,d (failed %,d)",
+                this.name, this.queue.size(), this.queueCapacity, this.maximumDepth.get(),
+                intervalBlocked / ONE_MILLION, blocked / ONE_MILLION,
+                this.processedCount.sum(), this.failedCount.sum()));
+        out.flush();
+    }
+
+    /**
+     * Processes the queued messages until this instance is closed and the
+     * queue is empty.
+     */
+    private void processMessages() {
+        while (true) {
+            // check if closed before polling so no message is missed
+            boolean done = this.closed;
+            Message message;
+            try {
+                message = this.queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (message == null) {
+                if (done) {
+                    return;
+                }
+                continue;
+            }
+
+            long start = System.nanoTime();
+            this.waitNanos.add(start - message.queuedTime());
+            try {
+                this.processor.accept(message.info());
+
+            } catch (RuntimeException e) {
+                // log the failure and carry on with the next message
+                this.failedCount.increment();
+                System.err.println();
+                System.err.println("**** FAILED TO PROCESS INFO: " + message.info());
+                System.err.println(e);
+                System.err.flush();
+
+            } finally {
+                this.busyNanos.add(System.nanoTime() - start);
+                this.processedCount.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.senzing.runner;
+
+import java.io.PrintStream;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.json.*;
+
+import com.senzing.sdk.SzEngine;
+import com.senzing.sdk.SzException;
+
+/**
+ * Decorates an {@link SzEngine} so that every call is timed in a per-method
+ * {@link LatencyHistogram} and every failure is counted by its {@linkplain
+ * SzException#getErrorCode() error code}.  The decorator is a dynamic proxy
+ * so it covers every {@link SzEngine} method without being tied to the
+ * specific set of methods in a given version of the SDK, and overloads of a
+ * method are reported together under the method name.
+ *
+ * <p>
+ * Recording uses only atomic operations and a {@link ConcurrentHashMap}
+ * lookup so the decorator does not add contention between threads.  A
+ * snippet can instrument its engine with a single line:
+ * <pre>
+ *   SzEngine engine = InstrumentedEngine.wrap(env.getEngine());
+ * </pre>
+ * which also prints the summary when the JVM shuts down.
+ */
+public class InstrumentedEngine implements InvocationHandler {
+    /**
+     * The error code key used for failures that have no error code.
+     */
+    public static final int NO_ERROR_CODE = -1;
+
+    /**
+     * The number of nanoseconds per microsecond.
+     */
+    private static final long ONE_THOUSAND = 1000L;
+
+    /**
+     * The percentiles reported in the summary.
+     */
+    private static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+    /**
+     * The labels for the reported percentiles.
+     */
+    private static final String[] PERCENTILE_LABELS = { "p50", "p90", "p99", "p999" };
+
+    /**
+     * The statistics for a single method name.
+     */
+    private static class MethodStats {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final Map<Integer, LongAdder> errorCounts = new ConcurrentHashMap<>();
+        private final LongAdder otherErrorCount = new LongAdder();
+    }
+
+    private final SzEngine target;
+    private final SzEngine proxy;
+    private final Map<String, MethodStats> statsByMethod = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs with the {@link SzEngine} to instrument.
+     *
+     * @param engine The {@link SzEngine} to instrument.
+     */
+    public InstrumentedEngine(SzEngine engine) {
+        this.target = Objects.requireNonNull(engine, "The engine cannot be null");
+        this.proxy = (SzEngine) Proxy.newProxyInstance(
+                SzEngine.class.getClassLoader(), new Class<?>[] { SzEngine.class }, this);
+    }
+
+    /**
+     * Instruments the specified {@link SzEngine} and registers a shutdown
+     * hook that prints the summary to {@link System#out}.
+     *
+     * @param engine The {@link SzEngine} to instrument.
+     *
+     * @return The instrumented {@link SzEngine}.
+     */
+    public static SzEngine wrap(SzEngine engine) {
+        InstrumentedEngine instrumented = new InstrumentedEngine(engine);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            instrumented.printSummary(System.out);
+        }));
+        return instrumented.getEngine();
+    }
+
+    /**
+     * Gets the {@link InstrumentedEngine} behind the specified instrumented
+     * {@link SzEngine}.
+     *
+     * @param engine The {@link SzEngine} returned from {@link #wrap(SzEngine)}
+     *               or {@link #getEngine()}.
+     *
+     * @return The {@link InstrumentedEngine}, or <code>null</code> if the
+     *         engine is not instrumented.
+     */
+    public static InstrumentedEngine of(SzEngine engine) {
+        if (engine == null || !Proxy.isProxyClass(engine.getClass())) {
+            return null;
+        }
+        InvocationHandler handler = Proxy.getInvocationHandler(engine);
+        return (handler instanceof InstrumentedEngine) ? ((InstrumentedEngine) handler) : null;
+    }
+
+    /**
+     * Gets the instrumented {@link SzEngine} to use in place of the original.
+     *
+     * @return The instrumented {@link SzEngine}.
+     */
+    public SzEngine getEngine() {
+        return this.proxy;
+    }
+
+    /**
+     * Implemented to time the call to the target engine and record the
+     * outcome.
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        // pass through the Object methods without instrumenting them
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(this.target, args);
+        }
+
+        MethodStats stats = this.statsByMethod.get(method.getName());
+        if (stats == null) {
+            stats = this.statsByMethod.computeIfAbsent(method.getName(), k -> new MethodStats());
+        }
+
+        long start = System.nanoTime();
+        try {
+            return method.invoke(this.target, args);
+
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SzException) {
+                Integer errorCode = ((SzException) cause).getErrorCode();
+                int key = (errorCode == null) ? NO_ERROR_CODE : errorCode;
+                stats.errorCounts.computeIfAbsent(key, k -> new LongAdder()).increment();
+            } else {
+                stats.otherErrorCount.increment();
+            }
+            throw cause;
+
+        } finally {
+            stats.histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Gets the {@link LatencyHistogram} for the specified method name.
+     *
+     * @param methodName The name of the {@link SzEngine} method.
+     *
+     * @return The {@link LatencyHistogram} for the method, or
+     *         <code>null</code> if the method has not been called.
+     */
+    public LatencyHistogram getHistogram(String methodName) {
+        MethodStats stats = this.statsByMethod.get(methodName);
+        return (stats == null) ? null : stats.histogram;
+    }
+
+    /**
+     * Gets the counts of failures by error code for the specified method
+     * name.  Failures without an error code are counted under {@link
+     * #NO_ERROR_CODE}.
+     *
+     * @param methodName The name of the {@link SzEngine} method.
+     *
+     * @return The {@link SortedMap} of error codes to failure counts.
+     */
+    public SortedMap<Integer, Long> getErrorCounts(String methodName) {
+        SortedMap<Integer, Long> result = new TreeMap<>();
+        MethodStats stats = this.statsByMethod.get(methodName);
+        if (stats != null) {
+            stats.errorCounts.forEach((code, count) -> result.put(code, count.sum()));
+        }
+        return result;
+    }
+
+    /**
+     * Exports the summary as a {@link JsonObject} keyed by method name, with
+     * the latencies in microseconds.
+     *
+     * @return The {@link JsonObject} describing the summary.
+     */
+    public JsonObject toJson() {
+        JsonObjectBuilder builder = Json.createObjectBuilder();
+        for (String methodName : new TreeSet<>(this.statsByMethod.keySet())) {
+            MethodStats stats = this.statsByMethod.get(methodName);
+            LatencyHistogram histogram = stats.histogram;
+
+            JsonObjectBuilder methodBuilder = Json.createObjectBuilder();
+            methodBuilder.add("calls", histogram.getCount());
+            methodBuilder.add("mean", histogram.getMean() / ONE_THOUSAND);
+            for (int index = 0; index < PERCENTILES.length; index++) {
+                methodBuilder.add(PERCENTILE_LABELS[index],
+                        histogram.getPercentile(PERCENTILES[index]) / ONE_THOUSAND);
+            }
+            methodBuilder.add("max", histogram.getMaximum() / ONE_THOUSAND);
+
+            JsonObjectBuilder errorsBuilder = Json.createObjectBuilder();
+            this.getErrorCounts(methodName).forEach(
+                    (code, count) -> errorsBuilder.add(String.valueOf(code), count));
+            methodBuilder.add("errors", errorsBuilder);
+            methodBuilder.add("otherErrors", stats.otherErrorCount.sum());
+
+            builder.add(methodName, methodBuilder);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Prints a summary table of the call latencies (in microseconds) and
+     * error counts for each method that has been called.
+     *
+     * @param out The {@link PrintStream} to print to.
+     */
+    public void printSummary(PrintStream out) {
+        String format = "%-28s %10s %10s %10s %10s %10s %10s  %s%n";
+        out.println();
+        out.println("Engine call latencies (microseconds):");
+        out.printf(format, "Method", "Calls", PERCENTILE_LABELS[0], PERCENTILE_LABELS[1],
+                PERCENTILE_LABELS[2], PERCENTILE_LABELS[3], "max", "Errors by code");
+
+        for (String methodName : new TreeSet<>(this.statsByMethod.keySet())) {
+            MethodStats stats = this.statsByMethod.get(methodName);
+            LatencyHistogram histogram = stats.histogram;
+
+            StringBuilder errors = new StringBuilder();
+            this.getErrorCounts(methodName).forEach((code, count) -> {
+                errors.append((errors.length() == 0) ? "" : ", ");
+                errors.append((code == NO_ERROR_CODE) ? "none" : code).append('=').append(count);
+            });
+            long otherErrors = stats.otherErrorCount.sum();
+            if (otherErrors > 0L) {
+                errors.append((errors.length() == 0) ? "" : ", ");
+                errors.append("other=").append(otherErrors);
+            }
+
+            out.printf(format, methodName,
+                    histogram.getCount(),
+                    histogram.getPercentile(PERCENTILES[0]) / ONE_THOUSAND,
+                    histogram.getPercentile(PERCENTILES[1]) / ONE_THOUSAND,
+                    histogram.getPercentile(PERCENTILES[2]) / ONE_THOUSAND,
+                    histogram.getPercentile(PERCENTILES[3]) / ONE_THOUSAND,
+                    histogram.getMaximum() / ONE_THOUSAND,
+                    errors);
+        }
+        out.flush();
+    }
+}
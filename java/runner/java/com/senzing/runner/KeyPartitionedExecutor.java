@@ -0,0 +1,297 @@
+package com.senzing.runner;
+
+import java.io.PrintStream;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs tasks on a fixed number of single-threaded lanes, choosing the lane
+ * by hashing a key (e.g.: an {@link com.senzing.sdk.SzRecordKey}) so that
+ * tasks with equal keys always run one at a time in the order they were
+ * submitted, while tasks with different keys still run in parallel across
+ * the lanes.
+ *
+ * <p>
+ * Each lane has a bounded queue and submitting to a full lane blocks until
+ * it has room, so a hot key applies backpressure rather than growing an
+ * unbounded backlog.  Since a lane that receives more than its share of
+ * the keys (or a few very slow tasks) limits the throughput, the number of
+ * tasks, queue depth and busy time of each lane are tracked to report the
+ * skew between the lanes.
+ */
+public class KeyPartitionedExecutor {
+    /**
+     * The number of nanoseconds per millisecond.
+     */
+    private static final double ONE_MILLION = 1000000.0;
+
+    /**
+     * A single-threaded lane and its statistics.
+     */
+    private static class Lane {
+        private final ExecutorService executor;
+        private final Semaphore capacity;
+        private final LongAdder submittedCount = new LongAdder();
+        private final LongAdder busyNanos = new LongAdder();
+        private final AtomicInteger depth = new AtomicInteger(0);
+        private final AtomicInteger maximumDepth = new AtomicInteger(0);
+
+        private Lane(int index, int capacity) {
+            this.executor = Executors.newSingleThreadExecutor(
+                    runnable -> new Thread(runnable, "lane-" + index));
+            this.capacity = new Semaphore(capacity);
+        }
+    }
+
+    private final Lane[] lanes;
+    private final LongAdder blockedNanos = new LongAdder();
+    private final long startTime = System.nanoTime();
+
+    /**
+     * Constructs with the number of lanes and the maximum number of tasks
+     * queued or running on each lane.
+     *
+     * @param laneCount    The number of lanes.
+     * @param laneCapacity The maximum number of tasks queued or running on
+     *                     each lane.
+     */
+    public KeyPartitionedExecutor(int laneCount, int laneCapacity) {
+        if (laneCount < 1) {
+            throw new IllegalArgumentException("The lane count must be positive: " + laneCount);
+        }
+        if (laneCapacity < 1) {
+            throw new IllegalArgumentException(
+                    "The lane capacity must be positive: " + laneCapacity);
+        }
+        this.lanes = new Lane[laneCount];
+        for (int index = 0; index < laneCount; index++) {
+            this.lanes[index] = new Lane(index, laneCapacity);
+        }
+    }
+
+    /**
+     * Gets the number of lanes.
+     *
+     * @return The number of lanes.
+     */
+    public int getLaneCount() {
+        return this.lanes.length;
+    }
+
+    /**
+     * Gets the index of the lane for the specified key.
+     *
+     * @param key The key for the task.
+     *
+     * @return The index of the lane for the key.
+     */
+    public int getLaneIndex(Object key) {
+        // spread the high bits since record key hash codes are not well mixed
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        hash *= 0x85EBCA6B;
+        hash ^= (hash >>> 13);
+        return Math.floorMod(hash, this.lanes.length);
+    }
+
+    /**
+     * Submits the specified task to the lane for the specified key, blocking
+     * while that lane is full.
+     *
+     * @param key  The key for the task.
+     * @param task The {@link Callable} to run.
+     * @param <T>  The type of the result of the task.
+     *
+     * @return The {@link Future} for the task.
+     *
+     * @throws InterruptedException If interrupted while waiting for the lane
+     *                              to have room.
+     *
+     * @throws RejectedExecutionException If this instance has been shut down.
+     */
+    public <T> Future<T> submit(Object key, Callable<T> task) throws InterruptedException {
+        return this.submit(key, task, null);
+    }
+
+    /**
+     * Submits the specified task to the lane for the specified key, blocking
+     * while that lane is full, and adds its {@link Future} to the specified
+     * queue once it completes (as with an {@link ExecutorCompletionService}).
+     *
+     * @param key             The key for the task.
+     * @param task            The {@link Callable} to run.
+     * @param completionQueue The {@link BlockingQueue} to add the completed
+     *                        {@link Future} to, or <code>null</code> if none.
+     * @param <T>             The type of the result of the task.
+     *
+     * @return The {@link Future} for the task.
+     *
+     * @throws InterruptedException If interrupted while waiting for the lane
+     *                              to have room.
+     *
+     * @throws RejectedExecutionException If this instance has been shut down.
+     */
+    public <T> Future<T> submit(Object key,
+            Callable<T> task,
+            BlockingQueue<Future<T>> completionQueue)
+            throws InterruptedException {
+        Lane lane = this.lanes[this.getLaneIndex(key)];
+
+        // wait for room in the lane, tracking how long we are held up
+        if (!lane.capacity.tryAcquire()) {
+            long start = System.nanoTime();
+            lane.capacity.acquire();
+            this.blockedNanos.add(System.nanoTime() - start);
+        }
+
+        FutureTask<T> future = new FutureTask<>(task) {
+            @Override
+            protected void done() {
+                if (completionQueue != null) {
+                    completionQueue.add(this);
+                }
+            }
+        };
+
+        int depth = lane.depth.incrementAndGet();
+        lane.maximumDepth.accumulateAndGet(depth, Math::max);
+        lane.submittedCount.increment();
+        try {
+            lane.executor.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    future.run();
+                } finally {
+                    lane.busyNanos.add(System.nanoTime() - start);
+                    lane.depth.decrementAndGet();
+                    lane.capacity.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            lane.depth.decrementAndGet();
+            lane.capacity.release();
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Shuts down the lanes after they finish the tasks already submitted.
+     */
+    public void shutdown() {
+        for (Lane lane : this.lanes) {
+            lane.executor.shutdown();
+        }
+    }
+
+    /**
+     * Checks if this instance has been shut down.
+     *
+     * @return <code>true</code> if shut down, otherwise <code>false</code>.
+     */
+    public boolean isShutdown() {
+        return this.lanes[0].executor.isShutdown();
+    }
+
+    /**
+     * Waits for the lanes to finish after being shut down.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The {@link TimeUnit} of the timeout.
+     *
+     * @return <code>true</code> if all lanes finished, or <code>false</code>
+     *         if the timeout elapsed first.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Lane lane : this.lanes) {
+            long remaining = deadline - System.nanoTime();
+            if (!lane.executor.awaitTermination(Math.max(0L, remaining), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the number of tasks submitted to each lane.
+     *
+     * @return The array of the number of tasks submitted to each lane.
+     */
+    public long[] getLaneCounts() {
+        long[] counts = new long[this.lanes.length];
+        for (int index = 0; index < counts.length; index++) {
+            counts[index] = this.lanes[index].submittedCount.sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Gets the skew between the lanes as the ratio of the number of tasks
+     * on the busiest lane to the mean number of tasks per lane.  A perfectly
+     * even spread has a skew of one and the skew is the number of lanes when
+     * every task goes to the same lane.
+     *
+     * @return The skew between the lanes, or zero if there have been no tasks.
+     */
+    public double getSkew() {
+        long total = 0L;
+        long maximum = 0L;
+        for (long count : this.getLaneCounts()) {
+            total += count;
+            maximum = Math.max(maximum, count);
+        }
+        return (total == 0L) ? 0.0 : (maximum * (double) this.lanes.length) / total;
+    }
+
+    /**
+     * Gets the total number of milliseconds that submitters were blocked
+     * waiting for a full lane to have room.
+     *
+     * @return The total number of milliseconds blocked on full lanes.
+     */
+    public long getBlockedMillis() {
+        return (long) (this.blockedNanos.sum() / ONE_MILLION);
+    }
+
+    /**
+     * Prints a summary of the spread of the tasks across the lanes: the
+     * minimum, mean and maximum tasks per lane with the resulting skew, the
+     * utilization of the least and most busy lanes, the deepest lane queue
+     * and the time blocked on full lanes.
+     *
+     * @param out The {@link PrintStream} to print to.
+     */
+    public void printSummary(PrintStream out) {
+        double elapsed = Math.max(1L, System.nanoTime() - this.startTime);
+        long total = 0L;
+        long minimum = Long.MAX_VALUE;
+        long maximum = 0L;
+        double minimumBusy = 1.0;
+        double maximumBusy = 0.0;
+        int maximumDepth = 0;
+        for (Lane lane : this.lanes) {
+            long count = lane.submittedCount.sum();
+            double busy = lane.busyNanos.sum() / elapsed;
+            total += count;
+            minimum = Math.min(minimum, count);
+            maximum = Math.max(maximum, count);
+            minimumBusy = Math.min(minimumBusy, busy);
+            maximumBusy = Math.max(maximumBusy, busy);
+            maximumDepth = Math.max(maximumDepth, lane.maximumDepth.get());
+        }
+
+        out.println();
+        out.println("Lane skew across " + this.lanes.length + " lanes:");
+        out.printf("  Tasks per lane (min/mean/max) : %,d / %,.1f / %,d (skew %.2f)%n",
+                minimum, ((double) total) / this.lanes.length, maximum, this.getSkew());
+        out.printf("  Lane utilization (min/max)    : %.1f%% / %.1f%%%n",
+                100.0 * minimumBusy, 100.0 * maximumBusy);
+        out.printf("  Deepest lane queue            : %,d%n", maximumDepth);
+        out.printf("  Time blocked on full lanes    : %,dms%n", this.getBlockedMillis());
+        out.flush();
+    }
+}
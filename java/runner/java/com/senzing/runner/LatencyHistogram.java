@@ -0,0 +1,151 @@
+package com.senzing.runner;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of latencies in nanoseconds using log-linear
+ * buckets: each power-of-two range is split into {@link #SUB_BUCKET_COUNT}
+ * equal sub-buckets so that every recorded value is reported within about
+ * 1.6% of its true value.  Recording is a handful of arithmetic operations
+ * and atomic increments, so it can be shared by many threads at high call
+ * rates without becoming a point of contention itself.
+ *
+ * <p>
+ * Percentiles read while values are being recorded are approximate since
+ * the buckets are not read atomically as a whole.
+ */
+public class LatencyHistogram {
+    /**
+     * The number of bits used to select a sub-bucket.
+     */
+    private static final int SUB_BUCKET_BITS = 6;
+
+    /**
+     * The number of sub-buckets per power of two.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * The total number of buckets needed to cover every positive long.
+     */
+    private static final int BUCKET_COUNT
+            = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong maximum = new AtomicLong(0L);
+
+    /**
+     * Records the specified latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        this.buckets.incrementAndGet(bucketIndex(value));
+        this.count.increment();
+        this.total.add(value);
+
+        // only attempt to update the maximum if it would increase
+        long current = this.maximum.get();
+        while (value > current && !this.maximum.compareAndSet(current, value)) {
+            current = this.maximum.get();
+        }
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     *
+     * @return The number of recorded latencies.
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Gets the mean of the recorded latencies.
+     *
+     * @return The mean latency in nanoseconds, or zero if none recorded.
+     */
+    public double getMean() {
+        long n = this.count.sum();
+        return (n == 0L) ? 0.0 : ((double) this.total.sum()) / n;
+    }
+
+    /**
+     * Gets the maximum recorded latency.
+     *
+     * @return The maximum latency in nanoseconds, or zero if none recorded.
+     */
+    public long getMaximum() {
+        return this.maximum.get();
+    }
+
+    /**
+     * Gets the latency at the specified percentile, reported as the upper
+     * bound of the bucket containing it (but never more than the maximum).
+     *
+     * @param percentile The percentile (between zero and 100).
+     *
+     * @return The latency in nanoseconds at the percentile, or zero if none
+     *         recorded.
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKET_COUNT];
+        long n = 0L;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            counts[index] = this.buckets.get(index);
+            n += counts[index];
+        }
+        if (n == 0L) {
+            return 0L;
+        }
+
+        // find the bucket holding the value at the percentile rank
+        long rank = Math.max(1L, (long) Math.ceil((percentile / 100.0) * n));
+        long seen = 0L;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            seen += counts[index];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(index), this.getMaximum());
+            }
+        }
+        return this.getMaximum();
+    }
+
+    /**
+     * Gets the index of the bucket for the specified non-negative value.
+     *
+     * @param value The value.
+     *
+     * @return The index of the bucket.
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKET_COUNT;
+        return ((shift + 1) * SUB_BUCKET_COUNT) + subBucket;
+    }
+
+    /**
+     * Gets the largest value that falls in the bucket at the specified index.
+     *
+     * @param index The index of the bucket.
+     *
+     * @return The largest value in the bucket.
+     */
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index / SUB_BUCKET_COUNT) - 1;
+        long subBucket = (index % SUB_BUCKET_COUNT) + SUB_BUCKET_COUNT;
+        return ((subBucket + 1L) << shift) - 1L;
+    }
+}
@@ -0,0 +1,189 @@
+package com.senzing.runner;
+
+import java.io.*;
+import java.nio.file.Files;
+
+import com.senzing.runner.RetryJournal.Entry;
+import com.senzing.runner.RetryJournal.Kind;
+import com.senzing.sdk.SzException;
+
+/**
+ * Journals the records that failed to be processed to a {@link RetryJournal}
+ * that is only opened when the first record is journaled, so nothing is
+ * created on disk if no record fails.  The journal is opened in the
+ * directory given at construction, or in a new temporary directory if none
+ * was given.
+ *
+ * <p>
+ * Each record is appended and then waited on until it is committed to disk,
+ * so concurrent threads journaling at the same time share a single group
+ * commit.  The error code is taken from the failure if it is an {@link
+ * SzException}.  This class is thread-safe.
+ */
+public class LazyRetryJournal implements Closeable {
+    /**
+     * The prefix for the name of the temporary directory.
+     */
+    public static final String TEMP_DIRECTORY_PREFIX = "retry-journal-";
+
+    private final File directory;
+    private volatile RetryJournal journal = null;
+    private boolean closed = false;
+
+    /**
+     * Constructs an instance that opens its journal in a new temporary
+     * directory when the first record is journaled.
+     */
+    public LazyRetryJournal() {
+        this(null);
+    }
+
+    /**
+     * Constructs with the directory in which to open the journal when the
+     * first record is journaled.
+     *
+     * @param directory The directory for the journal, or <code>null</code>
+     *                  to use a new temporary directory.
+     */
+    public LazyRetryJournal(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Journals the specified record to be retried, with no attempt count or
+     * line number, and waits for it to be committed to disk.
+     *
+     * @param failure The failure of the last attempt, or <code>null</code>
+     *                if none.
+     * @param record  The record to be retried.
+     *
+     * @throws IOException          If the record cannot be journaled.
+     * @throws InterruptedException If interrupted while waiting for the commit.
+     */
+    public void retry(Exception failure, String record)
+            throws IOException, InterruptedException {
+        this.journal(Kind.RETRY, failure, 1, 0L, record);
+    }
+
+    /**
+     * Journals the specified record to be retried and waits for it to be
+     * committed to disk.
+     *
+     * @param failure    The failure of the last attempt, or <code>null</code>
+     *                   if none.
+     * @param attempt    The number of attempts made.
+     * @param lineNumber The line number of the record in its source, or zero
+     *                   if not applicable.
+     * @param record     The record to be retried.
+     *
+     * @throws IOException          If the record cannot be journaled.
+     * @throws InterruptedException If interrupted while waiting for the commit.
+     */
+    public void retry(Exception failure, int attempt, long lineNumber, String record)
+            throws IOException, InterruptedException {
+        this.journal(Kind.RETRY, failure, attempt, lineNumber, record);
+    }
+
+    /**
+     * Journals the specified record as a dead letter that will not succeed
+     * as it is and waits for it to be committed to disk.
+     *
+     * @param failure    The failure of the last attempt.
+     * @param attempt    The number of attempts made.
+     * @param lineNumber The line number of the record in its source, or zero
+     *                   if not applicable.
+     * @param record     The failed record.
+     *
+     * @throws IOException          If the record cannot be journaled.
+     * @throws InterruptedException If interrupted while waiting for the commit.
+     */
+    public void deadLetter(Exception failure, int attempt, long lineNumber, String record)
+            throws IOException, InterruptedException {
+        this.journal(Kind.DEAD_LETTER, failure, attempt, lineNumber, record);
+    }
+
+    /**
+     * Gets the directory of the journal.
+     *
+     * @return The directory of the journal, or <code>null</code> if it has
+     *         not been opened since nothing has been journaled.
+     */
+    public File getDirectory() {
+        RetryJournal journal = this.journal;
+        return (journal == null) ? null : journal.getDirectory();
+    }
+
+    /**
+     * Gets the number of records journaled so far.
+     *
+     * @return The number of records journaled.
+     */
+    public long getAppendedCount() {
+        RetryJournal journal = this.journal;
+        return (journal == null) ? 0L : journal.getAppendedCount();
+    }
+
+    /**
+     * Gets the number of group commits made so far.
+     *
+     * @return The number of group commits.
+     */
+    public long getCommitCount() {
+        RetryJournal journal = this.journal;
+        return (journal == null) ? 0L : journal.getCommitCount();
+    }
+
+    /**
+     * Closes the journal if it was opened, committing anything appended.
+     * Since every record was already committed when it was journaled, a
+     * failure to close is reported to {@link System#err} rather than thrown.
+     */
+    @Override
+    public synchronized void close() {
+        this.closed = true;
+        if (this.journal == null) {
+            return;
+        }
+        try {
+            this.journal.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close the retry journal: " + e);
+        }
+    }
+
+    /**
+     * Appends an entry for the specified record, opening the journal first
+     * if needed, and waits for it to be committed to disk.
+     */
+    private void journal(Kind kind, Exception failure, int attempt, long lineNumber, String record)
+            throws IOException, InterruptedException {
+        Integer errorCode = (failure instanceof SzException)
+                ? ((SzException) failure).getErrorCode() : null;
+        String message = (failure == null) ? null : failure.getMessage();
+
+        RetryJournal journal = this.open();
+        journal.append(new Entry(kind, record, errorCode, message, attempt, lineNumber));
+        journal.sync();
+    }
+
+    /**
+     * Gets the journal, opening it if this is the first record.
+     */
+    private RetryJournal open() throws IOException {
+        RetryJournal journal = this.journal;
+        if (journal != null) {
+            return journal;
+        }
+        synchronized (this) {
+            if (this.closed) {
+                throw new IllegalStateException("The retry journal has been closed");
+            }
+            if (this.journal == null) {
+                this.journal = new RetryJournal((this.directory != null)
+                        ? this.directory
+                        : Files.createTempDirectory(TEMP_DIRECTORY_PREFIX).toFile());
+            }
+            return this.journal;
+        }
+    }
+}
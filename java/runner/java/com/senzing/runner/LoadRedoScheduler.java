@@ -0,0 +1,435 @@
+package com.senzing.runner;
+
+import java.io.PrintStream;
+import java.util.concurrent.*;
+
+import com.senzing.sdk.SzEngine;
+import com.senzing.sdk.SzException;
+
+/**
+ * Shares one budget of worker threads between loading records and
+ * processing redo records so the redo backlog is worked off while loading
+ * continues instead of only once all records are loaded.  Each worker asks
+ * for its {@linkplain #nextTask() next task} and reports its {@linkplain
+ * #complete(Task, boolean) completion}, and the scheduler hands out redo
+ * tasks to at most the current number of redo workers and load tasks to the
+ * rest.  Once loading is {@linkplain #loadingComplete() complete} every
+ * worker is given redo tasks.
+ *
+ * <p>
+ * The number of redo workers is either fixed by the redo share (a share of
+ * zero defers redo until loading is complete) or, if adaptive, starts from
+ * the redo share and is adjusted one worker at a time from a background
+ * thread that samples the backlog with {@link SzEngine#countRedoRecords()}:
+ * a redo worker is added while the backlog is above the maximum and not
+ * shrinking, and one is removed once it is below half the maximum, always
+ * leaving at least one worker for each kind of task.  When a redo fetch
+ * finds no redo record the redo workers load records for a short pause
+ * rather than polling for redo records again.
+ *
+ * <p>
+ * Each sample is logged with the load throughput and the redo throughput,
+ * backlog and lag (the time to work off the backlog at the redo rate) side
+ * by side to show the trade-off between them.
+ */
+public class LoadRedoScheduler implements AutoCloseable {
+    /**
+     * The kinds of task handed out to the workers.
+     */
+    public enum Task {
+        /**
+         * Load the next record.
+         */
+        LOAD,
+
+        /**
+         * Fetch and process the next redo record.
+         */
+        REDO
+    }
+
+    /**
+     * The default number of milliseconds between samples of the backlog.
+     */
+    public static final long DEFAULT_SAMPLE_INTERVAL = 5000L;
+
+    /**
+     * The number of milliseconds to hand out only load tasks after a redo
+     * fetch finds no redo record.
+     */
+    private static final long REDO_IDLE_PAUSE = 1000L;
+
+    private static final double ONE_MILLION = 1000000.0;
+
+    private final SzEngine engine;
+    private final int workerCount;
+    private final boolean adaptive;
+    private final long maximumBacklog;
+    private final long sampleInterval;
+    private final PrintStream out;
+
+    private ScheduledExecutorService scheduler = null;
+
+    // these are guarded by the lock on this instance
+    private int redoWorkers;
+    private int activeLoadCount = 0;
+    private int activeRedoCount = 0;
+    private boolean loadingComplete = false;
+    private long redoIdleUntil = System.nanoTime();
+    private long loadedCount = 0L;
+    private long redoneCount = 0L;
+    private long emptyRedoCount = 0L;
+    private long startTime = 0L;
+    private long loadFinishTime = 0L;
+    private long lastTime = 0L;
+    private long lastLoaded = 0L;
+    private long lastRedone = 0L;
+    private long backlog = -1L;
+    private long peakBacklog = 0L;
+    private double backlogTotal = 0.0;
+    private long sampleCount = 0L;
+    private long overBoundCount = 0L;
+    private long peakLagMillis = 0L;
+
+    /**
+     * Constructs with the {@link SzEngine} to sample, the number of workers,
+     * the share of them processing redo records, whether to adapt that share
+     * and the maximum backlog, sampling at the {@linkplain
+     * #DEFAULT_SAMPLE_INTERVAL default interval} and reporting to {@link
+     * System#out}.
+     *
+     * @param engine         The {@link SzEngine} to sample.
+     * @param workerCount    The number of workers sharing the budget.
+     * @param redoShare      The fraction of the workers (from zero to one)
+     *                       that process redo records while loading, or the
+     *                       initial fraction if adaptive.
+     * @param adaptive       <code>true</code> if the number of redo workers
+     *                       should be adjusted to keep the backlog bounded,
+     *                       otherwise <code>false</code>.
+     * @param maximumBacklog The backlog above which redo workers are added if
+     *                       adaptive.
+     */
+    public LoadRedoScheduler(SzEngine engine,
+            int workerCount,
+            double redoShare,
+            boolean adaptive,
+            long maximumBacklog) {
+        this(engine, workerCount, redoShare, adaptive, maximumBacklog,
+                DEFAULT_SAMPLE_INTERVAL, System.out);
+    }
+
+    /**
+     * Constructs with the {@link SzEngine} to sample, the number of workers,
+     * the share of them processing redo records, whether to adapt that
+     * share, the maximum backlog, the interval between samples and the
+     * {@link PrintStream} to report to.
+     *
+     * @param engine         The {@link SzEngine} to sample.
+     * @param workerCount    The number of workers sharing the budget.
+     * @param redoShare      The fraction of the workers (from zero to one)
+     *                       that process redo records while loading, or the
+     *                       initial fraction if adaptive.
+     * @param adaptive       <code>true</code> if the number of redo workers
+     *                       should be adjusted to keep the backlog bounded,
+     *                       otherwise <code>false</code>.
+     * @param maximumBacklog The backlog above which redo workers are added if
+     *                       adaptive.
+     * @param sampleInterval The number of milliseconds between samples.
+     * @param out            The {@link PrintStream} to report to.
+     */
+    public LoadRedoScheduler(SzEngine engine,
+            int workerCount,
+            double redoShare,
+            boolean adaptive,
+            long maximumBacklog,
+            long sampleInterval,
+            PrintStream out) {
+        if (workerCount < 2) {
+            throw new IllegalArgumentException(
+                    "The worker count must be at least two: " + workerCount);
+        }
+        if (!(redoShare >= 0.0 && redoShare <= 1.0)) {
+            throw new IllegalArgumentException(
+                    "The redo share must be from zero to one: " + redoShare);
+        }
+        if (maximumBacklog <= 0L) {
+            throw new IllegalArgumentException(
+                    "The maximum backlog must be positive: " + maximumBacklog);
+        }
+        if (sampleInterval <= 0L) {
+            throw new IllegalArgumentException(
+                    "The sample interval must be positive: " + sampleInterval);
+        }
+        this.engine = engine;
+        this.workerCount = workerCount;
+        this.adaptive = adaptive;
+        this.maximumBacklog = maximumBacklog;
+        this.sampleInterval = sampleInterval;
+        this.out = out;
+
+        int initial = (int) Math.round(redoShare * workerCount);
+        this.redoWorkers = adaptive
+                ? Math.max(1, Math.min(workerCount - 1, initial))
+                : initial;
+    }
+
+    /**
+     * Starts sampling the backlog, taking the first sample right away.
+     */
+    public synchronized void start() {
+        if (this.scheduler != null) {
+            throw new IllegalStateException("Already started");
+        }
+        this.startTime = System.nanoTime();
+        this.lastTime = this.startTime;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "load-redo-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(
+                this::sample, 0L, this.sampleInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the next task for a worker, which must be followed by a call to
+     * {@link #complete(Task, boolean)} once the task is done.
+     *
+     * @return The {@link Task} for the worker to perform.
+     */
+    public synchronized Task nextTask() {
+        boolean redo = this.loadingComplete
+                || (this.activeRedoCount < this.redoWorkers
+                        && System.nanoTime() - this.redoIdleUntil >= 0L);
+        if (redo) {
+            this.activeRedoCount++;
+            return Task.REDO;
+        }
+        this.activeLoadCount++;
+        return Task.LOAD;
+    }
+
+    /**
+     * Records the completion of a task returned from {@link #nextTask()}.
+     *
+     * @param task      The {@link Task} that was completed.
+     * @param performed <code>true</code> if a record was loaded or a redo
+     *                  record was processed, or <code>false</code> if the
+     *                  task failed or (for a redo task) found no redo
+     *                  record.
+     */
+    public synchronized void complete(Task task, boolean performed) {
+        if (task == Task.LOAD) {
+            this.activeLoadCount--;
+            if (performed) {
+                this.loadedCount++;
+            }
+            return;
+        }
+        this.activeRedoCount--;
+        if (performed) {
+            this.redoneCount++;
+        } else {
+            // load instead of polling an empty redo queue for a while
+            this.emptyRedoCount++;
+            this.redoIdleUntil = System.nanoTime() + REDO_IDLE_PAUSE * 1000000L;
+        }
+    }
+
+    /**
+     * Marks loading as complete so that every worker is given redo tasks.
+     */
+    public synchronized void loadingComplete() {
+        if (!this.loadingComplete) {
+            this.loadingComplete = true;
+            this.loadFinishTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * Checks if loading is complete.
+     *
+     * @return <code>true</code> if loading is complete, otherwise
+     *         <code>false</code>.
+     */
+    public synchronized boolean isLoadingComplete() {
+        return this.loadingComplete;
+    }
+
+    /**
+     * Gets the number of records loaded.
+     *
+     * @return The number of records loaded.
+     */
+    public synchronized long getLoadedCount() {
+        return this.loadedCount;
+    }
+
+    /**
+     * Gets the number of redo records processed.
+     *
+     * @return The number of redo records processed.
+     */
+    public synchronized long getRedoneCount() {
+        return this.redoneCount;
+    }
+
+    /**
+     * Gets the current number of workers given redo tasks while loading.
+     *
+     * @return The current number of redo workers.
+     */
+    public synchronized int getRedoWorkers() {
+        return this.redoWorkers;
+    }
+
+    /**
+     * Gets the redo backlog as of the latest sample.
+     *
+     * @return The number of redo records pending, or <code>-1</code> if not
+     *         yet sampled.
+     */
+    public synchronized long getBacklog() {
+        return this.backlog;
+    }
+
+    /**
+     * Gets the largest redo backlog sampled.
+     *
+     * @return The peak number of redo records pending.
+     */
+    public synchronized long getPeakBacklog() {
+        return this.peakBacklog;
+    }
+
+    /**
+     * Prints a summary of the load and redo throughput, the backlog and the
+     * redo lag to the specified {@link PrintStream}.
+     *
+     * @param out The {@link PrintStream} to print to.
+     */
+    public synchronized void printSummary(PrintStream out) {
+        long now = System.nanoTime();
+        long loadEnd = this.loadingComplete ? this.loadFinishTime : now;
+        double loadSeconds = (loadEnd - this.startTime) / (ONE_MILLION * 1000.0);
+        double redoSeconds = (now - this.startTime) / (ONE_MILLION * 1000.0);
+
+        out.println();
+        out.println("Load and redo scheduling (" + this.workerCount + " workers, "
+                + (this.adaptive ? "adaptive" : "fixed") + " redo share):");
+        out.printf("  Records loaded                : %,d (%,.1f/sec)%n",
+                this.loadedCount, (loadSeconds > 0.0) ? this.loadedCount / loadSeconds : 0.0);
+        out.printf("  Redos processed               : %,d (%,.1f/sec)%n",
+                this.redoneCount, (redoSeconds > 0.0) ? this.redoneCount / redoSeconds : 0.0);
+        out.printf("  Empty redo fetches            : %,d%n", this.emptyRedoCount);
+        out.printf("  Redo backlog (peak / mean)    : %,d / %,.0f%n",
+                this.peakBacklog,
+                (this.sampleCount > 0L) ? this.backlogTotal / this.sampleCount : 0.0);
+        out.printf("  Samples over maximum backlog  : %,d of %,d (maximum %,d)%n",
+                this.overBoundCount, this.sampleCount, this.maximumBacklog);
+        out.println("  Peak redo lag                 : " + formatDuration(this.peakLagMillis));
+        out.println("  Redo workers while loading    : " + this.redoWorkers + " of " + this.workerCount);
+        out.flush();
+    }
+
+    /**
+     * Stops sampling, waiting for any sample in progress so that the engine
+     * is no longer in use once this returns.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            if (this.scheduler == null) {
+                return;
+            }
+            executor = this.scheduler;
+            this.scheduler = null;
+        }
+
+        // wait without holding the lock so a sample in progress can finish
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(this.sampleInterval, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignore) {
+            // ignore the interruption
+        }
+    }
+
+    /**
+     * Samples the backlog, adjusts the number of redo workers if adaptive
+     * and prints the load and redo throughput, backlog and lag.
+     */
+    private void sample() {
+        // count the redo records without holding the lock on the workers
+        long pending;
+        try {
+            pending = this.engine.countRedoRecords();
+        } catch (SzException e) {
+            this.out.println("[load+redo] FAILED TO COUNT REDO RECORDS: " + e);
+            this.out.flush();
+            return;
+        }
+
+        String line;
+        synchronized (this) {
+            long now = System.nanoTime();
+            double seconds = (now - this.lastTime) / (ONE_MILLION * 1000.0);
+            double loadRate = (seconds > 0.0) ? (this.loadedCount - this.lastLoaded) / seconds : 0.0;
+            double redoRate = (seconds > 0.0) ? (this.redoneCount - this.lastRedone) / seconds : 0.0;
+            long previous = this.backlog;
+
+            this.lastTime = now;
+            this.lastLoaded = this.loadedCount;
+            this.lastRedone = this.redoneCount;
+            this.backlog = pending;
+            this.peakBacklog = Math.max(this.peakBacklog, pending);
+            this.backlogTotal += pending;
+            this.sampleCount++;
+            if (pending > this.maximumBacklog) {
+                this.overBoundCount++;
+            }
+
+            // the time to work off the backlog at the current redo rate
+            long lagMillis = -1L;
+            if (pending == 0L) {
+                lagMillis = 0L;
+            } else if (redoRate > 0.0) {
+                lagMillis = (long) ((pending * 1000.0) / redoRate);
+                this.peakLagMillis = Math.max(this.peakLagMillis, lagMillis);
+            }
+
+            // add a redo worker while the backlog is too large and not
+            // shrinking, and give one back to loading once it is small
+            if (this.adaptive && !this.loadingComplete && previous >= 0L) {
+                if (pending > this.maximumBacklog && pending >= previous) {
+                    this.redoWorkers = Math.min(this.workerCount - 1, this.redoWorkers + 1);
+                } else if (pending < this.maximumBacklog / 2L) {
+                    this.redoWorkers = Math.max(1, this.redoWorkers - 1);
+                }
+            }
+
+            line = String.format("[load+redo] loaded %,d (%,.1f/sec) | redone %,d (%,.1f/sec)"
+                    + " | backlog %,d | redo lag %s | redo workers %s",
+                    this.loadedCount, loadRate, this.redoneCount, redoRate, pending,
+                    (lagMillis < 0L) ? "unknown" : formatDuration(lagMillis),
+                    this.loadingComplete ? "all (loading complete)"
+                            : (this.redoWorkers + " of " + this.workerCount));
+        }
+        this.out.println(line);
+        this.out.flush();
+    }
+
+    /**
+     * Formats the specified number of milliseconds as hours, minutes and
+     * seconds.
+     *
+     * @param millis The number of milliseconds.
+     *
+     * @return The formatted duration.
+     */
+    private static String formatDuration(long millis) {
+        long seconds = millis / 1000L;
+        return String.format("%02d:%02d:%02d", seconds / 3600L, (seconds / 60L) % 60L, seconds % 60L);
+    }
+}
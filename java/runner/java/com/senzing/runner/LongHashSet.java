@@ -0,0 +1,307 @@
+package com.senzing.runner;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * A set of primitive <code>long</code> values (e.g.: entity IDs) using open
+ * addressing with linear probing, so each value takes about a dozen bytes
+ * rather than the fifty or more of a boxed {@link Long} in a {@link
+ * java.util.HashSet}.  This matters when tracking tens of millions of
+ * entity IDs.
+ *
+ * <p>
+ * The slots are a single <code>long[]</code> where zero marks an empty slot,
+ * so the value zero itself is tracked with a separate flag.  Removal shifts
+ * the following entries back rather than leaving tombstones, so lookups
+ * never slow down as values are added and removed.
+ *
+ * <p>
+ * This class is <b>not</b> thread-safe.
+ */
+public class LongHashSet {
+    /**
+     * The default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The maximum fraction of the slots that may be occupied before the
+     * table is doubled.
+     */
+    private static final double LOAD_FACTOR = 0.75;
+
+    /**
+     * The largest table size, the largest power of two for an array.
+     */
+    private static final int MAXIMUM_TABLE_SIZE = 1 << 30;
+
+    private long[] slots;
+    private int mask;
+    private int size = 0;
+    private int resizeThreshold;
+    private boolean containsZero = false;
+
+    /**
+     * Constructs with the default initial capacity.
+     */
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs with room for the specified number of values before the
+     * table must grow.
+     *
+     * @param expectedSize The expected number of values.
+     */
+    public LongHashSet(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    "The expected size cannot be negative: " + expectedSize);
+        }
+        this.allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Gets the number of values in the set.
+     *
+     * @return The number of values in the set.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Checks if the set is empty.
+     *
+     * @return <code>true</code> if the set is empty, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Checks if the set contains the specified value.
+     *
+     * @param value The value to check for.
+     *
+     * @return <code>true</code> if the set contains the value, otherwise
+     *         <code>false</code>.
+     */
+    public boolean contains(long value) {
+        if (value == 0L) {
+            return this.containsZero;
+        }
+        for (int index = slotFor(value, this.mask);; index = (index + 1) & this.mask) {
+            long slot = this.slots[index];
+            if (slot == value) {
+                return true;
+            }
+            if (slot == 0L) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds the specified value to the set.
+     *
+     * @param value The value to add.
+     *
+     * @return <code>true</code> if the value was added, or <code>false</code>
+     *         if it was already in the set.
+     */
+    public boolean add(long value) {
+        if (value == 0L) {
+            if (this.containsZero) {
+                return false;
+            }
+            this.containsZero = true;
+            this.size++;
+            return true;
+        }
+        for (int index = slotFor(value, this.mask);; index = (index + 1) & this.mask) {
+            long slot = this.slots[index];
+            if (slot == value) {
+                return false;
+            }
+            if (slot == 0L) {
+                this.slots[index] = value;
+                if (++this.size > this.resizeThreshold) {
+                    this.resize(this.slots.length * 2);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes the specified value from the set.
+     *
+     * @param value The value to remove.
+     *
+     * @return <code>true</code> if the value was removed, or
+     *         <code>false</code> if it was not in the set.
+     */
+    public boolean remove(long value) {
+        if (value == 0L) {
+            if (!this.containsZero) {
+                return false;
+            }
+            this.containsZero = false;
+            this.size--;
+            return true;
+        }
+        for (int index = slotFor(value, this.mask);; index = (index + 1) & this.mask) {
+            long slot = this.slots[index];
+            if (slot == 0L) {
+                return false;
+            }
+            if (slot == value) {
+                this.shiftBack(index);
+                this.size--;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes all values from the set, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(this.slots, 0L);
+        this.containsZero = false;
+        this.size = 0;
+    }
+
+    /**
+     * Calls the specified {@link LongConsumer} with each value in the set,
+     * in no particular order.
+     *
+     * @param consumer The {@link LongConsumer} to call with each value.
+     */
+    public void forEach(LongConsumer consumer) {
+        if (this.containsZero) {
+            consumer.accept(0L);
+        }
+        for (long slot : this.slots) {
+            if (slot != 0L) {
+                consumer.accept(slot);
+            }
+        }
+    }
+
+    /**
+     * Gets the values in the set as an array, in no particular order.
+     *
+     * @return The array of the values in the set.
+     */
+    public long[] toArray() {
+        long[] values = new long[this.size];
+        int count = 0;
+        if (this.containsZero) {
+            values[count++] = 0L;
+        }
+        for (long slot : this.slots) {
+            if (slot != 0L) {
+                values[count++] = slot;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Gets the slot for the specified non-zero value in a table with the
+     * specified mask, mixing its bits since entity IDs are sequential.
+     *
+     * @param value The value.
+     * @param mask  The mask for the table size.
+     *
+     * @return The index of the first slot to probe.
+     */
+    static int slotFor(long value, int mask) {
+        // the finalizer from MurmurHash3
+        long hash = value;
+        hash ^= (hash >>> 33);
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= (hash >>> 33);
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= (hash >>> 33);
+        return ((int) hash) & mask;
+    }
+
+    /**
+     * Gets the power-of-two table size that holds the specified number of
+     * values without exceeding the load factor.
+     *
+     * @param expectedSize The expected number of values.
+     *
+     * @return The table size.
+     */
+    static int tableSizeFor(int expectedSize) {
+        long minimum = Math.max(DEFAULT_CAPACITY, (long) Math.ceil(expectedSize / LOAD_FACTOR));
+        if (minimum > MAXIMUM_TABLE_SIZE) {
+            throw new IllegalArgumentException("Too many values: " + expectedSize);
+        }
+        return Integer.highestOneBit((int) (minimum - 1)) << 1;
+    }
+
+    /**
+     * Allocates an empty table of the specified size.
+     *
+     * @param tableSize The power-of-two table size.
+     */
+    private void allocate(int tableSize) {
+        this.slots = new long[tableSize];
+        this.mask = tableSize - 1;
+        this.resizeThreshold = (int) (tableSize * LOAD_FACTOR);
+    }
+
+    /**
+     * Moves the values into a new table of the specified size.
+     *
+     * @param tableSize The new power-of-two table size.
+     */
+    private void resize(int tableSize) {
+        if (tableSize > MAXIMUM_TABLE_SIZE || tableSize <= 0) {
+            throw new IllegalStateException("The set cannot grow beyond " + this.size + " values");
+        }
+        long[] oldSlots = this.slots;
+        this.allocate(tableSize);
+        for (long value : oldSlots) {
+            if (value != 0L) {
+                int index = slotFor(value, this.mask);
+                while (this.slots[index] != 0L) {
+                    index = (index + 1) & this.mask;
+                }
+                this.slots[index] = value;
+            }
+        }
+    }
+
+    /**
+     * Empties the specified slot and shifts back any following entries that
+     * would otherwise no longer be reachable from their home slot.
+     *
+     * @param index The index of the slot to empty.
+     */
+    private void shiftBack(int index) {
+        int gap = index;
+        for (int next = (gap + 1) & this.mask;; next = (next + 1) & this.mask) {
+            long value = this.slots[next];
+            if (value == 0L) {
+                break;
+            }
+            // move the entry into the gap unless its home slot lies
+            // cyclically after the gap and at or before its current slot
+            int home = slotFor(value, this.mask);
+            if (((next - home) & this.mask) >= ((next - gap) & this.mask)) {
+                this.slots[gap] = value;
+                gap = next;
+            }
+        }
+        this.slots[gap] = 0L;
+    }
+}
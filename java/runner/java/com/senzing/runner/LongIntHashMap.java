@@ -0,0 +1,342 @@
+package com.senzing.runner;
+
+import java.util.Arrays;
+
+import static com.senzing.runner.LongHashSet.slotFor;
+import static com.senzing.runner.LongHashSet.tableSizeFor;
+
+/**
+ * A map of primitive <code>long</code> keys (e.g.: entity IDs) to
+ * <code>int</code> values (e.g.: counters) using open addressing with
+ * linear probing in parallel arrays, so each entry takes about sixteen
+ * bytes rather than the seventy or more of a boxed {@link java.util.HashMap}
+ * entry.
+ *
+ * <p>
+ * As with {@link LongHashSet}, zero marks an empty key slot so the entry
+ * for the key zero is held separately, and removal shifts the following
+ * entries back rather than leaving tombstones.
+ *
+ * <p>
+ * This class is <b>not</b> thread-safe.
+ */
+public class LongIntHashMap {
+    /**
+     * Receives the entries of the map.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        /**
+         * Accepts an entry of the map.
+         *
+         * @param key   The key of the entry.
+         * @param value The value of the entry.
+         */
+        void accept(long key, int value);
+    }
+
+    /**
+     * The default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The maximum fraction of the slots that may be occupied before the
+     * table is doubled.
+     */
+    private static final double LOAD_FACTOR = 0.75;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size = 0;
+    private int resizeThreshold;
+    private boolean containsZero = false;
+    private int zeroValue = 0;
+
+    /**
+     * Constructs with the default initial capacity.
+     */
+    public LongIntHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs with room for the specified number of entries before the
+     * table must grow.
+     *
+     * @param expectedSize The expected number of entries.
+     */
+    public LongIntHashMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException(
+                    "The expected size cannot be negative: " + expectedSize);
+        }
+        this.allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Gets the number of entries in the map.
+     *
+     * @return The number of entries in the map.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Checks if the map is empty.
+     *
+     * @return <code>true</code> if the map is empty, otherwise
+     *         <code>false</code>.
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Checks if the map has an entry for the specified key.
+     *
+     * @param key The key to check for.
+     *
+     * @return <code>true</code> if the map has an entry for the key,
+     *         otherwise <code>false</code>.
+     */
+    public boolean containsKey(long key) {
+        return (key == 0L) ? this.containsZero : this.find(key) >= 0;
+    }
+
+    /**
+     * Gets the value for the specified key, or the specified default value
+     * if the map has no entry for the key.
+     *
+     * @param key          The key to look up.
+     * @param defaultValue The value to return if there is no entry.
+     *
+     * @return The value for the key, or the default value if none.
+     */
+    public int getOrDefault(long key, int defaultValue) {
+        if (key == 0L) {
+            return this.containsZero ? this.zeroValue : defaultValue;
+        }
+        int index = this.find(key);
+        return (index < 0) ? defaultValue : this.values[index];
+    }
+
+    /**
+     * Sets the value for the specified key.
+     *
+     * @param key   The key of the entry.
+     * @param value The value for the key.
+     */
+    public void put(long key, int value) {
+        if (key == 0L) {
+            if (!this.containsZero) {
+                this.containsZero = true;
+                this.size++;
+            }
+            this.zeroValue = value;
+            return;
+        }
+        int index = this.findOrInsert(key);
+        this.values[index] = value;
+    }
+
+    /**
+     * Adds the specified amount to the value for the specified key, treating
+     * a missing entry as zero.
+     *
+     * @param key    The key of the entry.
+     * @param amount The amount to add.
+     *
+     * @return The new value for the key.
+     */
+    public int addTo(long key, int amount) {
+        if (key == 0L) {
+            if (!this.containsZero) {
+                this.containsZero = true;
+                this.size++;
+            }
+            this.zeroValue += amount;
+            return this.zeroValue;
+        }
+        int index = this.findOrInsert(key);
+        this.values[index] += amount;
+        return this.values[index];
+    }
+
+    /**
+     * Increments the value for the specified key, treating a missing entry
+     * as zero.
+     *
+     * @param key The key of the entry.
+     *
+     * @return The new value for the key.
+     */
+    public int increment(long key) {
+        return this.addTo(key, 1);
+    }
+
+    /**
+     * Removes the entry for the specified key.
+     *
+     * @param key The key of the entry to remove.
+     *
+     * @return <code>true</code> if the entry was removed, or
+     *         <code>false</code> if there was no entry for the key.
+     */
+    public boolean remove(long key) {
+        if (key == 0L) {
+            if (!this.containsZero) {
+                return false;
+            }
+            this.containsZero = false;
+            this.zeroValue = 0;
+            this.size--;
+            return true;
+        }
+        int index = this.find(key);
+        if (index < 0) {
+            return false;
+        }
+        this.shiftBack(index);
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Removes all entries from the map, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(this.keys, 0L);
+        Arrays.fill(this.values, 0);
+        this.containsZero = false;
+        this.zeroValue = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Calls the specified {@link EntryConsumer} with each entry in the map,
+     * in no particular order.
+     *
+     * @param consumer The {@link EntryConsumer} to call with each entry.
+     */
+    public void forEach(EntryConsumer consumer) {
+        if (this.containsZero) {
+            consumer.accept(0L, this.zeroValue);
+        }
+        for (int index = 0; index < this.keys.length; index++) {
+            if (this.keys[index] != 0L) {
+                consumer.accept(this.keys[index], this.values[index]);
+            }
+        }
+    }
+
+    /**
+     * Finds the slot for the specified non-zero key.
+     *
+     * @param key The key to find.
+     *
+     * @return The index of the slot, or <code>-1</code> if not found.
+     */
+    private int find(long key) {
+        for (int index = slotFor(key, this.mask);; index = (index + 1) & this.mask) {
+            long slot = this.keys[index];
+            if (slot == key) {
+                return index;
+            }
+            if (slot == 0L) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Finds the slot for the specified non-zero key, inserting it with a
+     * value of zero if not found.
+     *
+     * @param key The key to find or insert.
+     *
+     * @return The index of the slot.
+     */
+    private int findOrInsert(long key) {
+        for (int index = slotFor(key, this.mask);; index = (index + 1) & this.mask) {
+            long slot = this.keys[index];
+            if (slot == key) {
+                return index;
+            }
+            if (slot == 0L) {
+                if (this.size + 1 > this.resizeThreshold) {
+                    // grow first and then probe again in the new table
+                    this.resize(this.keys.length * 2);
+                    return this.findOrInsert(key);
+                }
+                this.keys[index] = key;
+                this.values[index] = 0;
+                this.size++;
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Allocates an empty table of the specified size.
+     *
+     * @param tableSize The power-of-two table size.
+     */
+    private void allocate(int tableSize) {
+        this.keys = new long[tableSize];
+        this.values = new int[tableSize];
+        this.mask = tableSize - 1;
+        this.resizeThreshold = (int) (tableSize * LOAD_FACTOR);
+    }
+
+    /**
+     * Moves the entries into a new table of the specified size.
+     *
+     * @param tableSize The new power-of-two table size.
+     */
+    private void resize(int tableSize) {
+        if (tableSize <= 0) {
+            throw new IllegalStateException("The map cannot grow beyond " + this.size + " entries");
+        }
+        long[] oldKeys = this.keys;
+        int[] oldValues = this.values;
+        this.allocate(tableSize);
+        for (int oldIndex = 0; oldIndex < oldKeys.length; oldIndex++) {
+            long key = oldKeys[oldIndex];
+            if (key != 0L) {
+                int index = slotFor(key, this.mask);
+                while (this.keys[index] != 0L) {
+                    index = (index + 1) & this.mask;
+                }
+                this.keys[index] = key;
+                this.values[index] = oldValues[oldIndex];
+            }
+        }
+    }
+
+    /**
+     * Empties the specified slot and shifts back any following entries that
+     * would otherwise no longer be reachable from their home slot.
+     *
+     * @param index The index of the slot to empty.
+     */
+    private void shiftBack(int index) {
+        int gap = index;
+        for (int next = (gap + 1) & this.mask;; next = (next + 1) & this.mask) {
+            long key = this.keys[next];
+            if (key == 0L) {
+                break;
+            }
+            int home = slotFor(key, this.mask);
+            if (((next - home) & this.mask) >= ((next - gap) & this.mask)) {
+                this.keys[gap] = key;
+                this.values[gap] = this.values[next];
+                gap = next;
+            }
+        }
+        this.keys[gap] = 0L;
+        this.values[gap] = 0;
+    }
+}
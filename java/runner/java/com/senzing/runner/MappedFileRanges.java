@@ -0,0 +1,283 @@
+package com.senzing.runner;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.READ;
+import static com.senzing.runner.Utilities.UTF_8_CHARSET;
+
+/**
+ * Splits a line-oriented text file (e.g.: a JSON-lines file) into byte
+ * ranges that are aligned to line boundaries so that each range can be
+ * read concurrently by its own {@link LineReader} over a memory-mapped
+ * view of the file.  The original line number of the first line in each
+ * range is computed up front so that every line read can still be
+ * reported by its line number in the whole file.
+ */
+public class MappedFileRanges {
+    /**
+     * The maximum nominal size of a single range.  A range is extended to
+     * the end of its last line so this is kept well below the 2GB limit on
+     * the size of a single memory mapping.
+     */
+    public static final long MAXIMUM_RANGE_SIZE = 1L << 30;
+
+    /**
+     * The size of the buffer used to scan for line boundaries.
+     */
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    /**
+     * The UTF-8 byte order mark.
+     */
+    private static final byte[] UTF_8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    /**
+     * Describes a range of bytes within a file that begins at the start of
+     * a line and ends just after a line terminator (or at the end of the
+     * file).
+     *
+     * @param file            The {@link File} containing the range.
+     * @param index           The zero-based index of the range in the file.
+     * @param start           The byte offset of the start of the range.
+     * @param end             The byte offset of the end of the range (exclusive).
+     * @param firstLineNumber The one-based line number in the whole file of
+     *                        the first line in the range.
+     */
+    public record LineRange(File file, int index, long start, long end, long firstLineNumber) {
+        /**
+         * Memory-maps this range and opens a {@link LineReader} over it.
+         *
+         * @return The {@link LineReader} for reading the lines in the range.
+         *
+         * @throws IOException If an I/O failure occurs.
+         */
+        public LineReader openReader() throws IOException {
+            return new LineReader(this);
+        }
+    }
+
+    /**
+     * Splits the specified file into the specified number of ranges aligned
+     * to line boundaries.  More ranges than requested may be returned if the
+     * file is too large to map in that many ranges and fewer may be returned
+     * if the file has too few lines.  The lines in each range are counted in
+     * parallel to determine the line number at the start of each range.
+     *
+     * @param file       The {@link File} to split.
+     * @param rangeCount The requested number of ranges.
+     *
+     * @return The {@link List} of {@link LineRange} instances in file order.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    public static List<LineRange> split(File file, int rangeCount) throws IOException {
+        if (rangeCount < 1) {
+            throw new IllegalArgumentException("The range count must be positive: " + rangeCount);
+        }
+        long[] bounds;
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            long size = channel.size();
+            long minimumCount = (size + MAXIMUM_RANGE_SIZE - 1) / MAXIMUM_RANGE_SIZE;
+            int count = (int) Math.max(rangeCount, minimumCount);
+
+            // find the line-aligned boundaries, dropping any empty ranges
+            long[] candidates = new long[count + 1];
+            int boundCount = 1;
+            for (int index = 1; index < count; index++) {
+                long bound = nextLineStart(channel, (size * index) / count, size);
+                if (bound > candidates[boundCount - 1] && bound < size) {
+                    candidates[boundCount++] = bound;
+                }
+            }
+            candidates[boundCount++] = size;
+            bounds = Arrays.copyOf(candidates, boundCount);
+        }
+
+        // count the lines in each range in parallel
+        int count = bounds.length - 1;
+        long[] lineCounts = new long[count];
+        try {
+            IntStream.range(0, count).parallel().forEach(index -> {
+                try {
+                    lineCounts[index] = countLines(file, bounds[index], bounds[index + 1]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        // build the ranges with their starting line numbers
+        List<LineRange> ranges = new ArrayList<>(count);
+        long lineNumber = 1L;
+        for (int index = 0; index < count; index++) {
+            ranges.add(new LineRange(file, index, bounds[index], bounds[index + 1], lineNumber));
+            lineNumber += lineCounts[index];
+        }
+        return ranges;
+    }
+
+    /**
+     * Finds the offset of the start of the first line at or after the
+     * specified offset.
+     *
+     * @param channel The {@link FileChannel} to read from.
+     * @param offset  The offset to start from.
+     * @param size    The size of the file.
+     *
+     * @return The offset of the start of the line, or the file size if none.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    private static long nextLineStart(FileChannel channel, long offset, long size)
+            throws IOException {
+        if (offset == 0L) {
+            return 0L;
+        }
+        // start from the previous byte in case the offset is a line start
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = offset - 1;
+        while (position < size) {
+            buffer.clear();
+            int readCount = channel.read(buffer, position);
+            if (readCount <= 0) {
+                break;
+            }
+            for (int index = 0; index < readCount; index++) {
+                if (buffer.get(index) == '\n') {
+                    return position + index + 1;
+                }
+            }
+            position += readCount;
+        }
+        return size;
+    }
+
+    /**
+     * Counts the line terminators in the specified range of the file.
+     *
+     * @param file  The {@link File} to read from.
+     * @param start The start offset of the range.
+     * @param end   The end offset of the range (exclusive).
+     *
+     * @return The number of line terminators in the range.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    private static long countLines(File file, long start, long end) throws IOException {
+        MappedByteBuffer buffer = map(file, start, end);
+        long count = 0L;
+        for (int index = 0, limit = buffer.limit(); index < limit; index++) {
+            if (buffer.get(index) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Memory-maps the specified range of the specified file as read-only.
+     * The mapping remains valid after the channel is closed.
+     */
+    private static MappedByteBuffer map(File file, long start, long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+            return channel.map(READ_ONLY, start, end - start);
+        }
+    }
+
+    /**
+     * Reads the UTF-8 lines from a memory-mapped {@link LineRange}, tracking
+     * the line number of each line within the whole file.  Instances are
+     * <b>not</b> thread-safe and are intended to be used by a single reader
+     * thread.
+     */
+    public static class LineReader {
+        /**
+         * The mapped bytes of the range.
+         */
+        private MappedByteBuffer buffer;
+
+        /**
+         * The reusable buffer for the bytes of the current line.
+         */
+        private byte[] lineBytes = new byte[SCAN_BUFFER_SIZE];
+
+        /**
+         * The line number of the most recently read line.
+         */
+        private long lineNumber;
+
+        /**
+         * Constructs with the {@link LineRange} to read.
+         *
+         * @param range The {@link LineRange} to read.
+         *
+         * @throws IOException If an I/O failure occurs.
+         */
+        private LineReader(LineRange range) throws IOException {
+            this.buffer = map(range.file(), range.start(), range.end());
+            this.lineNumber = range.firstLineNumber() - 1;
+
+            // skip the byte order mark at the start of the file
+            if (range.start() == 0L && this.buffer.limit() >= UTF_8_BOM.length
+                    && this.buffer.get(0) == UTF_8_BOM[0]
+                    && this.buffer.get(1) == UTF_8_BOM[1]
+                    && this.buffer.get(2) == UTF_8_BOM[2]) {
+                this.buffer.position(UTF_8_BOM.length);
+            }
+        }
+
+        /**
+         * Reads the next line from the range without its line terminator.
+         *
+         * @return The next line, or <code>null</code> if the end of the
+         *         range has been reached.
+         */
+        public String readLine() {
+            MappedByteBuffer buf = this.buffer;
+            int start = buf.position();
+            int limit = buf.limit();
+            if (start >= limit) {
+                return null;
+            }
+
+            // find the end of the line
+            int end = start;
+            while (end < limit && buf.get(end) != '\n') {
+                end++;
+            }
+            buf.position((end < limit) ? end + 1 : end);
+            this.lineNumber++;
+
+            // drop the carriage return of a CRLF terminator
+            int length = end - start;
+            if (length > 0 && buf.get(end - 1) == '\r') {
+                length--;
+            }
+
+            // copy the line bytes and decode them
+            if (length > this.lineBytes.length) {
+                this.lineBytes = new byte[Math.max(length, this.lineBytes.length * 2)];
+            }
+            buf.get(start, this.lineBytes, 0, length);
+            return new String(this.lineBytes, 0, length, UTF_8_CHARSET);
+        }
+
+        /**
+         * Gets the line number within the whole file of the line most
+         * recently returned from {@link #readLine()}.
+         *
+         * @return The line number of the most recently read line.
+         */
+        public long getLineNumber() {
+            return this.lineNumber;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.senzing.runner;
+
+import java.io.*;
+
+import static com.senzing.runner.Utilities.UTF_8_CHARSET;
+
+/**
+ * Reads the UTF-8 lines from a file while tracking both the line number and
+ * the byte offset just past the most recently read line, so that reading can
+ * later be resumed from that exact position.  Instances are <b>not</b>
+ * thread-safe and are intended to be used by a single reader thread.
+ */
+public class OffsetLineReader implements Closeable {
+    /**
+     * The size of the buffer used to read from the file.
+     */
+    private static final int READ_BUFFER_SIZE = 65536;
+
+    /**
+     * The initial size of the buffer for the bytes of the current line.
+     */
+    private static final int LINE_BUFFER_SIZE = 8192;
+
+    /**
+     * The UTF-8 byte order mark.
+     */
+    private static final byte[] UTF_8_BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    /**
+     * The underlying {@link FileInputStream}.
+     */
+    private FileInputStream fis;
+
+    /**
+     * The buffer of bytes read from the file.
+     */
+    private byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+
+    /**
+     * The position of the next unread byte in the read buffer.
+     */
+    private int readPosition = 0;
+
+    /**
+     * The number of valid bytes in the read buffer.
+     */
+    private int readLimit = 0;
+
+    /**
+     * The reusable buffer for the bytes of the current line.
+     */
+    private byte[] lineBytes = new byte[LINE_BUFFER_SIZE];
+
+    /**
+     * The line number of the most recently read line.
+     */
+    private long lineNumber;
+
+    /**
+     * The byte offset just past the most recently read line.
+     */
+    private long offset;
+
+    /**
+     * Constructs to read the specified file from the beginning.
+     *
+     * @param file The {@link File} to read.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    public OffsetLineReader(File file) throws IOException {
+        this(file, 0L, 0L);
+    }
+
+    /**
+     * Constructs to read the specified file starting at the specified byte
+     * offset, which must be the start of a line.  The specified line number
+     * is that of the line ending just before the offset so that the first
+     * line read is numbered one higher.
+     *
+     * @param file       The {@link File} to read.
+     * @param offset     The byte offset at which to start reading.
+     * @param lineNumber The line number of the line before the offset.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    public OffsetLineReader(File file, long offset, long lineNumber) throws IOException {
+        if (offset < 0L || lineNumber < 0L) {
+            throw new IllegalArgumentException(
+                    "The offset and line number cannot be negative (offset / line number): "
+                            + offset + " / " + lineNumber);
+        }
+        this.fis = new FileInputStream(file);
+        try {
+            this.fis.getChannel().position(offset);
+        } catch (IOException e) {
+            this.fis.close();
+            throw e;
+        }
+        this.offset = offset;
+        this.lineNumber = lineNumber;
+
+        // skip the byte order mark at the start of the file
+        if (offset == 0L && this.fill(UTF_8_BOM.length)
+                && this.readBuffer[0] == UTF_8_BOM[0]
+                && this.readBuffer[1] == UTF_8_BOM[1]
+                && this.readBuffer[2] == UTF_8_BOM[2]) {
+            this.readPosition = UTF_8_BOM.length;
+            this.offset = UTF_8_BOM.length;
+        }
+    }
+
+    /**
+     * Reads the next line without its line terminator.
+     *
+     * @return The next line, or <code>null</code> if the end of the file has
+     *         been reached.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    public String readLine() throws IOException {
+        int length = 0;
+        boolean terminated = false;
+        while (!terminated) {
+            if (this.readPosition >= this.readLimit && !this.fill(1)) {
+                break;
+            }
+
+            // find the end of the line in the buffered bytes
+            int start = this.readPosition;
+            int end = start;
+            while (end < this.readLimit && this.readBuffer[end] != '\n') {
+                end++;
+            }
+            terminated = (end < this.readLimit);
+
+            // append the bytes to the line buffer
+            int count = end - start;
+            if (length + count > this.lineBytes.length) {
+                byte[] bytes = new byte[Math.max(length + count, this.lineBytes.length * 2)];
+                System.arraycopy(this.lineBytes, 0, bytes, 0, length);
+                this.lineBytes = bytes;
+            }
+            System.arraycopy(this.readBuffer, start, this.lineBytes, length, count);
+            length += count;
+
+            // consume the bytes including the line terminator
+            int consumed = (terminated) ? count + 1 : count;
+            this.readPosition += consumed;
+            this.offset += consumed;
+        }
+
+        if (!terminated && length == 0) {
+            return null;
+        }
+        this.lineNumber++;
+
+        // drop the carriage return of a CRLF terminator
+        if (length > 0 && this.lineBytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(this.lineBytes, 0, length, UTF_8_CHARSET);
+    }
+
+    /**
+     * Gets the line number of the line most recently returned from {@link
+     * #readLine()}.
+     *
+     * @return The line number of the most recently read line.
+     */
+    public long getLineNumber() {
+        return this.lineNumber;
+    }
+
+    /**
+     * Gets the byte offset just past the line (including its terminator)
+     * most recently returned from {@link #readLine()}.  This is the offset
+     * at which the next line starts.
+     *
+     * @return The byte offset just past the most recently read line.
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Ensures at least the specified number of unread bytes are buffered
+     * unless the end of the file is reached first.
+     *
+     * @param minimum The minimum number of unread bytes.
+     *
+     * @return <code>true</code> if at least the specified number of bytes are
+     *         buffered, otherwise <code>false</code>.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    private boolean fill(int minimum) throws IOException {
+        // shift any unread bytes to the front of the buffer
+        int remaining = this.readLimit - this.readPosition;
+        if (remaining > 0 && this.readPosition > 0) {
+            System.arraycopy(this.readBuffer, this.readPosition, this.readBuffer, 0, remaining);
+        }
+        this.readPosition = 0;
+        this.readLimit = Math.max(remaining, 0);
+
+        while (this.readLimit < minimum) {
+            int readCount = this.fis.read(
+                    this.readBuffer, this.readLimit, this.readBuffer.length - this.readLimit);
+            if (readCount < 0) {
+                return false;
+            }
+            this.readLimit += readCount;
+        }
+        return true;
+    }
+
+    /**
+     * Closes the underlying file.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        this.fis.close();
+    }
+}
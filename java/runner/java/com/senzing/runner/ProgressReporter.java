@@ -0,0 +1,288 @@
+package com.senzing.runner;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Periodically prints the progress of a long-running, file-driven process
+ * from a background daemon thread: the completion rate (both for the last
+ * interval and as an exponentially weighted moving average), the number of
+ * operations in flight, the error and retry rates, and the bytes of the
+ * input file consumed with an estimated time remaining.
+ *
+ * <p>
+ * The processing threads only update {@link LongAdder} and {@link
+ * AtomicLong} counters, so reporting adds no locking to the hot path.  All
+ * rates are derived by the reporting thread from the change in the
+ * counters between intervals.
+ */
+public class ProgressReporter implements Closeable {
+    /**
+     * The default number of milliseconds between progress reports.
+     */
+    public static final long DEFAULT_INTERVAL = 10000L;
+
+    /**
+     * The time constant in milliseconds of the moving averages, roughly the
+     * period over which they "remember" the rate.
+     */
+    private static final double EWMA_TIME_CONSTANT = 60000.0;
+
+    /**
+     * The number of bytes in a megabyte.
+     */
+    private static final double ONE_MEGABYTE = 1024.0 * 1024.0;
+
+    private final String unit;
+    private final long interval;
+    private final PrintStream out;
+
+    private final LongAdder submittedCount = new LongAdder();
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+    private final LongAdder retriedCount = new LongAdder();
+    private final AtomicLong bytesConsumed = new AtomicLong(0L);
+
+    private ScheduledExecutorService scheduler = null;
+    private long totalBytes = 0L;
+    private long startTime;
+
+    // these are only accessed by the reporting thread (or after it stops)
+    private long lastTime;
+    private long lastCompleted;
+    private long lastFailed;
+    private long lastRetried;
+    private long lastBytes;
+    private double rateAverage = -1.0;
+    private double byteRateAverage = -1.0;
+
+    /**
+     * Constructs with the unit describing what is counted (e.g.:
+     * <code>"records"</code>) and the {@linkplain #DEFAULT_INTERVAL default
+     * interval}, reporting to {@link System#out}.
+     *
+     * @param unit The unit describing what is counted.
+     */
+    public ProgressReporter(String unit) {
+        this(unit, DEFAULT_INTERVAL, System.out);
+    }
+
+    /**
+     * Constructs with the unit describing what is counted, the interval
+     * between reports and the {@link PrintStream} to report to.
+     *
+     * @param unit     The unit describing what is counted.
+     * @param interval The number of milliseconds between reports.
+     * @param out      The {@link PrintStream} to report to.
+     */
+    public ProgressReporter(String unit, long interval, PrintStream out) {
+        if (interval <= 0L) {
+            throw new IllegalArgumentException("The interval must be positive: " + interval);
+        }
+        this.unit = unit;
+        this.interval = interval;
+        this.out = out;
+    }
+
+    /**
+     * Starts reporting progress through an input of the specified size.
+     *
+     * @param totalBytes   The total number of bytes in the input, or zero if
+     *                     unknown.
+     * @param initialBytes The number of bytes already consumed (e.g.: when
+     *                     resuming from a checkpoint).
+     */
+    public synchronized void start(long totalBytes, long initialBytes) {
+        if (this.scheduler != null) {
+            throw new IllegalStateException("Already started");
+        }
+        this.totalBytes = totalBytes;
+        this.bytesConsumed.set(initialBytes);
+        this.lastBytes = initialBytes;
+        this.startTime = System.nanoTime();
+        this.lastTime = this.startTime;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(
+                this::report, this.interval, this.interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records that an operation has been submitted and is now in flight.
+     */
+    public void submitted() {
+        this.submittedCount.increment();
+    }
+
+    /**
+     * Records that an in-flight operation has completed, whatever its
+     * outcome.
+     */
+    public void completed() {
+        this.completedCount.increment();
+    }
+
+    /**
+     * Records that a completed operation failed.
+     */
+    public void failed() {
+        this.failedCount.increment();
+    }
+
+    /**
+     * Records that a failed operation is being retried.
+     */
+    public void retried() {
+        this.retriedCount.increment();
+    }
+
+    /**
+     * Sets the number of bytes of the input consumed so far (e.g.: the
+     * offset of the reader).
+     *
+     * @param bytes The number of bytes consumed so far.
+     */
+    public void setBytesConsumed(long bytes) {
+        this.bytesConsumed.set(bytes);
+    }
+
+    /**
+     * Wraps the specified {@link InputStream} so that the bytes read from it
+     * are counted as consumed.  When it is read through a buffered reader the
+     * count runs ahead of what has been processed by at most the size of the
+     * reader's buffer.
+     *
+     * @param inputStream The {@link InputStream} to wrap.
+     *
+     * @return The wrapping {@link InputStream}.
+     */
+    public InputStream track(InputStream inputStream) {
+        return new FilterInputStream(inputStream) {
+            @Override
+            public int read() throws IOException {
+                int result = super.read();
+                if (result >= 0) {
+                    bytesConsumed.incrementAndGet();
+                }
+                return result;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int result = super.read(buffer, offset, length);
+                if (result > 0) {
+                    bytesConsumed.addAndGet(result);
+                }
+                return result;
+            }
+
+            @Override
+            public long skip(long count) throws IOException {
+                long result = super.skip(count);
+                bytesConsumed.addAndGet(result);
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Stops reporting and prints a final report.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.scheduler == null) {
+            return;
+        }
+        this.scheduler.shutdownNow();
+        try {
+            this.scheduler.awaitTermination(this.interval, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignore) {
+            // ignore the interruption
+        }
+        this.scheduler = null;
+        this.report();
+    }
+
+    /**
+     * Prints a progress report from the change in the counters since the
+     * previous report.
+     */
+    private void report() {
+        long now = System.nanoTime();
+        long completed = this.completedCount.sum();
+        long failed = this.failedCount.sum();
+        long retried = this.retriedCount.sum();
+        long submitted = this.submittedCount.sum();
+        long bytes = this.bytesConsumed.get();
+
+        double elapsedMillis = (now - this.lastTime) / 1000000.0;
+        if (elapsedMillis <= 0.0) {
+            return;
+        }
+        double seconds = elapsedMillis / 1000.0;
+        long intervalCompleted = completed - this.lastCompleted;
+        double rate = intervalCompleted / seconds;
+        double byteRate = (bytes - this.lastBytes) / seconds;
+
+        // fold this interval into the moving averages weighted by its length
+        double alpha = 1.0 - Math.exp(-elapsedMillis / EWMA_TIME_CONSTANT);
+        this.rateAverage = (this.rateAverage < 0.0)
+                ? rate : this.rateAverage + alpha * (rate - this.rateAverage);
+        this.byteRateAverage = (this.byteRateAverage < 0.0)
+                ? byteRate : this.byteRateAverage + alpha * (byteRate - this.byteRateAverage);
+
+        double errorRate = (intervalCompleted == 0L)
+                ? 0.0 : (100.0 * (failed - this.lastFailed)) / intervalCompleted;
+        double retryRate = (intervalCompleted == 0L)
+                ? 0.0 : (100.0 * (retried - this.lastRetried)) / intervalCompleted;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("[%s] %,d %s | %,.0f/sec (avg %,.0f/sec) | in-flight %,d"
+                + " | errors %.2f%% | retries %.2f%%",
+                formatDuration((now - this.startTime) / 1000000L),
+                completed, this.unit, rate, this.rateAverage,
+                Math.max(0L, submitted - completed), errorRate, retryRate));
+
+        if (this.totalBytes > 0L) {
+            long remaining = Math.max(0L, this.totalBytes - bytes);
+            sb.append(String.format(" | %,.1f of %,.1f MB (%.1f%%)",
+                    bytes / ONE_MEGABYTE, this.totalBytes / ONE_MEGABYTE,
+                    (100.0 * bytes) / this.totalBytes));
+            if (remaining == 0L) {
+                sb.append(" | ETA done");
+            } else if (this.byteRateAverage > 0.0) {
+                sb.append(" | ETA ").append(
+                        formatDuration((long) ((remaining * 1000.0) / this.byteRateAverage)));
+            } else {
+                sb.append(" | ETA unknown");
+            }
+        }
+        this.out.println(sb);
+        this.out.flush();
+
+        this.lastTime = now;
+        this.lastCompleted = completed;
+        this.lastFailed = failed;
+        this.lastRetried = retried;
+        this.lastBytes = bytes;
+    }
+
+    /**
+     * Formats the specified number of milliseconds as hours, minutes and
+     * seconds.
+     *
+     * @param millis The number of milliseconds.
+     *
+     * @return The formatted duration.
+     */
+    private static String formatDuration(long millis) {
+        long seconds = millis / 1000L;
+        return String.format("%02d:%02d:%02d", seconds / 3600L, (seconds / 60L) % 60L, seconds % 60L);
+    }
+}
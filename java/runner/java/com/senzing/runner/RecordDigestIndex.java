@@ -0,0 +1,743 @@
+package com.senzing.runner;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import com.senzing.sdk.SzRecordKey;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+import static com.senzing.runner.Utilities.UTF_8_CHARSET;
+
+/**
+ * A compact on-disk index of record key to a digest of the record content
+ * as last successfully loaded, used to skip records that have not changed
+ * since the previous load.  The index is a memory-mapped open-addressing
+ * hash table (with linear probing) of fixed-size slots, each holding a
+ * 64-bit fingerprint of the record key, a 128-bit digest of the record
+ * content and the offset of the record key in a companion append-only key
+ * file (the index file name with a <code>".keys"</code> suffix) so that the
+ * keys in the index can be listed.
+ *
+ * <p>
+ * The index also supports syncing to a full snapshot of the records: each
+ * key in the snapshot is {@linkplain #markSeen(RecordDigest) marked as seen}
+ * and the {@linkplain #nextUnseen(int) unseen keys} are then the records to
+ * delete.  The marks are two flag bits in the key offset field of each slot
+ * so the sync needs no memory beyond the mapped table, however many keys
+ * there are.
+ *
+ * <p>
+ * The fingerprints and digests are truncated SHA-256 hashes.  A slot is
+ * marked occupied by writing its key fingerprint last, so a crash while
+ * writing can at worst leave a stale digest, which only causes the record
+ * to be loaded again.  The index only reflects what was loaded through it:
+ * if records are changed or deleted by other means then it must be rebuilt.
+ *
+ * <p>
+ * Instances are thread-safe.
+ */
+public class RecordDigestIndex implements Closeable {
+    /**
+     * The suffix appended to the index file name for the key file.
+     */
+    public static final String KEY_FILE_SUFFIX = ".keys";
+
+    /**
+     * The maximum number of slots, keeping the mapped table (1GB of slots
+     * plus the header) within the 2GB limit of a single memory mapping and
+     * every slot offset within an <code>int</code>.
+     */
+    public static final int MAXIMUM_CAPACITY = 1 << 25;
+
+    /**
+     * The magic number identifying an index file.
+     */
+    private static final long MAGIC = 0x535A444947494458L; // "SZDIGIDX"
+
+    /**
+     * The version of the index file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The size of the file header in bytes.
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * The size of a slot in bytes.
+     */
+    private static final int SLOT_SIZE = 32;
+
+    /**
+     * The offsets of the slot fields.
+     */
+    private static final int FINGERPRINT_OFFSET = 0;
+    private static final int DIGEST_HIGH_OFFSET = 8;
+    private static final int DIGEST_LOW_OFFSET = 16;
+    private static final int KEY_OFFSET_OFFSET = 24;
+
+    /**
+     * The flag bit in the key offset field marking a key as seen in the
+     * current sync.
+     */
+    private static final long SEEN_FLAG = 1L << 63;
+
+    /**
+     * The flag bit in the key offset field marking a key as deleted in the
+     * current sync, to be removed when the sync ends.
+     */
+    private static final long DELETED_FLAG = 1L << 62;
+
+    /**
+     * The mask for the key offset in the key offset field.
+     */
+    private static final long KEY_OFFSET_MASK = ~(SEEN_FLAG | DELETED_FLAG);
+
+    /**
+     * The offsets of the header fields.
+     */
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+
+    /**
+     * The initial number of slots for a new index.
+     */
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    /**
+     * The maximum ratio of occupied slots before the table is doubled.
+     */
+    private static final double MAXIMUM_LOAD_FACTOR = 0.7;
+
+    /**
+     * The suffix for the temporary file used when resizing.
+     */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * The name of the hash algorithm.
+     */
+    private static final String SHA_256 = "SHA-256";
+
+    /**
+     * The per-thread SHA-256 {@link MessageDigest}.
+     */
+    private static final ThreadLocal<MessageDigest> SHA_256_DIGEST
+            = ThreadLocal.withInitial(() -> {
+                try {
+                    return MessageDigest.getInstance(SHA_256);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+    /**
+     * The digest of a record: the fingerprint of its key and the digest of
+     * its content.
+     *
+     * @param key         The {@link SzRecordKey} for the record.
+     * @param fingerprint The 64-bit fingerprint of the record key (never zero).
+     * @param digestHigh  The high 64 bits of the content digest.
+     * @param digestLow   The low 64 bits of the content digest.
+     */
+    public record RecordDigest(SzRecordKey key, long fingerprint, long digestHigh, long digestLow) {
+    }
+
+    private final File indexFile;
+    private final File keyFile;
+    private FileChannel keyChannel;
+    private MappedByteBuffer table;
+    private int capacity;
+    private int size;
+
+    /**
+     * Opens the specified index file, creating it if it does not exist.
+     *
+     * @param indexFile The index {@link File}.
+     *
+     * @throws IOException If an I/O failure occurs.
+     *
+     * @throws IllegalStateException If the file exists but is not an index.
+     */
+    public RecordDigestIndex(File indexFile) throws IOException {
+        this.indexFile = indexFile;
+        this.keyFile = new File(indexFile.getPath() + KEY_FILE_SUFFIX);
+
+        if (!indexFile.exists() || indexFile.length() == 0L) {
+            this.table = createTable(indexFile.toPath(), INITIAL_CAPACITY);
+            this.capacity = INITIAL_CAPACITY;
+            this.size = 0;
+            Files.deleteIfExists(this.keyFile.toPath());
+
+        } else {
+            this.table = mapTable(indexFile.toPath());
+            if (this.table.getLong(MAGIC_OFFSET) != MAGIC
+                    || this.table.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IllegalStateException("Not a record digest index file: " + indexFile);
+            }
+            this.capacity = this.table.getInt(CAPACITY_OFFSET);
+            if (this.capacity <= 0 || this.capacity > MAXIMUM_CAPACITY
+                    || Integer.bitCount(this.capacity) != 1) {
+                throw new IllegalStateException(
+                        "Invalid record digest index capacity (" + this.capacity
+                        + "): " + indexFile);
+            }
+
+            // count the occupied slots rather than trusting a stored count
+            this.size = 0;
+            for (int slot = 0; slot < this.capacity; slot++) {
+                if (this.table.getLong(slotOffset(slot) + FINGERPRINT_OFFSET) != 0L) {
+                    this.size++;
+                }
+            }
+        }
+        this.keyChannel = FileChannel.open(this.keyFile.toPath(), CREATE, READ, WRITE);
+    }
+
+    /**
+     * Computes the {@link RecordDigest} for the specified record.
+     *
+     * @param key        The {@link SzRecordKey} for the record.
+     * @param recordJson The JSON text of the record.
+     *
+     * @return The {@link RecordDigest} for the record.
+     */
+    public static RecordDigest digest(SzRecordKey key, String recordJson) {
+        MessageDigest sha256 = SHA_256_DIGEST.get();
+        ByteBuffer keyHash = ByteBuffer.wrap(sha256.digest(keyBytes(key)));
+        ByteBuffer contentHash = ByteBuffer.wrap(sha256.digest(recordJson.getBytes(UTF_8_CHARSET)));
+
+        // zero marks an empty slot so never use it as a fingerprint
+        long fingerprint = keyHash.getLong(0);
+        if (fingerprint == 0L) {
+            fingerprint = 1L;
+        }
+        return new RecordDigest(key, fingerprint, contentHash.getLong(0), contentHash.getLong(8));
+    }
+
+    /**
+     * Checks if the index holds the same content digest for the record key
+     * as the specified {@link RecordDigest}.
+     *
+     * @param digest The {@link RecordDigest} to check.
+     *
+     * @return <code>true</code> if the record is unchanged since it was last
+     *         put, otherwise <code>false</code>.
+     */
+    public synchronized boolean isUnchanged(RecordDigest digest) {
+        int slot = this.findSlot(digest.fingerprint());
+        if (slot < 0) {
+            return false;
+        }
+        int offset = slotOffset(slot);
+        return this.table.getLong(offset + DIGEST_HIGH_OFFSET) == digest.digestHigh()
+                && this.table.getLong(offset + DIGEST_LOW_OFFSET) == digest.digestLow();
+    }
+
+    /**
+     * Checks if the index contains the specified record key.
+     *
+     * @param key The {@link SzRecordKey} to check.
+     *
+     * @return <code>true</code> if the index contains the key, otherwise
+     *         <code>false</code>.
+     */
+    public synchronized boolean contains(SzRecordKey key) {
+        return this.findSlot(fingerprint(key)) >= 0;
+    }
+
+    /**
+     * Records the specified {@link RecordDigest}, typically once the record
+     * has been successfully loaded.
+     *
+     * @param digest The {@link RecordDigest} to record.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    public synchronized void put(RecordDigest digest) throws IOException {
+        int slot = this.findSlot(digest.fingerprint());
+        if (slot >= 0) {
+            // just replace the content digest
+            int offset = slotOffset(slot);
+            this.table.putLong(offset + DIGEST_HIGH_OFFSET, digest.digestHigh());
+            this.table.putLong(offset + DIGEST_LOW_OFFSET, digest.digestLow());
+            return;
+        }
+
+        this.insert(digest, digest.digestHigh(), digest.digestLow());
+    }
+
+    /**
+     * Starts syncing to a full snapshot by clearing the marks left by any
+     * previous sync, first removing the keys it had marked as deleted in
+     * case it did not end.
+     */
+    public synchronized void beginSync() {
+        this.sweep();
+    }
+
+    /**
+     * Marks the key of the specified {@link RecordDigest} as seen in the
+     * snapshot being synced.  A key that is not in the index is added with
+     * no content digest (so that it is never unchanged) until it is {@linkplain
+     * #put(RecordDigest) put} once the record is successfully added.  This
+     * way every key in the snapshot is in the index before the {@linkplain
+     * #nextUnseen(int) unseen keys} are listed, and the slots do not move
+     * while they are.
+     *
+     * @param digest The {@link RecordDigest} for the record in the snapshot.
+     *
+     * @return <code>true</code> if the record is unchanged since it was last
+     *         put, otherwise <code>false</code>.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    public synchronized boolean markSeen(RecordDigest digest) throws IOException {
+        int slot = this.findSlot(digest.fingerprint());
+        if (slot < 0) {
+            slot = this.insert(digest, 0L, 0L);
+        }
+        int offset = slotOffset(slot);
+        long keyOffset = this.table.getLong(offset + KEY_OFFSET_OFFSET);
+        this.table.putLong(offset + KEY_OFFSET_OFFSET, keyOffset | SEEN_FLAG);
+
+        return this.table.getLong(offset + DIGEST_HIGH_OFFSET) == digest.digestHigh()
+                && this.table.getLong(offset + DIGEST_LOW_OFFSET) == digest.digestLow();
+    }
+
+    /**
+     * Finds the next slot at or after the specified slot holding a key that
+     * has not been {@linkplain #markSeen(RecordDigest) marked as seen} in the
+     * current sync.  Start with slot zero and continue with one past the
+     * previously returned slot.
+     *
+     * @param fromSlot The slot to start from.
+     *
+     * @return The slot index, or <code>-1</code> if there are no more.
+     */
+    public synchronized int nextUnseen(int fromSlot) {
+        for (int slot = Math.max(0, fromSlot); slot < this.capacity; slot++) {
+            int offset = slotOffset(slot);
+            if (this.table.getLong(offset + FINGERPRINT_OFFSET) != 0L
+                    && (this.table.getLong(offset + KEY_OFFSET_OFFSET) & SEEN_FLAG) == 0L) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the record key held in the specified slot.
+     *
+     * @param slot The slot index (e.g.: from {@link #nextUnseen(int)}).
+     *
+     * @return The {@link SzRecordKey} for the slot.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    public synchronized SzRecordKey getKey(int slot) throws IOException {
+        int offset = slotOffset(slot);
+        if (slot < 0 || slot >= this.capacity
+                || this.table.getLong(offset + FINGERPRINT_OFFSET) == 0L) {
+            throw new IllegalArgumentException("No key in slot: " + slot);
+        }
+        return this.readKey(this.table.getLong(offset + KEY_OFFSET_OFFSET) & KEY_OFFSET_MASK);
+    }
+
+    /**
+     * Marks the specified record key as deleted in the current sync, which
+     * removes it from the index when the sync {@linkplain #endSync() ends}.
+     *
+     * @param key The {@link SzRecordKey} that was deleted.
+     *
+     * @return <code>true</code> if the key was marked, or <code>false</code>
+     *         if it was not in the index.
+     */
+    public synchronized boolean markDeleted(SzRecordKey key) {
+        int slot = this.findSlot(fingerprint(key));
+        if (slot < 0) {
+            return false;
+        }
+        int offset = slotOffset(slot);
+        long keyOffset = this.table.getLong(offset + KEY_OFFSET_OFFSET);
+        this.table.putLong(offset + KEY_OFFSET_OFFSET, keyOffset | DELETED_FLAG);
+        return true;
+    }
+
+    /**
+     * Ends the current sync by removing the keys marked as deleted and
+     * clearing the marks.
+     */
+    public synchronized void endSync() {
+        this.sweep();
+    }
+
+    /**
+     * Removes the specified record key (e.g.: once the record is deleted
+     * outside of a sync).
+     *
+     * @param key The {@link SzRecordKey} to remove.
+     *
+     * @return <code>true</code> if the key was removed, or <code>false</code>
+     *         if it was not in the index.
+     */
+    public synchronized boolean remove(SzRecordKey key) {
+        int slot = this.findSlot(fingerprint(key));
+        if (slot < 0) {
+            return false;
+        }
+        this.removeSlot(slot);
+        return true;
+    }
+
+    /**
+     * Removes the entry in the specified slot.
+     *
+     * @param slot The slot index.
+     */
+    private void removeSlot(int slot) {
+        // shift back any later entries in the probe run into the gap so
+        // that lookups never stop early at an empty slot
+        int mask = this.capacity - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask;; next = (next + 1) & mask) {
+            long fingerprint = this.table.getLong(slotOffset(next) + FINGERPRINT_OFFSET);
+            if (fingerprint == 0L) {
+                break;
+            }
+            int home = ((int) fingerprint) & mask;
+            // move the entry if its home slot is not cyclically in (gap, next]
+            boolean movable = (gap <= next)
+                    ? (home <= gap || home > next)
+                    : (home <= gap && home > next);
+            if (movable) {
+                this.copySlot(next, gap);
+                gap = next;
+            }
+        }
+        this.table.putLong(slotOffset(gap) + FINGERPRINT_OFFSET, 0L);
+        this.size--;
+    }
+
+    /**
+     * Removes the keys marked as deleted and clears the seen marks.
+     */
+    private void sweep() {
+        for (int slot = 0; slot < this.capacity; slot++) {
+            int offset = slotOffset(slot);
+            // check the same slot again after a removal since a later entry
+            // may have been shifted back into it
+            while (this.table.getLong(offset + FINGERPRINT_OFFSET) != 0L) {
+                long keyOffset = this.table.getLong(offset + KEY_OFFSET_OFFSET);
+                if ((keyOffset & DELETED_FLAG) != 0L) {
+                    this.removeSlot(slot);
+                    continue;
+                }
+                if ((keyOffset & SEEN_FLAG) != 0L) {
+                    this.table.putLong(offset + KEY_OFFSET_OFFSET, keyOffset & KEY_OFFSET_MASK);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Inserts a new entry for the key of the specified {@link RecordDigest}
+     * with the specified content digest, growing the table if needed.
+     *
+     * @param digest     The {@link RecordDigest} for the key.
+     * @param digestHigh The high 64 bits of the content digest.
+     * @param digestLow  The low 64 bits of the content digest.
+     *
+     * @return The slot index of the new entry.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    private int insert(RecordDigest digest, long digestHigh, long digestLow) throws IOException {
+        if (this.size + 1 > this.capacity * MAXIMUM_LOAD_FACTOR) {
+            this.resize(this.capacity * 2);
+        }
+
+        // append the key so it can be listed later
+        long keyOffset = this.appendKey(digest.key());
+
+        // write the fingerprint last to mark the slot as occupied
+        int slot = this.emptySlot(this.table, this.capacity, digest.fingerprint());
+        int offset = slotOffset(slot);
+        this.table.putLong(offset + DIGEST_HIGH_OFFSET, digestHigh);
+        this.table.putLong(offset + DIGEST_LOW_OFFSET, digestLow);
+        this.table.putLong(offset + KEY_OFFSET_OFFSET, keyOffset);
+        this.table.putLong(offset + FINGERPRINT_OFFSET, digest.fingerprint());
+        this.size++;
+        return slot;
+    }
+
+    /**
+     * Gets the number of record keys in the index.
+     *
+     * @return The number of record keys in the index.
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * Flushes the index to disk and closes it.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.keyChannel == null) {
+            return;
+        }
+        this.table.force();
+        this.keyChannel.force(true);
+        this.keyChannel.close();
+        this.keyChannel = null;
+    }
+
+    /**
+     * Computes the fingerprint of the specified record key.
+     *
+     * @param key The {@link SzRecordKey}.
+     *
+     * @return The non-zero 64-bit fingerprint.
+     */
+    private static long fingerprint(SzRecordKey key) {
+        long fingerprint = ByteBuffer.wrap(SHA_256_DIGEST.get().digest(keyBytes(key))).getLong(0);
+        return (fingerprint == 0L) ? 1L : fingerprint;
+    }
+
+    /**
+     * Encodes the specified record key as bytes for hashing.
+     *
+     * @param key The {@link SzRecordKey}.
+     *
+     * @return The encoded bytes.
+     */
+    private static byte[] keyBytes(SzRecordKey key) {
+        return (key.dataSourceCode() + '\u0000' + key.recordId()).getBytes(UTF_8_CHARSET);
+    }
+
+    /**
+     * Finds the slot holding the specified fingerprint.
+     *
+     * @param fingerprint The fingerprint to find.
+     *
+     * @return The slot index, or <code>-1</code> if not found.
+     */
+    private int findSlot(long fingerprint) {
+        int mask = this.capacity - 1;
+        for (int slot = ((int) fingerprint) & mask;; slot = (slot + 1) & mask) {
+            long current = this.table.getLong(slotOffset(slot) + FINGERPRINT_OFFSET);
+            if (current == fingerprint) {
+                return slot;
+            }
+            if (current == 0L) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Finds the first empty slot in the probe sequence for the specified
+     * fingerprint in the specified table.
+     *
+     * @param table       The mapped table.
+     * @param capacity    The capacity of the table.
+     * @param fingerprint The fingerprint.
+     *
+     * @return The slot index.
+     */
+    private int emptySlot(MappedByteBuffer table, int capacity, long fingerprint) {
+        int mask = capacity - 1;
+        int slot = ((int) fingerprint) & mask;
+        while (table.getLong(slotOffset(slot) + FINGERPRINT_OFFSET) != 0L) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Copies the contents of one slot to another, writing the fingerprint
+     * last.
+     */
+    private void copySlot(int from, int to) {
+        int source = slotOffset(from);
+        int target = slotOffset(to);
+        this.table.putLong(target + DIGEST_HIGH_OFFSET, this.table.getLong(source + DIGEST_HIGH_OFFSET));
+        this.table.putLong(target + DIGEST_LOW_OFFSET, this.table.getLong(source + DIGEST_LOW_OFFSET));
+        this.table.putLong(target + KEY_OFFSET_OFFSET, this.table.getLong(source + KEY_OFFSET_OFFSET));
+        this.table.putLong(target + FINGERPRINT_OFFSET, this.table.getLong(source + FINGERPRINT_OFFSET));
+    }
+
+    /**
+     * Appends the specified record key to the key file.
+     *
+     * @param key The {@link SzRecordKey} to append.
+     *
+     * @return The offset of the key in the key file.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    private long appendKey(SzRecordKey key) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.writeUTF(key.dataSourceCode());
+            dos.writeUTF(key.recordId());
+        }
+        long offset = this.keyChannel.size();
+        ByteBuffer buffer = ByteBuffer.wrap(baos.toByteArray());
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += this.keyChannel.write(buffer, position);
+        }
+        return offset;
+    }
+
+    /**
+     * Reads the record key at the specified offset in the key file.
+     *
+     * @param keyOffset The offset of the key in the key file.
+     *
+     * @return The {@link SzRecordKey}.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    private SzRecordKey readKey(long keyOffset) throws IOException {
+        // each key is two length-prefixed modified UTF-8 strings
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        long position = keyOffset;
+        for (int index = 0; index < 2; index++) {
+            ByteBuffer length = this.readFully(position, 2);
+            ByteBuffer text = this.readFully(position + 2, length.getShort(0) & 0xFFFF);
+            baos.write(length.array());
+            baos.write(text.array());
+            position += 2 + text.capacity();
+        }
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        String dataSourceCode = dis.readUTF();
+        String recordId = dis.readUTF();
+        return SzRecordKey.of(dataSourceCode, recordId);
+    }
+
+    /**
+     * Reads the specified number of bytes from the key file.
+     *
+     * @param position The position to read from.
+     * @param length   The number of bytes to read.
+     *
+     * @return The {@link ByteBuffer} holding the bytes.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    private ByteBuffer readFully(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int count = this.keyChannel.read(buffer, position + buffer.position());
+            if (count < 0) {
+                throw new EOFException("Truncated key file: " + this.keyFile);
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Rebuilds the table with the specified capacity in a temporary file and
+     * then replaces the index file with it.
+     *
+     * @param newCapacity The new capacity.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    private void resize(int newCapacity) throws IOException {
+        if (newCapacity > MAXIMUM_CAPACITY) {
+            throw new IllegalStateException(
+                    "The record digest index cannot hold more than "
+                            + ((int) (MAXIMUM_CAPACITY * MAXIMUM_LOAD_FACTOR)) + " keys");
+        }
+        Path target = this.indexFile.toPath();
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        MappedByteBuffer newTable = createTable(temp, newCapacity);
+
+        for (int slot = 0; slot < this.capacity; slot++) {
+            int source = slotOffset(slot);
+            long fingerprint = this.table.getLong(source + FINGERPRINT_OFFSET);
+            if (fingerprint == 0L) {
+                continue;
+            }
+            int offset = slotOffset(this.emptySlot(newTable, newCapacity, fingerprint));
+            newTable.putLong(offset + DIGEST_HIGH_OFFSET, this.table.getLong(source + DIGEST_HIGH_OFFSET));
+            newTable.putLong(offset + DIGEST_LOW_OFFSET, this.table.getLong(source + DIGEST_LOW_OFFSET));
+            newTable.putLong(offset + KEY_OFFSET_OFFSET, this.table.getLong(source + KEY_OFFSET_OFFSET));
+            newTable.putLong(offset + FINGERPRINT_OFFSET, fingerprint);
+        }
+        newTable.force();
+
+        try {
+            Files.move(temp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, REPLACE_EXISTING);
+        }
+        this.table = newTable;
+        this.capacity = newCapacity;
+    }
+
+    /**
+     * Gets the byte offset of the specified slot in the table.
+     *
+     * @param slot The slot index.
+     *
+     * @return The byte offset.
+     */
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + (slot * SLOT_SIZE);
+    }
+
+    /**
+     * Creates a new empty table file with the specified capacity and maps it.
+     *
+     * @param path     The {@link Path} of the file.
+     * @param capacity The capacity of the table.
+     *
+     * @return The mapped table.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    private static MappedByteBuffer createTable(Path path, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE, TRUNCATE_EXISTING)) {
+            MappedByteBuffer table = channel.map(
+                    READ_WRITE, 0L, HEADER_SIZE + ((long) capacity * SLOT_SIZE));
+            table.putLong(MAGIC_OFFSET, MAGIC);
+            table.putInt(VERSION_OFFSET, VERSION);
+            table.putInt(CAPACITY_OFFSET, capacity);
+            return table;
+        }
+    }
+
+    /**
+     * Maps an existing table file.
+     *
+     * @param path The {@link Path} of the file.
+     *
+     * @return The mapped table.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    private static MappedByteBuffer mapTable(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ, WRITE)) {
+            return channel.map(READ_WRITE, 0L, channel.size());
+        }
+    }
+}
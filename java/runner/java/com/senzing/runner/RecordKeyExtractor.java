@@ -0,0 +1,409 @@
+package com.senzing.runner;
+
+import javax.json.JsonException;
+
+import com.senzing.sdk.SzRecordKey;
+
+/**
+ * Extracts the <code>"DATA_SOURCE"</code> and <code>"RECORD_ID"</code>
+ * properties from a line of JSON text (e.g.: from a JSON-lines file) in a
+ * single pass without building a {@link javax.json.JsonObject}.
+ *
+ * <p>
+ * The entire line is still validated as a JSON object so that malformed
+ * records are rejected with a {@link JsonException}, just as they would be
+ * if fully parsed.  Only top-level string values are extracted and if a
+ * property is repeated then the last occurrence wins, matching the
+ * behavior of {@link javax.json.JsonObject#getString(String, String)}.
+ */
+public class RecordKeyExtractor {
+    /**
+     * The JSON property name for the data source code.
+     */
+    public static final String DATA_SOURCE = "DATA_SOURCE";
+
+    /**
+     * The JSON property name for the record ID.
+     */
+    public static final String RECORD_ID = "RECORD_ID";
+
+    /**
+     * Extracts the {@link SzRecordKey} from the specified JSON object text.
+     * If either property is absent (or not a string) then its value in the
+     * returned key is <code>null</code>.
+     *
+     * @param jsonText The JSON text describing the record.
+     *
+     * @return The {@link SzRecordKey} for the record.
+     *
+     * @throws JsonException If the specified text is not a valid JSON object.
+     */
+    public static SzRecordKey extractRecordKey(String jsonText)
+            throws JsonException {
+        return extractRecordKey(jsonText, null);
+    }
+
+    /**
+     * Extracts the {@link SzRecordKey} from the specified JSON object text
+     * using the specified default data source code if the
+     * <code>"DATA_SOURCE"</code> property is absent (or not a string).
+     *
+     * @param jsonText          The JSON text describing the record.
+     * @param defaultDataSource The data source code to use if none is found.
+     *
+     * @return The {@link SzRecordKey} for the record.
+     *
+     * @throws JsonException If the specified text is not a valid JSON object.
+     */
+    public static SzRecordKey extractRecordKey(String jsonText, String defaultDataSource)
+            throws JsonException {
+        String dataSource = null;
+        String recordId = null;
+
+        int index = skipWhitespace(jsonText, 0);
+        index = expect(jsonText, index, '{');
+        index = skipWhitespace(jsonText, index);
+
+        if (peek(jsonText, index) == '}') {
+            index++;
+
+        } else {
+            while (true) {
+                // read the property name
+                int keyStart = index;
+                index = skipString(jsonText, index);
+                int keyEnd = index;
+
+                index = skipWhitespace(jsonText, index);
+                index = expect(jsonText, index, ':');
+                index = skipWhitespace(jsonText, index);
+
+                // skip over the value, keeping it only if it is one we want
+                int valueStart = index;
+                index = skipValue(jsonText, index);
+                boolean isString = (jsonText.charAt(valueStart) == '"');
+
+                if (nameEquals(jsonText, keyStart, keyEnd, DATA_SOURCE)) {
+                    dataSource = (isString) ? decodeString(jsonText, valueStart, index) : null;
+
+                } else if (nameEquals(jsonText, keyStart, keyEnd, RECORD_ID)) {
+                    recordId = (isString) ? decodeString(jsonText, valueStart, index) : null;
+                }
+
+                index = skipWhitespace(jsonText, index);
+                char c = peek(jsonText, index);
+                if (c == ',') {
+                    index = skipWhitespace(jsonText, index + 1);
+                    continue;
+                }
+                index = expect(jsonText, index, '}');
+                break;
+            }
+        }
+
+        // make sure there is nothing following the object
+        index = skipWhitespace(jsonText, index);
+        if (index < jsonText.length()) {
+            throw error(index, "unexpected content after JSON object");
+        }
+
+        return SzRecordKey.of((dataSource == null) ? defaultDataSource : dataSource, recordId);
+    }
+
+    /**
+     * Returns the character at the specified index, throwing an exception if
+     * the end of the text has been reached.
+     */
+    private static char peek(String text, int index) {
+        if (index >= text.length()) {
+            throw error(index, "unexpected end of JSON text");
+        }
+        return text.charAt(index);
+    }
+
+    /**
+     * Verifies the character at the specified index is the expected one and
+     * returns the index following it.
+     */
+    private static int expect(String text, int index, char expected) {
+        if (peek(text, index) != expected) {
+            throw error(index, "expected '" + expected + "'");
+        }
+        return index + 1;
+    }
+
+    /**
+     * Returns the index of the first non-whitespace character at or after
+     * the specified index.
+     */
+    private static int skipWhitespace(String text, int index) {
+        int length = text.length();
+        while (index < length) {
+            char c = text.charAt(index);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                break;
+            }
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Validates the JSON value starting at the specified index and returns
+     * the index following it.
+     */
+    private static int skipValue(String text, int index) {
+        char c = peek(text, index);
+        switch (c) {
+            case '"':
+                return skipString(text, index);
+            case '{':
+                return skipObject(text, index);
+            case '[':
+                return skipArray(text, index);
+            case 't':
+                return skipLiteral(text, index, "true");
+            case 'f':
+                return skipLiteral(text, index, "false");
+            case 'n':
+                return skipLiteral(text, index, "null");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return skipNumber(text, index);
+                }
+                throw error(index, "unexpected character '" + c + "'");
+        }
+    }
+
+    /**
+     * Validates the JSON object starting at the specified index and returns
+     * the index following it.
+     */
+    private static int skipObject(String text, int index) {
+        index = skipWhitespace(text, expect(text, index, '{'));
+        if (peek(text, index) == '}') {
+            return index + 1;
+        }
+        while (true) {
+            index = skipString(text, index);
+            index = skipWhitespace(text, index);
+            index = expect(text, index, ':');
+            index = skipWhitespace(text, index);
+            index = skipValue(text, index);
+            index = skipWhitespace(text, index);
+            if (peek(text, index) == ',') {
+                index = skipWhitespace(text, index + 1);
+                continue;
+            }
+            return expect(text, index, '}');
+        }
+    }
+
+    /**
+     * Validates the JSON array starting at the specified index and returns
+     * the index following it.
+     */
+    private static int skipArray(String text, int index) {
+        index = skipWhitespace(text, expect(text, index, '['));
+        if (peek(text, index) == ']') {
+            return index + 1;
+        }
+        while (true) {
+            index = skipValue(text, index);
+            index = skipWhitespace(text, index);
+            if (peek(text, index) == ',') {
+                index = skipWhitespace(text, index + 1);
+                continue;
+            }
+            return expect(text, index, ']');
+        }
+    }
+
+    /**
+     * Validates the JSON string starting at the specified index (which
+     * should be the opening quote) and returns the index following the
+     * closing quote.
+     */
+    private static int skipString(String text, int index) {
+        index = expect(text, index, '"');
+        while (true) {
+            char c = peek(text, index++);
+            if (c == '"') {
+                return index;
+            }
+            if (c < ' ') {
+                throw error(index - 1, "unescaped control character in string");
+            }
+            if (c == '\\') {
+                char escaped = peek(text, index++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                    case 'b':
+                    case 'f':
+                    case 'n':
+                    case 'r':
+                    case 't':
+                        break;
+                    case 'u':
+                        for (int count = 0; count < 4; count++, index++) {
+                            if (Character.digit(peek(text, index), 16) < 0) {
+                                throw error(index, "invalid unicode escape");
+                            }
+                        }
+                        break;
+                    default:
+                        throw error(index - 1, "invalid escape character");
+                }
+            }
+        }
+    }
+
+    /**
+     * Validates the JSON number starting at the specified index and returns
+     * the index following it.
+     */
+    private static int skipNumber(String text, int index) {
+        int length = text.length();
+        if (text.charAt(index) == '-') {
+            index++;
+        }
+        char c = peek(text, index);
+        if (c == '0') {
+            index++;
+        } else if (c >= '1' && c <= '9') {
+            index = skipDigits(text, index);
+        } else {
+            throw error(index, "invalid number");
+        }
+        if (index < length && text.charAt(index) == '.') {
+            index = requireDigits(text, index + 1);
+        }
+        if (index < length && (text.charAt(index) == 'e' || text.charAt(index) == 'E')) {
+            index++;
+            if (index < length && (text.charAt(index) == '+' || text.charAt(index) == '-')) {
+                index++;
+            }
+            index = requireDigits(text, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index following the run of digits at the specified index,
+     * requiring at least one digit.
+     */
+    private static int requireDigits(String text, int index) {
+        char c = peek(text, index);
+        if (c < '0' || c > '9') {
+            throw error(index, "invalid number");
+        }
+        return skipDigits(text, index);
+    }
+
+    /**
+     * Returns the index following the run of digits at the specified index.
+     */
+    private static int skipDigits(String text, int index) {
+        int length = text.length();
+        while (index < length && text.charAt(index) >= '0' && text.charAt(index) <= '9') {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Validates the JSON literal at the specified index and returns the
+     * index following it.
+     */
+    private static int skipLiteral(String text, int index, String literal) {
+        if (!text.startsWith(literal, index)) {
+            throw error(index, "invalid literal");
+        }
+        return index + literal.length();
+    }
+
+    /**
+     * Checks if the JSON string spanning the specified indices (including
+     * the quotes) is equal to the specified property name.
+     */
+    private static boolean nameEquals(String text, int start, int end, String name) {
+        int length = end - start - 2;
+        if (length == name.length()) {
+            return text.regionMatches(start + 1, name, 0, length);
+        }
+        // names with escape sequences are longer in raw form, so decode them
+        if (length > name.length() && indexOfEscape(text, start + 1, end) >= 0) {
+            return name.equals(decodeString(text, start, end));
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of the first backslash within the specified range of
+     * the text, or <code>-1</code> if there is none, without scanning past
+     * the end of the range.
+     */
+    private static int indexOfEscape(String text, int start, int end) {
+        for (int index = start; index < end; index++) {
+            if (text.charAt(index) == '\\') {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes the already-validated JSON string spanning the specified
+     * indices (including the quotes).
+     */
+    private static String decodeString(String text, int start, int end) {
+        int escapeIndex = indexOfEscape(text, start + 1, end);
+        if (escapeIndex < 0) {
+            return text.substring(start + 1, end - 1);
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        sb.append(text, start + 1, escapeIndex);
+        for (int index = escapeIndex; index < end - 1; index++) {
+            char c = text.charAt(index);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            char escaped = text.charAt(++index);
+            switch (escaped) {
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    sb.append((char) Integer.parseInt(text.substring(index + 1, index + 5), 16));
+                    index += 4;
+                    break;
+                default:
+                    sb.append(escaped);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates a {@link JsonException} describing a syntax error at the
+     * specified index.
+     */
+    private static JsonException error(int index, String message) {
+        return new JsonException("Invalid JSON at offset " + index + ": " + message);
+    }
+}
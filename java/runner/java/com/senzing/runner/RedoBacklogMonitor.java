@@ -0,0 +1,270 @@
+package com.senzing.runner;
+
+import java.io.PrintStream;
+import java.util.concurrent.*;
+import java.util.function.LongSupplier;
+
+import com.senzing.sdk.SzEngine;
+import com.senzing.sdk.SzException;
+
+/**
+ * Periodically samples the redo backlog with {@link
+ * SzEngine#countRedoRecords()} from a background daemon thread, alongside
+ * the number of redo records processed, and derives the rate the backlog
+ * is draining and an estimate of the time until it is empty.  Sampling at a
+ * low frequency from its own thread keeps the count off the redo processing
+ * path, where calling it for every redo record would be costly.
+ *
+ * <p>
+ * The drain rate is the rate the backlog shrinks (negative while it grows)
+ * and the arrival rate is the processing rate less the drain rate.  The
+ * drain rate is smoothed as an exponentially weighted moving average and
+ * the time-to-empty is the current backlog divided by it, which is unknown
+ * while the backlog is not shrinking.  Each sample is printed as a log line
+ * and the latest values can also be read as metrics.
+ */
+public class RedoBacklogMonitor implements AutoCloseable {
+    /**
+     * The default number of milliseconds between samples.
+     */
+    public static final long DEFAULT_INTERVAL = 60000L;
+
+    /**
+     * The time constant in milliseconds of the moving average of the drain
+     * rate, roughly the period over which it "remembers" the rate.
+     */
+    private static final double EWMA_TIME_CONSTANT = 300000.0;
+
+    private final SzEngine engine;
+    private final LongSupplier processedCount;
+    private final long interval;
+    private final PrintStream out;
+
+    private ScheduledExecutorService scheduler = null;
+
+    // these are only written while holding the lock on this instance
+    private long lastTime = 0L;
+    private long lastBacklog = -1L;
+    private long lastProcessed = 0L;
+    private volatile long backlog = -1L;
+    private volatile double processedRate = 0.0;
+    private volatile double drainRate = 0.0;
+    private volatile double drainRateAverage = Double.NaN;
+
+    /**
+     * Constructs with the {@link SzEngine} to sample, the supplier of the
+     * number of redo records processed so far and the {@linkplain
+     * #DEFAULT_INTERVAL default interval}, reporting to {@link System#out}.
+     *
+     * @param engine         The {@link SzEngine} to sample.
+     * @param processedCount The {@link LongSupplier} of the number of redo
+     *                       records processed so far.
+     */
+    public RedoBacklogMonitor(SzEngine engine, LongSupplier processedCount) {
+        this(engine, processedCount, DEFAULT_INTERVAL, System.out);
+    }
+
+    /**
+     * Constructs with the {@link SzEngine} to sample, the supplier of the
+     * number of redo records processed so far, the interval between samples
+     * and the {@link PrintStream} to report to.
+     *
+     * @param engine         The {@link SzEngine} to sample.
+     * @param processedCount The {@link LongSupplier} of the number of redo
+     *                       records processed so far.
+     * @param interval       The number of milliseconds between samples.
+     * @param out            The {@link PrintStream} to report to.
+     */
+    public RedoBacklogMonitor(SzEngine engine,
+            LongSupplier processedCount,
+            long interval,
+            PrintStream out) {
+        if (interval <= 0L) {
+            throw new IllegalArgumentException("The interval must be positive: " + interval);
+        }
+        this.engine = engine;
+        this.processedCount = processedCount;
+        this.interval = interval;
+        this.out = out;
+    }
+
+    /**
+     * Starts sampling, taking the first sample right away.
+     */
+    public synchronized void start() {
+        if (this.scheduler != null) {
+            throw new IllegalStateException("Already started");
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redo-backlog-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(this::sample, 0L, this.interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the redo backlog as of the latest sample.
+     *
+     * @return The number of redo records pending, or <code>-1</code> if not
+     *         yet sampled.
+     */
+    public long getBacklog() {
+        return this.backlog;
+    }
+
+    /**
+     * Gets the rate redo records were processed over the latest interval.
+     *
+     * @return The number of redo records processed per second.
+     */
+    public double getProcessedRate() {
+        return this.processedRate;
+    }
+
+    /**
+     * Gets the smoothed rate the backlog is draining, which is negative
+     * while it grows.
+     *
+     * @return The number of redo records per second the backlog shrinks, or
+     *         zero if there have not yet been two samples.
+     */
+    public double getDrainRate() {
+        double average = this.drainRateAverage;
+        return Double.isNaN(average) ? 0.0 : average;
+    }
+
+    /**
+     * Gets the estimated time until the backlog is empty at the current
+     * drain rate.
+     *
+     * @return The estimated number of milliseconds until the backlog is
+     *         empty, zero if it is empty, or <code>-1</code> if unknown
+     *         because the backlog is not shrinking.
+     */
+    public long getTimeToEmptyMillis() {
+        long pending = this.backlog;
+        if (pending == 0L) {
+            return 0L;
+        }
+        double rate = this.getDrainRate();
+        if (pending < 0L || rate <= 0.0) {
+            return -1L;
+        }
+        return (long) ((pending * 1000.0) / rate);
+    }
+
+    /**
+     * Prints a summary of the latest sample to the specified {@link
+     * PrintStream}.
+     *
+     * @param out The {@link PrintStream} to print to.
+     */
+    public void printSummary(PrintStream out) {
+        long pending = this.backlog;
+        if (pending < 0L) {
+            return;
+        }
+        long timeToEmpty = this.getTimeToEmptyMillis();
+        out.println();
+        out.println("Redo backlog (sampled every " + (this.interval / 1000L) + " seconds):");
+        out.printf("  Redo records pending          : %,d%n", pending);
+        out.printf("  Processed rate                : %,.1f/sec%n", this.processedRate);
+        out.printf("  Drain rate (moving average)   : %,.1f/sec%n", this.getDrainRate());
+        out.println("  Estimated time-to-empty       : "
+                + ((timeToEmpty < 0L) ? "unknown" : formatDuration(timeToEmpty)));
+        out.flush();
+    }
+
+    /**
+     * Stops sampling, waiting for any sample in progress so that the engine
+     * is no longer in use once this returns.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            if (this.scheduler == null) {
+                return;
+            }
+            executor = this.scheduler;
+            this.scheduler = null;
+        }
+
+        // wait without holding the lock so a sample in progress can finish
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(this.interval, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignore) {
+            // ignore the interruption
+        }
+    }
+
+    /**
+     * Samples the backlog and the processed count and prints the backlog,
+     * the rates and the time-to-empty.
+     */
+    private synchronized void sample() {
+        long pending;
+        try {
+            pending = this.engine.countRedoRecords();
+        } catch (SzException e) {
+            this.out.println("[redo backlog] FAILED TO COUNT REDO RECORDS: " + e);
+            this.out.flush();
+            return;
+        }
+        long now = System.nanoTime();
+        long processed = this.processedCount.getAsLong();
+        this.backlog = pending;
+
+        if (this.lastBacklog >= 0L) {
+            double elapsedMillis = (now - this.lastTime) / 1000000.0;
+            if (elapsedMillis > 0.0) {
+                double seconds = elapsedMillis / 1000.0;
+                this.processedRate = (processed - this.lastProcessed) / seconds;
+                this.drainRate = (this.lastBacklog - pending) / seconds;
+
+                // fold this interval into the moving average weighted by its length
+                double alpha = 1.0 - Math.exp(-elapsedMillis / EWMA_TIME_CONSTANT);
+                this.drainRateAverage = Double.isNaN(this.drainRateAverage)
+                        ? this.drainRate
+                        : this.drainRateAverage + alpha * (this.drainRate - this.drainRateAverage);
+            }
+        }
+        this.lastTime = now;
+        this.lastBacklog = pending;
+        this.lastProcessed = processed;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("[redo backlog] %,d pending", pending));
+        if (!Double.isNaN(this.drainRateAverage)) {
+            sb.append(String.format(" | processed %,.1f/sec | drain %,.1f/sec (avg %,.1f/sec)"
+                    + " | arrival %,.1f/sec",
+                    this.processedRate, this.drainRate, this.drainRateAverage,
+                    Math.max(0.0, this.processedRate - this.drainRate)));
+        }
+        long timeToEmpty = this.getTimeToEmptyMillis();
+        if (timeToEmpty == 0L) {
+            sb.append(" | empty");
+        } else if (timeToEmpty > 0L) {
+            sb.append(" | time-to-empty ").append(formatDuration(timeToEmpty));
+        } else if (!Double.isNaN(this.drainRateAverage)) {
+            sb.append(" | time-to-empty unknown (not draining)");
+        }
+        this.out.println(sb);
+        this.out.flush();
+    }
+
+    /**
+     * Formats the specified number of milliseconds as hours, minutes and
+     * seconds.
+     *
+     * @param millis The number of milliseconds.
+     *
+     * @return The formatted duration.
+     */
+    private static String formatDuration(long millis) {
+        long seconds = millis / 1000L;
+        return String.format("%02d:%02d:%02d", seconds / 3600L, (seconds / 60L) % 60L, seconds % 60L);
+    }
+}
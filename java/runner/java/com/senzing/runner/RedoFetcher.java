@@ -0,0 +1,387 @@
+package com.senzing.runner;
+
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.senzing.sdk.SzEngine;
+import com.senzing.sdk.SzException;
+
+/**
+ * Fetches redo records with several threads concurrently calling {@link
+ * SzEngine#getRedoRecord()} and hands them out through a bounded queue, so
+ * the processing threads are not held up by a single thread fetching one
+ * redo record at a time.  A full queue holds up the fetchers rather than
+ * letting the fetched redo records pile up.
+ *
+ * <p>
+ * When a fetcher finds no redo record it backs off before asking again,
+ * starting with a short pause and doubling it (up to a maximum) each time
+ * it still finds none, so an idle process polls rarely but new redo work
+ * arriving after a brief lull is picked up quickly.  As soon as any fetcher
+ * finds a redo record after being idle it wakes the others so they all
+ * resume fetching.  The time from the last empty fetch of the fetcher that
+ * finds the new work until it picks it up is recorded as the
+ * time-to-pickup, which is an upper bound on how long new redo work waited
+ * because of the backoff.
+ */
+public class RedoFetcher {
+    /**
+     * The default shortest pause in milliseconds after finding no redo
+     * record.
+     */
+    public static final long DEFAULT_MINIMUM_IDLE_PAUSE = 50L;
+
+    /**
+     * The default longest pause in milliseconds after finding no redo
+     * record.
+     */
+    public static final long DEFAULT_MAXIMUM_IDLE_PAUSE = 5000L;
+
+    /**
+     * The number of milliseconds a fetcher waits for room in the full queue
+     * before checking if it has been stopped.
+     */
+    private static final long OFFER_TIMEOUT = 100L;
+
+    /**
+     * The number of nanoseconds per millisecond.
+     */
+    private static final double ONE_MILLION = 1000000.0;
+
+    private final SzEngine engine;
+    private final int fetcherCount;
+    private final long minimumIdlePause;
+    private final long maximumIdlePause;
+    private final BlockingQueue<String> queue;
+    private final Queue<String> undelivered = new ConcurrentLinkedQueue<>();
+    private final List<Thread> fetchers = new ArrayList<>();
+    private final Object idleMonitor = new Object();
+
+    private final LongAdder fetchedCount = new LongAdder();
+    private final LongAdder emptyCount = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final AtomicInteger idleCount = new AtomicInteger(0);
+    private final LatencyHistogram pickupLatency = new LatencyHistogram();
+
+    // guarded by the idle monitor, incremented to wake the idle fetchers
+    private long wakeCount = 0L;
+
+    private volatile boolean stopped = false;
+    private volatile SzException failure = null;
+
+    /**
+     * Constructs with the {@link SzEngine} to fetch from, the number of
+     * fetcher threads, the maximum number of fetched redo records waiting
+     * in the queue and the shortest and longest idle pauses.
+     *
+     * @param engine           The {@link SzEngine} to fetch from.
+     * @param fetcherCount     The number of fetcher threads.
+     * @param queueCapacity    The maximum number of fetched redo records
+     *                         waiting to be handed out.
+     * @param minimumIdlePause The shortest pause in milliseconds after
+     *                         finding no redo record.
+     * @param maximumIdlePause The longest pause in milliseconds after
+     *                         finding no redo record.
+     */
+    public RedoFetcher(SzEngine engine,
+            int fetcherCount,
+            int queueCapacity,
+            long minimumIdlePause,
+            long maximumIdlePause) {
+        if (fetcherCount < 1) {
+            throw new IllegalArgumentException(
+                    "The fetcher count must be positive: " + fetcherCount);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException(
+                    "The queue capacity must be positive: " + queueCapacity);
+        }
+        if (minimumIdlePause < 1L || maximumIdlePause < minimumIdlePause) {
+            throw new IllegalArgumentException("Invalid idle pauses: minimum=" + minimumIdlePause
+                    + ", maximum=" + maximumIdlePause);
+        }
+        this.engine = engine;
+        this.fetcherCount = fetcherCount;
+        this.minimumIdlePause = minimumIdlePause;
+        this.maximumIdlePause = maximumIdlePause;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Starts the fetcher threads.
+     */
+    public synchronized void start() {
+        if (!this.fetchers.isEmpty()) {
+            throw new IllegalStateException("Already started");
+        }
+        for (int index = 0; index < this.fetcherCount; index++) {
+            Thread thread = new Thread(this::fetch, "redo-fetcher-" + index);
+            thread.setDaemon(true);
+            this.fetchers.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Gets the next fetched redo record without waiting.
+     *
+     * @return The next redo record, or <code>null</code> if none is waiting.
+     */
+    public String poll() {
+        return this.queue.poll();
+    }
+
+    /**
+     * Gets the next fetched redo record, waiting up to the specified time
+     * for one to be fetched.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The {@link TimeUnit} of the timeout.
+     *
+     * @return The next redo record, or <code>null</code> if none was fetched
+     *         in time.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.queue.poll(timeout, unit);
+    }
+
+    /**
+     * Checks if every fetcher is backing off after finding no redo record
+     * and there are no fetched redo records waiting.
+     *
+     * @return <code>true</code> if idle, otherwise <code>false</code>.
+     */
+    public boolean isIdle() {
+        return this.idleCount.get() == this.fetcherCount && this.queue.isEmpty();
+    }
+
+    /**
+     * Gets the failure that stopped the fetchers, if any.
+     *
+     * @return The {@link SzException} that stopped the fetchers, or
+     *         <code>null</code> if none.
+     */
+    public SzException getFailure() {
+        return this.failure;
+    }
+
+    /**
+     * Stops the fetchers from fetching any more redo records and waits up to
+     * the specified time for them to finish their current fetch.  The redo
+     * records already fetched can then be {@linkplain #drainTo(Collection)
+     * drained}.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The {@link TimeUnit} of the timeout.
+     *
+     * @return <code>true</code> if all fetchers stopped in time, or
+     *         <code>false</code> if some are still in a call to the engine.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public boolean stop(long timeout, TimeUnit unit) throws InterruptedException {
+        this.stopped = true;
+        synchronized (this.idleMonitor) {
+            this.wakeCount++;
+            this.idleMonitor.notifyAll();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<Thread> threads;
+        synchronized (this) {
+            threads = new ArrayList<>(this.fetchers);
+        }
+        for (Thread thread : threads) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0L) {
+                TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+            }
+            if (thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the fetched redo records that have not been handed out and
+     * adds them to the specified {@link Collection}, including any that a
+     * stopped fetcher could not queue.
+     *
+     * @param redoRecords The {@link Collection} to add the redo records to.
+     *
+     * @return The number of redo records added.
+     */
+    public int drainTo(Collection<String> redoRecords) {
+        int count = this.queue.drainTo(redoRecords);
+        for (String redo = this.undelivered.poll(); redo != null; redo = this.undelivered.poll()) {
+            redoRecords.add(redo);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of redo records fetched so far.
+     *
+     * @return The number of redo records fetched.
+     */
+    public long getFetchedCount() {
+        return this.fetchedCount.sum();
+    }
+
+    /**
+     * Gets the histogram of the time-to-pickup: the time in nanoseconds
+     * from a fetcher's last empty fetch until it fetched new redo work.
+     *
+     * @return The {@link LatencyHistogram} of the time-to-pickup.
+     */
+    public LatencyHistogram getPickupLatency() {
+        return this.pickupLatency;
+    }
+
+    /**
+     * Prints a summary of the fetching: the redo records fetched, the empty
+     * fetches, the time the fetchers were blocked on the full queue and the
+     * time-to-pickup of new redo work after being idle.
+     *
+     * @param out The {@link PrintStream} to print to.
+     */
+    public void printSummary(PrintStream out) {
+        LatencyHistogram pickup = this.pickupLatency;
+        out.println();
+        out.println("Redo fetching (" + this.fetcherCount + " fetchers):");
+        out.printf("  Redo records fetched          : %,d%n", this.fetchedCount.sum());
+        out.printf("  Empty fetches                 : %,d%n", this.emptyCount.sum());
+        out.printf("  Time blocked on full queue    : %,dms%n",
+                (long) (this.blockedNanos.sum() / ONE_MILLION));
+        out.printf("  Time-to-pickup (mean/p99/max) : %,.1fms / %,.1fms / %,.1fms (%,d pickups)%n",
+                pickup.getMean() / ONE_MILLION,
+                pickup.getPercentile(99.0) / ONE_MILLION,
+                pickup.getMaximum() / ONE_MILLION,
+                pickup.getCount());
+        out.flush();
+    }
+
+    /**
+     * Fetches redo records until stopped, backing off while none are found.
+     */
+    private void fetch() {
+        long pause = this.minimumIdlePause;
+        long lastEmptyTime = 0L;
+        boolean idle = false;
+        try {
+            while (!this.stopped) {
+                String redo = this.engine.getRedoRecord();
+                long now = System.nanoTime();
+
+                if (redo == null) {
+                    this.emptyCount.increment();
+                    lastEmptyTime = now;
+                    if (!idle) {
+                        idle = true;
+                        this.idleCount.incrementAndGet();
+                    }
+                    long next = this.backOff(pause);
+                    if (next == 0L) {
+                        // woken by another fetcher that found work, so resume
+                        // without counting a pickup for this fetcher
+                        idle = false;
+                        this.idleCount.decrementAndGet();
+                        next = this.minimumIdlePause;
+                    }
+                    pause = next;
+                    continue;
+                }
+
+                // new work after being idle, so record the time-to-pickup
+                // and wake the other idle fetchers
+                if (idle) {
+                    idle = false;
+                    this.idleCount.decrementAndGet();
+                    this.pickupLatency.record(now - lastEmptyTime);
+                    synchronized (this.idleMonitor) {
+                        this.wakeCount++;
+                        this.idleMonitor.notifyAll();
+                    }
+                }
+                pause = this.minimumIdlePause;
+                this.fetchedCount.increment();
+                this.deliver(redo);
+            }
+
+        } catch (SzException e) {
+            if (this.failure == null) {
+                this.failure = e;
+            }
+            this.stopped = true;
+
+        } catch (InterruptedException e) {
+            // interrupted so just stop fetching
+
+        } finally {
+            if (idle) {
+                this.idleCount.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Pauses for the specified time unless woken by another fetcher finding
+     * work or by being stopped.
+     *
+     * @param pause The number of milliseconds to pause.
+     *
+     * @return The number of milliseconds to pause the next time, or zero if
+     *         woken by another fetcher finding work.
+     *
+     * @throws InterruptedException If interrupted while pausing.
+     */
+    private long backOff(long pause) throws InterruptedException {
+        synchronized (this.idleMonitor) {
+            long wake = this.wakeCount;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pause);
+            for (long remaining = deadline - System.nanoTime();
+                    remaining > 0L && wake == this.wakeCount && !this.stopped;
+                    remaining = deadline - System.nanoTime()) {
+                TimeUnit.NANOSECONDS.timedWait(this.idleMonitor, remaining);
+            }
+            if (wake != this.wakeCount) {
+                return 0L;
+            }
+        }
+        return Math.min(pause * 2L, this.maximumIdlePause);
+    }
+
+    /**
+     * Queues the specified fetched redo record, waiting while the queue is
+     * full, or keeps it aside to be drained if stopped while waiting.
+     *
+     * @param redo The redo record to queue.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void deliver(String redo) throws InterruptedException {
+        if (this.queue.offer(redo)) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            while (!this.queue.offer(redo, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                if (this.stopped) {
+                    this.undelivered.add(redo);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            this.undelivered.add(redo);
+            throw e;
+        } finally {
+            this.blockedNanos.add(System.nanoTime() - start);
+        }
+    }
+}
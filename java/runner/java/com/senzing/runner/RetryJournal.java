@@ -0,0 +1,703 @@
+package com.senzing.runner;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * An append-only journal of the records that failed to be processed, either
+ * to be retried later or as "dead letters" that will not succeed as they
+ * are, kept in a directory of memory-mapped segment files.  Each entry holds
+ * the record, the error code and message of the failure, the number of
+ * attempts made and the line number of the record in its source file.
+ *
+ * <p>
+ * Appending is lock-free: each writer reserves the space for its entry by
+ * atomically advancing the end of the current segment and then copies the
+ * entry into the mapped segment, so concurrent writers never wait for each
+ * other (only rolling over to a new segment takes a lock).  Since the
+ * entries are written to the mapped pages they survive the process being
+ * killed as soon as they are appended, and a background thread
+ * group-commits them to disk by forcing the segments at a fixed interval
+ * or when a writer {@linkplain #sync() waits} for its entries to be durable,
+ * so concurrent writers waiting at the same time share a single commit.
+ *
+ * <p>
+ * Each entry is prefixed with its length and a CRC-32 of its contents so
+ * that {@link #replay(File, Consumer)} can skip an entry torn by a crash in
+ * the middle of writing it.  A new journal instance never appends to the
+ * segments already in its directory, so the entries from a previous run can
+ * be replayed and then {@linkplain #deleteSegments(File) deleted}.
+ */
+public class RetryJournal implements Closeable {
+    /**
+     * The kind of a journal entry.
+     */
+    public enum Kind {
+        /**
+         * A record that failed with a retryable failure and should be
+         * retried.
+         */
+        RETRY,
+
+        /**
+         * A record that failed in a way that retrying will not fix.
+         */
+        DEAD_LETTER
+    }
+
+    /**
+     * An entry in the journal.
+     *
+     * @param kind       The {@link Kind} of the entry.
+     * @param record     The record (or redo record) that failed.
+     * @param errorCode  The error code of the failure, or <code>null</code>
+     *                   if none.
+     * @param message    The message describing the failure, or
+     *                   <code>null</code> if none.
+     * @param attempt    The number of attempts made to process the record.
+     * @param lineNumber The line number of the record in its source file, or
+     *                   zero if not from a file.
+     */
+    public record Entry(Kind kind,
+            String record,
+            Integer errorCode,
+            String message,
+            int attempt,
+            long lineNumber) {
+    }
+
+    /**
+     * The default size of each segment file in bytes.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * The default maximum number of milliseconds between group commits.
+     */
+    public static final long DEFAULT_COMMIT_INTERVAL = 100L;
+
+    /**
+     * The prefix for the segment file names.
+     */
+    public static final String SEGMENT_PREFIX = "journal-";
+
+    /**
+     * The suffix for the segment file names.
+     */
+    public static final String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * The magic bytes at the start of each segment file.
+     */
+    private static final byte[] MAGIC = "SZRETRYJ".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * The version of the segment file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The number of bytes in the segment header.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * The number of bytes before the contents of each entry: the length and
+     * the CRC-32.
+     */
+    private static final int ENTRY_PREFIX_SIZE = 8;
+
+    /**
+     * The number of bytes of the fixed-size fields of each entry's contents:
+     * the kind, flags, attempt, line number, error code and the lengths of
+     * the message and record.
+     */
+    private static final int ENTRY_FIXED_SIZE = 28;
+
+    /**
+     * The flag set when the entry has an error code.
+     */
+    private static final byte HAS_ERROR_CODE = 0x01;
+
+    /**
+     * The flag set when the entry has a message.
+     */
+    private static final byte HAS_MESSAGE = 0x02;
+
+    /**
+     * A mapped segment file.
+     */
+    private static class Segment {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final AtomicLong reserved = new AtomicLong(HEADER_SIZE);
+        private final AtomicInteger writers = new AtomicInteger(0);
+        private volatile boolean sealed = false;
+
+        private Segment(File file, MappedByteBuffer buffer, int capacity) {
+            this.file = file;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+    }
+
+    private final File directory;
+    private final int segmentSize;
+    private final long commitInterval;
+    private final Object rollMonitor = new Object();
+    private final Object commitMonitor = new Object();
+    private final Queue<Segment> unforced = new ConcurrentLinkedQueue<>();
+    private final LongAdder appendedCount = new LongAdder();
+    private final LongAdder appendedBytes = new LongAdder();
+    private final Thread committer;
+
+    private volatile Segment current;
+    private int segmentNumber;
+
+    // these are guarded by the commit monitor
+    private long commitsRequested = 0L;
+    private long commitsStarted = 0L;
+    private long commitsCompleted = 0L;
+    private long lastCommittedCount = 0L;
+    private IOException commitFailure = null;
+    private boolean closed = false;
+
+    /**
+     * Constructs with the directory for the segment files, using the {@link
+     * #DEFAULT_SEGMENT_SIZE} and {@link #DEFAULT_COMMIT_INTERVAL}.
+     *
+     * @param directory The directory for the segment files, which is created
+     *                  if it does not exist.
+     *
+     * @throws IOException If the first segment cannot be created.
+     */
+    public RetryJournal(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    /**
+     * Constructs with the directory for the segment files, the size of each
+     * segment file and the maximum number of milliseconds between group
+     * commits.
+     *
+     * @param directory      The directory for the segment files, which is
+     *                       created if it does not exist.
+     * @param segmentSize    The size of each segment file in bytes.
+     * @param commitInterval The maximum number of milliseconds between group
+     *                       commits.
+     *
+     * @throws IOException If the first segment cannot be created.
+     */
+    public RetryJournal(File directory, int segmentSize, long commitInterval)
+            throws IOException {
+        if (segmentSize < HEADER_SIZE + ENTRY_PREFIX_SIZE + ENTRY_FIXED_SIZE) {
+            throw new IllegalArgumentException("The segment size is too small: " + segmentSize);
+        }
+        if (commitInterval <= 0L) {
+            throw new IllegalArgumentException(
+                    "The commit interval must be positive: " + commitInterval);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory: " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.commitInterval = commitInterval;
+
+        // start after any segments left by a previous run
+        List<File> existing = listSegments(directory);
+        this.segmentNumber = existing.isEmpty() ? 0 : segmentNumber(existing.get(existing.size() - 1));
+        this.current = this.createSegment(segmentSize);
+
+        this.committer = new Thread(this::commitLoop, "retry-journal-committer");
+        this.committer.setDaemon(true);
+        this.committer.start();
+    }
+
+    /**
+     * Gets the directory holding the segment files.
+     *
+     * @return The directory holding the segment files.
+     */
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Appends the specified entry to the journal without waiting for it to
+     * be committed to disk.
+     *
+     * @param entry The {@link Entry} to append.
+     *
+     * @throws IOException If a new segment is needed and cannot be created.
+     *
+     * @throws IllegalStateException If this instance has been closed.
+     */
+    public void append(Entry entry) throws IOException {
+        byte[] record = entry.record().getBytes(StandardCharsets.UTF_8);
+        byte[] message = (entry.message() == null)
+                ? new byte[0] : entry.message().getBytes(StandardCharsets.UTF_8);
+        int length = ENTRY_PREFIX_SIZE + ENTRY_FIXED_SIZE + message.length + record.length;
+        int size = align(length);
+
+        while (true) {
+            Segment segment = this.current;
+            if (segment == null) {
+                throw new IllegalStateException("The journal has been closed");
+            }
+
+            // reserve the space for the entry in the current segment
+            segment.writers.incrementAndGet();
+            try {
+                long start = segment.reserved.getAndAdd(size);
+                if (start + size <= segment.capacity) {
+                    write(segment.buffer, (int) start, length, entry, message, record);
+                    this.appendedCount.increment();
+                    this.appendedBytes.add(size);
+                    return;
+                }
+            } finally {
+                segment.writers.decrementAndGet();
+            }
+
+            // the entry does not fit so roll over to a new segment
+            this.rollOver(segment, size);
+        }
+    }
+
+    /**
+     * Waits until every entry appended by the calling thread has been
+     * committed to disk, sharing the commit with any other threads waiting
+     * at the same time.
+     *
+     * @throws IOException If the commit failed.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void sync() throws IOException, InterruptedException {
+        synchronized (this.commitMonitor) {
+            // a commit that starts after this point covers our entries
+            long target = this.commitsStarted + 1;
+            this.commitsRequested = Math.max(this.commitsRequested, target);
+            this.commitMonitor.notifyAll();
+            while (this.commitsCompleted < target && this.commitFailure == null && !this.closed) {
+                this.commitMonitor.wait();
+            }
+            if (this.commitFailure != null) {
+                throw this.commitFailure;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of entries appended so far.
+     *
+     * @return The number of entries appended.
+     */
+    public long getAppendedCount() {
+        return this.appendedCount.sum();
+    }
+
+    /**
+     * Gets the number of bytes appended so far, including padding.
+     *
+     * @return The number of bytes appended.
+     */
+    public long getAppendedBytes() {
+        return this.appendedBytes.sum();
+    }
+
+    /**
+     * Gets the number of group commits made so far.
+     *
+     * @return The number of group commits.
+     */
+    public long getCommitCount() {
+        synchronized (this.commitMonitor) {
+            return this.commitsCompleted;
+        }
+    }
+
+    /**
+     * Stops the committer and commits any remaining entries to disk.
+     *
+     * @throws IOException If the final commit fails.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this.commitMonitor) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            this.commitMonitor.notifyAll();
+        }
+        boolean interrupted = false;
+        while (this.committer.isAlive()) {
+            try {
+                this.committer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this.rollMonitor) {
+            this.current.sealed = true;
+            this.current = null;
+        }
+        this.forceSegments();
+    }
+
+    /**
+     * Replays the entries in the segment files in the specified directory,
+     * in the order their space was reserved within each segment, skipping
+     * any torn by a crash while they were being written.  A segment is read
+     * up to the first entry whose length was never written, which after a
+     * crash may hide the entries of writers that had reserved their space
+     * later but finished sooner.
+     *
+     * @param directory The directory holding the segment files.
+     * @param consumer  The {@link Consumer} to call with each {@link Entry}.
+     *
+     * @return The number of entries replayed.
+     *
+     * @throws IOException If a segment file cannot be read or is not a
+     *                     journal segment.
+     */
+    public static long replay(File directory, Consumer<? super Entry> consumer)
+            throws IOException {
+        long count = 0L;
+        for (File file : listSegments(directory)) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size());
+                checkHeader(file, buffer);
+
+                int position = HEADER_SIZE;
+                while (position + ENTRY_PREFIX_SIZE + ENTRY_FIXED_SIZE <= buffer.capacity()) {
+                    int length = buffer.getInt(position);
+                    if (length == 0) {
+                        // the end of the entries in this segment
+                        break;
+                    }
+                    if (length < ENTRY_PREFIX_SIZE + ENTRY_FIXED_SIZE
+                            || position + length > buffer.capacity()) {
+                        System.err.println("Corrupt journal entry in " + file + " at " + position);
+                        break;
+                    }
+                    Entry entry = read(buffer, position, length);
+                    if (entry == null) {
+                        System.err.println("Skipping torn journal entry in " + file + " at " + position);
+                    } else {
+                        consumer.accept(entry);
+                        count++;
+                    }
+                    position += align(length);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Deletes the segment files in the specified directory (e.g.: once they
+     * have been replayed).
+     *
+     * @param directory The directory holding the segment files.
+     *
+     * @throws IOException If a segment file cannot be deleted.
+     */
+    public static void deleteSegments(File directory) throws IOException {
+        for (File file : listSegments(directory)) {
+            if (!file.delete()) {
+                throw new IOException("Unable to delete journal segment: " + file);
+            }
+        }
+    }
+
+    /**
+     * Lists the segment files in the specified directory in the order they
+     * were created.
+     *
+     * @param directory The directory holding the segment files.
+     *
+     * @return The {@link List} of segment files, which is empty if the
+     *         directory does not exist.
+     */
+    public static List<File> listSegments(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX)
+                && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<File> segments = new ArrayList<>(Arrays.asList(files));
+        segments.sort(Comparator.comparingInt(RetryJournal::segmentNumber));
+        return segments;
+    }
+
+    /**
+     * Rolls over from the specified full segment to a new segment with room
+     * for an entry of at least the specified size, unless another writer
+     * has already done so.
+     *
+     * @param full The {@link Segment} that is full.
+     * @param size The size of the entry that did not fit.
+     *
+     * @throws IOException If the new segment cannot be created.
+     */
+    private void rollOver(Segment full, int size) throws IOException {
+        synchronized (this.rollMonitor) {
+            if (this.current != full) {
+                return;
+            }
+            // push the end past the capacity so no later entry fits in the
+            // gap left at the end, then seal the segment
+            full.reserved.addAndGet(full.capacity);
+            full.sealed = true;
+            this.current = this.createSegment(Math.max(this.segmentSize, HEADER_SIZE + size));
+        }
+    }
+
+    /**
+     * Creates and maps the next segment file with the specified capacity.
+     *
+     * @param capacity The capacity of the segment in bytes.
+     *
+     * @return The new {@link Segment}.
+     *
+     * @throws IOException If the segment cannot be created.
+     */
+    private Segment createSegment(int capacity) throws IOException {
+        this.segmentNumber++;
+        File file = new File(this.directory,
+                String.format("%s%08d%s", SEGMENT_PREFIX, this.segmentNumber, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file.toPath(), CREATE_NEW, READ, WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0L, capacity);
+            buffer.put(0, MAGIC);
+            buffer.putInt(MAGIC.length, VERSION);
+            buffer.putInt(MAGIC.length + 4, HEADER_SIZE);
+            buffer.force();
+
+            Segment segment = new Segment(file, buffer, capacity);
+            this.unforced.add(segment);
+            return segment;
+        }
+    }
+
+    /**
+     * Runs the group commits until this instance is closed: a commit is
+     * made whenever a writer waits in {@link #sync()}, or at the commit
+     * interval if any entries were appended since the last one.
+     */
+    private void commitLoop() {
+        while (true) {
+            long commitNumber;
+            synchronized (this.commitMonitor) {
+                if (this.commitsRequested <= this.commitsCompleted && !this.closed) {
+                    try {
+                        this.commitMonitor.wait(this.commitInterval);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                long appended = this.appendedCount.sum();
+                if (this.commitsRequested <= this.commitsCompleted
+                        && appended == this.lastCommittedCount) {
+                    if (this.closed) {
+                        return;
+                    }
+                    continue;
+                }
+                this.lastCommittedCount = appended;
+                commitNumber = ++this.commitsStarted;
+            }
+
+            IOException failure = null;
+            try {
+                this.forceSegments();
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            synchronized (this.commitMonitor) {
+                this.commitsCompleted = commitNumber;
+                this.commitFailure = failure;
+                this.commitMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Forces the segments that may have entries not yet committed to disk,
+     * dropping the sealed segments that no writer can still be writing to.
+     *
+     * @throws IOException If a segment cannot be forced.
+     */
+    private void forceSegments() throws IOException {
+        Iterator<Segment> iter = this.unforced.iterator();
+        while (iter.hasNext()) {
+            Segment segment = iter.next();
+
+            // check before forcing since any write after this was reserved
+            // before the segment was sealed and is still in progress
+            boolean finished = segment.sealed && segment.writers.get() == 0;
+            try {
+                segment.buffer.force();
+            } catch (UncheckedIOException e) {
+                throw new IOException("Unable to commit journal segment: " + segment.file, e);
+            }
+            if (finished) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes an entry to the specified buffer at the specified position,
+     * writing the CRC-32 last.
+     *
+     * @param buffer   The {@link ByteBuffer} to write to.
+     * @param position The position of the entry.
+     * @param length   The length of the entry (without padding).
+     * @param entry    The {@link Entry} to write.
+     * @param message  The encoded message.
+     * @param record   The encoded record.
+     */
+    private static void write(ByteBuffer buffer,
+            int position,
+            int length,
+            Entry entry,
+            byte[] message,
+            byte[] record) {
+        byte[] contents = new byte[length - ENTRY_PREFIX_SIZE];
+        ByteBuffer out = ByteBuffer.wrap(contents);
+        out.put((byte) entry.kind().ordinal());
+        out.put((byte) (((entry.errorCode() != null) ? HAS_ERROR_CODE : 0)
+                | ((entry.message() != null) ? HAS_MESSAGE : 0)));
+        out.putShort((short) 0);
+        out.putInt(entry.attempt());
+        out.putLong(entry.lineNumber());
+        out.putInt((entry.errorCode() != null) ? entry.errorCode() : 0);
+        out.putInt(message.length);
+        out.putInt(record.length);
+        out.put(message);
+        out.put(record);
+
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+
+        buffer.putInt(position, length);
+        buffer.put(position + ENTRY_PREFIX_SIZE, contents);
+        buffer.putInt(position + 4, (int) crc.getValue());
+    }
+
+    /**
+     * Reads the entry at the specified position of the specified buffer.
+     *
+     * @param buffer   The {@link ByteBuffer} to read from.
+     * @param position The position of the entry.
+     * @param length   The length of the entry (without padding).
+     *
+     * @return The {@link Entry}, or <code>null</code> if it was torn.
+     */
+    private static Entry read(ByteBuffer buffer, int position, int length) {
+        byte[] contents = new byte[length - ENTRY_PREFIX_SIZE];
+        buffer.get(position + ENTRY_PREFIX_SIZE, contents);
+        CRC32 crc = new CRC32();
+        crc.update(contents);
+        if (buffer.getInt(position + 4) != (int) crc.getValue()) {
+            return null;
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(contents);
+        int kind = in.get();
+        int flags = in.get();
+        in.getShort();
+        int attempt = in.getInt();
+        long lineNumber = in.getLong();
+        int errorCode = in.getInt();
+        int messageLength = in.getInt();
+        int recordLength = in.getInt();
+        if (kind < 0 || kind >= Kind.values().length
+                || messageLength < 0 || recordLength < 0
+                || messageLength + recordLength != in.remaining()) {
+            return null;
+        }
+        String message = new String(contents, in.position(), messageLength, StandardCharsets.UTF_8);
+        String record = new String(
+                contents, in.position() + messageLength, recordLength, StandardCharsets.UTF_8);
+
+        return new Entry(Kind.values()[kind],
+                record,
+                ((flags & HAS_ERROR_CODE) != 0) ? errorCode : null,
+                ((flags & HAS_MESSAGE) != 0) ? message : null,
+                attempt,
+                lineNumber);
+    }
+
+    /**
+     * Checks that the specified buffer starts with a segment header.
+     *
+     * @param file   The segment file.
+     * @param buffer The {@link ByteBuffer} for the segment file.
+     *
+     * @throws IOException If the header is missing or not supported.
+     */
+    private static void checkHeader(File file, ByteBuffer buffer) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        if (buffer.capacity() < HEADER_SIZE) {
+            throw new IOException("Not a journal segment: " + file);
+        }
+        buffer.get(0, magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a journal segment: " + file);
+        }
+        int version = buffer.getInt(MAGIC.length);
+        if (version != VERSION) {
+            throw new IOException("Unsupported journal segment version " + version + ": " + file);
+        }
+    }
+
+    /**
+     * Gets the number of the specified segment file from its name.
+     *
+     * @param file The segment file.
+     *
+     * @return The number of the segment.
+     */
+    private static int segmentNumber(File file) {
+        String name = file.getName();
+        try {
+            return Integer.parseInt(name.substring(
+                    SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Rounds the specified length up to a multiple of eight so that the
+     * length of each entry is aligned and written in one store.
+     *
+     * @param length The length to round up.
+     *
+     * @return The aligned length.
+     */
+    private static int align(int length) {
+        return (length + 7) & ~7;
+    }
+}
@@ -0,0 +1,235 @@
+package com.senzing.runner;
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Holds items whose processing failed with a retryable failure until a
+ * jittered exponential backoff has elapsed so they can be resubmitted.  The
+ * number of attempts per item and the total estimated memory of the queued
+ * items are both bounded, and {@link #offer(Object, int, long)} refuses any
+ * item beyond either bound so the caller can fall back to its retry file.
+ *
+ * <p>
+ * The backoff uses "full jitter": the delay before retrying after the
+ * <i>n</i>th failed attempt is chosen uniformly between zero and the base
+ * delay multiplied by 2<sup><i>n</i>-1</sup>, capped at the maximum delay.
+ * This keeps records that failed together (e.g.: due to contention on the
+ * same entity) from being retried together.
+ */
+public class RetryQueue<T> {
+    /**
+     * The default maximum number of attempts per item.
+     */
+    public static final int DEFAULT_MAXIMUM_ATTEMPTS = 5;
+
+    /**
+     * The default base delay in milliseconds.
+     */
+    public static final long DEFAULT_BASE_DELAY = 100L;
+
+    /**
+     * The default maximum delay in milliseconds.
+     */
+    public static final long DEFAULT_MAXIMUM_DELAY = 10000L;
+
+    /**
+     * The default memory budget in bytes.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024L * 1024L;
+
+    /**
+     * An item waiting for its backoff to elapse.
+     */
+    private record Retry<T>(T item, long size, long dueTime, long sequence) {
+    }
+
+    private final int maximumAttempts;
+    private final long baseDelay;
+    private final long maximumDelay;
+    private final long memoryBudget;
+
+    /**
+     * The waiting items ordered by due time (and then by arrival).
+     */
+    private final PriorityQueue<Retry<T>> retries = new PriorityQueue<>(
+            Comparator.comparingLong((Retry<T> r) -> r.dueTime())
+                    .thenComparingLong(Retry::sequence));
+
+    private long memoryUsed = 0L;
+    private long sequence = 0L;
+    private long scheduledCount = 0L;
+    private long exhaustedCount = 0L;
+    private long overBudgetCount = 0L;
+
+    /**
+     * Constructs with the default maximum attempts, delays and memory budget.
+     */
+    public RetryQueue() {
+        this(DEFAULT_MAXIMUM_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAXIMUM_DELAY,
+                DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Constructs with the specified parameters.
+     *
+     * @param maximumAttempts The maximum number of attempts per item
+     *                        (including the first).
+     * @param baseDelay       The base delay in milliseconds.
+     * @param maximumDelay    The maximum delay in milliseconds.
+     * @param memoryBudget    The maximum total estimated size in bytes of the
+     *                        waiting items.
+     */
+    public RetryQueue(int maximumAttempts, long baseDelay, long maximumDelay, long memoryBudget) {
+        if (maximumAttempts < 1 || baseDelay < 0L || maximumDelay < baseDelay
+                || memoryBudget < 0L) {
+            throw new IllegalArgumentException(
+                    "Invalid retry parameters (attempts / base delay / maximum delay / budget): "
+                            + maximumAttempts + " / " + baseDelay + " / " + maximumDelay
+                            + " / " + memoryBudget);
+        }
+        this.maximumAttempts = maximumAttempts;
+        this.baseDelay = baseDelay;
+        this.maximumDelay = maximumDelay;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Estimates the memory used by the specified text for use as the size of
+     * a queued item.
+     *
+     * @param text The text to estimate.
+     *
+     * @return The estimated size in bytes.
+     */
+    public static long estimateSize(String text) {
+        return 2L * text.length();
+    }
+
+    /**
+     * Schedules the specified item to be retried after a backoff unless the
+     * attempt that just failed was its last or queueing it would exceed the
+     * memory budget.
+     *
+     * @param item    The item to retry.
+     * @param attempt The one-based number of the attempt that just failed.
+     * @param size    The estimated size of the item in bytes.
+     *
+     * @return <code>true</code> if the item was scheduled, or
+     *         <code>false</code> if it was refused and should be handled as
+     *         a final failure.
+     */
+    public synchronized boolean offer(T item, int attempt, long size) {
+        if (attempt >= this.maximumAttempts) {
+            this.exhaustedCount++;
+            return false;
+        }
+        if (this.memoryUsed + size > this.memoryBudget) {
+            this.overBudgetCount++;
+            return false;
+        }
+
+        // choose a random delay up to the exponential backoff ceiling
+        int shift = Math.min(attempt - 1, Long.SIZE - 2);
+        long ceiling = (this.baseDelay > (this.maximumDelay >> shift))
+                ? this.maximumDelay : this.baseDelay << shift;
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1L);
+
+        this.retries.add(new Retry<>(
+                item, size, System.currentTimeMillis() + delay, this.sequence++));
+        this.memoryUsed += size;
+        this.scheduledCount++;
+        return true;
+    }
+
+    /**
+     * Removes and returns the next item whose backoff has elapsed.
+     *
+     * @return The next item that is due, or <code>null</code> if none.
+     */
+    public synchronized T poll() {
+        Retry<T> retry = this.retries.peek();
+        if (retry == null || retry.dueTime() > System.currentTimeMillis()) {
+            return null;
+        }
+        this.retries.remove();
+        this.memoryUsed -= retry.size();
+        return retry.item();
+    }
+
+    /**
+     * Gets the number of milliseconds until the next item is due.
+     *
+     * @return The number of milliseconds until the next item is due, zero if
+     *         one is already due, or <code>-1</code> if there are no items.
+     */
+    public synchronized long getDelay() {
+        Retry<T> retry = this.retries.peek();
+        if (retry == null) {
+            return -1L;
+        }
+        return Math.max(0L, retry.dueTime() - System.currentTimeMillis());
+    }
+
+    /**
+     * Removes and returns all waiting items regardless of their backoff (e.g.:
+     * to write them to a retry file on shutdown).
+     *
+     * @return The {@link List} of waiting items in due order.
+     */
+    public synchronized List<T> drain() {
+        List<T> items = new ArrayList<>(this.retries.size());
+        while (!this.retries.isEmpty()) {
+            items.add(this.retries.remove().item());
+        }
+        this.memoryUsed = 0L;
+        return items;
+    }
+
+    /**
+     * Checks if there are no waiting items.
+     *
+     * @return <code>true</code> if there are no waiting items, otherwise
+     *         <code>false</code>.
+     */
+    public synchronized boolean isEmpty() {
+        return this.retries.isEmpty();
+    }
+
+    /**
+     * Gets the number of waiting items.
+     *
+     * @return The number of waiting items.
+     */
+    public synchronized int size() {
+        return this.retries.size();
+    }
+
+    /**
+     * Gets the total number of items scheduled for retry.
+     *
+     * @return The total number of items scheduled for retry.
+     */
+    public synchronized long getScheduledCount() {
+        return this.scheduledCount;
+    }
+
+    /**
+     * Gets the number of items refused because they exhausted their attempts.
+     *
+     * @return The number of items refused because they exhausted their
+     *         attempts.
+     */
+    public synchronized long getExhaustedCount() {
+        return this.exhaustedCount;
+    }
+
+    /**
+     * Gets the number of items refused because of the memory budget.
+     *
+     * @return The number of items refused because of the memory budget.
+     */
+    public synchronized long getOverBudgetCount() {
+        return this.overBudgetCount;
+    }
+}
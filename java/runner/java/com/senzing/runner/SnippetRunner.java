@@ -25,8 +25,6 @@ public class SnippetRunner {
 
   public static final String DESTROY_AFTER_KEY = "destroyAfter";
 
-  private static final String DATA_SOURCE = "DATA_SOURCE";
-  private static final String RECORD_ID = "RECORD_ID";
   private static final String TEST_SOURCE = "TEST";
 
   private static final long ONE_MILLION = 1000000L;
@@ -221,10 +219,7 @@ public class SnippetRunner {
                     continue;
                   if (line.startsWith("#"))
                     continue;
-                  JsonObject record = Json.createReader(new StringReader(line)).readObject();
-                  String dataSource = record.getString(DATA_SOURCE, TEST_SOURCE);
-                  String recordId = record.getString(RECORD_ID, null);
-                  SzRecordKey recordKey = SzRecordKey.of(dataSource, recordId);
+                  SzRecordKey recordKey = RecordKeyExtractor.extractRecordKey(line, TEST_SOURCE);
                   engine.addRecord(recordKey, line, SZ_NO_FLAGS);
                 }
               }
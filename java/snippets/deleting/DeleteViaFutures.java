@@ -4,13 +4,48 @@ import java.io.*;
 import javax.json.*;
 import java.util.*;
 import java.util.concurrent.*;
+import com.senzing.runner.AdaptiveConcurrencyLimit;
+import com.senzing.runner.FileCheckpoint;
+import com.senzing.runner.KeyPartitionedExecutor;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.OffsetLineReader;
+import com.senzing.runner.ProgressReporter;
+import com.senzing.runner.RetryQueue;
 import com.senzing.sdk.*;
 import com.senzing.sdk.core.SzCoreEnvironment;
 
 import static com.senzing.sdk.SzFlag.*;
 
 /**
- * Provides a simple example of deleting records from the Senzing repository.
+ * Provides an example of deleting the records in a JSON lines file from the
+ * Senzing repository concurrently, resiliently and in record order, by
+ * combining the helpers in <code>com.senzing.runner</code>: key-partitioned
+ * lanes, an adaptive concurrency limit, checkpointing, in-process retries
+ * and background progress reporting.
+ *
+ * <p>
+ * The number of concurrent engine calls is governed by an AIMD (additive
+ * increase, multiplicative decrease) limit that backs off when calls slow
+ * down or fail as retryable, and a progress line with the throughput and
+ * estimated time remaining is periodically printed as the file is read.
+ *
+ * <p>
+ * If a checkpoint file is specified as the second command-line argument
+ * then the position just past the last contiguous completed record is
+ * periodically saved to it, and if it already exists (e.g.: after a crash)
+ * then deleting resumes from that position rather than the start of the file.
+ *
+ * <p>
+ * Records that fail with an {@link SzRetryableException} are retried after
+ * a jittered exponential backoff, and only those that exhaust their attempts
+ * (or exceed the retry memory budget) are written to the retry journal.
+ *
+ * <p>
+ * Deletions are run on single-threaded lanes chosen by hashing the record
+ * key, so two lines for the same record never run at the same time and
+ * always complete in file order.  A deletion waiting on a retry is dropped
+ * if a later line for the same record has been submitted since, because
+ * the later line determines the final state of the record.
  */
 public class DeleteViaFutures {
     public static void main(String[] args) {
@@ -32,29 +67,61 @@ public class DeleteViaFutures {
                 .build();
 
         String filePath = (args.length > 0) ? args[0] : DEFAULT_FILE_PATH;
+        File checkpointFile = (args.length > 1) ? new File(args[1]) : null;
 
-        // create the thread pool and executor service
-        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        // create the key-partitioned lanes with enough lanes for the maximum
+        // concurrency, the adaptive limit throttles them
+        KeyPartitionedExecutor lanes = new KeyPartitionedExecutor(
+                MAXIMUM_THREAD_COUNT, LANE_CAPACITY);
 
         // keep track of pending futures and don't backlog too many for memory's sake
         Map<Future<?>, Record> pendingFutures = new IdentityHashMap<>();
 
-        try (FileInputStream fis = new FileInputStream(filePath);
-                InputStreamReader isr = new InputStreamReader(fis, UTF_8);
-                BufferedReader br = new BufferedReader(isr)) {
+        // track the progress through the file, resuming from the checkpoint
+        // file if it exists, and open the reader at the resume position
+        try (FileCheckpoint checkpoint = new FileCheckpoint(new File(filePath), checkpointFile);
+                OffsetLineReader reader = checkpoint.openReader()) {
             // get the engine from the environment
             SzEngine engine = env.getEngine();
 
-            int lineNumber = 0;
+            if (checkpoint.isResumed()) {
+                System.out.println("Resuming after line " + checkpoint.getLineNumber()
+                        + " (byte offset " + checkpoint.getOffset() + ")");
+            }
+
+            // report the progress through the file in the background
+            progress.start(new File(filePath).length(), checkpoint.getOffset());
+
             boolean eof = false;
 
-            while (!eof) {
+            // keep going until all records are read and none are pending or
+            // waiting to be retried
+            while (!eof || pendingFutures.size() > 0 || !retryQueue.isEmpty()) {
                 // loop through the example records and queue them up so long
                 // as we have more records and backlog is not too large
                 while (pendingFutures.size() < MAXIMUM_BACKLOG) {
+                    // resubmit any record whose retry backoff has elapsed first
+                    Record retry = retryQueue.poll();
+                    if (retry != null) {
+                        // drop the retry if a later line for the same record
+                        // has been submitted while it was backing off
+                        if (isSuperseded(retry)) {
+                            supersededCount++;
+                            lineHandled(retry, false);
+                            checkpoint.completed(retry.lineNumber);
+                            continue;
+                        }
+                        pendingFutures.put(submitRecord(lanes, engine, retry), retry);
+                        continue;
+                    }
+
+                    // check if we have already read the whole file
+                    if (eof) {
+                        break;
+                    }
+
                     // read the next line
-                    String line = br.readLine();
-                    lineNumber++;
+                    String line = reader.readLine();
 
                     // check for EOF
                     if (line == null) {
@@ -62,54 +129,55 @@ public class DeleteViaFutures {
                         break;
                     }
 
+                    // get the line number and the offset just past the line
+                    int lineNumber = (int) reader.getLineNumber();
+                    long endOffset = reader.getOffset();
+                    progress.setBytesConsumed(endOffset);
+
                     // trim the line
                     line = line.trim();
 
                     // skip any blank lines
                     if (line.length() == 0) {
+                        checkpoint.skipped(lineNumber, endOffset);
                         continue;
                     }
 
                     // skip any commented lines
                     if (line.startsWith("#")) {
+                        checkpoint.skipped(lineNumber, endOffset);
                         continue;
                     }
 
-                    // construct the Record instance
-                    Record record = new Record(lineNumber, line);
-
                     try {
-                        // parse the line as a JSON object
-                        JsonObject recordJson = Json.createReader(new StringReader(line)).readObject();
-
-                        // extract the data source code and record ID
-                        String dataSourceCode = recordJson.getString(DATA_SOURCE, null);
-                        String recordId = recordJson.getString(RECORD_ID, null);
-                        SzRecordKey recordKey = SzRecordKey.of(dataSourceCode, recordId);
+                        // construct the Record instance
+                        Record record = new Record(lineNumber, line, parseRecordKey(line));
 
-                        Future<?> future = executor.submit(() -> {
-                            // call the deleteRecord() function with no flags
-                            engine.deleteRecord(recordKey, SZ_NO_FLAGS);
+                        Future<?> future = submitRecord(lanes, engine, record);
 
-                            return null;
-                        });
-
-                        // add the futures to the pending future list
+                        // add the futures to the pending future list and
+                        // track it as the latest line for the record
                         pendingFutures.put(future, record);
+                        latestLines.put(record.recordKey, lineNumber);
+                        pendingLines.merge(record.recordKey, 1, Integer::sum);
+                        checkpoint.submitted(lineNumber, endOffset);
 
                     } catch (JsonException e) {
                         logFailedRecord(ERROR, e, lineNumber, line);
                         errorCount++; // increment the error count
+                        checkpoint.skipped(lineNumber, endOffset);
                     }
                 }
 
                 do {
                     // handle any pending futures WITHOUT blocking to reduce the backlog
-                    handlePendingFutures(pendingFutures, false);
+                    handlePendingFutures(pendingFutures, checkpoint, false);
 
-                    // if we still have exceeded the backlog size then pause
-                    // briefly before trying again
-                    if (pendingFutures.size() >= MAXIMUM_BACKLOG) {
+                    // if we still have exceeded the backlog size, or have read
+                    // the whole file and are only waiting on pending futures
+                    // and retries, then pause briefly before trying again
+                    if ((pendingFutures.size() >= MAXIMUM_BACKLOG)
+                            || (eof && (pendingFutures.size() > 0 || !retryQueue.isEmpty()))) {
                         try {
                             Thread.sleep(PAUSE_TIMEOUT);
 
@@ -118,14 +186,18 @@ public class DeleteViaFutures {
                         }
                     }
                 } while (pendingFutures.size() >= MAXIMUM_BACKLOG);
+
+                // periodically save the checkpoint
+                if (checkpoint.isSaveDue()) {
+                    checkpoint.save();
+                }
             }
 
-            // shutdown the executor service
-            executor.shutdown();
+            // shutdown the lanes
+            lanes.shutdown();
 
-            // after we have submitted all records we need to handle the remaining
-            // pending futures so this time we block on each future
-            handlePendingFutures(pendingFutures, true);
+            // the whole file is done so the checkpoint is no longer needed
+            checkpoint.finish();
 
         } catch (Exception e) {
             System.err.println();
@@ -137,25 +209,39 @@ public class DeleteViaFutures {
             throw new RuntimeException(e);
 
         } finally {
-            // check if executor service is shutdown
-            if (!executor.isShutdown()) {
-                executor.shutdown();
+            // check if the lanes are shutdown
+            if (!lanes.isShutdown()) {
+                lanes.shutdown();
             }
 
+            // stop reporting progress
+            progress.close();
+
             // IMPORTANT: make sure to destroy the environment
             env.destroy();
 
             System.out.println();
             System.out.println("Successful delete operations : " + successCount);
             System.out.println("Failed delete operations     : " + errorCount);
+            System.out.println("Final concurrency limit      : " + concurrencyLimit.getLimit());
+            System.out.println("Deletions retried in-process : " + retryQueue.getScheduledCount());
+            System.out.println("Retries dropped (replaced)   : " + supersededCount);
+            lanes.printSummary(System.out);
 
-            // check on any retry records
-            if (retryWriter != null) {
-                retryWriter.flush();
-                retryWriter.close();
+            // check on any retry records, including any still waiting on their
+            // backoff if we terminated early
+            try {
+                for (Record record : retryQueue.drain()) {
+                    retryCount++; // increment the retry count
+                    retryJournal.retry(null, record.attempt, record.lineNumber, record.line);
+                }
+            } catch (IOException | InterruptedException e) {
+                e.printStackTrace();
             }
+            retryJournal.close();
             if (retryCount > 0) {
-                System.out.println(retryCount + " deletions to be retried in " + retryFile);
+                System.out.println(retryCount + " deletions to be retried in "
+                        + retryJournal.getDirectory());
             }
             System.out.flush();
 
@@ -163,7 +249,91 @@ public class DeleteViaFutures {
 
     }
 
-    private static void handlePendingFutures(Map<Future<?>, Record> pendingFutures, boolean blocking)
+    /**
+     * Parses the specified record to get its record key.
+     *
+     * @param line The JSON text for the record.
+     *
+     * @return The {@link SzRecordKey} for the record.
+     *
+     * @throws JsonException If the record could not be parsed.
+     */
+    private static SzRecordKey parseRecordKey(String line) throws JsonException {
+        // parse the line as a JSON object
+        JsonObject recordJson = Json.createReader(new StringReader(line)).readObject();
+
+        // extract the data source code and record ID
+        String dataSourceCode = recordJson.getString(DATA_SOURCE, null);
+        String recordId = recordJson.getString(RECORD_ID, null);
+        return SzRecordKey.of(dataSourceCode, recordId);
+    }
+
+    /**
+     * Submits a task to delete the specified record to the lane for its
+     * record key, blocking while that lane is full.
+     *
+     * @param lanes  The {@link KeyPartitionedExecutor} to use.
+     * @param engine The {@link SzEngine} to use.
+     * @param record The {@link Record} to delete.
+     *
+     * @return The {@link Future} for the task.
+     *
+     * @throws InterruptedException If interrupted while waiting for the lane.
+     */
+    private static Future<?> submitRecord(KeyPartitionedExecutor lanes,
+            SzEngine engine,
+            Record record)
+            throws InterruptedException {
+        progress.submitted();
+        return lanes.submit(record.recordKey, () -> {
+            // call the deleteRecord() function with no flags
+            // within the adaptive concurrency limit
+            concurrencyLimit.call(() -> engine.deleteRecord(record.recordKey, SZ_NO_FLAGS));
+
+            return null;
+        });
+    }
+
+    /**
+     * Checks if a later line for the same record as the specified {@link
+     * Record} has been submitted (and has not failed), in which case retrying
+     * it would undo the later line.
+     *
+     * @param record The {@link Record} to check.
+     *
+     * @return <code>true</code> if the record has been superseded, otherwise
+     *         <code>false</code>.
+     */
+    private static boolean isSuperseded(Record record) {
+        Integer latestLine = latestLines.get(record.recordKey);
+        return (latestLine != null) && (latestLine > record.lineNumber);
+    }
+
+    /**
+     * Stops tracking the specified {@link Record} once its outcome has been
+     * handled.  If it was not applied (e.g.: it failed or was journaled to be
+     * retried) and it is the latest line for the record then it no longer
+     * supersedes the earlier lines still being retried.  The record key is
+     * no longer tracked once none of its lines are outstanding.
+     *
+     * @param record  The {@link Record} whose outcome has been handled.
+     * @param applied <code>true</code> if the line was applied, otherwise
+     *                <code>false</code>.
+     */
+    private static void lineHandled(Record record, boolean applied) {
+        if (!applied) {
+            latestLines.remove(record.recordKey, record.lineNumber);
+        }
+        Integer pending = pendingLines.computeIfPresent(
+                record.recordKey, (key, count) -> (count > 1) ? count - 1 : null);
+        if (pending == null) {
+            latestLines.remove(record.recordKey);
+        }
+    }
+
+    private static void handlePendingFutures(Map<Future<?>, Record> pendingFutures,
+            FileCheckpoint checkpoint,
+            boolean blocking)
             throws Exception {
         // check for completed futures
         Iterator<Map.Entry<Future<?>, Record>> iter = pendingFutures.entrySet().iterator();
@@ -183,6 +353,8 @@ public class DeleteViaFutures {
             // remove the pending future from the map
             iter.remove();
 
+            boolean applied = false;
+
             try {
                 try {
                     // get the value to see if there was an exception
@@ -190,6 +362,8 @@ public class DeleteViaFutures {
 
                     // if we get here then increment the success count
                     successCount++;
+                    applied = true;
+                    progress.completed();
 
                 } catch (InterruptedException e) {
                     // this could only happen if blocking is true, just
@@ -210,27 +384,56 @@ public class DeleteViaFutures {
             } catch (SzBadInputException e) {
                 logFailedRecord(ERROR, e, record.lineNumber, record.line);
                 errorCount++; // increment the error count
+                progress.completed();
+                progress.failed();
 
             } catch (SzRetryableException | InterruptedException | CancellationException e) {
-                // handle thread interruption and cancellation as retries
+                // drop the retry if a later line for the same record has been
+                // submitted since, retrying would undo the later line
+                if ((e instanceof SzRetryableException) && isSuperseded(record)) {
+                    supersededCount++;
+                    progress.completed();
+                    lineHandled(record, false);
+                    checkpoint.completed(record.lineNumber);
+                    continue;
+                }
+
+                // schedule a retryable failure to be retried in-process after a
+                // backoff, the record is still outstanding so the checkpoint
+                // must not move past it yet
+                if ((e instanceof SzRetryableException)
+                        && retryQueue.offer(record.nextAttempt(),
+                                record.attempt,
+                                RetryQueue.estimateSize(record.line))) {
+                    progress.completed();
+                    progress.retried();
+                    continue;
+                }
+
+                // handle thread interruption, cancellation and exhausted retries
+                // by journaling the record to be retried
                 logFailedRecord(WARNING, e, record.lineNumber, record.line);
                 errorCount++; // increment the error count
                 retryCount++; // increment the retry count
+                progress.completed();
+                progress.failed();
 
                 // track the retry record so it can be retried later
-                if (retryFile == null) {
-                    retryFile = File.createTempFile(RETRY_PREFIX, RETRY_SUFFIX);
-                    retryWriter = new PrintWriter(
-                            new OutputStreamWriter(new FileOutputStream(retryFile), UTF_8));
-                }
-                retryWriter.println(record.line);
+                retryJournal.retry(e, record.attempt, record.lineNumber, record.line);
 
             } catch (Exception e) {
                 // catch any other exception (incl. SzException) here
                 logFailedRecord(CRITICAL, e, record.lineNumber, record.line);
                 errorCount++;
+                progress.completed();
+                progress.failed();
                 throw e; // rethrow since exception is critical
             }
+
+            // the outcome has been handled so the checkpoint can move past it
+            // and the line no longer needs tracking
+            lineHandled(record, applied);
+            checkpoint.completed(record.lineNumber);
         }
     }
 
@@ -257,15 +460,16 @@ public class DeleteViaFutures {
 
     private static final String DEFAULT_FILE_PATH = "../resources/data/del-500.jsonl";
 
-    private static final String UTF_8 = "UTF-8";
+    private static final int THREAD_COUNT = 8;
 
-    private static final String RETRY_PREFIX = "retry-";
-    private static final String RETRY_SUFFIX = ".jsonl";
+    private static final int MINIMUM_THREAD_COUNT = 1;
 
-    private static final int THREAD_COUNT = 8;
+    private static final int MAXIMUM_THREAD_COUNT = 32;
 
     private static final int BACKLOG_FACTOR = 10;
 
+    private static final int LANE_CAPACITY = BACKLOG_FACTOR;
+
     private static final int MAXIMUM_BACKLOG = THREAD_COUNT * BACKLOG_FACTOR;
 
     private static final long PAUSE_TIMEOUT = 100L;
@@ -277,12 +481,25 @@ public class DeleteViaFutures {
     private static final String WARNING = "WARNING";
     private static final String CRITICAL = "CRITICAL";
 
-    public record Record(int lineNumber, String line) {
+    public record Record(int lineNumber, String line, SzRecordKey recordKey, int attempt) {
+        public Record(int lineNumber, String line, SzRecordKey recordKey) {
+            this(lineNumber, line, recordKey, 1);
+        }
+
+        public Record nextAttempt() {
+            return new Record(this.lineNumber, this.line, this.recordKey, this.attempt + 1);
+        }
     }
 
     private static int errorCount = 0;
     private static int successCount = 0;
     private static int retryCount = 0;
-    private static File retryFile = null;
-    private static PrintWriter retryWriter = null;
+    private static int supersededCount = 0;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+    private static ProgressReporter progress = new ProgressReporter("deletions");
+    private static RetryQueue<Record> retryQueue = new RetryQueue<>();
+    private static Map<SzRecordKey, Integer> latestLines = new HashMap<>();
+    private static Map<SzRecordKey, Integer> pendingLines = new HashMap<>();
+    private static AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(
+            THREAD_COUNT, MINIMUM_THREAD_COUNT, MAXIMUM_THREAD_COUNT);
 }
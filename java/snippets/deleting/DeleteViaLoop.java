@@ -2,6 +2,7 @@ package deleting;
 
 import java.io.*;
 import javax.json.*;
+import com.senzing.runner.LazyRetryJournal;
 import com.senzing.sdk.*;
 import com.senzing.sdk.core.SzCoreEnvironment;
 
@@ -82,12 +83,7 @@ public class DeleteViaLoop {
                     retryCount++;   // increment the retry count
 
                     // track the retry record so it can be retried later
-                    if (retryFile == null) {
-                        retryFile = File.createTempFile(RETRY_PREFIX, RETRY_SUFFIX);
-                        retryWriter = new PrintWriter(
-                            new OutputStreamWriter(new FileOutputStream(retryFile), UTF_8));
-                    }
-                    retryWriter.println(line);
+                    retryJournal.retry(e, 1, lineNumber, line);
 
                 } catch (Exception e) {
                     // catch any other exception (incl. SzException) here
@@ -115,12 +111,10 @@ public class DeleteViaLoop {
             System.out.println("Failed delete operations     : " + errorCount);
 
             // check on any retry records
-            if (retryWriter != null) {
-                retryWriter.flush();
-                retryWriter.close();
-            }
+            retryJournal.close();
             if (retryCount > 0) {
-                System.out.println(retryCount + " deletions to be retried in " + retryFile);
+                System.out.println(retryCount + " deletions to be retried in "
+                    + retryJournal.getDirectory());
             }
             System.out.flush();
 
@@ -153,9 +147,6 @@ public class DeleteViaLoop {
 
     private static final String UTF_8 = "UTF-8";
 
-    private static final String RETRY_PREFIX = "retry-";
-    private static final String RETRY_SUFFIX = ".jsonl";
-
     private static final String DATA_SOURCE = "DATA_SOURCE";
     private static final String RECORD_ID   = "RECORD_ID";
 
@@ -166,6 +157,5 @@ public class DeleteViaLoop {
     private static int         errorCount      = 0;
     private static int         successCount    = 0;
     private static int         retryCount      = 0;
-    private static File        retryFile       = null;
-    private static PrintWriter retryWriter     = null;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
 }
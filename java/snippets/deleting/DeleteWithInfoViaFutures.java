@@ -4,6 +4,8 @@ import java.io.*;
 import javax.json.*;
 import java.util.*;
 import java.util.concurrent.*;
+import com.senzing.runner.InfoProcessingStage;
+import com.senzing.runner.LazyRetryJournal;
 import com.senzing.sdk.*;
 import com.senzing.sdk.core.SzCoreEnvironment;
 
@@ -11,6 +13,10 @@ import static com.senzing.sdk.SzFlag.*;
 
 /**
  * Provides a simple example of deleting records from the Senzing repository.
+ * The INFO returned for each deletion is processed by an {@link
+ * InfoProcessingStage} with its own threads behind a bounded queue, so a slow
+ * consumer of the INFO shows up as queue depth rather than slowing down the
+ * submission of deletions.
  */
 public class DeleteWithInfoViaFutures {
     public static void main(String[] args) {
@@ -39,12 +45,22 @@ public class DeleteWithInfoViaFutures {
         // keep track of pending futures and don't backlog too many for memory's sake
         Map<Future<String>, Record> pendingFutures = new IdentityHashMap<>();
 
+        // the stage that processes the info, created once we have the engine
+        InfoProcessingStage infoStage = null;
+
         try (FileInputStream fis = new FileInputStream(filePath);
                 InputStreamReader isr = new InputStreamReader(fis, UTF_8);
                 BufferedReader br = new BufferedReader(isr)) {
             // get the engine from the environment
             SzEngine engine = env.getEngine();
 
+            // process the info on its own threads, separately from the futures
+            infoStage = new InfoProcessingStage(
+                    "info", INFO_THREAD_COUNT, INFO_QUEUE_CAPACITY, info -> processInfo(engine, info));
+
+            // report the info queue depth and backpressure while running
+            infoStage.startReporting(INFO_REPORT_INTERVAL, System.out);
+
             int lineNumber = 0;
             boolean eof = false;
 
@@ -103,7 +119,7 @@ public class DeleteWithInfoViaFutures {
 
                 do {
                     // handle any pending futures WITHOUT blocking to reduce the backlog
-                    handlePendingFutures(engine, pendingFutures, false);
+                    handlePendingFutures(infoStage, pendingFutures, false);
 
                     // if we still have exceeded the backlog size then pause
                     // briefly before trying again
@@ -123,7 +139,7 @@ public class DeleteWithInfoViaFutures {
 
             // after we have submitted all records we need to handle the remaining
             // pending futures so this time we block on each future
-            handlePendingFutures(engine, pendingFutures, true);
+            handlePendingFutures(infoStage, pendingFutures, true);
 
         } catch (Exception e) {
             System.err.println();
@@ -140,6 +156,11 @@ public class DeleteWithInfoViaFutures {
                 executor.shutdown();
             }
 
+            // wait for the queued info to be processed before destroying the environment
+            if (infoStage != null) {
+                infoStage.close();
+            }
+
             // IMPORTANT: make sure to destroy the environment
             env.destroy();
 
@@ -149,12 +170,13 @@ public class DeleteWithInfoViaFutures {
             System.out.println("Failed delete operations     : " + errorCount);
 
             // check on any retry records
-            if (retryWriter != null) {
-                retryWriter.flush();
-                retryWriter.close();
-            }
+            retryJournal.close();
             if (retryCount > 0) {
-                System.out.println(retryCount + " deletions to be retried in " + retryFile);
+                System.out.println(retryCount + " deletions to be retried in "
+                        + retryJournal.getDirectory());
+            }
+            if (infoStage != null) {
+                infoStage.printSummary(System.out);
             }
             System.out.flush();
 
@@ -162,7 +184,7 @@ public class DeleteWithInfoViaFutures {
 
     }
 
-    private static void handlePendingFutures(SzEngine engine,
+    private static void handlePendingFutures(InfoProcessingStage infoStage,
             Map<Future<String>, Record> pendingFutures,
             boolean blocking)
             throws Exception {
@@ -184,17 +206,15 @@ public class DeleteWithInfoViaFutures {
             // remove the pending future from the map
             iter.remove();
 
+            String info = null;
             try {
                 try {
                     // get the value to see if there was an exception
-                    String info = future.get();
+                    info = future.get();
 
                     // if we get here then increment the success count
                     successCount++;
 
-                    // process the info
-                    processInfo(engine, info);
-
                 } catch (InterruptedException e) {
                     // this could only happen if blocking is true, just
                     // rethrow as retryable and log the interruption
@@ -222,12 +242,7 @@ public class DeleteWithInfoViaFutures {
                 retryCount++; // increment the retry count
 
                 // track the retry record so it can be retried later
-                if (retryFile == null) {
-                    retryFile = File.createTempFile(RETRY_PREFIX, RETRY_SUFFIX);
-                    retryWriter = new PrintWriter(
-                            new OutputStreamWriter(new FileOutputStream(retryFile), UTF_8));
-                }
-                retryWriter.println(record.line);
+                retryJournal.retry(e, 1, record.lineNumber, record.line);
 
             } catch (Exception e) {
                 // catch any other exception (incl. SzException) here
@@ -235,6 +250,13 @@ public class DeleteWithInfoViaFutures {
                 errorCount++;
                 throw e; // rethrow since exception is critical
             }
+
+            // queue the info to be processed, blocking if the queue is full --
+            // this is outside the handling above since the record is already
+            // done and must not be retried if we are interrupted here
+            if (info != null) {
+                submitInfo(infoStage, info);
+            }
         }
     }
 
@@ -258,19 +280,57 @@ public class DeleteWithInfoViaFutures {
             JsonNumber number = affected.getJsonNumber(ENTITY_ID);
             long entityId = number.longValue();
 
+            // hold the entity's lock across the retrieval and the update so
+            // another INFO thread cannot apply an older result afterward
+            synchronized (ENTITY_LOCKS[(int) Math.floorMod(entityId, (long) ENTITY_LOCKS.length)]) {
+                updateEntity(engine, entityId);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the entity with the specified entity ID and updates the
+     * tracked entity IDs according to whether or not it still exists.
+     *
+     * @param engine   The {@link SzEngine} to use.
+     * @param entityId The entity ID of the affected entity.
+     */
+    private static void updateEntity(SzEngine engine, long entityId) {
+        try {
+            engine.getEntity(entityId, null);
+            entityIdSet.remove(entityId);
+        } catch (SzNotFoundException e) {
+            entityIdSet.add(entityId);
+        } catch (SzException e) {
+            // simply log the exception, do not rethrow
+            System.err.println();
+            System.err.println("**** FAILED TO RETRIEVE ENTITY: " + entityId);
+            System.err.println(e.toString());
+            System.err.flush();
+        }
+    }
+
+    /**
+     * Submits the specified INFO message to the specified {@link
+     * InfoProcessingStage}, waiting for room in its queue even if interrupted
+     * so the INFO is not dropped, and restoring the interrupt afterward.
+     *
+     * @param infoStage The {@link InfoProcessingStage} to submit to.
+     * @param info      The INFO message to submit.
+     */
+    private static void submitInfo(InfoProcessingStage infoStage, String info) {
+        boolean interrupted = false;
+        while (true) {
             try {
-                engine.getEntity(entityId, null);
-                entityIdSet.remove(entityId);
-            } catch (SzNotFoundException e) {
-                entityIdSet.add(entityId);
-            } catch (SzException e) {
-                // simply log the exception, do not rethrow
-                System.err.println();
-                System.err.println("**** FAILED TO RETRIEVE ENTITY: " + entityId);
-                System.err.println(e.toString());
-                System.err.flush();
+                infoStage.submit(info);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
         }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -298,9 +358,6 @@ public class DeleteWithInfoViaFutures {
 
     private static final String UTF_8 = "UTF-8";
 
-    private static final String RETRY_PREFIX = "retry-";
-    private static final String RETRY_SUFFIX = ".jsonl";
-
     private static final int THREAD_COUNT = 8;
 
     private static final int BACKLOG_FACTOR = 10;
@@ -309,8 +366,23 @@ public class DeleteWithInfoViaFutures {
 
     private static final long PAUSE_TIMEOUT = 100L;
 
+    private static final int INFO_THREAD_COUNT = 4;
+
+    private static final int INFO_QUEUE_CAPACITY = MAXIMUM_BACKLOG * BACKLOG_FACTOR;
+
+    private static final long INFO_REPORT_INTERVAL = 10000L;
+
     private static final String DATA_SOURCE = "DATA_SOURCE";
     private static final String RECORD_ID = "RECORD_ID";
+    private static final int ENTITY_LOCK_COUNT = 64;
+
+    private static final Object[] ENTITY_LOCKS = new Object[ENTITY_LOCK_COUNT];
+    static {
+        for (int index = 0; index < ENTITY_LOCK_COUNT; index++) {
+            ENTITY_LOCKS[index] = new Object();
+        }
+    }
+
     private static final String AFFECTED_ENTITIES = "AFFECTED_ENTITIES";
     private static final String ENTITY_ID = "ENTITY_ID";
 
@@ -324,7 +396,6 @@ public class DeleteWithInfoViaFutures {
     private static int errorCount = 0;
     private static int successCount = 0;
     private static int retryCount = 0;
-    private static File retryFile = null;
-    private static PrintWriter retryWriter = null;
-    private static Set<Long> entityIdSet = new HashSet<>();
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+    private static Set<Long> entityIdSet = ConcurrentHashMap.newKeySet();
 }
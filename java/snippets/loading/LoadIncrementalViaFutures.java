@@ -0,0 +1,365 @@
+package loading;
+
+import java.io.*;
+import javax.json.*;
+import java.util.*;
+import java.util.concurrent.*;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.RecordDigestIndex;
+import com.senzing.runner.RecordDigestIndex.RecordDigest;
+import com.senzing.runner.RecordKeyExtractor;
+import com.senzing.sdk.*;
+import com.senzing.sdk.core.SzCoreEnvironment;
+
+import static com.senzing.sdk.SzFlag.*;
+
+/**
+ * Provides an example of incrementally reloading source records, skipping
+ * any record whose content has not changed since it was last successfully
+ * added.  A {@link RecordDigestIndex} on disk maps each record key to a
+ * digest of the record as last added, so unchanged records are skipped
+ * before any call to the engine and only new or changed records are added.
+ *
+ * <p>
+ * The first command-line argument is the index file to keep between runs
+ * (a temporary file is used if not specified) and any further arguments are
+ * the data files to load in order.  By default this loads
+ * <code>load-5K.json</code>, then <code>replace-5K.jsonl</code> (which
+ * changes every record) and then <code>replace-5K.jsonl</code> again (which
+ * changes none of them).
+ */
+public class LoadIncrementalViaFutures {
+    public static void main(String[] args) {
+        // get the senzing repository settings
+        String settings = System.getenv("SENZING_ENGINE_CONFIGURATION_JSON");
+        if (settings == null) {
+            System.err.println("Unable to get settings.");
+            throw new IllegalArgumentException("Unable to get settings");
+        }
+
+        // create a descriptive instance name (can be anything)
+        String instanceName = LoadIncrementalViaFutures.class.getSimpleName();
+
+        // initialize the Senzing environment
+        SzEnvironment env = SzCoreEnvironment.newBuilder()
+                .settings(settings)
+                .instanceName(instanceName)
+                .verboseLogging(false)
+                .build();
+
+        String[] filePaths = (args.length > 1)
+                ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_FILE_PATHS;
+
+        // create the thread pool and executor service
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+        // create a completion service so futures are handed back as they complete
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+
+        // keep track of pending futures and don't backlog too many for memory's sake
+        Map<Future<Void>, Record> pendingFutures = new IdentityHashMap<>();
+
+        RecordDigestIndex index = null;
+        try {
+            // open the digest index, using a temporary file if not specified
+            File indexFile = (args.length > 0) ? new File(args[0]) : createTempIndexFile();
+            index = new RecordDigestIndex(indexFile);
+
+            // get the engine from the environment
+            SzEngine engine = env.getEngine();
+
+            for (String filePath : filePaths) {
+                int addedBefore = successCount;
+                int skippedBefore = skippedCount;
+                int errorsBefore = errorCount;
+
+                loadFile(filePath, engine, index, completionService, pendingFutures);
+
+                System.out.println();
+                System.out.println("Loaded " + filePath + ":");
+                System.out.println("  Records new or changed and added : "
+                        + (successCount - addedBefore));
+                System.out.println("  Records unchanged and skipped    : "
+                        + (skippedCount - skippedBefore));
+                System.out.println("  Records failed with errors       : "
+                        + (errorCount - errorsBefore));
+                System.out.flush();
+            }
+
+            // shutdown the executor service
+            executor.shutdown();
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("*** Terminated due to critical error ***");
+            System.err.flush();
+            if (e instanceof RuntimeException) {
+                throw ((RuntimeException) e);
+            }
+            throw new RuntimeException(e);
+
+        } finally {
+            // check if executor service is shutdown
+            if (!executor.isShutdown()) {
+                executor.shutdown();
+            }
+
+            // flush the digests of the records added so far to disk
+            if (index != null) {
+                try {
+                    index.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close the record digest index: " + e);
+                }
+            }
+
+            // IMPORTANT: make sure to destroy the environment
+            env.destroy();
+
+            System.out.println();
+            System.out.println("Records successfully added     : " + successCount);
+            System.out.println("Records skipped as unchanged   : " + skippedCount);
+            System.out.println("Records failed with errors     : " + errorCount);
+            System.out.println("Record keys in the index       : "
+                    + ((index == null) ? 0 : index.size()));
+
+            // check on any retry records
+            retryJournal.close();
+            if (retryCount > 0) {
+                System.out.println(retryCount + " records to be retried in "
+                        + retryJournal.getDirectory());
+            }
+            System.out.flush();
+
+        }
+
+    }
+
+    /**
+     * Loads the records in the specified file that are new or changed
+     * according to the specified {@link RecordDigestIndex} and waits for
+     * them to complete.
+     *
+     * @param filePath          The path to the data file.
+     * @param engine            The {@link SzEngine} to use.
+     * @param index             The {@link RecordDigestIndex} to use.
+     * @param completionService The {@link CompletionService} to submit to.
+     * @param pendingFutures    The {@link Map} of pending futures.
+     *
+     * @throws Exception If a critical failure occurs.
+     */
+    private static void loadFile(String filePath,
+            SzEngine engine,
+            RecordDigestIndex index,
+            CompletionService<Void> completionService,
+            Map<Future<Void>, Record> pendingFutures)
+            throws Exception {
+        try (FileInputStream fis = new FileInputStream(filePath);
+                InputStreamReader isr = new InputStreamReader(fis, UTF_8);
+                BufferedReader br = new BufferedReader(isr)) {
+
+            int lineNumber = 0;
+            boolean eof = false;
+
+            while (!eof) {
+                // loop through the example records and queue them up so long
+                // as we have more records and backlog is not too large
+                while (pendingFutures.size() < MAXIMUM_BACKLOG) {
+                    // read the next line
+                    String line = br.readLine();
+                    lineNumber++;
+
+                    // check for EOF
+                    if (line == null) {
+                        eof = true;
+                        break;
+                    }
+
+                    // trim the line
+                    line = line.trim();
+
+                    // skip any blank lines
+                    if (line.length() == 0) {
+                        continue;
+                    }
+
+                    // skip any commented lines
+                    if (line.startsWith("#")) {
+                        continue;
+                    }
+
+                    try {
+                        // extract the record key without fully parsing the JSON
+                        SzRecordKey recordKey = RecordKeyExtractor.extractRecordKey(line);
+
+                        // skip the record if it is unchanged since it was last added
+                        RecordDigest digest = RecordDigestIndex.digest(recordKey, line);
+                        if (index.isUnchanged(digest)) {
+                            skippedCount++;
+                            continue;
+                        }
+
+                        // construct the Record instance
+                        Record record = new Record(lineNumber, line, digest);
+
+                        Future<Void> future = completionService.submit(() -> {
+                            // call the addRecord() function with no flags
+                            engine.addRecord(recordKey, record.line, SZ_NO_FLAGS);
+
+                            // return null since we have no "info" to return
+                            return null;
+                        });
+
+                        // add the future to the pending future list
+                        pendingFutures.put(future, record);
+
+                    } catch (JsonException e) {
+                        logFailedRecord(ERROR, e, lineNumber, line);
+                        errorCount++; // increment the error count
+                    }
+                }
+
+                // handle the completed futures to reduce the backlog, blocking
+                // until the next one completes only if the backlog is full
+                handlePendingFutures(completionService,
+                        pendingFutures,
+                        index,
+                        pendingFutures.size() >= MAXIMUM_BACKLOG);
+            }
+
+            // handle the remaining pending futures for this file so the
+            // per-file counts are complete, blocking on each future
+            while (pendingFutures.size() > 0) {
+                handlePendingFutures(completionService, pendingFutures, index, true);
+            }
+        }
+    }
+
+    private static void handlePendingFutures(CompletionService<Void> completionService,
+            Map<Future<Void>, Record> pendingFutures,
+            RecordDigestIndex index,
+            boolean blocking)
+            throws Exception {
+        // loop through the completed futures, waiting for the first one only
+        // if blocking, and stop once no more are immediately available
+        for (Future<Void> future = (blocking) ? completionService.take() : completionService.poll();
+                future != null;
+                future = completionService.poll()) {
+            // remove the completed future from the pending map
+            Record record = pendingFutures.remove(future);
+
+            try {
+                try {
+                    // get the value to see if there was an exception
+                    future.get();
+
+                    // if we get here then increment the success count
+                    successCount++;
+
+                    // only record the digest once the record is added so a
+                    // failed record is never skipped on the next run
+                    index.put(record.digest);
+
+                } catch (InterruptedException e) {
+                    // the future is already complete so this should not happen,
+                    // but if it does rethrow as retryable and log the interruption
+                    throw e;
+
+                } catch (ExecutionException e) {
+                    // if execution failed with an exception then rethrow
+                    Throwable cause = e.getCause();
+                    if ((cause == null) || !(cause instanceof Exception)) {
+                        // rethrow the execution exception
+                        throw e;
+                    }
+                    // cast to an Exception and rethrow
+                    throw ((Exception) cause);
+                }
+
+            } catch (SzBadInputException e) {
+                logFailedRecord(ERROR, e, record.lineNumber, record.line);
+                errorCount++; // increment the error count
+
+            } catch (SzRetryableException | InterruptedException | CancellationException e) {
+                // handle thread interruption and cancellation as retries
+                logFailedRecord(WARNING, e, record.lineNumber, record.line);
+                errorCount++; // increment the error count
+                retryCount++; // increment the retry count
+
+                // track the retry record so it can be retried later
+                retryJournal.retry(e, 1, record.lineNumber, record.line);
+
+            } catch (Exception e) {
+                // catch any other exception (incl. SzException) here
+                logFailedRecord(CRITICAL, e, record.lineNumber, record.line);
+                errorCount++;
+                throw e; // rethrow since exception is critical
+            }
+        }
+    }
+
+    /**
+     * Creates a temporary index file (and its key file) that is deleted
+     * on exit.
+     *
+     * @return The temporary index {@link File}.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    private static File createTempIndexFile() throws IOException {
+        File indexFile = File.createTempFile(INDEX_PREFIX, INDEX_SUFFIX);
+        indexFile.deleteOnExit();
+        new File(indexFile.getPath() + RecordDigestIndex.KEY_FILE_SUFFIX).deleteOnExit();
+        return indexFile;
+    }
+
+    /**
+     * Example method for logging failed records.
+     *
+     * @param errorType  The error type description.
+     * @param exception  The exception itself.
+     * @param lineNumber The line number of the failed record in the JSON input
+     *                   file.
+     * @param recordJson The JSON text for the failed record.
+     */
+    private static void logFailedRecord(String errorType,
+            Exception exception,
+            int lineNumber,
+            String recordJson) {
+        System.err.println();
+        System.err.println(
+                "** " + errorType + " ** FAILED TO ADD RECORD AT LINE " + lineNumber + ": ");
+        System.err.println(recordJson);
+        System.err.println(exception);
+        System.err.flush();
+    }
+
+    private static final String[] DEFAULT_FILE_PATHS = {
+            "../resources/data/load-5K.json",
+            "../resources/data/replace-5K.jsonl",
+            "../resources/data/replace-5K.jsonl" };
+
+    private static final String UTF_8 = "UTF-8";
+
+    private static final String INDEX_PREFIX = "digests-";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final int THREAD_COUNT = 8;
+
+    private static final int BACKLOG_FACTOR = 10;
+
+    private static final int MAXIMUM_BACKLOG = THREAD_COUNT * BACKLOG_FACTOR;
+
+    private static final String ERROR = "ERROR";
+    private static final String WARNING = "WARNING";
+    private static final String CRITICAL = "CRITICAL";
+
+    public record Record(int lineNumber, String line, RecordDigest digest) {
+    }
+
+    private static int errorCount = 0;
+    private static int successCount = 0;
+    private static int skippedCount = 0;
+    private static int retryCount = 0;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+}
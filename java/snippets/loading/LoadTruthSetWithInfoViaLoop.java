@@ -1,11 +1,17 @@
 package loading;
 
 import java.io.*;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.json.*;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.RecordKeyExtractor;
 import com.senzing.sdk.*;
 import com.senzing.sdk.core.SzCoreEnvironment;
 
@@ -13,6 +19,15 @@ import static com.senzing.sdk.SzFlag.*;
 
 /**
  * Provides a simple example of adding records to the Senzing repository.
+ *
+ * <p>
+ * If the first command-line argument is <code>"concurrent"</code> then the
+ * input files (the truth set files unless other files are given as further
+ * arguments) are read concurrently, each by its own reader thread into its
+ * own bounded queue, and a shared pool of worker threads takes the records
+ * from the queues in round-robin order so that every file gets a fair share
+ * of the workers whatever its size.  Errors and retries are still reported
+ * by file and line number, and the throughput of each file is reported.
  */
 public class LoadTruthSetWithInfoViaLoop {
     private static final List<String> INPUT_FILES = List.of(
@@ -22,11 +37,18 @@ public class LoadTruthSetWithInfoViaLoop {
     
     private static final String UTF_8 = "UTF-8";
 
-    private static final String RETRY_PREFIX = "retry-";
-    private static final String RETRY_SUFFIX = ".jsonl";
+    private static final String CONCURRENT_MODE = "concurrent";
+
+    private static final int THREAD_COUNT = 8;
+
+    private static final int QUEUE_CAPACITY = 100;
+
+    private static final long PAUSE_TIMEOUT = 10L;
+
+    private static final long AWAIT_TIMEOUT = 1000L;
+
+    private static final double ONE_BILLION = 1000000000.0;
 
-    private static final String DATA_SOURCE         = "DATA_SOURCE";
-    private static final String RECORD_ID           = "RECORD_ID";
     private static final String AFFECTED_ENTITIES   = "AFFECTED_ENTITIES";
     private static final String ENTITY_ID           = "ENTITY_ID";
 
@@ -34,12 +56,36 @@ public class LoadTruthSetWithInfoViaLoop {
     private static final String WARNING     = "WARNING";
     private static final String CRITICAL    = "CRITICAL";
 
+    /**
+     * A record read from an input file along with its line number.
+     */
+    private record PendingRecord(int lineNumber, String line) { }
+
+    /**
+     * The queue of records read from an input file and its statistics.
+     */
+    private static class FileLoad {
+        private final String                        filePath;
+        private final BlockingQueue<PendingRecord>  queue           = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private final AtomicInteger                 successCount    = new AtomicInteger(0);
+        private final AtomicInteger                 errorCount      = new AtomicInteger(0);
+        private final AtomicInteger                 retryCount      = new AtomicInteger(0);
+        private final AtomicLong                    finishTime      = new AtomicLong(0L);
+        private final long                          startTime       = System.nanoTime();
+        private volatile boolean                    readComplete    = false;
+
+        private FileLoad(String filePath) {
+            this.filePath = filePath;
+        }
+    }
+
     private static int         errorCount      = 0;
     private static int         successCount    = 0;
     private static int         retryCount      = 0;
-    private static File        retryFile       = null;
-    private static PrintWriter retryWriter     = null;
-    private static Set<Long>   entityIdSet = new HashSet<>();
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+    private static Set<Long>   entityIdSet = ConcurrentHashMap.newKeySet();
+
+    private static volatile Exception criticalFailure = null;
 
     public static void main(String[] args) {
         // get the senzing repository settings
@@ -59,12 +105,22 @@ public class LoadTruthSetWithInfoViaLoop {
             .verboseLogging(false)
             .build();
 
+        boolean concurrent = (args.length > 0) && CONCURRENT_MODE.equals(args[0].trim().toLowerCase());
+        List<String> inputFiles = (args.length > 1)
+            ? Arrays.asList(args).subList(1, args.length) : INPUT_FILES;
+
         try {
             // get the engine from the environment
             SzEngine engine = env.getEngine();
 
+            // load the input files concurrently if requested
+            if (concurrent) {
+                loadConcurrently(engine, inputFiles);
+                return;
+            }
+
             // loop through the input files
-            for (String filePath : INPUT_FILES) {
+            for (String filePath : inputFiles) {
                 try (FileInputStream    fis = new FileInputStream(filePath);
                      InputStreamReader  isr = new InputStreamReader(fis, UTF_8);
                      BufferedReader     br  = new BufferedReader(isr)) 
@@ -89,17 +145,11 @@ public class LoadTruthSetWithInfoViaLoop {
                         }
 
                         try {
-                            // parse the line as a JSON object
-                            JsonObject recordJson 
-                                = Json.createReader(new StringReader(line)).readObject();            
-                        
-                            // extract the data source code and record ID
-                            String  dataSourceCode  = recordJson.getString(DATA_SOURCE, null);
-                            String  recordId        = recordJson.getString(RECORD_ID, null);
+                            // extract the record key without fully parsing the JSON
+                            SzRecordKey recordKey = RecordKeyExtractor.extractRecordKey(line);
 
                             // call the addRecord() function with info flags
-                            String info = engine.addRecord(
-                                SzRecordKey.of(dataSourceCode, recordId), line, SZ_WITH_INFO_FLAGS);
+                            String info = engine.addRecord(recordKey, line, SZ_WITH_INFO_FLAGS);
 
                             successCount++;
 
@@ -116,12 +166,7 @@ public class LoadTruthSetWithInfoViaLoop {
                             retryCount++;   // increment the retry count
 
                             // track the retry record so it can be retried later
-                            if (retryFile == null) {
-                                retryFile = File.createTempFile(RETRY_PREFIX, RETRY_SUFFIX);
-                                retryWriter = new PrintWriter(
-                                    new OutputStreamWriter(new FileOutputStream(retryFile), UTF_8));
-                            }
-                            retryWriter.println(line);
+                            retryJournal.retry(e, 1, lineNumber, line);
 
                         } catch (Exception e) {
                             // catch any other exception (incl. SzException) here
@@ -151,18 +196,214 @@ public class LoadTruthSetWithInfoViaLoop {
             System.out.println("Records failed with errors : " + errorCount);
 
             // check on any retry records
-            if (retryWriter != null) {
-                retryWriter.flush();
-                retryWriter.close();
-            }
+            retryJournal.close();
             if (retryCount > 0) {
-                System.out.println(retryCount + " records to be retried in " + retryFile);
+                System.out.println(retryCount + " records to be retried in "
+                    + retryJournal.getDirectory());
             }
             System.out.flush();
 
         }
     }
 
+    /**
+     * Loads the specified input files concurrently: each file is read by its
+     * own thread into a bounded queue and a shared pool of workers takes the
+     * records from the queues in round-robin order.  The statistics for each
+     * file are printed once all are loaded.
+     * 
+     * @param engine The {@link SzEngine} to use.
+     * @param filePaths The paths to the input files.
+     * 
+     * @throws Exception If a critical failure occurs.
+     */
+    private static void loadConcurrently(SzEngine engine, List<String> filePaths) 
+        throws Exception
+    {
+        List<FileLoad> loads = new ArrayList<>();
+        for (String filePath : filePaths) {
+            loads.add(new FileLoad(filePath));
+        }
+
+        // start a reader thread for each file and the shared worker pool
+        ExecutorService readers = Executors.newFixedThreadPool(loads.size());
+        ExecutorService workers = Executors.newFixedThreadPool(THREAD_COUNT);
+        AtomicInteger   cursor  = new AtomicInteger(0);
+        try {
+            for (FileLoad load : loads) {
+                readers.execute(() -> readFile(load));
+            }
+            for (int index = 0; index < THREAD_COUNT; index++) {
+                workers.execute(() -> processRecords(engine, loads, cursor));
+            }
+
+            // wait for the workers to finish
+            workers.shutdown();
+            while (!workers.awaitTermination(AWAIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                // keep waiting
+            }
+
+        } finally {
+            // interrupt any reader still blocked on a full queue
+            workers.shutdownNow();
+            readers.shutdownNow();
+
+            // total the counts and report the statistics for each file
+            System.out.println();
+            for (FileLoad load : loads) {
+                successCount    += load.successCount.get();
+                errorCount      += load.errorCount.get();
+                retryCount      += load.retryCount.get();
+
+                long    finish  = load.finishTime.get();
+                double  seconds = (finish == 0L) ? 0.0 : (finish - load.startTime) / ONE_BILLION;
+                System.out.println(new File(load.filePath).getName() + ": "
+                    + load.successCount.get() + " added, "
+                    + load.errorCount.get() + " failed, "
+                    + load.retryCount.get() + " to retry, "
+                    + String.format("%.1f records/sec", 
+                        (seconds == 0.0) ? 0.0 : load.successCount.get() / seconds));
+            }
+            System.out.flush();
+        }
+
+        // check if any of the threads failed critically
+        if (criticalFailure != null) {
+            throw criticalFailure;
+        }
+    }
+
+    /**
+     * Reads the records from the input file of the specified {@link FileLoad}
+     * into its queue, blocking while the queue is full.
+     * 
+     * @param load The {@link FileLoad} for the file to read.
+     */
+    private static void readFile(FileLoad load) {
+        try (FileInputStream    fis = new FileInputStream(load.filePath);
+             InputStreamReader  isr = new InputStreamReader(fis, UTF_8);
+             BufferedReader     br  = new BufferedReader(isr)) 
+        {
+            int lineNumber = 0;
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                // increment the line number
+                lineNumber++;
+
+                // stop reading if a critical failure has occurred
+                if (criticalFailure != null) {
+                    break;
+                }
+
+                // trim the line
+                line = line.trim();
+                
+                // skip any blank lines
+                if (line.length() == 0) {
+                    continue;
+                }
+
+                // skip any commented lines
+                if (line.startsWith("#")) {
+                    continue;
+                }
+
+                load.queue.put(new PendingRecord(lineNumber, line));
+            }
+
+        } catch (InterruptedException e) {
+            // interrupted after a critical failure, just stop reading
+
+        } catch (Exception e) {
+            criticalFailure = e;
+
+        } finally {
+            load.readComplete = true;
+        }
+    }
+
+    /**
+     * Takes records from the queues of the specified {@link FileLoad}
+     * instances in round-robin order and adds them until all files have been
+     * read and their queues are empty.
+     * 
+     * @param engine The {@link SzEngine} to use.
+     * @param loads The {@link List} of {@link FileLoad} instances.
+     * @param cursor The shared round-robin position.
+     */
+    private static void processRecords(SzEngine         engine, 
+                                       List<FileLoad>   loads, 
+                                       AtomicInteger    cursor) 
+    {
+        while (criticalFailure == null) {
+            // take the next record from the next file that has one
+            FileLoad        load        = null;
+            PendingRecord   record      = null;
+            boolean         allComplete = true;
+            for (int index = 0; index < loads.size() && record == null; index++) {
+                load = loads.get(Math.floorMod(cursor.getAndIncrement(), loads.size()));
+
+                // check for completion before polling so no record is missed
+                boolean complete = load.readComplete;
+                record = load.queue.poll();
+                allComplete = allComplete && complete;
+            }
+
+            if (record == null) {
+                if (allComplete) {
+                    return;
+                }
+                try {
+                    Thread.sleep(PAUSE_TIMEOUT);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+
+            try {
+                // extract the record key without fully parsing the JSON
+                SzRecordKey recordKey = RecordKeyExtractor.extractRecordKey(record.line);
+
+                // call the addRecord() function with info flags
+                String info = engine.addRecord(recordKey, record.line, SZ_WITH_INFO_FLAGS);
+
+                load.successCount.incrementAndGet();
+                load.finishTime.accumulateAndGet(System.nanoTime(), Math::max);
+
+                // process the info
+                processInfo(engine, info);
+
+            } catch (JsonException | SzBadInputException e) {
+                logFailedRecord(ERROR, e, load.filePath, record.lineNumber, record.line);
+                load.errorCount.incrementAndGet();   // increment the error count
+
+            } catch (SzRetryableException e) {
+                logFailedRecord(WARNING, e, load.filePath, record.lineNumber, record.line);
+                load.errorCount.incrementAndGet();   // increment the error count
+                load.retryCount.incrementAndGet();   // increment the retry count
+
+                // track the retry record so it can be retried later
+                try {
+                    retryJournal.retry(e, 1, record.lineNumber, record.line);
+
+                } catch (IOException ioe) {
+                    criticalFailure = ioe;
+
+                } catch (InterruptedException ie) {
+                    // the record is journaled, only waiting for the commit was
+                    // cut short so restore the interrupt
+                    Thread.currentThread().interrupt();
+                }
+
+            } catch (Exception e) {
+                // catch any other exception (incl. SzException) here
+                logFailedRecord(CRITICAL, e, load.filePath, record.lineNumber, record.line);
+                load.errorCount.incrementAndGet();
+                criticalFailure = e; // record the failure to rethrow
+            }
+        }
+    }
+
     /**
      * Example method for parsing and handling the INFO message (formatted
      * as JSON).  This example implementation simply tracks all entity ID's
@@ -216,13 +457,15 @@ public class LoadTruthSetWithInfoViaLoop {
         File file = new File(filePath);
         String fileName = file.getName();
 
-        System.err.println();
-        System.err.println(
-            "** " + errorType + " ** FAILED TO ADD RECORD IN " + fileName 
-            + " AT LINE " + lineNumber + ": ");
-        System.err.println(recordJson);
-        System.err.println(exception);
-        System.err.flush();
+        synchronized (System.err) {
+            System.err.println();
+            System.err.println(
+                "** " + errorType + " ** FAILED TO ADD RECORD IN " + fileName 
+                + " AT LINE " + lineNumber + ": ");
+            System.err.println(recordJson);
+            System.err.println(exception);
+            System.err.flush();
+        }
     }
 
 }
@@ -0,0 +1,380 @@
+package loading;
+
+import java.io.*;
+import javax.json.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.regex.Pattern;
+import com.senzing.runner.ContentionScheduler;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.sdk.*;
+import com.senzing.sdk.core.SzCoreEnvironment;
+
+import static com.senzing.sdk.SzFlag.*;
+
+/**
+ * Provides an example of adding records to the Senzing repository using
+ * multiple threads while never adding two records that share a strong
+ * identifier (e.g.: the same <code>SSN_NUMBER</code>) at the same time.
+ * Such records are likely to resolve to the same entity, and adding them
+ * concurrently makes the calls contend for that entity and fail with
+ * {@link SzRetryableException}.  A {@link ContentionScheduler} holds back
+ * a record while another record sharing one of its identifiers is in
+ * flight and submits the records behind it instead.
+ *
+ * <p>
+ * The optional second command-line argument selects the submission mode:
+ * <code>"spread"</code> (the default) or <code>"naive"</code> to submit
+ * the records in file order for comparison.  The optional third argument
+ * is a comma-separated list of the identifier features to spread on, which
+ * defaults to <code>SSN_NUMBER,PHONE_NUMBER,CC_ACCOUNT_NUMBER</code>.
+ */
+public class LoadViaContentionSpreading {
+    public static void main(String[] args) {
+        // get the senzing repository settings
+        String settings = System.getenv("SENZING_ENGINE_CONFIGURATION_JSON");
+        if (settings == null) {
+            System.err.println("Unable to get settings.");
+            throw new IllegalArgumentException("Unable to get settings");
+        }
+
+        // create a descriptive instance name (can be anything)
+        String instanceName = LoadViaContentionSpreading.class.getSimpleName();
+
+        // initialize the Senzing environment
+        SzEnvironment env = SzCoreEnvironment.newBuilder()
+                .settings(settings)
+                .instanceName(instanceName)
+                .verboseLogging(false)
+                .build();
+
+        String filePath = (args.length > 0) ? args[0] : DEFAULT_FILE_PATH;
+        String mode = (args.length > 1) ? args[1].trim().toLowerCase() : SPREAD_MODE;
+        List<String> featureNames = (args.length > 2)
+                ? Arrays.asList(args[2].trim().split("\\s*,\\s*")) : DEFAULT_FEATURE_NAMES;
+
+        // naive mode gives every record no features so none are held back
+        boolean spreading = !NAIVE_MODE.equals(mode);
+
+        // create the thread pool and executor service
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+        // create a completion service so futures are handed back as they complete
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+
+        // keep track of pending futures and don't backlog too many for memory's sake
+        Map<Future<Void>, Record> pendingFutures = new IdentityHashMap<>();
+
+        // hold back records sharing a feature with an in-flight record
+        ContentionScheduler<Record> scheduler = new ContentionScheduler<>(MAXIMUM_WAITING);
+
+        long start = System.nanoTime();
+
+        try (FileInputStream fis = new FileInputStream(filePath);
+                InputStreamReader isr = new InputStreamReader(fis, UTF_8);
+                BufferedReader br = new BufferedReader(isr)) {
+            // get the engine from the environment
+            SzEngine engine = env.getEngine();
+
+            int lineNumber = 0;
+            boolean eof = false;
+
+            // keep going until all records are read and none are pending or
+            // waiting to be scheduled
+            while (!eof || pendingFutures.size() > 0 || scheduler.getWaitingCount() > 0) {
+                // read records into the scheduler so long as it has room
+                while (!eof && !scheduler.isFull()) {
+                    // read the next line
+                    String line = br.readLine();
+                    lineNumber++;
+
+                    // check for EOF
+                    if (line == null) {
+                        eof = true;
+                        break;
+                    }
+
+                    // trim the line
+                    line = line.trim();
+
+                    // skip any blank lines
+                    if (line.length() == 0) {
+                        continue;
+                    }
+
+                    // skip any commented lines
+                    if (line.startsWith("#")) {
+                        continue;
+                    }
+
+                    try {
+                        // parse the line as a JSON object
+                        JsonObject recordJson
+                                = Json.createReader(new StringReader(line)).readObject();
+
+                        // extract the data source code and record ID
+                        String dataSourceCode = recordJson.getString(DATA_SOURCE, null);
+                        String recordId = recordJson.getString(RECORD_ID, null);
+                        SzRecordKey recordKey = SzRecordKey.of(dataSourceCode, recordId);
+
+                        // construct the Record instance and schedule it
+                        Record record = new Record(lineNumber, line, recordKey);
+                        scheduler.add(record, (spreading)
+                                ? getFeatures(recordJson, featureNames) : List.of());
+
+                    } catch (JsonException e) {
+                        logFailedRecord(ERROR, e, lineNumber, line);
+                        errorCount++; // increment the error count
+                    }
+                }
+
+                // submit the records that do not conflict with those in
+                // flight so long as the backlog is not too large
+                while (pendingFutures.size() < MAXIMUM_BACKLOG) {
+                    Record record = scheduler.poll();
+                    if (record == null) {
+                        break;
+                    }
+
+                    Future<Void> future = completionService.submit(() -> {
+                        // call the addRecord() function with no flags
+                        engine.addRecord(record.recordKey, record.line, SZ_NO_FLAGS);
+
+                        // return null since we have no "info" to return
+                        return null;
+                    });
+
+                    // add the future to the pending future list
+                    pendingFutures.put(future, record);
+                }
+
+                // handle the completed futures to reduce the backlog, blocking
+                // until the next one completes if we cannot read or submit more
+                handlePendingFutures(completionService,
+                        pendingFutures,
+                        scheduler,
+                        pendingFutures.size() > 0
+                                && (eof || scheduler.isFull()
+                                        || pendingFutures.size() >= MAXIMUM_BACKLOG));
+            }
+
+            // shutdown the executor service
+            executor.shutdown();
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("*** Terminated due to critical error ***");
+            System.err.flush();
+            if (e instanceof RuntimeException) {
+                throw ((RuntimeException) e);
+            }
+            throw new RuntimeException(e);
+
+        } finally {
+            // check if executor service is shutdown
+            if (!executor.isShutdown()) {
+                executor.shutdown();
+            }
+
+            // IMPORTANT: make sure to destroy the environment
+            env.destroy();
+
+            long duration = (System.nanoTime() - start) / ONE_MILLION;
+
+            System.out.println();
+            System.out.println("Submission mode             : " + mode);
+            System.out.println("Spread on features          : "
+                    + ((spreading) ? String.join(", ", featureNames) : "none"));
+            System.out.println("Records successfully added  : " + successCount);
+            System.out.println("Records failed with errors  : " + errorCount);
+            System.out.println("Retryable failures          : " + retryCount);
+            System.out.println("Records held back           : " + scheduler.getDeferredCount());
+            System.out.println("Peak records waiting        : " + scheduler.getPeakWaiting());
+            System.out.println("Elapsed time                : " + duration + "ms");
+            System.out.println("Records per second          : "
+                    + ((duration == 0L) ? 0L : (successCount * 1000L) / duration));
+
+            // check on any retry records
+            retryJournal.close();
+            if (retryCount > 0) {
+                System.out.println(retryCount + " records to be retried in "
+                        + retryJournal.getDirectory());
+            }
+            System.out.flush();
+
+        }
+
+    }
+
+    /**
+     * Gets the features of the specified record for the specified feature
+     * names, from both the top level of the record and any arrays of objects
+     * within it.  Each feature is the feature name and its value with any
+     * punctuation and whitespace removed (e.g.: <code>"SSN_NUMBER=053393251"</code>)
+     * so differently formatted values still match.
+     *
+     * @param recordJson   The {@link JsonObject} for the record.
+     * @param featureNames The {@link Collection} of feature names.
+     *
+     * @return The {@link Set} of features for the record.
+     */
+    private static Set<String> getFeatures(JsonObject recordJson, Collection<String> featureNames) {
+        Set<String> features = new TreeSet<>();
+        addFeatures(recordJson, featureNames, features);
+        for (JsonValue value : recordJson.values()) {
+            if (value.getValueType() != JsonValue.ValueType.ARRAY) {
+                continue;
+            }
+            for (JsonValue element : value.asJsonArray()) {
+                if (element.getValueType() == JsonValue.ValueType.OBJECT) {
+                    addFeatures(element.asJsonObject(), featureNames, features);
+                }
+            }
+        }
+        return features;
+    }
+
+    /**
+     * Adds the features for the specified feature names found directly in
+     * the specified {@link JsonObject} to the specified {@link Set}.
+     *
+     * @param jsonObject   The {@link JsonObject} to get the features from.
+     * @param featureNames The {@link Collection} of feature names.
+     * @param features     The {@link Set} to add the features to.
+     */
+    private static void addFeatures(JsonObject jsonObject,
+            Collection<String> featureNames,
+            Set<String> features) {
+        for (String featureName : featureNames) {
+            JsonValue value = jsonObject.get(featureName);
+            if (value == null || value.getValueType() != JsonValue.ValueType.STRING) {
+                continue;
+            }
+            String normalized = NON_ALPHANUMERIC.matcher(
+                    ((JsonString) value).getString()).replaceAll("").toUpperCase();
+            if (normalized.length() > 0) {
+                features.add(featureName + "=" + normalized);
+            }
+        }
+    }
+
+    private static void handlePendingFutures(CompletionService<Void> completionService,
+            Map<Future<Void>, Record> pendingFutures,
+            ContentionScheduler<Record> scheduler,
+            boolean blocking)
+            throws Exception {
+        // loop through the completed futures, waiting for the first one only
+        // if blocking, and stop once no more are immediately available
+        for (Future<Void> future = (blocking) ? completionService.take() : completionService.poll();
+                future != null;
+                future = completionService.poll()) {
+            // remove the completed future from the pending map and release
+            // its features so the records waiting on them can be submitted
+            Record record = pendingFutures.remove(future);
+            scheduler.release(record);
+
+            try {
+                try {
+                    // get the value to see if there was an exception
+                    future.get();
+
+                    // if we get here then increment the success count
+                    successCount++;
+
+                } catch (InterruptedException e) {
+                    // the future is already complete so this should not happen,
+                    // but if it does rethrow as retryable and log the interruption
+                    throw e;
+
+                } catch (ExecutionException e) {
+                    // if execution failed with an exception then rethrow
+                    Throwable cause = e.getCause();
+                    if ((cause == null) || !(cause instanceof Exception)) {
+                        // rethrow the execution exception
+                        throw e;
+                    }
+                    // cast to an Exception and rethrow
+                    throw ((Exception) cause);
+                }
+
+            } catch (SzBadInputException e) {
+                logFailedRecord(ERROR, e, record.lineNumber, record.line);
+                errorCount++; // increment the error count
+
+            } catch (SzRetryableException | InterruptedException | CancellationException e) {
+                // handle thread interruption and cancellation as retries
+                logFailedRecord(WARNING, e, record.lineNumber, record.line);
+                errorCount++; // increment the error count
+                retryCount++; // increment the retry count
+
+                // track the retry record so it can be retried later
+                retryJournal.retry(e, 1, record.lineNumber, record.line);
+
+            } catch (Exception e) {
+                // catch any other exception (incl. SzException) here
+                logFailedRecord(CRITICAL, e, record.lineNumber, record.line);
+                errorCount++;
+                throw e; // rethrow since exception is critical
+            }
+        }
+    }
+
+    /**
+     * Example method for logging failed records.
+     *
+     * @param errorType  The error type description.
+     * @param exception  The exception itself.
+     * @param lineNumber The line number of the failed record in the JSON input
+     *                   file.
+     * @param recordJson The JSON text for the failed record.
+     */
+    private static void logFailedRecord(String errorType,
+            Exception exception,
+            int lineNumber,
+            String recordJson) {
+        System.err.println();
+        System.err.println(
+                "** " + errorType + " ** FAILED TO ADD RECORD AT LINE " + lineNumber + ": ");
+        System.err.println(recordJson);
+        System.err.println(exception);
+        System.err.flush();
+    }
+
+    private static final String DEFAULT_FILE_PATH = "../resources/data/load-10K.jsonl";
+
+    private static final List<String> DEFAULT_FEATURE_NAMES
+            = List.of("SSN_NUMBER", "PHONE_NUMBER", "CC_ACCOUNT_NUMBER");
+
+    private static final Pattern NON_ALPHANUMERIC
+            = Pattern.compile("[^\\p{Alnum}]");
+
+    private static final String UTF_8 = "UTF-8";
+
+    private static final String SPREAD_MODE = "spread";
+    private static final String NAIVE_MODE = "naive";
+
+    private static final int THREAD_COUNT = 8;
+
+    private static final int BACKLOG_FACTOR = 10;
+
+    private static final int MAXIMUM_BACKLOG = THREAD_COUNT * BACKLOG_FACTOR;
+
+    private static final int MAXIMUM_WAITING = MAXIMUM_BACKLOG * BACKLOG_FACTOR;
+
+    private static final long ONE_MILLION = 1000000L;
+
+    private static final String DATA_SOURCE = "DATA_SOURCE";
+    private static final String RECORD_ID = "RECORD_ID";
+
+    private static final String ERROR = "ERROR";
+    private static final String WARNING = "WARNING";
+    private static final String CRITICAL = "CRITICAL";
+
+    public record Record(int lineNumber, String line, SzRecordKey recordKey) {
+    }
+
+    private static int errorCount = 0;
+    private static int successCount = 0;
+    private static int retryCount = 0;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+}
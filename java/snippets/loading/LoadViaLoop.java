@@ -2,6 +2,8 @@ package loading;
 
 import java.io.*;
 import javax.json.*;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.RecordKeyExtractor;
 import com.senzing.sdk.*;
 import com.senzing.sdk.core.SzCoreEnvironment;
 
@@ -58,17 +60,11 @@ public class LoadViaLoop {
                 }
 
                 try {
-                    // parse the line as a JSON object
-                    JsonObject recordJson 
-                        = Json.createReader(new StringReader(line)).readObject();            
-                
-                    // extract the data source code and record ID
-                    String  dataSourceCode  = recordJson.getString(DATA_SOURCE, null);
-                    String  recordId        = recordJson.getString(RECORD_ID, null);
+                    // extract the record key without fully parsing the JSON
+                    SzRecordKey recordKey = RecordKeyExtractor.extractRecordKey(line);
 
                     // call the addRecord() function with no flags
-                    engine.addRecord(
-                        SzRecordKey.of(dataSourceCode, recordId), line, SZ_NO_FLAGS);
+                    engine.addRecord(recordKey, line, SZ_NO_FLAGS);
 
                     successCount++;
 
@@ -82,12 +78,7 @@ public class LoadViaLoop {
                     retryCount++;   // increment the retry count
 
                     // track the retry record so it can be retried later
-                    if (retryFile == null) {
-                        retryFile = File.createTempFile(RETRY_PREFIX, RETRY_SUFFIX);
-                        retryWriter = new PrintWriter(
-                            new OutputStreamWriter(new FileOutputStream(retryFile), UTF_8));
-                    }
-                    retryWriter.println(line);
+                    retryJournal.retry(e, 1, lineNumber, line);
 
                 } catch (Exception e) {
                     // catch any other exception (incl. SzException) here
@@ -115,12 +106,10 @@ public class LoadViaLoop {
             System.out.println("Records failed with errors : " + errorCount);
 
             // check on any retry records
-            if (retryWriter != null) {
-                retryWriter.flush();
-                retryWriter.close();
-            }
+            retryJournal.close();
             if (retryCount > 0) {
-                System.out.println(retryCount + " records to be retried in " + retryFile);
+                System.out.println(retryCount + " records to be retried in "
+                    + retryJournal.getDirectory());
             }
             System.out.flush();
 
@@ -153,12 +142,6 @@ public class LoadViaLoop {
 
     private static final String UTF_8 = "UTF-8";
 
-    private static final String RETRY_PREFIX = "retry-";
-    private static final String RETRY_SUFFIX = ".jsonl";
-
-    private static final String DATA_SOURCE = "DATA_SOURCE";
-    private static final String RECORD_ID   = "RECORD_ID";
-
     private static final String ERROR       = "ERROR";
     private static final String WARNING     = "WARNING";
     private static final String CRITICAL    = "CRITICAL";
@@ -166,6 +149,5 @@ public class LoadViaLoop {
     private static int         errorCount      = 0;
     private static int         successCount    = 0;
     private static int         retryCount      = 0;
-    private static File        retryFile       = null;
-    private static PrintWriter retryWriter     = null;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
 }
@@ -0,0 +1,286 @@
+package loading;
+
+import java.io.*;
+import java.util.*;
+import javax.json.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.MappedFileRanges;
+import com.senzing.runner.MappedFileRanges.LineRange;
+import com.senzing.runner.MappedFileRanges.LineReader;
+import com.senzing.runner.RecordKeyExtractor;
+import com.senzing.sdk.*;
+import com.senzing.sdk.core.SzCoreEnvironment;
+
+import static com.senzing.sdk.SzFlag.*;
+
+/**
+ * Provides an example of adding records to the Senzing repository by
+ * memory-mapping the input file and splitting it into line-aligned
+ * ranges that are each read by their own reader thread, feeding a shared
+ * pool of worker threads.
+ */
+public class LoadViaMappedRanges {
+    public static void main(String[] args) {
+        // get the senzing repository settings
+        String settings = System.getenv("SENZING_ENGINE_CONFIGURATION_JSON");
+        if (settings == null) {
+            System.err.println("Unable to get settings.");
+            throw new IllegalArgumentException("Unable to get settings");
+        }
+
+        // create a descriptive instance name (can be anything)
+        String instanceName = LoadViaMappedRanges.class.getSimpleName();
+
+        // initialize the Senzing environment
+        SzEnvironment env = SzCoreEnvironment.newBuilder()
+                .settings(settings)
+                .instanceName(instanceName)
+                .verboseLogging(false)
+                .build();
+
+        String filePath = (args.length > 0) ? args[0] : DEFAULT_FILE_PATH;
+
+        // create the thread pool and executor service
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+        // don't backlog too many records for memory's sake
+        Semaphore backlogLimit = new Semaphore(MAXIMUM_BACKLOG);
+
+        try {
+            // get the engine from the environment
+            SzEngine engine = env.getEngine();
+
+            // split the file into line-aligned ranges
+            List<LineRange> ranges = MappedFileRanges.split(new File(filePath), READER_COUNT);
+
+            // create a reader thread for each range
+            List<Thread> readers = new ArrayList<>(ranges.size());
+            for (LineRange range : ranges) {
+                readers.add(new Thread(() -> {
+                    try {
+                        readRange(engine, executor, backlogLimit, range);
+                    } catch (Exception e) {
+                        criticalFailure = e;
+                    }
+                }, "reader-" + range.index()));
+            }
+
+            // start the readers and wait for them to finish
+            readers.forEach(Thread::start);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+
+            // shutdown the executor service and wait for the workers to finish
+            executor.shutdown();
+            while (!executor.awaitTermination(AWAIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                // keep waiting
+            }
+
+            // check if any of the threads failed critically
+            if (criticalFailure != null) {
+                throw criticalFailure;
+            }
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("*** Terminated due to critical error ***");
+            System.err.flush();
+            if (e instanceof RuntimeException) {
+                throw ((RuntimeException) e);
+            }
+            throw new RuntimeException(e);
+
+        } finally {
+            // check if executor service is shutdown
+            if (!executor.isShutdown()) {
+                executor.shutdown();
+            }
+
+            // IMPORTANT: make sure to destroy the environment
+            env.destroy();
+
+            System.out.println();
+            System.out.println("Records successfully added : " + successCount.get());
+            System.out.println("Records failed with errors : " + errorCount.get());
+
+            // check on any retry records
+            synchronized (MONITOR) {
+                retryJournal.close();
+                if (retryCount > 0) {
+                    System.out.println(retryCount + " records to be retried in "
+                            + retryJournal.getDirectory());
+                }
+            }
+            System.out.flush();
+
+        }
+
+    }
+
+    /**
+     * Reads the lines from the specified {@link LineRange} and submits a
+     * task to add each record.
+     *
+     * @param engine       The {@link SzEngine} to use.
+     * @param executor     The {@link ExecutorService} for adding the records.
+     * @param backlogLimit The {@link Semaphore} limiting the backlog.
+     * @param range        The {@link LineRange} to read.
+     *
+     * @throws Exception If a critical failure occurs.
+     */
+    private static void readRange(SzEngine engine,
+            ExecutorService executor,
+            Semaphore backlogLimit,
+            LineRange range)
+            throws Exception {
+        LineReader reader = range.openReader();
+
+        // loop through the lines in the range
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            // get the line number within the whole file
+            long lineNumber = reader.getLineNumber();
+
+            // stop reading if a critical failure has occurred
+            if (criticalFailure != null) {
+                break;
+            }
+
+            // trim the line
+            line = line.trim();
+
+            // skip any blank lines
+            if (line.length() == 0) {
+                continue;
+            }
+
+            // skip any commented lines
+            if (line.startsWith("#")) {
+                continue;
+            }
+
+            // construct the Record instance
+            Record record = new Record(lineNumber, line);
+
+            try {
+                // extract the record key without fully parsing the JSON
+                SzRecordKey recordKey = RecordKeyExtractor.extractRecordKey(line);
+
+                // wait for room in the backlog before submitting
+                backlogLimit.acquire();
+
+                executor.execute(() -> {
+                    try {
+                        addRecord(engine, recordKey, record);
+                    } finally {
+                        backlogLimit.release();
+                    }
+                });
+
+            } catch (JsonException e) {
+                logFailedRecord(ERROR, e, lineNumber, line);
+                errorCount.incrementAndGet(); // increment the error count
+            }
+        }
+    }
+
+    /**
+     * Adds the specified record and handles the outcome.
+     *
+     * @param engine    The {@link SzEngine} to use.
+     * @param recordKey The {@link SzRecordKey} for the record.
+     * @param record    The {@link Record} to add.
+     */
+    private static void addRecord(SzEngine engine, SzRecordKey recordKey, Record record) {
+        try {
+            // call the addRecord() function with no flags
+            engine.addRecord(recordKey, record.line, SZ_NO_FLAGS);
+
+            // if we get here then increment the success count
+            successCount.incrementAndGet();
+
+        } catch (SzBadInputException e) {
+            logFailedRecord(ERROR, e, record.lineNumber, record.line);
+            errorCount.incrementAndGet(); // increment the error count
+
+        } catch (SzRetryableException e) {
+            logFailedRecord(WARNING, e, record.lineNumber, record.line);
+            errorCount.incrementAndGet(); // increment the error count
+
+            synchronized (MONITOR) {
+                retryCount++; // increment the retry count
+            }
+
+            // track the retry record so it can be retried later
+            try {
+                retryJournal.retry(e, 1, record.lineNumber, record.line);
+
+            } catch (IOException ioe) {
+                criticalFailure = ioe;
+
+            } catch (InterruptedException ie) {
+                // the record is journaled, only waiting for the commit was cut
+                // short so restore the interrupt
+                Thread.currentThread().interrupt();
+            }
+
+        } catch (Exception e) {
+            // catch any other exception (incl. SzException) here
+            logFailedRecord(CRITICAL, e, record.lineNumber, record.line);
+            errorCount.incrementAndGet();
+            criticalFailure = e; // record the failure to rethrow from main()
+        }
+    }
+
+    /**
+     * Example method for logging failed records.
+     *
+     * @param errorType  The error type description.
+     * @param exception  The exception itself.
+     * @param lineNumber The line number of the failed record in the JSON input
+     *                   file.
+     * @param recordJson The JSON text for the failed record.
+     */
+    private static void logFailedRecord(String errorType,
+            Exception exception,
+            long lineNumber,
+            String recordJson) {
+        synchronized (System.err) {
+            System.err.println();
+            System.err.println(
+                    "** " + errorType + " ** FAILED TO ADD RECORD AT LINE " + lineNumber + ": ");
+            System.err.println(recordJson);
+            System.err.println(exception);
+            System.err.flush();
+        }
+    }
+
+    private static final String DEFAULT_FILE_PATH = "../resources/data/load-500.jsonl";
+
+    private static final int READER_COUNT = 4;
+
+    private static final int THREAD_COUNT = 8;
+
+    private static final int BACKLOG_FACTOR = 10;
+
+    private static final int MAXIMUM_BACKLOG = THREAD_COUNT * BACKLOG_FACTOR;
+
+    private static final long AWAIT_TIMEOUT = 1000L;
+
+    private static final String ERROR = "ERROR";
+    private static final String WARNING = "WARNING";
+    private static final String CRITICAL = "CRITICAL";
+
+    private static final Object MONITOR = new Object();
+
+    public record Record(long lineNumber, String line) {
+    }
+
+    private static AtomicInteger errorCount = new AtomicInteger(0);
+    private static AtomicInteger successCount = new AtomicInteger(0);
+    private static int retryCount = 0;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+    private static volatile Exception criticalFailure = null;
+}
@@ -1,19 +1,30 @@
 package loading;
 
 import java.io.*;
+import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.json.*;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.ProgressReporter;
+import com.senzing.runner.RecordKeyExtractor;
 import com.senzing.sdk.*;
 import com.senzing.sdk.core.SzCoreEnvironment;
 
 import static com.senzing.sdk.SzFlag.*;
-import static java.lang.Thread.State.*;
 
 /**
  * Provides a simple example of adding records to the Senzing repository.
+ *
+ * <p>
+ * Records that fail with a retryable failure, and the records that fail due
+ * to bad input as "dead letters", are appended to a {@link LazyRetryJournal}
+ * in the directory given as the third command-line argument (or a temporary
+ * directory if not specified) so they survive the process being killed.  The
+ * journal is only opened when the first record fails.
  */
-public class LoadViaQueue {    
+public class LoadViaQueue {
     public static void main(String[] args) {
         // get the senzing repository settings
         String settings = System.getenv("SENZING_ENGINE_CONFIGURATION_JSON");
@@ -31,19 +42,24 @@ public class LoadViaQueue {
             .instanceName(instanceName)
             .verboseLogging(false)
             .build();
-        
+
         String filePath = (args.length > 0) ? args[0] : DEFAULT_FILE_PATH;
 
+        // determine the number of consumer threads
+        int consumerCount = (args.length > 1)
+            ? Integer.parseInt(args[1]) : DEFAULT_CONSUMER_COUNT;
+
+        // the journal for the retry and dead-letter records is only opened
+        // if a record fails
+        retryJournal = new LazyRetryJournal((args.length > 2) ? new File(args[2]) : null);
+
         Thread producer = new Thread(() -> {
-            try (FileInputStream    fis = new FileInputStream(filePath);
+            try (InputStream        fis = progress.track(new FileInputStream(filePath));
                  InputStreamReader  isr = new InputStreamReader(fis, UTF_8);
-                 BufferedReader     br  = new BufferedReader(isr)) 
+                 BufferedReader     br  = new BufferedReader(isr))
             {
-                // get the engine from the environment
-                SzEngine engine = env.getEngine();
-
                 int lineNumber = 0;
-           
+
                 // loop through the example records and add them to the repository
                 for (String line = br.readLine(); line != null; line = br.readLine()) {
                     // increment the line number
@@ -51,7 +67,7 @@ public class LoadViaQueue {
 
                     // trim the line
                     line = line.trim();
-                    
+
                     // skip any blank lines
                     if (line.length() == 0) {
                         continue;
@@ -64,111 +80,95 @@ public class LoadViaQueue {
 
                     // add the record to the queue
                     recordQueue.put(new Record(lineNumber, line));
+                    progress.submitted();
                 }
 
+            } catch (InterruptedException e) {
+                // interrupted because a consumer failed, so just stop
+
             } catch (Exception e) {
                 producerFailure = e;
+
+            } finally {
+                // signal the end of the stream to the consumers unless they
+                // have already stopped due to a failure
+                try {
+                    if (consumerFailure == null) {
+                        recordQueue.put(END_OF_STREAM);
+                    }
+                } catch (InterruptedException ignore) {
+                    // interrupted because a consumer failed
+                }
             }
         });
 
-        // start the producer
-        producer.start();
+        // create the consumers
+        List<Thread> consumers = new ArrayList<>(consumerCount);
+        for (int index = 0; index < consumerCount; index++) {
+            consumers.add(new Thread(() -> {
+                try {
+                    // get the engine from the environment
+                    SzEngine engine = env.getEngine();
+
+                    List<Record> batch = new ArrayList<>(BATCH_SIZE);
+
+                    // loop until we get the end-of-stream sentinel
+                    while (consumerFailure == null) {
+                        // wait for the next record then drain whatever else
+                        // is available up to the batch size
+                        batch.clear();
+                        batch.add(recordQueue.take());
+                        recordQueue.drainTo(batch, BATCH_SIZE - 1);
+
+                        for (Record record : batch) {
+                            // check for the end of the stream
+                            if (record == END_OF_STREAM) {
+                                // put it back for the other consumers and stop
+                                recordQueue.put(END_OF_STREAM);
+                                return;
+                            }
 
-        Thread consumer = new Thread(() -> {
-            try {
-                // get the engine from the environment
-                SzEngine engine = env.getEngine();
-    
-                // loop while producer has not failed and is either still running
-                // or there are remaining records
-                while (producerFailure == null 
-                       && (!isTerminated(producer) || recordQueue.size() > 0)) 
-                {
-                    Record record = recordQueue.poll(POLL_TIMEOUT, POLL_TIME_UNIT);
-
-                    // check if we timed out getting the next record
-                    if (record == null) {
-                        // continue the loop to check if we are done
-                        continue;
+                            addRecord(engine, record);
+                        }
                     }
 
-                    // get the line number and line from the record
-                    int     lineNumber  = record.lineNumber;
-                    String  line        = record.line;
-
-                    try {
-                        // parse the line as a JSON object
-                        JsonObject recordJson 
-                            = Json.createReader(new StringReader(line)).readObject();            
-                    
-                        // extract the data source code and record ID
-                        String  dataSourceCode  = recordJson.getString(DATA_SOURCE, null);
-                        String  recordId        = recordJson.getString(RECORD_ID, null);
-    
-                        // call the addRecord() function with no flags
-                        engine.addRecord(
-                            SzRecordKey.of(dataSourceCode, recordId), line, SZ_NO_FLAGS);
-    
-                        synchronized (MONITOR) {
-                            successCount++;
-                        }
-    
-                    } catch (JsonException | SzBadInputException e) {
-                        logFailedRecord(ERROR, e, lineNumber, line);
-                        synchronized (MONITOR) {
-                            errorCount++;   // increment the error count
-                        }
-    
-                    } catch (SzRetryableException e) {
-                        logFailedRecord(WARNING, e, lineNumber, line);
-                        synchronized (MONITOR) {
-                            errorCount++;   // increment the error count
-                            retryCount++;   // increment the retry count
-    
-                            // track the retry record so it can be retried later
-                            if (retryFile == null) {
-                                retryFile = File.createTempFile(RETRY_PREFIX, RETRY_SUFFIX);
-                                retryWriter = new PrintWriter(
-                                    new OutputStreamWriter(
-                                        new FileOutputStream(retryFile), UTF_8));
-                            }
-                            retryWriter.println(line);
-                        }
-    
-                    } catch (Exception e) {
-                        // catch any other exception (incl. SzException) here
-                        logFailedRecord(CRITICAL, e, lineNumber, line);
-                        synchronized (MONITOR) {
-                            errorCount++; // increment the error count
+                } catch (InterruptedException e) {
+                    // interrupted because another consumer failed, so just stop
+
+                } catch (Exception e) {
+                    consumerFailure = e;
+
+                    // stop the producer and the other consumers
+                    producer.interrupt();
+                    for (Thread consumer : consumers) {
+                        if (consumer != Thread.currentThread()) {
+                            consumer.interrupt();
                         }
-                        throw e; // rethrow since exception is critical
                     }
                 }
+            }));
+        }
 
-            } catch (Exception e) {
-                consumerFailure = e;
-            }
-        });
+        // report the progress through the file in the background
+        progress.start(new File(filePath).length(), 0L);
 
-        // start the consumer
-        consumer.start();
+        // start the producer and the consumers
+        producer.start();
+        consumers.forEach(Thread::start);
 
         // join the threads
-        while (!isTerminated(producer)) {
-            try {
-                producer.join();
-            } catch (InterruptedException ignore) {
-                ignore.printStackTrace();
-           }
-        }
-        while (!isTerminated(consumer)) {
-            try {
-                consumer.join();
-            } catch (InterruptedException ignore) {
-                ignore.printStackTrace();
+        List<Thread> threads = new ArrayList<>(consumers);
+        threads.add(0, producer);
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException ignore) {
+                    ignore.printStackTrace();
+                }
             }
         }
-        
+
         try {
             // check for producer and consumer failures
             if (producerFailure != null) {
@@ -188,84 +188,135 @@ public class LoadViaQueue {
             throw new RuntimeException(e);
 
         } finally {
+            // stop reporting progress
+            progress.close();
+
             // IMPORTANT: make sure to destroy the environment
             env.destroy();
 
-            synchronized (MONITOR) {
-                System.out.println();
-                System.out.println("Records successfully added : " + successCount);
-                System.out.println("Records failed with errors : " + errorCount);
-
-                // check on any retry records
-                if (retryWriter != null) {
-                    retryWriter.flush();
-                    retryWriter.close();
-                }
-                if (retryCount > 0) {
-                    System.out.println(retryCount + " records to be retried in " + retryFile);
-                }
-                System.out.flush();
+            System.out.println();
+            System.out.println("Records successfully added : " + successCount.sum());
+            System.out.println("Records failed with errors : " + errorCount.sum());
+
+            // commit the journal of any retry and dead-letter records
+            retryJournal.close();
+            if (retryJournal.getAppendedCount() > 0) {
+                System.out.println(
+                    retryCount.sum() + " records to be retried and "
+                    + deadLetterCount.sum() + " dead-letter records in "
+                    + retryJournal.getDirectory() + " ("
+                    + retryJournal.getCommitCount() + " group commits)");
             }
+            System.out.flush();
 
         }
 
     }
 
-    private static boolean isTerminated(Thread thread) {
-        synchronized (thread) {
-            return (thread.getState() == TERMINATED);
+    /**
+     * Adds the specified record to the repository and handles the outcome.
+     *
+     * @param engine The {@link SzEngine} to use.
+     * @param record The {@link Record} to add.
+     *
+     * @throws Exception If a critical failure occurs.
+     */
+    private static void addRecord(SzEngine engine, Record record)
+        throws Exception
+    {
+        // get the line number and line from the record
+        int     lineNumber  = record.lineNumber;
+        String  line        = record.line;
+
+        try {
+            // extract the record key without fully parsing the JSON
+            SzRecordKey recordKey = RecordKeyExtractor.extractRecordKey(line);
+
+            // call the addRecord() function with no flags
+            engine.addRecord(recordKey, line, SZ_NO_FLAGS);
+
+            successCount.increment();
+            progress.completed();
+
+        } catch (JsonException | SzBadInputException e) {
+            logFailedRecord(ERROR, e, lineNumber, line);
+            errorCount.increment();   // increment the error count
+            deadLetterCount.increment();
+            progress.completed();
+            progress.failed();
+
+            // journal the record as a dead letter since retrying will not help
+            retryJournal.deadLetter(e, 1, lineNumber, line);
+
+        } catch (SzRetryableException e) {
+            logFailedRecord(WARNING, e, lineNumber, line);
+            errorCount.increment();   // increment the error count
+            retryCount.increment();   // increment the retry count
+            progress.completed();
+            progress.failed();
+
+            // journal the retry record so it can be retried later
+            retryJournal.retry(e, 1, lineNumber, line);
+
+        } catch (Exception e) {
+            // catch any other exception (incl. SzException) here
+            logFailedRecord(CRITICAL, e, lineNumber, line);
+            errorCount.increment(); // increment the error count
+            progress.completed();
+            progress.failed();
+            throw e; // rethrow since exception is critical
         }
     }
 
     /**
      * Example method for logging failed records.
-     * 
+     *
      * @param errorType The error type description.
      * @param exception The exception itself.
      * @param lineNumber The line number of the failed record in the JSON input file.
      * @param recordJson The JSON text for the failed record.
      */
     private static void logFailedRecord(String      errorType,
-                                        Exception   exception, 
-                                        int         lineNumber, 
-                                        String      recordJson) 
+                                        Exception   exception,
+                                        int         lineNumber,
+                                        String      recordJson)
     {
-        System.err.println();
-        System.err.println(
-            "** " + errorType + " ** FAILED TO ADD RECORD AT LINE " + lineNumber + ": ");
-        System.err.println(recordJson);
-        System.err.println(exception);
-        System.err.flush();
+        synchronized (System.err) {
+            System.err.println();
+            System.err.println(
+                "** " + errorType + " ** FAILED TO ADD RECORD AT LINE " + lineNumber + ": ");
+            System.err.println(recordJson);
+            System.err.println(exception);
+            System.err.flush();
+        }
     }
 
     private static final String DEFAULT_FILE_PATH = "../resources/data/load-500.jsonl";
 
+    private static final int DEFAULT_CONSUMER_COUNT = 8;
+    private static final int BATCH_SIZE = 10;
     private static final int MAXIMUM_BACKLOG = 100;
-    private static final long POLL_TIMEOUT = 3000L;
-    private static final TimeUnit POLL_TIME_UNIT = TimeUnit.MILLISECONDS;
 
     private static final String UTF_8 = "UTF-8";
 
-    private static final String RETRY_PREFIX = "retry-";
-    private static final String RETRY_SUFFIX = ".jsonl";
-
-    private static final String DATA_SOURCE = "DATA_SOURCE";
-    private static final String RECORD_ID   = "RECORD_ID";
-
     private static final String ERROR       = "ERROR";
     private static final String WARNING     = "WARNING";
     private static final String CRITICAL    = "CRITICAL";
 
-    private static final Object MONITOR = new Object();
-
-    private static int         errorCount      = 0;
-    private static int         successCount    = 0;
-    private static int         retryCount      = 0;
-    private static File        retryFile       = null;
-    private static PrintWriter retryWriter     = null;
+    private static final LongAdder  errorCount      = new LongAdder();
+    private static final LongAdder  successCount    = new LongAdder();
+    private static final LongAdder  retryCount      = new LongAdder();
+    private static final LongAdder  deadLetterCount = new LongAdder();
+    private static final ProgressReporter progress  = new ProgressReporter("records");
+    private static LazyRetryJournal retryJournal   = null;
 
     public record Record(int lineNumber, String line) { }
 
+    /**
+     * The sentinel {@link Record} marking the end of the record stream.
+     */
+    private static final Record END_OF_STREAM = new Record(-1, null);
+
     private static BlockingQueue<Record> recordQueue
         = new LinkedBlockingQueue<>(MAXIMUM_BACKLOG);
 
@@ -0,0 +1,340 @@
+package loading;
+
+import java.io.*;
+import java.lang.management.*;
+import javax.json.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.RecordKeyExtractor;
+import com.senzing.sdk.*;
+import com.senzing.sdk.core.SzCoreEnvironment;
+
+import static com.senzing.sdk.SzFlag.*;
+
+/**
+ * Provides an example of adding records to the Senzing repository using
+ * one virtual thread per record with a fair semaphore capping the number
+ * of concurrent calls to the engine.
+ *
+ * <p>
+ * The optional second command-line argument selects the execution mode:
+ * <code>"virtual"</code> (the default) or <code>"fixed"</code> to run the
+ * same records through a fixed thread pool for comparison.  Virtual threads
+ * require running on Java 21 or later; on an earlier version the
+ * <code>"virtual"</code> mode falls back to a cached pool of platform
+ * threads, so the comparison is then between two platform thread pools
+ * (the reported execution mode says so).
+ */
+public class LoadViaVirtualThreads {
+    public static void main(String[] args) {
+        // get the senzing repository settings
+        String settings = System.getenv("SENZING_ENGINE_CONFIGURATION_JSON");
+        if (settings == null) {
+            System.err.println("Unable to get settings.");
+            throw new IllegalArgumentException("Unable to get settings");
+        }
+
+        // create a descriptive instance name (can be anything)
+        String instanceName = LoadViaVirtualThreads.class.getSimpleName();
+
+        // initialize the Senzing environment
+        SzEnvironment env = SzCoreEnvironment.newBuilder()
+                .settings(settings)
+                .instanceName(instanceName)
+                .verboseLogging(false)
+                .build();
+
+        String filePath = (args.length > 0) ? args[0] : DEFAULT_FILE_PATH;
+        String mode = (args.length > 1) ? args[1].trim().toLowerCase() : VIRTUAL_MODE;
+
+        // create the executor service for the requested mode
+        ExecutorService executor = (FIXED_MODE.equals(mode))
+                ? Executors.newFixedThreadPool(MAXIMUM_CONCURRENCY)
+                : newVirtualThreadExecutor();
+
+        // cap the number of concurrent engine calls with a fair semaphore
+        Semaphore engineLimit = new Semaphore(MAXIMUM_CONCURRENCY, true);
+
+        // don't backlog too many records (and threads) for memory's sake
+        Semaphore backlogLimit = new Semaphore(MAXIMUM_BACKLOG);
+
+        long start = System.nanoTime();
+
+        try (FileInputStream fis = new FileInputStream(filePath);
+                InputStreamReader isr = new InputStreamReader(fis, UTF_8);
+                BufferedReader br = new BufferedReader(isr)) {
+            // get the engine from the environment
+            SzEngine engine = env.getEngine();
+
+            int lineNumber = 0;
+
+            // loop through the example records and start a thread for each
+            for (String line = br.readLine(); line != null; line = br.readLine()) {
+                // increment the line number
+                lineNumber++;
+
+                // stop reading if a critical failure has occurred
+                if (criticalFailure != null) {
+                    break;
+                }
+
+                // trim the line
+                line = line.trim();
+
+                // skip any blank lines
+                if (line.length() == 0) {
+                    continue;
+                }
+
+                // skip any commented lines
+                if (line.startsWith("#")) {
+                    continue;
+                }
+
+                // construct the Record instance
+                Record record = new Record(lineNumber, line);
+
+                try {
+                    // extract the record key without fully parsing the JSON
+                    SzRecordKey recordKey = RecordKeyExtractor.extractRecordKey(line);
+
+                    // wait for room in the backlog before starting the thread
+                    backlogLimit.acquire();
+
+                    try {
+                        executor.execute(() -> {
+                            try {
+                                addRecord(engine, engineLimit, recordKey, record);
+                            } finally {
+                                backlogLimit.release();
+                            }
+                        });
+                    } catch (RuntimeException e) {
+                        // the thread will never run to release the permit
+                        backlogLimit.release();
+                        throw e;
+                    }
+
+                } catch (JsonException e) {
+                    logFailedRecord(ERROR, e, lineNumber, line);
+                    errorCount.incrementAndGet(); // increment the error count
+                }
+            }
+
+            // shutdown the executor service and wait for the threads to finish
+            executor.shutdown();
+            while (!executor.awaitTermination(AWAIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                // keep waiting
+            }
+
+            // check if any of the threads failed critically
+            if (criticalFailure != null) {
+                throw criticalFailure;
+            }
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("*** Terminated due to critical error ***");
+            System.err.flush();
+            if (e instanceof RuntimeException) {
+                throw ((RuntimeException) e);
+            }
+            throw new RuntimeException(e);
+
+        } finally {
+            // check if executor service is shutdown
+            if (!executor.isShutdown()) {
+                executor.shutdown();
+            }
+
+            // IMPORTANT: make sure to destroy the environment
+            env.destroy();
+
+            long duration = (System.nanoTime() - start) / ONE_MILLION;
+            int successes = successCount.get();
+
+            System.out.println();
+            System.out.println("Execution mode             : " + mode
+                    + ((VIRTUAL_MODE.equals(mode) && !virtualThreads)
+                            ? " (platform threads, virtual threads require Java 21)" : ""));
+            System.out.println("Records successfully added : " + successes);
+            System.out.println("Records failed with errors : " + errorCount.get());
+            System.out.println("Elapsed time               : " + duration + "ms");
+            System.out.println("Records per second         : "
+                    + ((duration == 0L) ? 0L : (successes * 1000L) / duration));
+            System.out.println("Peak heap usage            : "
+                    + (getPeakHeapUsage() / ONE_MEGABYTE) + "MB");
+            System.out.println("Peak platform threads      : "
+                    + ManagementFactory.getThreadMXBean().getPeakThreadCount());
+
+            // check on any retry records
+            synchronized (MONITOR) {
+                retryJournal.close();
+                if (retryCount > 0) {
+                    System.out.println(retryCount + " records to be retried in "
+                            + retryJournal.getDirectory());
+                }
+            }
+            System.out.flush();
+
+        }
+
+    }
+
+    /**
+     * Adds the specified record on the calling thread after acquiring a
+     * permit from the specified engine {@link Semaphore} and handles the
+     * outcome.
+     *
+     * @param engine      The {@link SzEngine} to use.
+     * @param engineLimit The {@link Semaphore} limiting concurrent engine calls.
+     * @param recordKey   The {@link SzRecordKey} for the record.
+     * @param record      The {@link Record} to add.
+     */
+    private static void addRecord(SzEngine engine,
+            Semaphore engineLimit,
+            SzRecordKey recordKey,
+            Record record) {
+        try {
+            engineLimit.acquire();
+            try {
+                // call the addRecord() function with no flags
+                engine.addRecord(recordKey, record.line, SZ_NO_FLAGS);
+
+            } finally {
+                engineLimit.release();
+            }
+
+            // if we get here then increment the success count
+            successCount.incrementAndGet();
+
+        } catch (SzBadInputException e) {
+            logFailedRecord(ERROR, e, record.lineNumber, record.line);
+            errorCount.incrementAndGet(); // increment the error count
+
+        } catch (SzRetryableException | InterruptedException e) {
+            // handle thread interruption as a retry
+            logFailedRecord(WARNING, e, record.lineNumber, record.line);
+            errorCount.incrementAndGet(); // increment the error count
+
+            synchronized (MONITOR) {
+                retryCount++; // increment the retry count
+            }
+
+            // track the retry record so it can be retried later
+            try {
+                retryJournal.retry(e, 1, record.lineNumber, record.line);
+
+            } catch (IOException ioe) {
+                criticalFailure = ioe;
+
+            } catch (InterruptedException ie) {
+                // the record is journaled, only waiting for the commit was cut
+                // short so restore the interrupt
+                Thread.currentThread().interrupt();
+            }
+
+        } catch (Exception e) {
+            // catch any other exception (incl. SzException) here
+            logFailedRecord(CRITICAL, e, record.lineNumber, record.line);
+            errorCount.incrementAndGet();
+            criticalFailure = e; // record the failure to rethrow from main()
+        }
+    }
+
+    /**
+     * Creates an {@link ExecutorService} that starts a new virtual thread
+     * for each task.  Virtual threads require Java 21 or later, so this
+     * looks up the factory method reflectively and falls back to a new
+     * platform thread per task when running on an earlier version.
+     *
+     * @return The thread-per-task {@link ExecutorService}.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            virtualThreads = true;
+            return executor;
+
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Virtual threads require Java 21, using platform threads.");
+            System.err.flush();
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Gets the sum of the peak usage across the heap memory pools.
+     *
+     * @return The peak heap usage in bytes.
+     */
+    private static long getPeakHeapUsage() {
+        long peak = 0L;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Example method for logging failed records.
+     *
+     * @param errorType  The error type description.
+     * @param exception  The exception itself.
+     * @param lineNumber The line number of the failed record in the JSON input
+     *                   file.
+     * @param recordJson The JSON text for the failed record.
+     */
+    private static void logFailedRecord(String errorType,
+            Exception exception,
+            int lineNumber,
+            String recordJson) {
+        synchronized (System.err) {
+            System.err.println();
+            System.err.println(
+                    "** " + errorType + " ** FAILED TO ADD RECORD AT LINE " + lineNumber + ": ");
+            System.err.println(recordJson);
+            System.err.println(exception);
+            System.err.flush();
+        }
+    }
+
+    private static final String DEFAULT_FILE_PATH = "../resources/data/load-500.jsonl";
+
+    private static final String UTF_8 = "UTF-8";
+
+    private static final String VIRTUAL_MODE = "virtual";
+    private static final String FIXED_MODE = "fixed";
+
+    private static final int MAXIMUM_CONCURRENCY = 8;
+
+    private static final int BACKLOG_FACTOR = 10;
+
+    private static final int MAXIMUM_BACKLOG = MAXIMUM_CONCURRENCY * BACKLOG_FACTOR;
+
+    private static final long AWAIT_TIMEOUT = 1000L;
+
+    private static final long ONE_MILLION = 1000000L;
+
+    private static final long ONE_MEGABYTE = 1024L * 1024L;
+
+    private static final String ERROR = "ERROR";
+    private static final String WARNING = "WARNING";
+    private static final String CRITICAL = "CRITICAL";
+
+    private static final Object MONITOR = new Object();
+
+    public record Record(int lineNumber, String line) {
+    }
+
+    private static AtomicInteger errorCount = new AtomicInteger(0);
+    private static AtomicInteger successCount = new AtomicInteger(0);
+    private static int retryCount = 0;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+    private static volatile Exception criticalFailure = null;
+    private static boolean virtualThreads = false;
+}
@@ -2,13 +2,20 @@ package loading;
 
 import java.io.*;
 import javax.json.*;
+import com.senzing.runner.EngineStatsSampler;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.RecordKeyExtractor;
 import com.senzing.sdk.*;
 import com.senzing.sdk.core.SzCoreEnvironment;
 
 import static com.senzing.sdk.SzFlag.*;
 
 /**
- * Provides a simple example of adding records to the Senzing repository.
+ * Provides a simple example of adding records to the Senzing repository
+ * while an {@link EngineStatsSampler} retrieves the engine statistics in the
+ * background every {@link #STATS_INTERVAL} milliseconds and writes the change
+ * in each counter per interval to a JSON Lines time-series file (the second
+ * command-line argument, or a temporary file if not specified).
  */
 public class LoadWithStatsViaLoop {
     public static void main(String[] args) {
@@ -31,12 +38,20 @@ public class LoadWithStatsViaLoop {
 
         String filePath = (args.length > 0) ? args[0] : DEFAULT_FILE_PATH;
 
+        EngineStatsSampler sampler = null;
         try (FileInputStream fis = new FileInputStream(filePath);
                 InputStreamReader isr = new InputStreamReader(fis, UTF_8);
                 BufferedReader br = new BufferedReader(isr)) {
             // get the engine from the environment
             SzEngine engine = env.getEngine();
 
+            // sample the stats in the background rather than in the load loop
+            File statsFile = (args.length > 1)
+                    ? new File(args[1]) : File.createTempFile(STATS_PREFIX, STATS_SUFFIX);
+            sampler = new EngineStatsSampler(
+                    engine, statsFile, STATS_INTERVAL, true, () -> successCount);
+            sampler.start();
+
             int lineNumber = 0;
             // loop through the example records and add them to the repository
             for (String line = br.readLine(); line != null; line = br.readLine()) {
@@ -57,35 +72,14 @@ public class LoadWithStatsViaLoop {
                 }
 
                 try {
-                    // parse the line as a JSON object
-                    JsonObject recordJson = Json.createReader(new StringReader(line)).readObject();
-
-                    // extract the data source code and record ID
-                    String dataSourceCode = recordJson.getString(DATA_SOURCE, null);
-                    String recordId = recordJson.getString(RECORD_ID, null);
+                    // extract the record key without fully parsing the JSON
+                    SzRecordKey recordKey = RecordKeyExtractor.extractRecordKey(line);
 
                     // call the addRecord() function with no flags
-                    engine.addRecord(
-                            SzRecordKey.of(dataSourceCode, recordId), line, SZ_NO_FLAGS);
+                    engine.addRecord(recordKey, line, SZ_NO_FLAGS);
 
                     successCount++;
 
-                    // check if it is time obtain stats
-                    if ((successCount % STATS_INTERVAL) == 0) {
-                        try {
-                            String stats = engine.getStats();
-                            if (stats.length() > STATS_TRUNCATE) {
-                                stats = stats.substring(0, STATS_TRUNCATE) + " ...";
-                            }
-                            System.out.println("* STATS: " + stats);
-
-                        } catch (SzException e) {
-                            // trap the stats exception so it is not misinterpreted
-                            // as an exception from engine.addRecord()
-                            System.err.println("**** FAILED TO OBTAIN STATS: " + e);
-                        }
-                    }
-
                 } catch (JsonException | SzBadInputException e) {
                     logFailedRecord(ERROR, e, lineNumber, line);
                     errorCount++; // increment the error count
@@ -96,12 +90,7 @@ public class LoadWithStatsViaLoop {
                     retryCount++; // increment the retry count
 
                     // track the retry record so it can be retried later
-                    if (retryFile == null) {
-                        retryFile = File.createTempFile(RETRY_PREFIX, RETRY_SUFFIX);
-                        retryWriter = new PrintWriter(
-                                new OutputStreamWriter(new FileOutputStream(retryFile), UTF_8));
-                    }
-                    retryWriter.println(line);
+                    retryJournal.retry(e, 1, lineNumber, line);
 
                 } catch (Exception e) {
                     // catch any other exception (incl. SzException) here
@@ -121,20 +110,27 @@ public class LoadWithStatsViaLoop {
             throw new RuntimeException(e);
 
         } finally {
+            // stop sampling (taking a final sample) before destroying the environment
+            if (sampler != null) {
+                sampler.close();
+            }
+
             // IMPORTANT: make sure to destroy the environment
             env.destroy();
 
             System.out.println();
             System.out.println("Records successfully added : " + successCount);
             System.out.println("Records failed with errors : " + errorCount);
+            if (sampler != null) {
+                System.out.println(sampler.getSampleCount() + " stats samples written to "
+                        + sampler.getOutputFile());
+            }
 
             // check on any retry records
-            if (retryWriter != null) {
-                retryWriter.flush();
-                retryWriter.close();
-            }
+            retryJournal.close();
             if (retryCount > 0) {
-                System.out.println(retryCount + " records to be retried in " + retryFile);
+                System.out.println(retryCount + " records to be retried in "
+                        + retryJournal.getDirectory());
             }
             System.out.flush();
 
@@ -167,22 +163,17 @@ public class LoadWithStatsViaLoop {
 
     private static final String UTF_8 = "UTF-8";
 
-    private static final int STATS_INTERVAL = 100;
-    private static final int STATS_TRUNCATE = 70;
-
-    private static final String RETRY_PREFIX = "retry-";
-    private static final String RETRY_SUFFIX = ".jsonl";
+    private static final long STATS_INTERVAL = EngineStatsSampler.DEFAULT_INTERVAL;
 
-    private static final String DATA_SOURCE = "DATA_SOURCE";
-    private static final String RECORD_ID = "RECORD_ID";
+    private static final String STATS_PREFIX = "stats-";
+    private static final String STATS_SUFFIX = ".jsonl";
 
     private static final String ERROR = "ERROR";
     private static final String WARNING = "WARNING";
     private static final String CRITICAL = "CRITICAL";
 
     private static int errorCount = 0;
-    private static int successCount = 0;
+    private static volatile int successCount = 0;
     private static int retryCount = 0;
-    private static File retryFile = null;
-    private static PrintWriter retryWriter = null;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
 }
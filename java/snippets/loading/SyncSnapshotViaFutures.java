@@ -0,0 +1,481 @@
+package loading;
+
+import java.io.*;
+import javax.json.*;
+import java.util.*;
+import java.util.concurrent.*;
+import com.senzing.runner.RecordDigestIndex;
+import com.senzing.runner.RecordDigestIndex.RecordDigest;
+import com.senzing.runner.RecordKeyExtractor;
+import com.senzing.sdk.*;
+import com.senzing.sdk.core.SzCoreEnvironment;
+
+import static com.senzing.sdk.SzFlag.*;
+
+/**
+ * Provides an example of syncing the Senzing repository to full snapshots
+ * of the source records.  New and changed records in the snapshot are
+ * added, unchanged records are skipped and records that were in the
+ * previous snapshot but are missing from this one are deleted, without a
+ * hand-built file of deletions.
+ *
+ * <p>
+ * The key inventory is kept in a {@link RecordDigestIndex} on disk: every
+ * key in the snapshot is marked as seen while reading it and the unseen keys
+ * (for the data sources in the snapshot) are then deleted, so memory use
+ * does not grow with the number of records.  The deletions are submitted as
+ * soon as the snapshot has been read and run concurrently with the adds
+ * still in flight.  Failed adds and deletions are not recorded in the index
+ * so they are simply retried by the next sync.  If any line of a snapshot
+ * cannot be parsed or lacks its <code>DATA_SOURCE</code> or
+ * <code>RECORD_ID</code> then its deletions are skipped since the snapshot is
+ * not known to be complete.  If a snapshot repeats a key then its adds are
+ * applied one after another in file order.
+ *
+ * <p>
+ * The first command-line argument is the index file to keep between runs
+ * (a temporary file is used if not specified) and any further arguments are
+ * the snapshot files to sync in order.  By default this syncs
+ * <code>load-10K.jsonl</code>, then <code>load-5K.json</code> (skipping the
+ * records it shares with the first snapshot and deleting the rest) and then
+ * <code>replace-5K.jsonl</code> (replacing every remaining record).
+ */
+public class SyncSnapshotViaFutures {
+    public static void main(String[] args) {
+        // get the senzing repository settings
+        String settings = System.getenv("SENZING_ENGINE_CONFIGURATION_JSON");
+        if (settings == null) {
+            System.err.println("Unable to get settings.");
+            throw new IllegalArgumentException("Unable to get settings");
+        }
+
+        // create a descriptive instance name (can be anything)
+        String instanceName = SyncSnapshotViaFutures.class.getSimpleName();
+
+        // initialize the Senzing environment
+        SzEnvironment env = SzCoreEnvironment.newBuilder()
+                .settings(settings)
+                .instanceName(instanceName)
+                .verboseLogging(false)
+                .build();
+
+        String[] filePaths = (args.length > 1)
+                ? Arrays.copyOfRange(args, 1, args.length) : DEFAULT_FILE_PATHS;
+
+        // create the thread pool and executor service
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+        // create a completion service so futures are handed back as they complete
+        CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+
+        // keep track of pending futures and don't backlog too many for memory's sake
+        Map<Future<Void>, Operation> pendingFutures = new IdentityHashMap<>();
+
+        RecordDigestIndex index = null;
+        try {
+            // open the key index, using a temporary file if not specified
+            File indexFile = (args.length > 0) ? new File(args[0]) : createTempIndexFile();
+            index = new RecordDigestIndex(indexFile);
+
+            // get the engine from the environment
+            SzEngine engine = env.getEngine();
+
+            for (String filePath : filePaths) {
+                int addedBefore = addCount;
+                int deletedBefore = deleteCount;
+                int skippedBefore = skippedCount;
+                int errorsBefore = errorCount;
+
+                syncSnapshot(filePath, engine, index, completionService, pendingFutures);
+
+                System.out.println();
+                System.out.println("Synced " + filePath + ":");
+                System.out.println("  Records new or changed and added : "
+                        + (addCount - addedBefore));
+                System.out.println("  Records missing and deleted      : "
+                        + (deleteCount - deletedBefore));
+                System.out.println("  Records unchanged and skipped    : "
+                        + (skippedCount - skippedBefore));
+                System.out.println("  Operations failed with errors    : "
+                        + (errorCount - errorsBefore));
+                System.out.flush();
+            }
+
+            // shutdown the executor service
+            executor.shutdown();
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("*** Terminated due to critical error ***");
+            System.err.flush();
+            if (e instanceof RuntimeException) {
+                throw ((RuntimeException) e);
+            }
+            throw new RuntimeException(e);
+
+        } finally {
+            // check if executor service is shutdown
+            if (!executor.isShutdown()) {
+                executor.shutdown();
+            }
+
+            // flush the index to disk
+            if (index != null) {
+                try {
+                    index.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close the record digest index: " + e);
+                }
+            }
+
+            // IMPORTANT: make sure to destroy the environment
+            env.destroy();
+
+            System.out.println();
+            System.out.println("Records successfully added     : " + addCount);
+            System.out.println("Records successfully deleted   : " + deleteCount);
+            System.out.println("Records skipped as unchanged   : " + skippedCount);
+            System.out.println("Operations failed with errors  : " + errorCount);
+            System.out.println("Record keys in the index       : "
+                    + ((index == null) ? 0 : index.size()));
+            if (retryCount > 0) {
+                System.out.println(retryCount + " operations to be retried by the next sync");
+            }
+            System.out.flush();
+
+        }
+
+    }
+
+    /**
+     * Syncs the repository to the snapshot in the specified file: adds the
+     * new and changed records while marking the keys as seen, then deletes
+     * the unseen keys while the adds complete, and waits for all of them.
+     *
+     * @param filePath          The path to the snapshot file.
+     * @param engine            The {@link SzEngine} to use.
+     * @param index             The {@link RecordDigestIndex} to use.
+     * @param completionService The {@link CompletionService} to submit to.
+     * @param pendingFutures    The {@link Map} of pending futures.
+     *
+     * @throws Exception If a critical failure occurs.
+     */
+    private static void syncSnapshot(String filePath,
+            SzEngine engine,
+            RecordDigestIndex index,
+            CompletionService<Void> completionService,
+            Map<Future<Void>, Operation> pendingFutures)
+            throws Exception {
+        // clear the marks from the previous sync
+        index.beginSync();
+
+        // track the data sources in the snapshot so only their records are deleted
+        Set<String> dataSources = new TreeSet<>();
+        boolean complete = true;
+
+        try (FileInputStream fis = new FileInputStream(filePath);
+                InputStreamReader isr = new InputStreamReader(fis, UTF_8);
+                BufferedReader br = new BufferedReader(isr)) {
+
+            int lineNumber = 0;
+            boolean eof = false;
+
+            while (!eof) {
+                // loop through the snapshot records and queue up the new and
+                // changed ones so long as the backlog is not too large
+                while (pendingFutures.size() < MAXIMUM_BACKLOG) {
+                    // read the next line
+                    String line = br.readLine();
+                    lineNumber++;
+
+                    // check for EOF
+                    if (line == null) {
+                        eof = true;
+                        break;
+                    }
+
+                    // trim the line
+                    line = line.trim();
+
+                    // skip any blank lines
+                    if (line.length() == 0) {
+                        continue;
+                    }
+
+                    // skip any commented lines
+                    if (line.startsWith("#")) {
+                        continue;
+                    }
+
+                    try {
+                        // extract the record key without fully parsing the JSON
+                        SzRecordKey recordKey = RecordKeyExtractor.extractRecordKey(line);
+                        if (recordKey.dataSourceCode() == null || recordKey.recordId() == null) {
+                            throw new JsonException(
+                                    "Record is missing its DATA_SOURCE or RECORD_ID");
+                        }
+                        dataSources.add(recordKey.dataSourceCode());
+
+                        // if the snapshot repeats a key whose add is still in
+                        // flight then wait for it so the adds for a key are
+                        // applied (and recorded in the index) in file order
+                        while (pendingKeys.contains(recordKey)) {
+                            handlePendingFutures(completionService, pendingFutures, index, true);
+                        }
+
+                        // mark the key as seen and skip the record if unchanged
+                        RecordDigest digest = RecordDigestIndex.digest(recordKey, line);
+                        if (index.markSeen(digest)) {
+                            skippedCount++;
+                            continue;
+                        }
+
+                        // construct the Operation instance
+                        Operation operation = new Operation(ADD, recordKey, lineNumber, line, digest);
+
+                        Future<Void> future = completionService.submit(() -> {
+                            // call the addRecord() function with no flags
+                            engine.addRecord(recordKey, operation.line, SZ_NO_FLAGS);
+
+                            // return null since we have no "info" to return
+                            return null;
+                        });
+
+                        // add the future to the pending future list
+                        pendingFutures.put(future, operation);
+                        pendingKeys.add(recordKey);
+
+                    } catch (JsonException e) {
+                        logFailedOperation(ERROR, e, ADD, lineNumber, line);
+                        errorCount++; // increment the error count
+                        complete = false;
+                    }
+                }
+
+                // handle the completed futures to reduce the backlog, blocking
+                // until the next one completes only if the backlog is full
+                handlePendingFutures(completionService,
+                        pendingFutures,
+                        index,
+                        pendingFutures.size() >= MAXIMUM_BACKLOG);
+            }
+        }
+
+        if (!complete) {
+            System.err.println();
+            System.err.println("Skipping deletions since " + filePath
+                    + " has records that could not be parsed or are missing their keys");
+            System.err.flush();
+
+        } else {
+            // delete the records missing from the snapshot while the adds
+            // are still completing, the slots cannot move since every key
+            // in the snapshot is already in the index
+            for (int slot = index.nextUnseen(0); slot >= 0; slot = index.nextUnseen(slot + 1)) {
+                SzRecordKey recordKey = index.getKey(slot);
+                if (!dataSources.contains(recordKey.dataSourceCode())) {
+                    continue;
+                }
+
+                // construct the Operation instance
+                Operation operation = new Operation(DELETE, recordKey, 0, null, null);
+
+                Future<Void> future = completionService.submit(() -> {
+                    // call the deleteRecord() function with no flags
+                    engine.deleteRecord(recordKey, SZ_NO_FLAGS);
+
+                    // return null since we have no "info" to return
+                    return null;
+                });
+
+                // add the future to the pending future list
+                pendingFutures.put(future, operation);
+
+                // handle the completed futures to reduce the backlog, blocking
+                // until the next one completes only if the backlog is full
+                handlePendingFutures(completionService,
+                        pendingFutures,
+                        index,
+                        pendingFutures.size() >= MAXIMUM_BACKLOG);
+            }
+        }
+
+        // handle the remaining pending futures, blocking on each future
+        while (pendingFutures.size() > 0) {
+            handlePendingFutures(completionService, pendingFutures, index, true);
+        }
+
+        // remove the deleted keys and clear the marks
+        index.endSync();
+    }
+
+    private static void handlePendingFutures(CompletionService<Void> completionService,
+            Map<Future<Void>, Operation> pendingFutures,
+            RecordDigestIndex index,
+            boolean blocking)
+            throws Exception {
+        // loop through the completed futures, waiting for the first one only
+        // if blocking, and stop once no more are immediately available
+        for (Future<Void> future = (blocking) ? completionService.take() : completionService.poll();
+                future != null;
+                future = completionService.poll()) {
+            // remove the completed future from the pending map
+            Operation operation = pendingFutures.remove(future);
+            pendingKeys.remove(operation.key);
+
+            try {
+                try {
+                    // get the value to see if there was an exception
+                    future.get();
+
+                    // if we get here then update the index and the counts
+                    if (operation.digest != null) {
+                        index.put(operation.digest);
+                        addCount++;
+                    } else {
+                        index.markDeleted(operation.key);
+                        deleteCount++;
+                    }
+
+                } catch (InterruptedException e) {
+                    // the future is already complete so this should not happen,
+                    // but if it does rethrow as retryable and log the interruption
+                    throw e;
+
+                } catch (ExecutionException e) {
+                    // if execution failed with an exception then rethrow
+                    Throwable cause = e.getCause();
+                    if ((cause == null) || !(cause instanceof Exception)) {
+                        // rethrow the execution exception
+                        throw e;
+                    }
+                    // cast to an Exception and rethrow
+                    throw ((Exception) cause);
+                }
+
+            } catch (SzBadInputException e) {
+                logFailedOperation(ERROR, e, operation);
+                errorCount++; // increment the error count
+
+            } catch (SzRetryableException | InterruptedException | CancellationException e) {
+                // handle thread interruption and cancellation as retries, the
+                // index is unchanged so the next sync will retry the operation
+                logFailedOperation(WARNING, e, operation);
+                errorCount++; // increment the error count
+                retryCount++; // increment the retry count
+
+            } catch (Exception e) {
+                // catch any other exception (incl. SzException) here
+                logFailedOperation(CRITICAL, e, operation);
+                errorCount++;
+                throw e; // rethrow since exception is critical
+            }
+        }
+    }
+
+    /**
+     * Creates a temporary index file (and its key file) that is deleted
+     * on exit.
+     *
+     * @return The temporary index {@link File}.
+     *
+     * @throws IOException If an I/O failure occurs.
+     */
+    private static File createTempIndexFile() throws IOException {
+        File indexFile = File.createTempFile(INDEX_PREFIX, INDEX_SUFFIX);
+        indexFile.deleteOnExit();
+        new File(indexFile.getPath() + RecordDigestIndex.KEY_FILE_SUFFIX).deleteOnExit();
+        return indexFile;
+    }
+
+    /**
+     * Logs the specified failed {@link Operation}.
+     *
+     * @param errorType The error type description.
+     * @param exception The exception itself.
+     * @param operation The failed {@link Operation}.
+     */
+    private static void logFailedOperation(String errorType,
+            Exception exception,
+            Operation operation) {
+        if (operation.line != null) {
+            logFailedOperation(errorType, exception, operation.action,
+                    operation.lineNumber, operation.line);
+            return;
+        }
+        System.err.println();
+        System.err.println("** " + errorType + " ** FAILED TO " + operation.action
+                + " RECORD (" + operation.key.dataSourceCode() + ":"
+                + operation.key.recordId() + "): ");
+        System.err.println(exception);
+        System.err.flush();
+    }
+
+    /**
+     * Example method for logging failed records.
+     *
+     * @param errorType  The error type description.
+     * @param exception  The exception itself.
+     * @param action     The action that failed.
+     * @param lineNumber The line number of the failed record in the JSON input
+     *                   file.
+     * @param recordJson The JSON text for the failed record.
+     */
+    private static void logFailedOperation(String errorType,
+            Exception exception,
+            String action,
+            int lineNumber,
+            String recordJson) {
+        System.err.println();
+        System.err.println(
+                "** " + errorType + " ** FAILED TO " + action + " RECORD AT LINE "
+                        + lineNumber + ": ");
+        System.err.println(recordJson);
+        System.err.println(exception);
+        System.err.flush();
+    }
+
+    private static final String[] DEFAULT_FILE_PATHS = {
+            "../resources/data/load-10K.jsonl",
+            "../resources/data/load-5K.json",
+            "../resources/data/replace-5K.jsonl" };
+
+    private static final String UTF_8 = "UTF-8";
+
+    private static final String INDEX_PREFIX = "snapshot-keys-";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private static final int THREAD_COUNT = 8;
+
+    private static final int BACKLOG_FACTOR = 10;
+
+    private static final int MAXIMUM_BACKLOG = THREAD_COUNT * BACKLOG_FACTOR;
+
+    private static final String ADD = "ADD";
+    private static final String DELETE = "DELETE";
+
+    private static final String ERROR = "ERROR";
+    private static final String WARNING = "WARNING";
+    private static final String CRITICAL = "CRITICAL";
+
+    /**
+     * An add or delete operation: deletions have no line and no digest.
+     */
+    public record Operation(String action,
+            SzRecordKey key,
+            int lineNumber,
+            String line,
+            RecordDigest digest) {
+    }
+
+    /**
+     * The keys of the records whose adds are pending.
+     */
+    private static Set<SzRecordKey> pendingKeys = new HashSet<>();
+
+    private static int errorCount = 0;
+    private static int addCount = 0;
+    private static int deleteCount = 0;
+    private static int skippedCount = 0;
+    private static int retryCount = 0;
+}
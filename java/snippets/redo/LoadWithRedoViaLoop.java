@@ -1,9 +1,14 @@
 package redo;
 
 import java.io.*;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.*;
 
 import javax.json.*;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.LoadRedoScheduler;
+import com.senzing.runner.RecordKeyExtractor;
 import com.senzing.sdk.*;
 import com.senzing.sdk.core.SzCoreEnvironment;
 
@@ -12,6 +17,16 @@ import static com.senzing.sdk.SzFlag.*;
 /**
  * Provides a simple example of processing redo records while 
  * loading records to the Senzing repository.
+ *
+ * <p>
+ * If the first command-line argument is <code>"concurrent"</code> then the
+ * records are loaded and the redo records processed at the same time by a
+ * shared pool of worker threads rather than processing the redo records
+ * only once all records are loaded.  The optional second argument is either
+ * the fraction of the workers that process redo records while loading (e.g.:
+ * <code>"0.25"</code>) or <code>"adaptive"</code> (the default) to adjust
+ * that fraction so the redo backlog stays bounded.  The load throughput and
+ * the redo backlog and lag are reported side by side as it runs.
  */
 public class LoadWithRedoViaLoop {
     public static void main(String[] args) {
@@ -22,6 +37,13 @@ public class LoadWithRedoViaLoop {
             throw new IllegalArgumentException("Unable to get settings");
         }
 
+        // check if loading and redo should be done concurrently
+        boolean concurrent = (args.length > 0) 
+            && CONCURRENT_MODE.equals(args[0].trim().toLowerCase());
+        String  shareArg   = (args.length > 1) ? args[1].trim().toLowerCase() : ADAPTIVE_MODE;
+        boolean adaptive   = ADAPTIVE_MODE.equals(shareArg);
+        double  redoShare  = adaptive ? DEFAULT_REDO_SHARE : Double.parseDouble(shareArg);
+
         // create a descriptive instance name (can be anything)
         String instanceName = LoadWithRedoViaLoop.class.getSimpleName();
 
@@ -36,6 +58,12 @@ public class LoadWithRedoViaLoop {
             // get the engine from the environment
             SzEngine engine = env.getEngine();
 
+            // load and process redo records concurrently if requested
+            if (concurrent) {
+                loadAndRedoConcurrently(engine, redoShare, adaptive);
+                return;
+            }
+
             // loop through the input files
             for (String filePath: INPUT_FILES) {
                 try (FileInputStream    fis = new FileInputStream(filePath);
@@ -62,17 +90,11 @@ public class LoadWithRedoViaLoop {
                         }
 
                         try {
-                            // parse the line as a JSON object
-                            JsonObject recordJson 
-                                = Json.createReader(new StringReader(line)).readObject();            
-                        
-                            // extract the data source code and record ID
-                            String  dataSourceCode  = recordJson.getString(DATA_SOURCE, null);
-                            String  recordId        = recordJson.getString(RECORD_ID, null);
+                            // extract the record key without fully parsing the JSON
+                            SzRecordKey recordKey = RecordKeyExtractor.extractRecordKey(line);
 
                             // call the addRecord() function with no flags
-                            engine.addRecord(
-                                SzRecordKey.of(dataSourceCode, recordId), line, SZ_NO_FLAGS);
+                            engine.addRecord(recordKey, line, SZ_NO_FLAGS);
 
                             successCount++;
 
@@ -85,7 +107,7 @@ public class LoadWithRedoViaLoop {
                             errorCount++;   // increment the error count
                             retryCount++;   // increment the retry count
 
-                            trackRetryRecord(line);
+                            retryJournal.retry(e, 1, lineNumber, line);
 
                         } catch (Exception e) {
                             // catch any other exception (incl. SzException) here
@@ -113,7 +135,7 @@ public class LoadWithRedoViaLoop {
                     logFailedRedo(WARNING, e, redo);
                     errorCount++;
                     retryCount++;
-                    trackRetryRecord(redo);
+                    retryJournal.retry(e, 1, 0, redo);
                     
                 } catch (Exception e) {
                     logFailedRedo(CRITICAL, e, redo);
@@ -141,13 +163,11 @@ public class LoadWithRedoViaLoop {
             System.out.println("Total failed records/redos   : " + errorCount);
 
             // check on any retry records
-            if (retryWriter != null) {
-                retryWriter.flush();
-                retryWriter.close();
-            }
+            retryJournal.close();
             if (retryCount > 0) {
                 System.out.println(
-                    retryCount + " records/redos to be retried in " + retryFile);
+                    retryCount + " records/redos to be retried in "
+                    + retryJournal.getDirectory());
             }
             System.out.flush();
 
@@ -155,6 +175,246 @@ public class LoadWithRedoViaLoop {
 
     }
 
+    /**
+     * Loads the input files and processes the redo records at the same time
+     * with a pool of workers sharing their time between the two as directed
+     * by a {@link LoadRedoScheduler}.  Once all records are loaded the
+     * workers process the remaining redo records.
+     * 
+     * @param engine The {@link SzEngine} to use.
+     * @param redoShare The fraction of the workers processing redo records
+     *                  while loading, or the initial fraction if adaptive.
+     * @param adaptive Whether the fraction should be adjusted to keep the
+     *                 redo backlog bounded.
+     * 
+     * @throws Exception If a critical failure occurs.
+     */
+    private static void loadAndRedoConcurrently(SzEngine    engine,
+                                                double      redoShare,
+                                                boolean     adaptive)
+        throws Exception
+    {
+        LoadRedoScheduler scheduler = new LoadRedoScheduler(
+            engine, THREAD_COUNT, redoShare, adaptive, MAXIMUM_REDO_BACKLOG);
+
+        ExecutorService workers = Executors.newFixedThreadPool(THREAD_COUNT);
+        try {
+            scheduler.start();
+            for (int index = 0; index < THREAD_COUNT; index++) {
+                workers.execute(() -> runWorker(engine, scheduler));
+            }
+
+            // wait for the workers to finish
+            workers.shutdown();
+            while (!workers.awaitTermination(AWAIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                // keep waiting
+            }
+
+        } finally {
+            workers.shutdownNow();
+            scheduler.close();
+            closeInput();
+
+            successCount    = (int) scheduler.getLoadedCount();
+            redoneCount     = (int) scheduler.getRedoneCount();
+            scheduler.printSummary(System.out);
+        }
+
+        // check if any of the workers failed critically
+        if (criticalFailure != null) {
+            throw criticalFailure;
+        }
+    }
+
+    /**
+     * Performs the tasks handed out by the specified {@link LoadRedoScheduler}
+     * until all records are loaded and no redo records remain, or until a
+     * critical failure occurs.
+     * 
+     * @param engine The {@link SzEngine} to use.
+     * @param scheduler The {@link LoadRedoScheduler} handing out the tasks.
+     */
+    private static void runWorker(SzEngine engine, LoadRedoScheduler scheduler) {
+        while (criticalFailure == null) {
+            LoadRedoScheduler.Task  task        = scheduler.nextTask();
+            boolean                 performed   = false;
+            try {
+                if (task == LoadRedoScheduler.Task.LOAD) {
+                    PendingRecord record = nextRecord();
+                    if (record == null) {
+                        scheduler.loadingComplete();
+                        continue;
+                    }
+                    performed = loadRecord(engine, record);
+
+                } else {
+                    String redo = engine.getRedoRecord();
+                    if (redo == null) {
+                        // once loading is complete no redo means we are done
+                        if (scheduler.isLoadingComplete()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    performed = processRedo(engine, redo);
+                }
+
+            } catch (Exception e) {
+                criticalFailure = e; // record the failure to rethrow
+
+            } finally {
+                scheduler.complete(task, performed);
+            }
+        }
+    }
+
+    /**
+     * Adds the specified record, logging and tracking it if it fails.
+     * 
+     * @param engine The {@link SzEngine} to use.
+     * @param record The {@link PendingRecord} to add.
+     * 
+     * @return <code>true</code> if the record was added, otherwise 
+     *         <code>false</code>.
+     * 
+     * @throws Exception If a critical failure occurs.
+     */
+    private static boolean loadRecord(SzEngine engine, PendingRecord record) 
+        throws Exception
+    {
+        try {
+            // extract the record key without fully parsing the JSON
+            SzRecordKey recordKey = RecordKeyExtractor.extractRecordKey(record.line);
+
+            // call the addRecord() function with no flags
+            engine.addRecord(recordKey, record.line, SZ_NO_FLAGS);
+            return true;
+
+        } catch (JsonException | SzBadInputException e) {
+            logFailedRecord(ERROR, e, record.filePath, record.lineNumber, record.line);
+            synchronized (MONITOR) {
+                errorCount++;   // increment the error count
+            }
+            return false;
+
+        } catch (SzRetryableException e) {
+            logFailedRecord(WARNING, e, record.filePath, record.lineNumber, record.line);
+            synchronized (MONITOR) {
+                errorCount++;   // increment the error count
+                retryCount++;   // increment the retry count
+            }
+            retryJournal.retry(e, 1, record.lineNumber, record.line);
+            return false;
+
+        } catch (Exception e) {
+            // catch any other exception (incl. SzException) here
+            logFailedRecord(CRITICAL, e, record.filePath, record.lineNumber, record.line);
+            synchronized (MONITOR) {
+                errorCount++;
+            }
+            throw e; // rethrow since exception is critical
+        }
+    }
+
+    /**
+     * Processes the specified redo record, logging and tracking it if it 
+     * fails.
+     * 
+     * @param engine The {@link SzEngine} to use.
+     * @param redo The redo record to process.
+     * 
+     * @return <code>true</code> if the redo record was processed, otherwise 
+     *         <code>false</code>.
+     * 
+     * @throws Exception If a critical failure occurs.
+     */
+    private static boolean processRedo(SzEngine engine, String redo) 
+        throws Exception
+    {
+        try {
+            // process the redo record
+            engine.processRedoRecord(redo, SZ_NO_FLAGS);
+            return true;
+
+        } catch (SzRetryableException e) {
+            logFailedRedo(WARNING, e, redo);
+            synchronized (MONITOR) {
+                errorCount++;
+                retryCount++;
+            }
+            retryJournal.retry(e, 1, 0, redo);
+            return false;
+
+        } catch (Exception e) {
+            logFailedRedo(CRITICAL, e, redo);
+            synchronized (MONITOR) {
+                errorCount++;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next record from the input files, skipping blank and
+     * commented lines and moving on to the next file at the end of each.
+     * 
+     * @return The next {@link PendingRecord}, or <code>null</code> if all
+     *         input files have been read.
+     * 
+     * @throws IOException If a failure occurs reading the input files.
+     */
+    private static PendingRecord nextRecord() throws IOException {
+        synchronized (INPUT_MONITOR) {
+            while (true) {
+                // open the next file if needed
+                if (inputReader == null) {
+                    if (!inputFiles.hasNext()) {
+                        return null;
+                    }
+                    inputFilePath   = inputFiles.next();
+                    inputReader     = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(inputFilePath), UTF_8));
+                    inputLineNumber = 0;
+                }
+
+                String line = inputReader.readLine();
+                if (line == null) {
+                    closeInput();
+                    continue;
+                }
+
+                // increment the line number
+                inputLineNumber++;
+
+                // trim the line
+                line = line.trim();
+
+                // skip any blank or commented lines
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+
+                return new PendingRecord(inputFilePath, inputLineNumber, line);
+            }
+        }
+    }
+
+    /**
+     * Closes the input file currently being read, if any.
+     */
+    private static void closeInput() {
+        synchronized (INPUT_MONITOR) {
+            if (inputReader != null) {
+                try {
+                    inputReader.close();
+                } catch (IOException ignore) {
+                    // ignore the exception
+                }
+                inputReader = null;
+            }
+        }
+    }
+
     /**
      * Example method for logging failed records.
      * 
@@ -173,13 +433,15 @@ public class LoadWithRedoViaLoop {
         File file = new File(filePath);
         String fileName = file.getName();
 
-        System.err.println();
-        System.err.println(
-            "** " + errorType + " ** FAILED TO ADD RECORD IN " + fileName 
-            + " AT LINE " + lineNumber + ": ");
-        System.err.println(recordJson);
-        System.err.println(exception);
-        System.err.flush();
+        synchronized (System.err) {
+            System.err.println();
+            System.err.println(
+                "** " + errorType + " ** FAILED TO ADD RECORD IN " + fileName 
+                + " AT LINE " + lineNumber + ": ");
+            System.err.println(recordJson);
+            System.err.println(exception);
+            System.err.flush();
+        }
     }
 
     /**
@@ -193,34 +455,15 @@ public class LoadWithRedoViaLoop {
                                       Exception   exception,  
                                       String      redoRecord) 
     {
-        System.err.println();
-        System.err.println("** " + errorType + " ** FAILED TO PROCESS REDO: ");
-        System.err.println(redoRecord);
-        System.err.println(exception);
-        System.err.flush();
-    }
-
-    /**
-     * Tracks the specified JSON record definition to be retried in a
-     * retry file.
-     * 
-     * @param recordJson The JSON text defining the record to be retried.
-     * 
-     * @throws IOException If a failure occurs in writing the record to the
-     *                     retry file.
-     */
-    private static void trackRetryRecord(String recordJson) 
-        throws IOException
-    {
-        // track the retry record so it can be retried later
-        if (retryFile == null) {
-            retryFile = File.createTempFile(RETRY_PREFIX, RETRY_SUFFIX);
-            retryWriter = new PrintWriter(
-                new OutputStreamWriter(new FileOutputStream(retryFile), UTF_8));
+        synchronized (System.err) {
+            System.err.println();
+            System.err.println("** " + errorType + " ** FAILED TO PROCESS REDO: ");
+            System.err.println(redoRecord);
+            System.err.println(exception);
+            System.err.flush();
         }
-        retryWriter.println(recordJson);        
     }
-    
+
     private static final List<String> INPUT_FILES = List.of(
         "../resources/data/truthset/customers.jsonl",
         "../resources/data/truthset/reference.jsonl",
@@ -228,20 +471,36 @@ public class LoadWithRedoViaLoop {
 
     private static final String UTF_8 = "UTF-8";
 
-    private static final String RETRY_PREFIX = "retry-";
-    private static final String RETRY_SUFFIX = ".jsonl";
+    private static final String CONCURRENT_MODE = "concurrent";
+    private static final String ADAPTIVE_MODE   = "adaptive";
 
-    private static final String DATA_SOURCE = "DATA_SOURCE";
-    private static final String RECORD_ID   = "RECORD_ID";
+    private static final int    THREAD_COUNT            = 8;
+    private static final double DEFAULT_REDO_SHARE      = 0.25;
+    private static final long   MAXIMUM_REDO_BACKLOG    = 10000L;
+    private static final long   AWAIT_TIMEOUT           = 1000L;
 
     private static final String ERROR       = "ERROR";
     private static final String WARNING     = "WARNING";
     private static final String CRITICAL    = "CRITICAL";
 
+    private static final Object MONITOR         = new Object();
+    private static final Object INPUT_MONITOR   = new Object();
+
+    /**
+     * A record read from an input file along with its file and line number.
+     */
+    private record PendingRecord(String filePath, int lineNumber, String line) { }
+
     private static int         errorCount      = 0;
     private static int         successCount    = 0;
     private static int         redoneCount     = 0;
     private static int         retryCount      = 0;
-    private static File        retryFile       = null;
-    private static PrintWriter retryWriter     = null;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+
+    private static Iterator<String> inputFiles      = INPUT_FILES.iterator();
+    private static String           inputFilePath   = null;
+    private static BufferedReader   inputReader     = null;
+    private static int              inputLineNumber = 0;
+
+    private static volatile Exception criticalFailure = null;
 }
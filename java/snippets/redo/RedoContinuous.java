@@ -2,6 +2,8 @@ package redo;
 
 import java.io.*;
 
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.RedoBacklogMonitor;
 import com.senzing.sdk.*;
 import com.senzing.sdk.core.SzCoreEnvironment;
 
@@ -32,6 +34,14 @@ public class RedoContinuous {
 
         // make sure we cleanup if exiting by CTRL-C or due to an exception
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // commit the journal of the redo records to be retried
+            retryJournal.close();
+
+            // stop sampling the redo backlog before destroying the environment
+            if (backlogMonitor != null) {
+                backlogMonitor.close();
+            }
+
             // IMPORTANT: make sure to destroy the environment
             env.destroy();
             outputRedoStatistics();
@@ -41,6 +51,11 @@ public class RedoContinuous {
             // get the engine from the environment
             SzEngine engine = env.getEngine();
 
+            // sample the redo backlog from a background thread rather than
+            // counting the redo records from within the processing loop
+            backlogMonitor = new RedoBacklogMonitor(engine, () -> redoneCount);
+            backlogMonitor.start();
+
             while (true) {
                 // get the next redo record
                 String redo = engine.getRedoRecord();
@@ -72,7 +87,7 @@ public class RedoContinuous {
                     logFailedRedo(WARNING, e, redo);
                     errorCount++;
                     retryCount++;
-                    trackRetryRecord(redo);
+                    retryJournal.retry(e, redo);
 
                 } catch (Exception e) {
                     logFailedRedo(CRITICAL, e, redo);
@@ -104,14 +119,14 @@ public class RedoContinuous {
         System.out.println("Redos successfully processed : " + redoneCount);
         System.out.println("Total failed records/redos   : " + errorCount);
 
-        // check on any retry records
-        if (retryWriter != null) {
-            retryWriter.flush();
-            retryWriter.close();
+        if (backlogMonitor != null) {
+            backlogMonitor.printSummary(System.out);
         }
+
+        // check on any retry records
         if (retryCount > 0) {
-            System.out.println(
-                    retryCount + " records/redos to be retried in " + retryFile);
+            System.out.println(retryCount + " records/redos to be retried in "
+                    + retryJournal.getDirectory());
         }
         System.out.flush();
     }
@@ -133,31 +148,6 @@ public class RedoContinuous {
         System.err.flush();
     }
 
-    /**
-     * Tracks the specified JSON record definition to be retried in a
-     * retry file.
-     * 
-     * @param recordJson The JSON text defining the record to be retried.
-     * 
-     * @throws IOException If a failure occurs in writing the record to the
-     *                     retry file.
-     */
-    private static void trackRetryRecord(String recordJson)
-            throws IOException {
-        // track the retry record so it can be retried later
-        if (retryFile == null) {
-            retryFile = File.createTempFile(RETRY_PREFIX, RETRY_SUFFIX);
-            retryWriter = new PrintWriter(
-                    new OutputStreamWriter(new FileOutputStream(retryFile), UTF_8));
-        }
-        retryWriter.println(recordJson);
-    }
-
-    private static final String UTF_8 = "UTF-8";
-
-    private static final String RETRY_PREFIX = "retry-";
-    private static final String RETRY_SUFFIX = ".jsonl";
-
     private static final long REDO_PAUSE_TIMEOUT = 30000L;
 
     private static final String REDO_PAUSE_DESCRIPTION = "30 seconds";
@@ -166,8 +156,8 @@ public class RedoContinuous {
     private static final String CRITICAL = "CRITICAL";
 
     private static int errorCount = 0;
-    private static int redoneCount = 0;
+    private static volatile int redoneCount = 0;
     private static int retryCount = 0;
-    private static File retryFile = null;
-    private static PrintWriter retryWriter = null;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+    private static volatile RedoBacklogMonitor backlogMonitor = null;
 }
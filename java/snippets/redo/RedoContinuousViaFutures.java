@@ -1,9 +1,18 @@
 package redo;
 
 import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.*;
 
+import com.senzing.runner.AdaptiveConcurrencyLimit;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.RedoFetcher;
+import com.senzing.runner.RedoBacklogMonitor;
+import com.senzing.runner.RetryJournal;
+import com.senzing.runner.RetryJournal.Entry;
+import com.senzing.runner.RetryJournal.Kind;
+import com.senzing.runner.RetryQueue;
 import com.senzing.sdk.*;
 import com.senzing.sdk.core.SzCoreEnvironment;
 
@@ -13,6 +22,33 @@ import static com.senzing.sdk.SzFlag.*;
  * Provides an example of a process that continuously processes
  * the pending redo records in the Senzing repository using
  * futures.
+ *
+ * <p>
+ * Redo records that fail with an {@link SzRetryableException} are retried
+ * after a jittered exponential backoff, and only those that exhaust their
+ * attempts (or exceed the retry memory budget) are written to a separate
+ * retry journal, which is not replayed.
+ *
+ * <p>
+ * The redo records are fetched by several {@link RedoFetcher} threads
+ * rather than one at a time on the main thread, and while there are none
+ * the fetchers back off from a short pause up to a few seconds rather than
+ * sleeping for a fixed period, so new redo work is picked up promptly.
+ *
+ * <p>
+ * On shutdown (e.g.: CTRL-C or a termination signal) the fetchers and the
+ * main loop are stopped before anything else so no redo record is fetched
+ * from an environment that is being destroyed, and the in-flight redo
+ * records are given a bounded time to complete.  Any redo records that were
+ * fetched but not processed by then are appended to a {@link RetryJournal}
+ * in the directory given as the first command-line argument (or a new
+ * temporary directory if none is given), and are replayed the next time this
+ * process starts with that directory as its first argument.  The replayed
+ * journal is only deleted once all of its redo records are processed or
+ * journaled again, and if the main loop does not stop in time its redo
+ * records are left to it rather than touched from the shutdown hook.  The
+ * environment is only destroyed (and the replayed journal only deleted) if
+ * the fetchers, the main loop and the redo threads have all stopped.
  */
 public class RedoContinuousViaFutures {
     public static void main(String[] args) {
@@ -33,27 +69,123 @@ public class RedoContinuousViaFutures {
                 .verboseLogging(false)
                 .build();
 
-        // create the thread pool and executor service
-        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        // create the thread pool and executor service with enough threads
+        // for the maximum concurrency, the adaptive limit throttles them
+        ExecutorService executor = Executors.newFixedThreadPool(MAXIMUM_THREAD_COUNT);
 
         // keep track of pending futures and don't backlog too many for memory's sake
-        Map<Future<?>, String> pendingFutures = new IdentityHashMap<>();
+        Map<Future<?>, Redo> pendingFutures = new IdentityHashMap<>();
+
+        // the journal of redo records left unprocessed at shutdown, which is
+        // replayed on start when given, otherwise a new temporary directory
+        // is created for it at shutdown so concurrent instances never share one
+        File journalDir = (args.length > 0) ? new File(args[0]) : null;
 
         // make sure we cleanup if exiting by CTRL-C or due to an exception
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            // shutdown the executor service
-            if (!executor.isShutdown()) {
-                executor.shutdown();
+            long deadline = System.nanoTime() + (SHUTDOWN_TIMEOUT * ONE_MILLION);
+
+            // stop fetching and stop the main loop so that nothing else calls
+            // the engine or touches the pending futures from here on
+            shutdownRequested = true;
+            List<Redo> unprocessed = new ArrayList<>();
+            boolean fetchersStopped = (redoFetcher == null);
+            boolean stopped = false;
+            try {
+                if (redoFetcher != null) {
+                    fetchersStopped = redoFetcher.stop(
+                            remainingMillis(deadline), TimeUnit.MILLISECONDS);
+                }
+                stopped = mainLoopStopped.await(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignore) {
+                // ignore the interruption
+            }
+            if (!fetchersStopped) {
+                System.err.println("WARNING: Redo fetchers still running at shutdown");
+            }
+            if (!stopped) {
+                System.err.println("WARNING: Main loop still running at shutdown");
             }
 
+            // let the in-flight redo records complete until the deadline,
+            // but only if the main loop is no longer handling them
+            executor.shutdown();
             try {
-                handlePendingFutures(pendingFutures, true);
+                if (stopped) {
+                    handlePendingFutures(pendingFutures, remainingMillis(deadline));
+                }
             } catch (Exception e) {
                 e.printStackTrace();
             }
 
-            // IMPORTANT: make sure to destroy the environment
-            env.destroy();
+            // cancel anything still in flight past the deadline and keep it,
+            // along with those still waiting on their retry backoff or replay
+            // -- these belong to the main loop until it stops, so if it has
+            // not they are left to it and the replayed journal is kept
+            if (stopped) {
+                for (Map.Entry<Future<?>, Redo> entry : pendingFutures.entrySet()) {
+                    entry.getKey().cancel(true);
+                    unprocessed.add(entry.getValue());
+                }
+                pendingFutures.clear();
+                unprocessed.addAll(retryQueue.drain());
+                unprocessed.addAll(replayedRedos);
+                replayedRedos.clear();
+            }
+
+            // give the cancelled tasks a moment to notice before destroying
+            executor.shutdownNow();
+            boolean executorTerminated = false;
+            try {
+                executorTerminated = executor.awaitTermination(
+                        TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignore) {
+                // ignore the interruption
+            }
+            if (!executorTerminated) {
+                System.err.println("WARNING: Redo processing still running at shutdown");
+            }
+
+            // nothing else calls the engine only if the fetchers, the main
+            // loop and the redo threads have all stopped
+            boolean quiesced = stopped && fetchersStopped && executorTerminated;
+
+            // keep any redo records fetched but not yet submitted, once no
+            // fetcher can add more behind the drain
+            if (quiesced && redoFetcher != null) {
+                List<String> fetched = new ArrayList<>();
+                redoFetcher.drainTo(fetched);
+                for (String redoRecord : fetched) {
+                    unprocessed.add(new Redo(redoRecord));
+                }
+            }
+
+            // persist the unprocessed redo records to be replayed on restart,
+            // and only then delete the journal replayed on start if all of
+            // its redo records are now processed or journaled again
+            if (journalUnprocessed(journalDir, unprocessed) && quiesced) {
+                deleteReplayedSegments();
+            }
+
+            // commit the journal of the redo records to be retried, unless
+            // anything may still be appending to it (its mapped entries still
+            // reach the segment files when the process exits)
+            if (quiesced) {
+                retryJournal.close();
+            }
+
+            // stop sampling the redo backlog before destroying the environment
+            if (backlogMonitor != null) {
+                backlogMonitor.close();
+            }
+
+            // IMPORTANT: make sure to destroy the environment, unless any
+            // thread may still be calling the engine
+            if (quiesced) {
+                env.destroy();
+            } else {
+                System.err.println("WARNING: Not destroying the environment in use");
+            }
             outputRedoStatistics();
         }));
 
@@ -61,63 +193,81 @@ public class RedoContinuousViaFutures {
             // get the engine from the environment
             SzEngine engine = env.getEngine();
 
-            while (true) {
-                // loop through the example records and queue them up so long
-                // as we have more records and backlog is not too large
-                for (String redo = engine.getRedoRecord(); 
-                     redo != null; 
-                     redo = engine.getRedoRecord()) 
-                {    
-                    final String currentRedo = redo; // need final reference for lambda
-
-                    Future<?> future = executor.submit(() -> {
-                        // process the redo record
-                        return engine.processRedoRecord(currentRedo, SZ_NO_FLAGS);
-                    });
-
-                    // add the future to the pending future list
-                    pendingFutures.put(future, redo);
-
-                    // handle the pending futures as log as maximum backlog exceeded
-                    for (int loop = 0; 
-                         pendingFutures.size() >= MAXIMUM_BACKLOG; 
-                         loop++) 
-                    {
-                        // check if this is NOT our first iteration through the loop
-                        if (loop > 0) {
-                            // if we still have exceeded the backlog size after the first
-                            // loop iteration then pause briefly before trying again
-                            try {
-                                Thread.sleep(HANDLE_PAUSE_TIMEOUT);
-
-                            } catch (InterruptedException ignore) {
-                                // do nothing
-                            }
-                        }
+            // sample the redo backlog from a background thread rather than
+            // counting the redo records from within the processing loop
+            backlogMonitor = new RedoBacklogMonitor(engine, () -> redoneCount);
+            backlogMonitor.start();
 
-                        // handle any pending futures WITHOUT blocking to reduce the backlog
-                        handlePendingFutures(pendingFutures, false);
-                    }
+            // replay any redo records left unprocessed by the last shutdown
+            if (journalDir != null) {
+                replayJournal(journalDir);
+            }
+
+            // start the fetchers feeding the redo records to process
+            redoFetcher = new RedoFetcher(engine,
+                    FETCHER_COUNT,
+                    MAXIMUM_BACKLOG,
+                    RedoFetcher.DEFAULT_MINIMUM_IDLE_PAUSE,
+                    RedoFetcher.DEFAULT_MAXIMUM_IDLE_PAUSE);
+            redoFetcher.start();
+
+            boolean idleReported = false;
+            while (!shutdownRequested) {
+                // check if the fetchers stopped due to a failure
+                if (redoFetcher.getFailure() != null) {
+                    throw redoFetcher.getFailure();
                 }
 
-                // check if there are no redo records right now
-                // NOTE: we do NOT want to call countRedoRecords() in a loop that
-                // is processing redo records, we call it here AFTER we believe
-                // have processed all pending redos to confirm still zero
-                if (engine.countRedoRecords() == 0) {
-                    outputRedoStatistics();
-                    System.out.println();
-                    System.out.println(
-                            "No redo records to process.  Pausing for "
-                                    + REDO_PAUSE_DESCRIPTION + "....");
-                    System.out.println("Press CTRL-C to exit.");
-                    try {
-                        Thread.sleep(REDO_PAUSE_TIMEOUT);
-                    } catch (InterruptedException ignore) {
-                        // ignore the exception
+                // get the next redo record, resubmitting any whose retry
+                // backoff has elapsed first, waiting briefly for one
+                Redo redo = nextRedo();
+
+                // check if no redo records are available right now
+                if (redo == null) {
+                    // handle what we can WITHOUT blocking while we wait
+                    handlePendingFutures(pendingFutures, 0L);
+
+                    // report once when nothing is in flight and the fetchers
+                    // are backing off -- there is no need to check with
+                    // countRedoRecords() since the fetchers keep polling
+                    if (!idleReported && pendingFutures.size() == 0
+                            && retryQueue.isEmpty() && redoFetcher.isIdle()) {
+                        idleReported = true;
+                        outputRedoStatistics();
+                        System.out.println();
+                        System.out.println(
+                                "No redo records to process.  Waiting for more "
+                                        + "(checking at most every "
+                                        + REDO_PAUSE_DESCRIPTION + ")....");
+                        System.out.println("Press CTRL-C to exit.");
                     }
                     continue;
                 }
+                idleReported = false;
+
+                // add the future to the pending future list
+                pendingFutures.put(submitRedo(executor, engine, redo), redo);
+
+                // handle the pending futures as log as maximum backlog exceeded
+                for (int loop = 0; 
+                     pendingFutures.size() >= MAXIMUM_BACKLOG && !shutdownRequested; 
+                     loop++) 
+                {
+                    // check if this is NOT our first iteration through the loop
+                    if (loop > 0) {
+                        // if we still have exceeded the backlog size after the first
+                        // loop iteration then pause briefly before trying again
+                        try {
+                            Thread.sleep(HANDLE_PAUSE_TIMEOUT);
+
+                        } catch (InterruptedException ignore) {
+                            // do nothing
+                        }
+                    }
+
+                    // handle any pending futures WITHOUT blocking to reduce the backlog
+                    handlePendingFutures(pendingFutures, 0L);
+                }
             }
 
         } catch (Exception e) {
@@ -130,6 +280,9 @@ public class RedoContinuousViaFutures {
             throw new RuntimeException(e);
 
         } finally {
+            // let the shutdown hook know the pending futures are its own now
+            mainLoopStopped.countDown();
+
             // normally we would call env.destroy() here, but we have registered
             // a shutdown hook to do that since termination will typically occur
             // via CTRL-C being pressed, and the shutdown hook will still run if
@@ -138,22 +291,89 @@ public class RedoContinuousViaFutures {
 
     }
 
-    private static void handlePendingFutures(Map<Future<?>, String> pendingFutures,
-            boolean blocking)
+    /**
+     * Gets the next redo record to process, preferring one whose retry
+     * backoff has elapsed, then one replayed from the journal, over a new
+     * one from the fetchers, and waiting briefly for one to be fetched if
+     * there are none.
+     *
+     * @return The next {@link Redo} to process, or <code>null</code> if none.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private static Redo nextRedo() throws InterruptedException {
+        Redo retry = retryQueue.poll();
+        if (retry != null) {
+            return retry;
+        }
+        Redo replayed = replayedRedos.poll();
+        if (replayed != null) {
+            return replayed;
+        }
+        String redoRecord = redoFetcher.poll(HANDLE_PAUSE_TIMEOUT, TimeUnit.MILLISECONDS);
+        return (redoRecord == null) ? null : new Redo(redoRecord);
+    }
+
+    /**
+     * Submits a task to process the specified redo record to the specified
+     * {@link ExecutorService}.
+     *
+     * @param executor The {@link ExecutorService} to use.
+     * @param engine   The {@link SzEngine} to use.
+     * @param redo     The {@link Redo} to process.
+     *
+     * @return The {@link Future} for the task.
+     */
+    private static Future<?> submitRedo(ExecutorService executor, SzEngine engine, Redo redo) {
+        return executor.submit(() -> {
+            // process the redo record within the adaptive concurrency limit
+            return concurrencyLimit.call(
+                    () -> engine.processRedoRecord(redo.redoRecord, SZ_NO_FLAGS));
+        });
+    }
+
+    /**
+     * Handles the completed futures among the specified pending futures,
+     * waiting up to the specified number of milliseconds in total for those
+     * not yet done.  Any futures still not done are left pending.
+     *
+     * @param pendingFutures The {@link Map} of pending futures to their
+     *                       {@link Redo} instances.
+     * @param timeout        The maximum number of milliseconds to wait, or
+     *                       zero to handle only the completed futures.
+     *
+     * @throws Exception If a critical failure occurred.
+     */
+    private static void handlePendingFutures(Map<Future<?>, Redo> pendingFutures,
+            long timeout)
             throws Exception {
+        long deadline = System.nanoTime() + (timeout * ONE_MILLION);
+
         // check for completed futures
-        Iterator<Map.Entry<Future<?>, String>> iter = pendingFutures.entrySet().iterator();
+        Iterator<Map.Entry<Future<?>, Redo>> iter = pendingFutures.entrySet().iterator();
 
         // loop through the pending futures
         while (iter.hasNext()) {
             // get the next pending future
-            Map.Entry<Future<?>, String> entry = iter.next();
+            Map.Entry<Future<?>, Redo> entry = iter.next();
             Future<?> future = entry.getKey();
-            String redoRecord = entry.getValue();
-
-            // if not blocking and this one is not done then continue
-            if (!blocking && !future.isDone()) {
-                continue;
+            Redo redo = entry.getValue();
+            String redoRecord = redo.redoRecord;
+
+            // if this one is not done then wait for what is left of the
+            // timeout, leaving it pending if it does not complete in time
+            if (!future.isDone()) {
+                long remaining = deadline - System.nanoTime();
+                if (timeout <= 0L || remaining <= 0L) {
+                    continue;
+                }
+                try {
+                    future.get(remaining, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    continue;
+                } catch (ExecutionException | CancellationException e) {
+                    // handled below
+                }
             }
 
             // remove the pending future from the map
@@ -166,10 +386,11 @@ public class RedoContinuousViaFutures {
 
                     // if we get here then increment the success count
                     redoneCount++;
+                    replayedRedoDone(redo);
 
                 } catch (InterruptedException e) {
-                    // this could only happen if blocking is true, just
-                    // rethrow as retryable and log the interruption
+                    // this could only happen if waiting, just rethrow as
+                    // retryable and log the interruption
                     throw e;
 
                 } catch (ExecutionException e) {
@@ -184,13 +405,24 @@ public class RedoContinuousViaFutures {
                 }
 
             } catch (SzRetryableException | InterruptedException | CancellationException e) {
-                // handle thread interruption and cancellation as retries
+                // schedule a retryable failure to be retried in-process after
+                // a backoff unless it has exhausted its attempts
+                if ((e instanceof SzRetryableException)
+                        && retryQueue.offer(redo.nextAttempt(),
+                                redo.attempt,
+                                RetryQueue.estimateSize(redoRecord))) {
+                    continue;
+                }
+
+                // handle thread interruption, cancellation and exhausted retries
+                // by journaling the redo record to be retried
                 logFailedRedo(WARNING, e, redoRecord);
                 errorCount++; // increment the error count
                 retryCount++; // increment the retry count
 
                 // track the retry record so it can be retried later
-                trackRetryRecord(redoRecord);
+                retryJournal.retry(e, redo.attempt, 0L, redoRecord);
+                replayedRedoDone(redo);
 
             } catch (Exception e) {
                 // catch any other exception (incl. SzException) here
@@ -201,19 +433,139 @@ public class RedoContinuousViaFutures {
         }
     }
 
+    /**
+     * Replays the redo records journaled at the last shutdown so they are
+     * processed before any new ones.  The journal is kept until all of the
+     * replayed redo records are processed (or journaled again at shutdown),
+     * so a crash in the meantime replays them again rather than losing them.
+     *
+     * @param journalDir The directory of the journal.
+     *
+     * @throws IOException If the journal cannot be read.
+     */
+    private static void replayJournal(File journalDir) throws IOException {
+        List<File> segments = RetryJournal.listSegments(journalDir);
+        long count = RetryJournal.replay(journalDir, entry -> replayedRedos.add(
+                new Redo(entry.record(), Math.max(1, entry.attempt()), true)));
+        replayedCount = count;
+        replayOutstanding = count;
+        replayedSegments = segments;
+        if (count > 0L) {
+            System.out.println();
+            System.out.println("Replaying " + count + " unprocessed redo records from " + journalDir);
+        } else {
+            deleteReplayedSegments();
+        }
+    }
+
+    /**
+     * Notes that the specified redo record is done with (i.e.: processed or
+     * journaled to be retried) and deletes the replayed journal once all of
+     * the redo records replayed from it are done with.
+     *
+     * @param redo The {@link Redo} that is done with.
+     */
+    private static void replayedRedoDone(Redo redo) {
+        if (redo.replayed && --replayOutstanding == 0L) {
+            deleteReplayedSegments();
+        }
+    }
+
+    /**
+     * Deletes the segment files of the journal replayed on start, if any.
+     * Only the segment files that were replayed are deleted, not any that
+     * were journaled since.
+     */
+    private static void deleteReplayedSegments() {
+        for (File segment : replayedSegments) {
+            if (segment.exists() && !segment.delete()) {
+                System.err.println("Failed to delete replayed journal segment: " + segment);
+            }
+        }
+        replayedSegments = Collections.emptyList();
+    }
+
+    /**
+     * Appends the specified unprocessed redo records to the journal in the
+     * specified directory (or a new temporary directory if <code>null</code>)
+     * to be replayed on the next start, falling back to the retry journal if
+     * that journal cannot be written.
+     *
+     * @param journalDir  The directory of the journal, or <code>null</code>
+     *                    to create a new temporary directory.
+     * @param unprocessed The {@link List} of unprocessed {@link Redo} records.
+     *
+     * @return <code>true</code> if the unprocessed redo records were
+     *         journaled, otherwise <code>false</code>.
+     */
+    private static boolean journalUnprocessed(File journalDir, List<Redo> unprocessed) {
+        if (unprocessed.isEmpty()) {
+            return true;
+        }
+        try (RetryJournal journal = new RetryJournal((journalDir != null)
+                ? journalDir
+                : Files.createTempDirectory(JOURNAL_DIRECTORY_PREFIX).toFile())) {
+            for (Redo redo : unprocessed) {
+                journal.append(new Entry(
+                        Kind.RETRY, redo.redoRecord, null, SHUTDOWN_MESSAGE, redo.attempt, 0L));
+            }
+            journal.sync();
+            journaledCount = unprocessed.size();
+            journaledDir = journal.getDirectory();
+            return true;
+
+        } catch (Exception e) {
+            System.err.println("Failed to journal unprocessed redo records: " + e);
+            try {
+                for (Redo redo : unprocessed) {
+                    retryCount++; // increment the retry count
+                    retryJournal.retry(null, redo.attempt, 0L, redo.redoRecord);
+                }
+                return true;
+
+            } catch (IOException | InterruptedException retryFailure) {
+                retryFailure.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of milliseconds remaining until the specified deadline.
+     *
+     * @param deadline The deadline as a {@link System#nanoTime()} value.
+     *
+     * @return The number of milliseconds remaining, or zero if it has passed.
+     */
+    private static long remainingMillis(long deadline) {
+        return Math.max(0L, (deadline - System.nanoTime()) / ONE_MILLION);
+    }
+
     private static void outputRedoStatistics() {
         System.out.println();
         System.out.println("Redos successfully processed : " + redoneCount);
         System.out.println("Total failed records/redos   : " + errorCount);
+        System.out.println("Current concurrency limit    : " + concurrencyLimit.getLimit());
+        System.out.println("Redos retried in-process     : " + retryQueue.getScheduledCount());
+        if (replayedCount > 0L) {
+            System.out.println("Redos replayed from journal  : " + replayedCount);
+        }
+        if (journaledCount > 0) {
+            System.out.println("Redos journaled at shutdown  : " + journaledCount
+                    + " (replayed when restarted with " + journaledDir + ")");
+        }
+        if (redoFetcher != null) {
+            redoFetcher.printSummary(System.out);
+        }
 
-        // check on any retry records
-        if (retryWriter != null) {
-            retryWriter.flush();
-            retryWriter.close();
+        if (backlogMonitor != null) {
+            backlogMonitor.printSummary(System.out);
         }
+
+        // check on any retry records
         if (retryCount > 0) {
-            System.out.println(
-                    retryCount + " records/redos to be retried in " + retryFile);
+            System.out.println(retryCount + " records/redos to be retried in "
+                    + retryJournal.getDirectory());
         }
         System.out.flush();
     }
@@ -235,32 +587,11 @@ public class RedoContinuousViaFutures {
         System.err.flush();
     }
 
-    /**
-     * Tracks the specified JSON record definition to be retried in a
-     * retry file.
-     * 
-     * @param recordJson The JSON text defining the record to be retried.
-     * 
-     * @throws IOException If a failure occurs in writing the record to the
-     *                     retry file.
-     */
-    private static void trackRetryRecord(String recordJson)
-            throws IOException {
-        // track the retry record so it can be retried later
-        if (retryFile == null) {
-            retryFile = File.createTempFile(RETRY_PREFIX, RETRY_SUFFIX);
-            retryWriter = new PrintWriter(
-                    new OutputStreamWriter(new FileOutputStream(retryFile), UTF_8));
-        }
-        retryWriter.println(recordJson);
-    }
-
-    private static final String UTF_8 = "UTF-8";
+    private static final int THREAD_COUNT = 8;
 
-    private static final String RETRY_PREFIX = "retry-";
-    private static final String RETRY_SUFFIX = ".jsonl";
+    private static final int MINIMUM_THREAD_COUNT = 1;
 
-    private static final int THREAD_COUNT = 8;
+    private static final int MAXIMUM_THREAD_COUNT = 32;
 
     private static final int BACKLOG_FACTOR = 10;
 
@@ -268,16 +599,48 @@ public class RedoContinuousViaFutures {
 
     private static final long HANDLE_PAUSE_TIMEOUT = 100L;
 
-    private static final long REDO_PAUSE_TIMEOUT = 30000L;
+    private static final int FETCHER_COUNT = 4;
+
+    private static final String REDO_PAUSE_DESCRIPTION = "5 seconds";
+
+    private static final long SHUTDOWN_TIMEOUT = 20000L;
+
+    private static final long TERMINATION_TIMEOUT = 5000L;
 
-    private static final String REDO_PAUSE_DESCRIPTION = "30 seconds";
+    private static final long ONE_MILLION = 1000000L;
+
+    private static final String JOURNAL_DIRECTORY_PREFIX = "redo-shutdown-journal-";
+
+    private static final String SHUTDOWN_MESSAGE = "Unprocessed at shutdown";
 
     private static final String WARNING = "WARNING";
     private static final String CRITICAL = "CRITICAL";
 
+    public record Redo(String redoRecord, int attempt, boolean replayed) {
+        public Redo(String redoRecord) {
+            this(redoRecord, 1, false);
+        }
+
+        public Redo nextAttempt() {
+            return new Redo(this.redoRecord, this.attempt + 1, this.replayed);
+        }
+    }
+
     private static int errorCount = 0;
-    private static int redoneCount = 0;
+    private static volatile int redoneCount = 0;
     private static int retryCount = 0;
-    private static File retryFile = null;
-    private static PrintWriter retryWriter = null;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+    private static RetryQueue<Redo> retryQueue = new RetryQueue<>();
+    private static volatile RedoFetcher redoFetcher = null;
+    private static volatile RedoBacklogMonitor backlogMonitor = null;
+    private static volatile boolean shutdownRequested = false;
+    private static CountDownLatch mainLoopStopped = new CountDownLatch(1);
+    private static Deque<Redo> replayedRedos = new ArrayDeque<>();
+    private static long replayedCount = 0L;
+    private static long replayOutstanding = 0L;
+    private static List<File> replayedSegments = Collections.emptyList();
+    private static int journaledCount = 0;
+    private static File journaledDir = null;
+    private static AdaptiveConcurrencyLimit concurrencyLimit = new AdaptiveConcurrencyLimit(
+            THREAD_COUNT, MINIMUM_THREAD_COUNT, MAXIMUM_THREAD_COUNT);
 }
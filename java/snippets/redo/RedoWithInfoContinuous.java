@@ -1,14 +1,18 @@
 package redo;
 
 import java.io.*;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonNumber;
 import javax.json.JsonObject;
 
+import com.senzing.runner.EntityRefreshCoalescer;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.LongHashSet;
+import com.senzing.runner.RedoBacklogMonitor;
 import com.senzing.sdk.*;
 import com.senzing.sdk.core.SzCoreEnvironment;
 
@@ -18,6 +22,11 @@ import static com.senzing.sdk.SzFlag.*;
  * Provides an example of a process that continuously processes
  * the pending redo records in the Senzing repository and processing
  * the INFO messages returned from processing those redo records.
+ * The affected entities are gathered by an {@link EntityRefreshCoalescer}
+ * so each distinct entity is retrieved once per window rather than once
+ * for every INFO message that affects it.  At shutdown the main loop is
+ * stopped before the entities still waiting in the current window are
+ * refreshed.
  */
 public class RedoWithInfoContinuous {
     public static void main(String[] args) {
@@ -40,8 +49,43 @@ public class RedoWithInfoContinuous {
 
         // make sure we cleanup if exiting by CTRL-C or due to an exception
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            // IMPORTANT: make sure to destroy the environment
-            env.destroy();
+            // stop the main loop so nothing else refreshes the entities
+            shutdownRequested = true;
+            shutdownSignal.countDown();
+            boolean stopped = false;
+            try {
+                stopped = mainLoopStopped.await(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignore) {
+                // ignore the interruption
+            }
+
+            // refresh any entities still waiting in the current window, but
+            // only if the main loop is no longer adding to it
+            if (!stopped) {
+                System.err.println("WARNING: Main loop still running at shutdown");
+            } else if (coalescer != null) {
+                coalescer.flush();
+            }
+
+            // commit the journal of the redo records to be retried, unless the
+            // main loop may still be appending to it (its mapped entries still
+            // reach the segment files when the process exits)
+            if (stopped) {
+                retryJournal.close();
+            }
+
+            // stop sampling the redo backlog before destroying the environment
+            if (backlogMonitor != null) {
+                backlogMonitor.close();
+            }
+
+            // IMPORTANT: make sure to destroy the environment, unless the
+            // main loop may still be calling the engine
+            if (stopped) {
+                env.destroy();
+            } else {
+                System.err.println("WARNING: Not destroying the environment in use");
+            }
             outputRedoStatistics();
         }));
 
@@ -49,12 +93,24 @@ public class RedoWithInfoContinuous {
             // get the engine from the environment
             SzEngine engine = env.getEngine();
 
-            while (true) {
+            // sample the redo backlog from a background thread rather than
+            // counting the redo records from within the processing loop
+            backlogMonitor = new RedoBacklogMonitor(engine, () -> redoneCount);
+            backlogMonitor.start();
+
+            // coalesce the affected entities before retrieving them
+            coalescer = new EntityRefreshCoalescer(
+                    COALESCE_SIZE, COALESCE_WINDOW, entityId -> refreshEntity(engine, entityId));
+
+            while (!shutdownRequested) {
                 // get the next redo record
                 String redo = engine.getRedoRecord();
 
                 // check if no redo records are available
                 if (redo == null) {
+                    // refresh the entities in the current window before pausing
+                    coalescer.flush();
+
                     outputRedoStatistics();
                     System.out.println();
                     System.out.println(
@@ -62,7 +118,8 @@ public class RedoWithInfoContinuous {
                                     + REDO_PAUSE_DESCRIPTION + "....");
                     System.out.println("Press CTRL-C to exit.");
                     try {
-                        Thread.sleep(REDO_PAUSE_TIMEOUT);
+                        // pause, waking early if we are shutting down
+                        shutdownSignal.await(REDO_PAUSE_TIMEOUT, TimeUnit.MILLISECONDS);
                     } catch (InterruptedException ignore) {
                         // ignore the exception
                     }
@@ -77,13 +134,13 @@ public class RedoWithInfoContinuous {
                     redoneCount++;
 
                     // process the info
-                    processInfo(engine, info);
+                    processInfo(info);
 
                 } catch (SzRetryableException e) {
                     logFailedRedo(WARNING, e, redo);
                     errorCount++;
                     retryCount++;
-                    trackRetryRecord(redo);
+                    retryJournal.retry(e, redo);
 
                 } catch (Exception e) {
                     logFailedRedo(CRITICAL, e, redo);
@@ -102,6 +159,9 @@ public class RedoWithInfoContinuous {
             throw new RuntimeException(e);
 
         } finally {
+            // let the shutdown hook know the main loop has stopped
+            mainLoopStopped.countDown();
+
             // normally we would call env.destroy() here, but we have registered
             // a shutdown hook to do that since termination will typically occur
             // via CTRL-C being pressed, and the shutdown hook will still run if
@@ -115,15 +175,20 @@ public class RedoWithInfoContinuous {
         System.out.println("Redos successfully processed : " + redoneCount);
         System.out.println("Total entities affected      : " + entityIdSet.size());
         System.out.println("Total failed records/redos   : " + errorCount);
+        if (coalescer != null) {
+            System.out.println("Entity retrievals requested  : " + coalescer.getRequestedCount());
+            System.out.println("Entity retrievals performed  : " + coalescer.getRefreshedCount()
+                    + String.format(" (%.1f%% saved)", 100.0 * coalescer.getSavedRatio()));
+        }
 
-        // check on any retry records
-        if (retryWriter != null) {
-            retryWriter.flush();
-            retryWriter.close();
+        if (backlogMonitor != null) {
+            backlogMonitor.printSummary(System.out);
         }
+
+        // check on any retry records
         if (retryCount > 0) {
-            System.out.println(
-                    retryCount + " records/redos to be retried in " + retryFile);
+            System.out.println(retryCount + " records/redos to be retried in "
+                    + retryJournal.getDirectory());
         }
         System.out.flush();
     }
@@ -145,37 +210,17 @@ public class RedoWithInfoContinuous {
         System.err.flush();
     }
 
-    /**
-     * Tracks the specified JSON record definition to be retried in a
-     * retry file.
-     * 
-     * @param recordJson The JSON text defining the record to be retried.
-     * 
-     * @throws IOException If a failure occurs in writing the record to the
-     *                     retry file.
-     */
-    private static void trackRetryRecord(String recordJson)
-            throws IOException {
-        // track the retry record so it can be retried later
-        if (retryFile == null) {
-            retryFile = File.createTempFile(RETRY_PREFIX, RETRY_SUFFIX);
-            retryWriter = new PrintWriter(
-                    new OutputStreamWriter(new FileOutputStream(retryFile), UTF_8));
-        }
-        retryWriter.println(recordJson);
-    }
-
     /**
      * Example method for parsing and handling the INFO message (formatted
      * as JSON). This example implementation simply tracks all entity ID's
      * that appear as <code>"AFFECTED_ENTITIES"</code> to count the number
      * of entities created for the records -- essentially a contrived
-     * data mart.
+     * data mart.  The entities are handed to the {@link
+     * EntityRefreshCoalescer} rather than retrieved right away.
      * 
-     * @param engine The {@link SzEngine} to use.
-     * @param info   The info message.
+     * @param info The info message.
      */
-    private static void processInfo(SzEngine engine, String info) {
+    private static void processInfo(String info) {
         JsonObject jsonObject = Json.createReader(new StringReader(info)).readObject();
         if (!jsonObject.containsKey(AFFECTED_ENTITIES)) {
             return;
@@ -183,32 +228,42 @@ public class RedoWithInfoContinuous {
         JsonArray affectedArr = jsonObject.getJsonArray(AFFECTED_ENTITIES);
         for (JsonObject affected : affectedArr.getValuesAs(JsonObject.class)) {
             JsonNumber number = affected.getJsonNumber(ENTITY_ID);
-            long entityId = number.longValue();
-
-            try {
-                engine.getEntity(entityId, null);
-                entityIdSet.add(entityId);
-            } catch (SzNotFoundException e) {
-                entityIdSet.remove(entityId);
-            } catch (SzException e) {
-                // simply log the exception, do not rethrow
-                System.err.println();
-                System.err.println("**** FAILED TO RETRIEVE ENTITY: " + entityId);
-                System.err.println(e.toString());
-                System.err.flush();
-            }
+            coalescer.add(number.longValue());
         }
     }
 
-    private static final String UTF_8 = "UTF-8";
-
-    private static final String RETRY_PREFIX = "retry-";
-    private static final String RETRY_SUFFIX = ".jsonl";
+    /**
+     * Retrieves the entity with the specified entity ID and tracks whether
+     * it still exists.
+     * 
+     * @param engine   The {@link SzEngine} to use.
+     * @param entityId The entity ID of the entity to retrieve.
+     */
+    private static void refreshEntity(SzEngine engine, long entityId) {
+        try {
+            engine.getEntity(entityId, null);
+            entityIdSet.add(entityId);
+        } catch (SzNotFoundException e) {
+            entityIdSet.remove(entityId);
+        } catch (SzException e) {
+            // simply log the exception, do not rethrow
+            System.err.println();
+            System.err.println("**** FAILED TO RETRIEVE ENTITY: " + entityId);
+            System.err.println(e.toString());
+            System.err.flush();
+        }
+    }
 
     private static final long REDO_PAUSE_TIMEOUT = 30000L;
 
     private static final String REDO_PAUSE_DESCRIPTION = "30 seconds";
 
+    private static final long SHUTDOWN_TIMEOUT = 20000L;
+
+    private static final int COALESCE_SIZE = 1000;
+
+    private static final long COALESCE_WINDOW = 1000L;
+
     private static final String AFFECTED_ENTITIES = "AFFECTED_ENTITIES";
     private static final String ENTITY_ID = "ENTITY_ID";
 
@@ -216,9 +271,13 @@ public class RedoWithInfoContinuous {
     private static final String CRITICAL = "CRITICAL";
 
     private static int errorCount = 0;
-    private static int redoneCount = 0;
+    private static volatile int redoneCount = 0;
     private static int retryCount = 0;
-    private static File retryFile = null;
-    private static PrintWriter retryWriter = null;
-    private static Set<Long> entityIdSet = new HashSet<>();
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+    private static LongHashSet entityIdSet = new LongHashSet();
+    private static volatile EntityRefreshCoalescer coalescer = null;
+    private static volatile RedoBacklogMonitor backlogMonitor = null;
+    private static volatile boolean shutdownRequested = false;
+    private static CountDownLatch shutdownSignal = new CountDownLatch(1);
+    private static CountDownLatch mainLoopStopped = new CountDownLatch(1);
 }
@@ -0,0 +1,528 @@
+package redo;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+
+import com.senzing.runner.EntityRefreshCoalescer;
+import com.senzing.runner.InfoProcessingStage;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.LongHashSet;
+import com.senzing.runner.RedoBacklogMonitor;
+import com.senzing.sdk.*;
+import com.senzing.sdk.core.SzCoreEnvironment;
+
+import static com.senzing.sdk.SzFlag.*;
+
+/**
+ * Provides an example of a process that continuously processes the pending
+ * redo records in the Senzing repository and the INFO messages returned
+ * from processing those redo records, using futures.
+ *
+ * <p>
+ * Unlike {@link RedoWithInfoContinuous}, which processes each redo record
+ * and then its INFO one at a time, the redo records are processed by a
+ * bounded pool of threads and their INFO messages are handed to an {@link
+ * InfoProcessingStage} with its own threads behind a bounded queue, so
+ * parsing the INFO and retrieving the affected entities overlaps with the
+ * processing of later redo records.  The number of redo threads may be
+ * given as the first command-line argument (the INFO stage gets half as
+ * many), and the set of affected entity IDs is shared by the INFO threads
+ * so access to it is synchronized.  Each window of affected entities is
+ * refreshed serially by the INFO thread that closes it (while the other
+ * INFO threads carry on), so the entity retrievals are at most as
+ * concurrent as the INFO threads.
+ */
+public class RedoWithInfoContinuousViaFutures {
+    public static void main(String[] args) {
+        // get the senzing repository settings
+        String settings = System.getenv("SENZING_ENGINE_CONFIGURATION_JSON");
+        if (settings == null) {
+            System.err.println("Unable to get settings.");
+            throw new IllegalArgumentException("Unable to get settings");
+        }
+
+        // determine the number of threads for each pool
+        int threadCount = (args.length > 0) ? Integer.parseInt(args[0]) : THREAD_COUNT;
+        int infoThreadCount = Math.max(1, threadCount / 2);
+        int maximumBacklog = threadCount * BACKLOG_FACTOR;
+
+        // create a descriptive instance name (can be anything)
+        String instanceName = RedoWithInfoContinuousViaFutures.class.getSimpleName();
+
+        // initialize the Senzing environment
+        SzEnvironment env = SzCoreEnvironment.newBuilder()
+                .settings(settings)
+                .instanceName(instanceName)
+                .verboseLogging(false)
+                .build();
+
+        // create the thread pool and executor service
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        // keep track of pending futures and don't backlog too many for memory's sake
+        Map<Future<String>, String> pendingFutures = new IdentityHashMap<>();
+
+        // make sure we cleanup if exiting by CTRL-C or due to an exception
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            long deadline = System.nanoTime() + (SHUTDOWN_TIMEOUT * ONE_MILLION);
+
+            // stop the main loop so nothing else touches the pending futures
+            shutdownRequested = true;
+            shutdownSignal.countDown();
+            boolean stopped = false;
+            try {
+                stopped = mainLoopStopped.await(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ignore) {
+                // ignore the interruption
+            }
+
+            // leave the pending futures, the info and the environment to the
+            // main loop if it is still running
+            if (!stopped) {
+                System.err.println("WARNING: Main loop still running at shutdown");
+                executor.shutdownNow();
+                if (backlogMonitor != null) {
+                    backlogMonitor.close();
+                }
+                outputRedoStatistics();
+                return;
+            }
+
+            try {
+                // let the in-flight redo records complete until the deadline
+                executor.shutdown();
+                handlePendingFutures(pendingFutures, remainingMillis(deadline));
+
+                // retry any redo records still in flight past the deadline
+                for (Map.Entry<Future<String>, String> entry : pendingFutures.entrySet()) {
+                    entry.getKey().cancel(true);
+                    retryCount++; // increment the retry count
+                    retryJournal.retry(null, entry.getValue());
+                }
+                pendingFutures.clear();
+                executor.shutdownNow();
+                if (!executor.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    System.err.println("WARNING: Redo processing still running at shutdown");
+                }
+
+                // process the queued info and then the entities still waiting
+                // in the current window
+                if (infoStage != null) {
+                    infoStage.close();
+                }
+                if (coalescer != null) {
+                    coalescer.flush();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            // commit the journal of the redo records to be retried
+            retryJournal.close();
+
+            // stop sampling the redo backlog before destroying the environment
+            if (backlogMonitor != null) {
+                backlogMonitor.close();
+            }
+
+            // IMPORTANT: make sure to destroy the environment
+            env.destroy();
+            outputRedoStatistics();
+        }));
+
+        try {
+            // get the engine from the environment
+            SzEngine engine = env.getEngine();
+
+            // sample the redo backlog from a background thread rather than
+            // counting the redo records from within the processing loop
+            backlogMonitor = new RedoBacklogMonitor(engine, () -> redoneCount);
+            backlogMonitor.start();
+
+            // coalesce the affected entities before retrieving them
+            coalescer = new EntityRefreshCoalescer(
+                    COALESCE_SIZE, COALESCE_WINDOW, entityId -> refreshEntity(engine, entityId));
+
+            // process the info on its own threads, separately from the futures
+            infoStage = new InfoProcessingStage(
+                    "info", infoThreadCount, maximumBacklog, info -> processInfo(info));
+
+            // report the info queue depth and backpressure while running
+            infoStage.startReporting(INFO_REPORT_INTERVAL, System.out);
+
+            while (!shutdownRequested) {
+                // get the next redo record
+                String redo = engine.getRedoRecord();
+
+                // check if no redo records are available
+                if (redo == null) {
+                    // handle what we can WITHOUT blocking
+                    handlePendingFutures(pendingFutures, 0L);
+
+                    // wait briefly for the in-flight redo records to finish
+                    // since processing them may produce more redo records
+                    if (pendingFutures.size() > 0) {
+                        try {
+                            Thread.sleep(HANDLE_PAUSE_TIMEOUT);
+                        } catch (InterruptedException ignore) {
+                            // ignore the exception
+                        }
+                        continue;
+                    }
+
+                    // refresh the entities in the current window before pausing
+                    coalescer.flush();
+
+                    outputRedoStatistics();
+                    System.out.println();
+                    System.out.println(
+                            "No redo records to process.  Pausing for "
+                                    + REDO_PAUSE_DESCRIPTION + "....");
+                    System.out.println("Press CTRL-C to exit.");
+                    try {
+                        // pause, waking early if we are shutting down
+                        shutdownSignal.await(REDO_PAUSE_TIMEOUT, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException ignore) {
+                        // ignore the exception
+                    }
+                    continue;
+                }
+
+                Future<String> future = executor.submit(() -> {
+                    // process the redo record with info flags
+                    return engine.processRedoRecord(redo, SZ_WITH_INFO_FLAGS);
+                });
+
+                // add the future to the pending future list
+                pendingFutures.put(future, redo);
+
+                // handle the pending futures as log as maximum backlog exceeded
+                for (int loop = 0;
+                     pendingFutures.size() >= maximumBacklog && !shutdownRequested;
+                     loop++)
+                {
+                    // check if this is NOT our first iteration through the loop
+                    if (loop > 0) {
+                        // if we still have exceeded the backlog size after the first
+                        // loop iteration then pause briefly before trying again
+                        try {
+                            Thread.sleep(HANDLE_PAUSE_TIMEOUT);
+
+                        } catch (InterruptedException ignore) {
+                            // do nothing
+                        }
+                    }
+
+                    // handle any pending futures WITHOUT blocking to reduce the backlog
+                    handlePendingFutures(pendingFutures, 0L);
+                }
+            }
+
+        } catch (Exception e) {
+            System.err.println();
+            System.err.println("*** Terminated due to critical error ***");
+            System.err.flush();
+            if (e instanceof RuntimeException) {
+                throw ((RuntimeException) e);
+            }
+            throw new RuntimeException(e);
+
+        } finally {
+            // let the shutdown hook know the pending futures are its own now
+            mainLoopStopped.countDown();
+
+            // normally we would call env.destroy() here, but we have registered
+            // a shutdown hook to do that since termination will typically occur
+            // via CTRL-C being pressed, and the shutdown hook will still run if
+            // we get an exception
+        }
+
+    }
+
+    /**
+     * Handles the completed futures among the specified pending futures,
+     * handing their INFO messages to the {@link InfoProcessingStage} and
+     * waiting up to the specified number of milliseconds in total for those
+     * not yet done.  Any futures still not done are left pending.
+     *
+     * @param pendingFutures The {@link Map} of pending futures to their redo
+     *                       records.
+     * @param timeout        The maximum number of milliseconds to wait, or
+     *                       zero to handle only the completed futures.
+     *
+     * @throws Exception If a critical failure occurred.
+     */
+    private static void handlePendingFutures(Map<Future<String>, String> pendingFutures,
+            long timeout)
+            throws Exception {
+        long deadline = System.nanoTime() + (timeout * ONE_MILLION);
+
+        // check for completed futures
+        Iterator<Map.Entry<Future<String>, String>> iter = pendingFutures.entrySet().iterator();
+
+        // loop through the pending futures
+        while (iter.hasNext()) {
+            // get the next pending future
+            Map.Entry<Future<String>, String> entry = iter.next();
+            Future<String> future = entry.getKey();
+            String redo = entry.getValue();
+
+            // if this one is not done then wait for what is left of the
+            // timeout, leaving it pending if it does not complete in time
+            if (!future.isDone()) {
+                long remaining = deadline - System.nanoTime();
+                if (timeout <= 0L || remaining <= 0L) {
+                    continue;
+                }
+                try {
+                    future.get(remaining, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    continue;
+                } catch (ExecutionException | CancellationException e) {
+                    // handled below
+                }
+            }
+
+            // remove the pending future from the map
+            iter.remove();
+
+            String info = null;
+            try {
+                try {
+                    // get the value to see if there was an exception
+                    info = future.get();
+
+                    // if we get here then increment the success count
+                    redoneCount++;
+
+                } catch (InterruptedException e) {
+                    // this could only happen if waiting, just rethrow as
+                    // retryable and log the interruption
+                    throw e;
+
+                } catch (ExecutionException e) {
+                    // if execution failed with an exception then rethrow
+                    Throwable cause = e.getCause();
+                    if ((cause == null) || !(cause instanceof Exception)) {
+                        // rethrow the execution exception
+                        throw e;
+                    }
+                    // cast to an Exception and rethrow
+                    throw ((Exception) cause);
+                }
+
+            } catch (SzRetryableException | InterruptedException | CancellationException e) {
+                // handle thread interruption and cancellation as retries
+                logFailedRedo(WARNING, e, redo);
+                errorCount++; // increment the error count
+                retryCount++; // increment the retry count
+
+                // track the retry record so it can be retried later
+                retryJournal.retry(e, redo);
+
+            } catch (Exception e) {
+                // catch any other exception (incl. SzException) here
+                logFailedRedo(CRITICAL, e, redo);
+                errorCount++;
+                throw e; // rethrow since exception is critical
+            }
+
+            // queue the info to be processed on the info threads -- this is
+            // outside the handling above since the redo record is already
+            // processed and must not be retried if we are interrupted here
+            if (info != null) {
+                try {
+                    infoStage.submit(info);
+                } catch (InterruptedException e) {
+                    // process the info on this thread rather than dropping it
+                    Thread.currentThread().interrupt();
+                    processInfo(info);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of milliseconds remaining until the specified deadline.
+     *
+     * @param deadline The deadline as a {@link System#nanoTime()} value.
+     *
+     * @return The number of milliseconds remaining, or zero if it has passed.
+     */
+    private static long remainingMillis(long deadline) {
+        return Math.max(0L, (deadline - System.nanoTime()) / ONE_MILLION);
+    }
+
+    private static void outputRedoStatistics() {
+        System.out.println();
+        System.out.println("Redos successfully processed : " + redoneCount);
+        synchronized (entityIdSet) {
+            System.out.println("Total entities affected      : " + entityIdSet.size());
+        }
+        System.out.println("Total failed records/redos   : " + errorCount);
+        if (coalescer != null) {
+            System.out.println("Entity retrievals requested  : " + coalescer.getRequestedCount());
+            System.out.println("Entity retrievals performed  : " + coalescer.getRefreshedCount()
+                    + String.format(" (%.1f%% saved)", 100.0 * coalescer.getSavedRatio()));
+        }
+
+        if (infoStage != null) {
+            infoStage.printSummary(System.out);
+        }
+        if (backlogMonitor != null) {
+            backlogMonitor.printSummary(System.out);
+        }
+
+        // check on any retry records
+        if (retryCount > 0) {
+            System.out.println(retryCount + " records/redos to be retried in "
+                    + retryJournal.getDirectory());
+        }
+        System.out.flush();
+    }
+
+    /**
+     * Example method for logging failed records.
+     *
+     * @param errorType  The error type description.
+     * @param exception  The exception itself.
+     * @param redoRecord The JSON text for the redo record.
+     */
+    private static void logFailedRedo(String errorType,
+            Exception exception,
+            String redoRecord) {
+        System.err.println();
+        System.err.println("** " + errorType + " ** FAILED TO PROCESS REDO: ");
+        System.err.println(redoRecord);
+        System.err.println(exception);
+        System.err.flush();
+    }
+
+    /**
+     * Example method for parsing and handling the INFO message (formatted
+     * as JSON). This example implementation simply tracks all entity ID's
+     * that appear as <code>"AFFECTED_ENTITIES"</code> to count the number
+     * of entities created for the records -- essentially a contrived
+     * data mart.  This is called from the threads of the {@link
+     * InfoProcessingStage} and the entities are handed to the {@link
+     * EntityRefreshCoalescer} rather than retrieved right away.
+     *
+     * @param info The info message.
+     */
+    private static void processInfo(String info) {
+        JsonObject jsonObject = Json.createReader(new StringReader(info)).readObject();
+        if (!jsonObject.containsKey(AFFECTED_ENTITIES)) {
+            return;
+        }
+        JsonArray affectedArr = jsonObject.getJsonArray(AFFECTED_ENTITIES);
+        for (JsonObject affected : affectedArr.getValuesAs(JsonObject.class)) {
+            JsonNumber number = affected.getJsonNumber(ENTITY_ID);
+            coalescer.add(number.longValue());
+        }
+    }
+
+    /**
+     * Refreshes the entity with the specified entity ID while holding its
+     * lock.  This is called from the INFO threads, and windows closed by
+     * different INFO threads may overlap, so the lock is held across the
+     * retrieval and the update so an older result is never applied after a
+     * newer one.
+     *
+     * @param engine   The {@link SzEngine} to use.
+     * @param entityId The entity ID of the entity to refresh.
+     */
+    private static void refreshEntity(SzEngine engine, long entityId) {
+        synchronized (ENTITY_LOCKS[(int) Math.floorMod(entityId, (long) ENTITY_LOCKS.length)]) {
+            updateEntity(engine, entityId);
+        }
+    }
+
+    /**
+     * Retrieves the entity with the specified entity ID and tracks whether
+     * it still exists.  The shared {@link LongHashSet} of entity IDs is only
+     * updated while synchronized on it.
+     *
+     * @param engine   The {@link SzEngine} to use.
+     * @param entityId The entity ID of the entity to retrieve.
+     */
+    private static void updateEntity(SzEngine engine, long entityId) {
+        boolean found;
+        try {
+            engine.getEntity(entityId, null);
+            found = true;
+        } catch (SzNotFoundException e) {
+            found = false;
+        } catch (SzException e) {
+            // simply log the exception, do not rethrow
+            synchronized (System.err) {
+                System.err.println();
+                System.err.println("**** FAILED TO RETRIEVE ENTITY: " + entityId);
+                System.err.println(e.toString());
+                System.err.flush();
+            }
+            return;
+        }
+        synchronized (entityIdSet) {
+            if (found) {
+                entityIdSet.add(entityId);
+            } else {
+                entityIdSet.remove(entityId);
+            }
+        }
+    }
+
+    private static final int THREAD_COUNT = 8;
+
+    private static final int BACKLOG_FACTOR = 10;
+
+    private static final long HANDLE_PAUSE_TIMEOUT = 100L;
+
+    private static final long REDO_PAUSE_TIMEOUT = 30000L;
+
+    private static final String REDO_PAUSE_DESCRIPTION = "30 seconds";
+
+    private static final long SHUTDOWN_TIMEOUT = 20000L;
+
+    private static final long TERMINATION_TIMEOUT = 5000L;
+
+    private static final long ONE_MILLION = 1000000L;
+
+    private static final long INFO_REPORT_INTERVAL = 10000L;
+
+    private static final int COALESCE_SIZE = 1000;
+
+    private static final long COALESCE_WINDOW = 1000L;
+
+    private static final int ENTITY_LOCK_COUNT = 64;
+
+    private static final Object[] ENTITY_LOCKS = new Object[ENTITY_LOCK_COUNT];
+    static {
+        for (int index = 0; index < ENTITY_LOCK_COUNT; index++) {
+            ENTITY_LOCKS[index] = new Object();
+        }
+    }
+
+    private static final String AFFECTED_ENTITIES = "AFFECTED_ENTITIES";
+    private static final String ENTITY_ID = "ENTITY_ID";
+
+    private static final String WARNING = "WARNING";
+    private static final String CRITICAL = "CRITICAL";
+
+    private static int errorCount = 0;
+    private static volatile int redoneCount = 0;
+    private static int retryCount = 0;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+    private static LongHashSet entityIdSet = new LongHashSet();
+    private static volatile EntityRefreshCoalescer coalescer = null;
+    private static volatile InfoProcessingStage infoStage = null;
+    private static volatile RedoBacklogMonitor backlogMonitor = null;
+    private static volatile boolean shutdownRequested = false;
+    private static CountDownLatch shutdownSignal = new CountDownLatch(1);
+    private static CountDownLatch mainLoopStopped = new CountDownLatch(1);
+}
@@ -4,6 +4,9 @@ import java.io.*;
 import javax.json.*;
 import java.util.*;
 import java.util.concurrent.*;
+import com.senzing.runner.LazyRetryJournal;
+import com.senzing.runner.LongIntHashMap;
+import com.senzing.runner.ProgressReporter;
 import com.senzing.sdk.*;
 import com.senzing.sdk.core.SzCoreEnvironment;
 
@@ -40,12 +43,15 @@ public class SearchViaFutures {
         // keep track of pending futures and don't backlog too many for memory's sake
         Map<Future<String>, Criteria> pendingFutures = new IdentityHashMap<>();
 
-        try (FileInputStream fis = new FileInputStream(filePath);
+        try (InputStream fis = progress.track(new FileInputStream(filePath));
                 InputStreamReader isr = new InputStreamReader(fis, UTF_8);
                 BufferedReader br = new BufferedReader(isr)) {
             // get the engine from the environment
             SzEngine engine = env.getEngine();
 
+            // report the progress through the file in the background
+            progress.start(new File(filePath).length(), 0L);
+
             int lineNumber = 0;
             boolean eof = false;
 
@@ -88,6 +94,7 @@ public class SearchViaFutures {
 
                         // add the future to the pending future list
                         pendingFutures.put(future, criteria);
+                        progress.submitted();
 
                     } catch (JsonException e) {
                         logFailedSearch(ERROR, e, lineNumber, line);
@@ -134,6 +141,9 @@ public class SearchViaFutures {
                 executor.shutdown();
             }
 
+            // stop reporting progress
+            progress.close();
+
             // IMPORTANT: make sure to destroy the environment
             env.destroy();
 
@@ -142,16 +152,16 @@ public class SearchViaFutures {
                     "Searches successfully completed   : " + successCount);
             System.out.println(
                     "Total entities found via searches : " + foundEntities.size());
+            System.out.println(
+                    "Entities found more than once     : " + countRepeatedEntities());
             System.out.println(
                     "Searches failed with errors       : " + errorCount);
 
             // check on any retry records
-            if (retryWriter != null) {
-                retryWriter.flush();
-                retryWriter.close();
-            }
+            retryJournal.close();
             if (retryCount > 0) {
-                System.out.println(retryCount + " searches to be retried in " + retryFile);
+                System.out.println(retryCount + " searches to be retried in "
+                        + retryJournal.getDirectory());
             }
             System.out.flush();
 
@@ -187,6 +197,7 @@ public class SearchViaFutures {
 
                     // if we get here then increment the success count
                     successCount++;
+                    progress.completed();
 
                     // parse the results
                     JsonObject jsonObj = Json.createReader(
@@ -197,7 +208,7 @@ public class SearchViaFutures {
                         obj = obj.getJsonObject("ENTITY");
                         obj = obj.getJsonObject("RESOLVED_ENTITY");
                         long entityId = obj.getJsonNumber("ENTITY_ID").longValue();
-                        foundEntities.add(entityId);
+                        foundEntities.increment(entityId);
                     }
 
                 } catch (InterruptedException e) {
@@ -219,30 +230,46 @@ public class SearchViaFutures {
             } catch (SzBadInputException e) {
                 logFailedSearch(ERROR, e, criteria.lineNumber, criteria.line);
                 errorCount++; // increment the error count
+                progress.completed();
+                progress.failed();
 
             } catch (SzRetryableException | InterruptedException | CancellationException e) {
                 // handle thread interruption and cancellation as retries
                 logFailedSearch(WARNING, e, criteria.lineNumber, criteria.line);
                 errorCount++; // increment the error count
                 retryCount++; // increment the retry count
+                progress.completed();
+                progress.failed();
 
-                // track the retry record so it can be retried later
-                if (retryFile == null) {
-                    retryFile = File.createTempFile(RETRY_PREFIX, RETRY_SUFFIX);
-                    retryWriter = new PrintWriter(
-                            new OutputStreamWriter(new FileOutputStream(retryFile), UTF_8));
-                }
-                retryWriter.println(criteria.line);
+                // journal the search criteria so it can be retried later
+                retryJournal.retry(e, 1, criteria.lineNumber, criteria.line);
 
             } catch (Exception e) {
                 // catch any other exception (incl. SzException) here
                 logFailedSearch(CRITICAL, e, criteria.lineNumber, criteria.line);
                 errorCount++;
+                progress.completed();
+                progress.failed();
                 throw e; // rethrow since exception is critical
             }
         }
     }
 
+    /**
+     * Counts the entities that were found by more than one search.
+     *
+     * @return The number of entities found by more than one search.
+     */
+    private static int countRepeatedEntities() {
+        int[] count = { 0 };
+        foundEntities.forEach((entityId, searchCount) -> {
+            if (searchCount > 1) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
     /**
      * Example method for logging failed records.
      * 
@@ -268,9 +295,6 @@ public class SearchViaFutures {
 
     private static final String UTF_8 = "UTF-8";
 
-    private static final String RETRY_PREFIX = "retry-";
-    private static final String RETRY_SUFFIX = ".jsonl";
-
     private static final int THREAD_COUNT = 8;
 
     private static final int BACKLOG_FACTOR = 10;
@@ -289,8 +313,9 @@ public class SearchViaFutures {
     private static int errorCount = 0;
     private static int successCount = 0;
     private static int retryCount = 0;
-    private static File retryFile = null;
-    private static PrintWriter retryWriter = null;
+    private static LazyRetryJournal retryJournal = new LazyRetryJournal();
+    private static ProgressReporter progress = new ProgressReporter("searches");
 
-    private static Set<Long> foundEntities = new HashSet<>();
+    // count the searches finding each entity without boxing the entity IDs
+    private static LongIntHashMap foundEntities = new LongIntHashMap();
 }